@@ -0,0 +1,415 @@
+package ar.edu.unpa.uarg.metricas;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.wifi.WifiManager;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.CellInfo;
+import android.telephony.CellInfoCdma;
+import android.telephony.CellInfoGsm;
+import android.telephony.CellInfoLte;
+import android.telephony.CellInfoWcdma;
+import android.telephony.PhoneStateListener;
+import android.telephony.SignalStrength;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+/**
+ * Mantiene en memoria el estado de la red, de la batería y de la señal del
+ * dispositivo, actualizado por los avisos del sistema (un
+ * <code>NetworkCallback</code>, la difusión del estado de la batería y de la
+ * intensidad de la señal Wi-Fi, y un <code>PhoneStateListener</code>) en
+ * lugar de consultarlo cada vez. Leer cualquier valor es una lectura de un
+ * campo <code>volatile</code>, sin bloqueos ni llamadas al sistema.
+ * <p>
+ * Se registra la fecha de cada cambio, y cada transición se informa a un
+ * <code>SumideroMuestras</code> con los mismos nombres de métrica que usa
+ * <code>Metricas</code> ("PhoneConnectedToANetwork" y "PhoneCharging" valen
+ * 1 o 0), de modo que las transiciones quedan registradas sin necesidad de
+ * muestrear.
+ * <p>
+ * <code>iniciar()</code> se puede llamar desde cualquier hilo: el
+ * <code>PhoneStateListener</code>, que necesita un <code>Looper</code>
+ * (el constructor sin argumentos toma el del hilo que lo crea), se crea
+ * siempre en el hilo principal y recibe los avisos allí.
+ */
+public class CacheEstadoDispositivo implements PlanificadorSubida.Condiciones {
+
+    private final Context contexto;
+    private final ConnectivityManager gestorConectividad;
+    private final TelephonyManager gestorTelefonia;
+    private final WifiManager gestorWifi;
+    private final SumideroMuestras sumidero;
+
+    private final ConnectivityManager.NetworkCallback avisosRed = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(Network red) {
+            actualizarRed(red, gestorConectividad.getNetworkCapabilities(red));
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network red, NetworkCapabilities capacidades) {
+            actualizarRed(red, capacidades);
+        }
+
+        @Override
+        public void onLost(Network red) {
+            actualizarRed(null, null);
+        }
+    };
+
+    private final BroadcastReceiver receptor = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context contexto, Intent intent) {
+            if (WifiManager.RSSI_CHANGED_ACTION.equals(intent.getAction())) {
+                actualizarSenialWifi(intent.getIntExtra(WifiManager.EXTRA_NEW_RSSI, 1));
+            } else {
+                actualizarBateria(intent);
+            }
+        }
+    };
+
+    private PhoneStateListener avisosTelefonia;
+    private boolean iniciada;
+
+    private volatile boolean conectado;
+    private volatile boolean enWifi;
+    private volatile String tipoConexion;
+    private volatile int senialWifi = 1;
+    private volatile int senialMovil = 1;
+    private volatile int porcentajeBateria = -1;
+    private volatile boolean cargando;
+    private volatile long fechaCambioRed;
+    private volatile long fechaCambioBateria;
+    private volatile long fechaCambioSenial;
+
+    /**
+     * @param contexto El contexto de la aplicación.
+     * @param sumidero El destino de las transiciones (puede ser
+     *                 <code>null</code>). Se invoca desde el hilo en el que
+     *                 el sistema entrega cada aviso.
+     */
+    public CacheEstadoDispositivo(Context contexto, SumideroMuestras sumidero) {
+        if (contexto == null) {
+            throw new IllegalArgumentException("El contexto no puede ser null.");
+        }
+
+        this.contexto = contexto;
+        this.gestorConectividad = (ConnectivityManager) contexto.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.gestorTelefonia = (TelephonyManager) contexto.getSystemService(Context.TELEPHONY_SERVICE);
+        this.gestorWifi = (WifiManager) contexto.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        this.sumidero = sumidero;
+    }
+
+    /**
+     * Se suscribe a los avisos del sistema y carga el estado actual. Si ya
+     * estaba iniciada, no tiene efecto.
+     */
+    public synchronized void iniciar() {
+        if (this.iniciada) {
+            return;
+        }
+
+        IntentFilter filtro = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+
+        filtro.addAction(WifiManager.RSSI_CHANGED_ACTION);
+
+        /* El estado de la batería es persistente: registrar el receptor
+         * retorna el último valor difundido. */
+        Intent estadoBateria = this.contexto.registerReceiver(this.receptor, filtro);
+
+        if (estadoBateria != null) {
+            this.actualizarBateria(estadoBateria);
+        }
+
+        Network red = this.gestorConectividad.getActiveNetwork();
+
+        this.actualizarRed(red, red != null ? this.gestorConectividad.getNetworkCapabilities(red) : null);
+        this.gestorConectividad.registerDefaultNetworkCallback(this.avisosRed);
+
+        /* La intensidad de la señal sólo se difunde cuando cambia: se toma
+         * el valor inicial. */
+        if (this.enWifi && this.gestorWifi != null && this.gestorWifi.getConnectionInfo() != null) {
+            this.actualizarSenialWifi(this.gestorWifi.getConnectionInfo().getRssi());
+        }
+
+        this.iniciada = true;
+
+        if (this.gestorTelefonia != null) {
+            this.actualizarSenialMovil();
+
+            if (Looper.getMainLooper().isCurrentThread()) {
+                this.suscribirTelefonia();
+            } else {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        suscribirTelefonia();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Crea el <code>PhoneStateListener</code> y lo registra. Debe llamarse
+     * desde el hilo principal. Si entre tanto se detuvo la caché (o ya hay
+     * uno registrado), no tiene efecto.
+     */
+    private synchronized void suscribirTelefonia() {
+        if (!this.iniciada || this.avisosTelefonia != null) {
+            return;
+        }
+
+        this.avisosTelefonia = new PhoneStateListener() {
+            @Override
+            public void onSignalStrengthsChanged(SignalStrength intensidad) {
+                actualizarSenialMovil();
+            }
+        };
+        this.gestorTelefonia.listen(this.avisosTelefonia, PhoneStateListener.LISTEN_SIGNAL_STRENGTHS);
+    }
+
+    /**
+     * Cancela la suscripción a los avisos del sistema. Los valores quedan
+     * con el último estado conocido.
+     */
+    public synchronized void detener() {
+        if (!this.iniciada) {
+            return;
+        }
+
+        this.iniciada = false;
+
+        try {
+            this.contexto.unregisterReceiver(this.receptor);
+            this.gestorConectividad.unregisterNetworkCallback(this.avisosRed);
+        } catch (IllegalArgumentException e) {
+            Log.e("Error", "No se pudieron cancelar los avisos de estado del dispositivo: " + e.getMessage());
+        }
+
+        if (this.avisosTelefonia != null) {
+            this.gestorTelefonia.listen(this.avisosTelefonia, PhoneStateListener.LISTEN_NONE);
+            this.avisosTelefonia = null;
+        }
+    }
+
+    public boolean estaConectado() {
+        return this.conectado;
+    }
+
+    public boolean estaEnWifi() {
+        return this.enWifi;
+    }
+
+    public boolean estaCargando() {
+        return this.cargando;
+    }
+
+    /**
+     * @return El porcentaje de carga de la batería, o -1 si todavía no se
+     * recibió el estado de la batería.
+     */
+    public int getPorcentajeBateria() {
+        return this.porcentajeBateria;
+    }
+
+    /**
+     * @return El nombre del tipo de conexión ("Wi-Fi", "4G", etc.), o
+     * <code>null</code> si no hay una red activa.
+     */
+    public String getTipoConexion() {
+        return this.tipoConexion;
+    }
+
+    /**
+     * @return La intensidad de la señal de la red activa en dBm, o 1 si no se
+     * conoce (por ejemplo, porque no hay una red inalámbrica activa).
+     */
+    public int getFuerzaSenial() {
+        if (!this.conectado) {
+            return 1;
+        }
+
+        return this.enWifi ? this.senialWifi : this.senialMovil;
+    }
+
+    /**
+     * @return La fecha del último cambio de la red activa, en milisegundos
+     * desde la época Unix.
+     */
+    public long getFechaCambioRed() {
+        return this.fechaCambioRed;
+    }
+
+    public long getFechaCambioBateria() {
+        return this.fechaCambioBateria;
+    }
+
+    public long getFechaCambioSenial() {
+        return this.fechaCambioSenial;
+    }
+
+    private void actualizarRed(Network red, NetworkCapabilities capacidades) {
+        boolean conectado = red != null;
+        boolean enWifi = capacidades != null && capacidades.hasTransport(NetworkCapabilities.TRANSPORT_WIFI);
+        String tipoConexion = conectado ? nombrarTipoConexion(this.gestorConectividad.getNetworkInfo(red), enWifi) : null;
+        long fecha = System.currentTimeMillis();
+
+        synchronized (this) {
+            boolean cambioConexion = conectado != this.conectado;
+
+            if (!cambioConexion && enWifi == this.enWifi && (tipoConexion == null ? this.tipoConexion == null : tipoConexion.equals(this.tipoConexion))) {
+                return;
+            }
+
+            this.conectado = conectado;
+            this.enWifi = enWifi;
+            this.tipoConexion = tipoConexion;
+            this.fechaCambioRed = fecha;
+
+            if (cambioConexion) {
+                this.informar("PhoneConnectedToANetwork", conectado ? 1 : 0, fecha);
+            }
+        }
+    }
+
+    private void actualizarBateria(Intent estadoBateria) {
+        int nivel = estadoBateria.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int escala = estadoBateria.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int conexion = estadoBateria.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
+        int porcentaje = nivel >= 0 && escala > 0 ? nivel * 100 / escala : -1;
+        boolean cargando = conexion == BatteryManager.BATTERY_PLUGGED_AC || conexion == BatteryManager.BATTERY_PLUGGED_USB
+                || conexion == BatteryManager.BATTERY_PLUGGED_WIRELESS;
+        long fecha = System.currentTimeMillis();
+
+        synchronized (this) {
+            boolean cambioPorcentaje = porcentaje != this.porcentajeBateria;
+            boolean cambioCarga = cargando != this.cargando || this.fechaCambioBateria == 0;
+
+            if (!cambioPorcentaje && !cambioCarga) {
+                return;
+            }
+
+            this.porcentajeBateria = porcentaje;
+            this.cargando = cargando;
+            this.fechaCambioBateria = fecha;
+
+            if (cambioPorcentaje && porcentaje != -1) {
+                this.informar("BatteryCharge", porcentaje, fecha);
+            }
+
+            if (cambioCarga) {
+                this.informar("PhoneCharging", cargando ? 1 : 0, fecha);
+            }
+        }
+    }
+
+    private void actualizarSenialWifi(int dBm) {
+        synchronized (this) {
+            if (dBm == this.senialWifi) {
+                return;
+            }
+
+            this.senialWifi = dBm;
+            this.fechaCambioSenial = System.currentTimeMillis();
+
+            if (this.enWifi && dBm != 1) {
+                this.informar("SignalStrength", dBm, this.fechaCambioSenial);
+            }
+        }
+    }
+
+    private void actualizarSenialMovil() {
+        if (this.contexto.checkCallingOrSelfPermission(Manifest.permission.ACCESS_COARSE_LOCATION) == android.content.pm.PackageManager.PERMISSION_DENIED) {
+            return;
+        }
+
+        int dBm = 1;
+
+        try {
+            java.util.List<CellInfo> celdas = this.gestorTelefonia.getAllCellInfo();
+
+            if (celdas != null && !celdas.isEmpty()) {
+                dBm = medirCelda(celdas.get(0));
+            }
+        } catch (SecurityException e) {
+            return;
+        }
+
+        synchronized (this) {
+            if (dBm == this.senialMovil) {
+                return;
+            }
+
+            this.senialMovil = dBm;
+            this.fechaCambioSenial = System.currentTimeMillis();
+
+            if (!this.enWifi && dBm != 1) {
+                this.informar("SignalStrength", dBm, this.fechaCambioSenial);
+            }
+        }
+    }
+
+    /**
+     * Debe llamarse con el monitor tomado, para que las transiciones se
+     * informen en orden.
+     */
+    private void informar(String metrica, double valor, long fechaMilisegundos) {
+        if (this.sumidero != null) {
+            this.sumidero.recibir(metrica, fechaMilisegundos, valor);
+        }
+    }
+
+    private static int medirCelda(CellInfo celda) {
+        if (celda instanceof CellInfoLte) {
+            return ((CellInfoLte) celda).getCellSignalStrength().getDbm();
+        } else if (celda instanceof CellInfoGsm) {
+            return ((CellInfoGsm) celda).getCellSignalStrength().getDbm();
+        } else if (celda instanceof CellInfoCdma) {
+            return ((CellInfoCdma) celda).getCellSignalStrength().getDbm();
+        } else if (celda instanceof CellInfoWcdma) {
+            return ((CellInfoWcdma) celda).getCellSignalStrength().getDbm();
+        }
+
+        return 1;
+    }
+
+    private static String nombrarTipoConexion(NetworkInfo informacion, boolean enWifi) {
+        if (enWifi) {
+            return "Wi-Fi";
+        }
+
+        if (informacion == null) {
+            return null;
+        }
+
+        if (informacion.getType() != ConnectivityManager.TYPE_MOBILE) {
+            return informacion.getTypeName();
+        }
+
+        switch (informacion.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+                return "EDGE";
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+                return "GPRS";
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return "2G";
+            case TelephonyManager.NETWORK_TYPE_UMTS:
+                return "3G";
+            case TelephonyManager.NETWORK_TYPE_LTE:
+                return "4G";
+            default: // Si el tipo de conexión no está contemplado arriba, se retorna igual.
+                return informacion.getSubtypeName();
+        }
+    }
+
+}
@@ -3,11 +3,8 @@ package ar.edu.unpa.uarg.metricas;
 import android.os.Environment;
 import android.util.Log;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 
 /**
  * Construye un documento XML a partir de las métricas que va recibiendo
@@ -17,6 +14,23 @@ import java.text.SimpleDateFormat;
  * NOTA PARA EL DESARROLLADOR: El archivo XML en el que se almacenan las
  * métricas se guarda en el directorio raíz de la memoria del teléfono.
  * Lo puede ubicar con el nombre «metricas.xml».
+ * <p>
+ * El archivo se mantiene abierto entre llamadas y los registros se vuelcan
+ * en lotes según la política indicada mediante <code>setPoliticaVaciado</code>.
+ * La escritura la realiza un hilo en segundo plano, por lo que
+ * «adjuntarMetrica» puede llamarse desde el hilo principal sin bloquearlo.
+ * Para forzar la escritura de los registros pendientes se puede utilizar
+ * <code>vaciar()</code>, y para liberar el archivo, <code>cerrar()</code>.
+ * <p>
+ * El formato de los registros lo determina el
+ * <code>CodificadorRegistros</code> configurado; la extensión del archivo
+ * depende de él. Por defecto es un documento XML bien formado, con una
+ * cabecera por sesión (ver <code>CodificadorDocumentoXML</code>), que se
+ * cierra al llamar a <code>cerrar()</code> y se continúa al volver a abrirlo.
+ * <p>
+ * Opcionalmente, mediante <code>setAlmacenamientoSegmentado</code>, los
+ * registros pueden guardarse en un directorio de segmentos de tamaño fijo con
+ * un límite de espacio (ver <code>RegistroSegmentado</code>).
  *
  * @author Ariel Machini
  */
@@ -28,7 +42,17 @@ public class ConstructorXML {
      */
     public static String NOMBRE_ARCHIVO = "metricas";
 
-    private static SimpleDateFormat formateadorFecha = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", java.util.Locale.US);
+    private static CodificadorRegistros codificador = new CodificadorDocumentoXML();
+    private static String dispositivo = null;
+    private static String versionAplicacion = null;
+    private static PoliticaVaciado politicaVaciado = PoliticaVaciado.POR_DEFECTO;
+    private static PoliticaContrapresion politicaContrapresion = PoliticaContrapresion.BLOQUEAR;
+    private static int capacidadCola = 1024;
+    private static long descartadosEscritoresAnteriores = 0;
+    private static int bytesPorSegmento = 0; // 0: un único archivo sin límite de tamaño.
+    private static int maximoSegmentos = 0;
+    private static long maximoBytesSegmentos = 0;
+    private static EscritorAsincrono escritor = null;
 
     /**
      * Adjunta la métrica especificada por parámetros al archivo XML que
@@ -45,25 +69,7 @@ public class ConstructorXML {
      * @author Ariel Machini
      */
     public static void adjuntarMetrica(String metrica, String valor) {
-        File archivoXML = new File(Environment.getExternalStorageDirectory() + "/" + NOMBRE_ARCHIVO + ".xml");
-
-        try {
-            if (!archivoXML.exists()) {
-                archivoXML.createNewFile();
-            }
-
-            BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(archivoXML, true));
-
-            long fechaSistema = System.currentTimeMillis();
-            String fechaFormateada = formateadorFecha.format(fechaSistema);
-            metrica = "<metrica indicador=\"" + metrica + "\" fecha=\"" + fechaFormateada + "\">" + valor + "</metrica>";
-
-            bufferedWriter.append(metrica);
-            bufferedWriter.newLine();
-            bufferedWriter.close();
-        } catch (IOException e) {
-            Log.e("Error", "Se produjo un error de E/S durante la ejecución del método «adjuntarMetrica» de la clase ConstructorXML.");
-        }
+        agregarRegistro(new RegistroMetrica(null, metrica, valor, System.currentTimeMillis()));
     }
 
     /**
@@ -81,24 +87,278 @@ public class ConstructorXML {
      *              valor apropiado sería «72» (milisegundos).
      */
     public static void adjuntarMetrica(String calificacionUsuario, String metrica, String valor) {
-        File archivoXML = new File(Environment.getExternalStorageDirectory() + "/" + NOMBRE_ARCHIVO + ".xml");
+        agregarRegistro(new RegistroMetrica(calificacionUsuario, metrica, valor, System.currentTimeMillis()));
+    }
+
+    /**
+     * Adjunta una métrica con un valor entero. El valor se escribe en el
+     * archivo sin convertirlo antes a <code>String</code>.
+     *
+     * @see #adjuntarMetrica(String, String, String)
+     */
+    public static void adjuntarMetrica(String calificacionUsuario, String metrica, long valor) {
+        agregarRegistro(new RegistroMetrica(calificacionUsuario, metrica, valor, System.currentTimeMillis()));
+    }
+
+    /**
+     * Adjunta una métrica con un valor real. El valor se escribe en el
+     * archivo sin convertirlo antes a <code>String</code>.
+     *
+     * @see #adjuntarMetrica(String, String, String)
+     */
+    public static void adjuntarMetrica(String calificacionUsuario, String metrica, double valor) {
+        agregarRegistro(new RegistroMetrica(calificacionUsuario, metrica, valor, System.currentTimeMillis()));
+    }
+
+    /**
+     * Adjunta una métrica con un valor real de precisión simple, que se
+     * escribe como lo haría <code>String.valueOf(float)</code>.
+     *
+     * @see #adjuntarMetrica(String, String, String)
+     */
+    public static void adjuntarMetrica(String calificacionUsuario, String metrica, float valor) {
+        agregarRegistro(new RegistroMetrica(calificacionUsuario, metrica, valor, System.currentTimeMillis()));
+    }
+
+    /**
+     * Adjunta todas las métricas de una calificación como un único registro,
+     * en lugar de una fila por métrica que repite la calificación y la fecha.
+     *
+     * @param evento El evento de calificación.
+     * @see EventoCalificacion
+     */
+    public static void adjuntarEvento(EventoCalificacion evento) {
+        agregarRegistro(new RegistroMetrica(evento));
+    }
+
+    /**
+     * Adjunta una muestra tomada en segundo plano (por ejemplo, por un
+     * <code>PlanificadorMuestreo</code>), conservando la fecha en la que se
+     * tomó en lugar de la fecha en la que se adjunta.
+     *
+     * @param metrica           El nombre de la métrica.
+     * @param valor             El valor medido.
+     * @param fechaMilisegundos El instante en el que se tomó la muestra.
+     */
+    public static void adjuntarMuestra(String metrica, double valor, long fechaMilisegundos) {
+        agregarRegistro(new RegistroMetrica(null, metrica, valor, fechaMilisegundos));
+    }
+
+    /**
+     * Establece la política con la que se vuelcan al archivo los registros
+     * acumulados en memoria. El cambio se aplica la próxima vez que se abra
+     * el archivo (por ejemplo, luego de llamar a <code>cerrar()</code>).
+     *
+     * @param politica La nueva política de vaciado.
+     * @see PoliticaVaciado
+     */
+    public static synchronized void setPoliticaVaciado(PoliticaVaciado politica) {
+        if (politica == null) {
+            throw new IllegalArgumentException("La política de vaciado no puede ser null.");
+        }
+
+        politicaVaciado = politica;
+    }
+
+    /**
+     * Establece el formato con el que se escriben los registros. Por ejemplo,
+     * <code>new CodificadorBinario()</code> genera un archivo «.q2mb» mucho
+     * más compacto, que puede convertirse a XML con
+     * <code>DecodificadorBinario.convertirAXML</code>, y
+     * <code>new CodificadorXML()</code> escribe el formato histórico de una
+     * línea por registro, sin elemento raíz. El cambio se aplica la próxima
+     * vez que se abra el archivo.
+     *
+     * @param nuevoCodificador El codificador a utilizar.
+     * @see CodificadorRegistros
+     */
+    public static synchronized void setCodificador(CodificadorRegistros nuevoCodificador) {
+        if (nuevoCodificador == null) {
+            throw new IllegalArgumentException("El codificador no puede ser null.");
+        }
+
+        codificador = nuevoCodificador;
+    }
+
+    /**
+     * Establece los datos que se escriben en la cabecera de cada sesión del
+     * documento XML. <code>Metricas</code> los indica al crearse. El cambio
+     * se aplica la próxima vez que se abra el archivo.
+     *
+     * @param nombreDispositivo El fabricante y el modelo del dispositivo.
+     * @param version           La versión de la aplicación que se mide.
+     * @see CodificadorDocumentoXML#setDatosSesion(String, String)
+     */
+    public static synchronized void setDatosSesion(String nombreDispositivo, String version) {
+        dispositivo = nombreDispositivo;
+        versionAplicacion = version;
+    }
+
+    /**
+     * Guarda los registros en un directorio de segmentos de tamaño fijo
+     * («/‹NOMBRE_ARCHIVO›.‹extensión›.segmentos») en lugar de un único
+     * archivo que crece indefinidamente. Cuando se supera la cantidad máxima
+     * de segmentos o de bytes se eliminan los segmentos más antiguos. El
+     * cambio se aplica la próxima vez que se abra el almacenamiento.
+     *
+     * @param bytesSegmento  El tamaño de cada segmento (por ejemplo, 1 MiB).
+     * @param segmentos      La cantidad máxima de segmentos a conservar.
+     * @param maximoBytes    El espacio máximo que pueden ocupar los
+     *                       segmentos (0 para no limitarlo).
+     * @see RegistroSegmentado
+     */
+    public static synchronized void setAlmacenamientoSegmentado(int bytesSegmento, int segmentos, long maximoBytes) {
+        if (bytesSegmento <= 0 || segmentos < 1 || maximoBytes < 0) {
+            throw new IllegalArgumentException("Configuración inválida para el almacenamiento segmentado.");
+        }
+
+        bytesPorSegmento = bytesSegmento;
+        maximoSegmentos = segmentos;
+        maximoBytesSegmentos = maximoBytes;
+    }
+
+    /**
+     * Vuelve a guardar los registros en un único archivo (el comportamiento
+     * por defecto). El cambio se aplica la próxima vez que se abra el
+     * almacenamiento.
+     */
+    public static synchronized void setAlmacenamientoArchivoUnico() {
+        bytesPorSegmento = 0;
+    }
+
+    /**
+     * Establece el tamaño de la cola del hilo escritor y qué hacer cuando esta
+     * se llena. Al igual que la política de vaciado, el cambio se aplica la
+     * próxima vez que se abra el archivo.
+     *
+     * @param politica  Qué hacer con un registro nuevo si la cola está llena.
+     * @param capacidad La cantidad máxima de registros que pueden esperar a
+     *                  ser escritos.
+     * @see PoliticaContrapresion
+     */
+    public static synchronized void setContrapresion(PoliticaContrapresion politica, int capacidad) {
+        if (politica == null || capacidad < 2) {
+            throw new IllegalArgumentException("Se requiere una política de contrapresión y una capacidad mayor o igual a 2.");
+        }
+
+        politicaContrapresion = politica;
+        capacidadCola = capacidad;
+    }
+
+    /**
+     * @return El archivo en el que se guardan las métricas o, si se usa el
+     * almacenamiento segmentado, el directorio de los segmentos.
+     */
+    public static synchronized File getArchivo() {
+        File archivo = new File(Environment.getExternalStorageDirectory() + "/" + NOMBRE_ARCHIVO + "." + codificador.getExtension());
+
+        return bytesPorSegmento > 0 ? new File(archivo.getPath() + ".segmentos") : archivo;
+    }
+
+    /**
+     * @return La cantidad de registros que se descartaron porque la cola del
+     * hilo escritor estaba llena.
+     */
+    public static synchronized long getRegistrosDescartados() {
+        return descartadosEscritoresAnteriores + (escritor != null ? escritor.getRegistrosDescartados() : 0);
+    }
+
+    /**
+     * Pide que se escriban en el archivo XML todos los registros adjuntados
+     * hasta el momento. La escritura se realiza en segundo plano, por lo que
+     * este método no bloquea al hilo que lo invoca.
+     */
+    public static synchronized void vaciar() {
+        if (escritor == null) {
+            return;
+        }
+
+        escritor.solicitarVaciado();
+        informarError(escritor.consumirUltimoError(), "vaciar");
+    }
+
+    /**
+     * Escribe los registros pendientes y cierra el archivo XML, esperando a
+     * que el hilo escritor termine. Si luego se adjunta una nueva métrica, el
+     * archivo se vuelve a abrir.
+     */
+    public static synchronized void cerrar() {
+        if (escritor == null) {
+            return;
+        }
 
         try {
-            BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(archivoXML, true));
+            escritor.close();
+        } catch (IOException e) {
+            informarError(e, "cerrar");
+        } finally {
+            descartadosEscritoresAnteriores += escritor.getRegistrosDescartados();
+            escritor = null;
+        }
+    }
+
+    private static void agregarRegistro(RegistroMetrica registro) {
+        EscritorAsincrono escritorActual = obtenerEscritor();
+
+        /* Se encola fuera del bloque sincronizado para que los productores no
+         * se serialicen entre sí. Si mientras tanto otro hilo cerró el
+         * escritor, el registro se rechaza y se envía al siguiente (que
+         * obtenerEscritor crea recién cuando termina el cierre). */
+        while (!escritorActual.encolar(registro) && escritorActual.estaCerrado()) {
+            escritorActual = obtenerEscritor();
+        }
+    }
+
+    private static synchronized EscritorAsincrono obtenerEscritor() {
+        File archivoXML = getArchivo();
 
-            if (!archivoXML.exists()) {
-                archivoXML.createNewFile();
+        if (escritor != null) {
+            informarError(escritor.consumirUltimoError(), "adjuntarMetrica");
+
+            if (!escritor.getArchivo().equals(archivoXML)) {
+                /* Se cambió NOMBRE_ARCHIVO desde la última escritura. */
+                cerrar();
             }
+        }
 
-            long fechaSistema = System.currentTimeMillis();
-            String fechaFormateada = formateadorFecha.format(fechaSistema);
-            metrica = "<indicator name=\"" + metrica + "\" date=\"" + fechaFormateada + "\" score=\"" + calificacionUsuario + "\">" + valor + "</indicator>";
+        if (escritor == null) {
+            if (codificador instanceof CodificadorDocumentoXML) {
+                ((CodificadorDocumentoXML) codificador).setDatosSesion(dispositivo, versionAplicacion);
+            }
 
-            bufferedWriter.append(metrica);
-            bufferedWriter.newLine();
-            bufferedWriter.close();
-        } catch (IOException e) {
-            Log.e("Error", "Se produjo un error de E/S durante la ejecución del método «adjuntarMetrica» de la clase ConstructorXML.");
+            /* El archivo se reanuda y se abre en el hilo escritor, para que
+             * el primer registro no espere la E/S en el hilo que lo adjunta. */
+            escritor = new EscritorAsincrono(archivoXML, politicaVaciado,
+                    crearApertura(archivoXML, codificador, politicaVaciado), codificador, capacidadCola, politicaContrapresion);
+        }
+
+        return escritor;
+    }
+
+    private static EscritorAsincrono.Apertura crearApertura(final File archivoXML, final CodificadorRegistros codificadorArchivo,
+                                                          final PoliticaVaciado politica) {
+        final int bytesSegmento = bytesPorSegmento;
+        final int segmentos = maximoSegmentos;
+        final long maximoBytes = maximoBytesSegmentos;
+
+        return new EscritorAsincrono.Apertura() {
+            public AlmacenMetricas abrir() throws IOException {
+                if (bytesSegmento > 0) {
+                    return new RegistroSegmentado(archivoXML, bytesSegmento, segmentos, maximoBytes, politica);
+                }
+
+                /* Por ejemplo, para quitar el cierre del documento que se
+                 * escribió la última vez que se cerró el archivo. */
+                codificadorArchivo.reanudar(archivoXML);
+
+                return new SumideroMetricas(archivoXML, politica);
+            }
+        };
+    }
+
+    private static void informarError(IOException error, String metodo) {
+        if (error != null) {
+            Log.e("Error", "Se produjo un error de E/S durante la ejecución del método «" + metodo + "» de la clase ConstructorXML: " + error.getMessage());
         }
     }
 
@@ -6,19 +6,10 @@ import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.content.Intent;
 import android.hardware.Sensor;
 import android.hardware.SensorManager;
-import android.net.ConnectivityManager;
-import android.net.wifi.WifiManager;
-import android.os.BatteryManager;
-import android.os.StrictMode;
+import android.os.Build;
 import android.provider.Settings;
-import android.telephony.CellInfoCdma;
-import android.telephony.CellInfoGsm;
-import android.telephony.CellInfoLte;
-import android.telephony.CellInfoWcdma;
-import android.telephony.TelephonyManager;
 import android.util.Log;
 import android.widget.Toast;
 import java.io.IOException;
@@ -32,108 +23,132 @@ import java.io.IOException;
  */
 public class Metricas implements android.hardware.SensorEventListener {
 
-    private static Metricas instancia = null;
-    private Context contextoAplicacion;
-
-    /* Métricas calculadas por la librería: */
-    private double consumoMemoria;
-    private double consumoMemoriaMB;
-    private double jitter;
-    private double latencia;
-    private double paquetesPerdidos;
-    private double usoCPU;
-    private int fuerzaSenial;
-    private int porcentajeBrillo;
-    private int porcentajeCargaBateria;
-    private float lux;
-    private float proximidad;
-    private long latenciaPercibidaUsuario;
-    private String calificacionUsuario;
-    private String estaCargando;
-    private String estaConectado;
-    private String tipoConexion;
+    private static final long INTERVALO_SONDAS_MILISEGUNDOS = 200;
+    private static final long VENTANA_CPU_MILISEGUNDOS = 250;
+    private static final int CAPACIDAD_SERIES = 512;
+    private static final int PERIODO_SENSORES_MICROSEGUNDOS = 200000;
+    private static final int LATENCIA_SENSORES_MICROSEGUNDOS = 5000000;
+    private static final String DESTINO_SUBIDA_POR_DEFECTO = "http://localhost/Q2M/upload";
+
+    /* Posiciones de las métricas en el estado compartido: */
+    private static final int CONSUMO_MEMORIA = 0;
+    private static final int CONSUMO_MEMORIA_MB = 1;
+    private static final int JITTER = 2;
+    private static final int LATENCIA = 3;
+    private static final int PAQUETES_PERDIDOS = 4;
+    private static final int USO_CPU = 5;
+    private static final int FUERZA_SENIAL = 6;
+    private static final int PORCENTAJE_BRILLO = 7;
+    private static final int PORCENTAJE_CARGA_BATERIA = 8;
+    private static final int LUX = 9;
+    private static final int PROXIMIDAD = 10;
+    private static final int LATENCIA_PERCIBIDA_USUARIO = 11;
+    private static final int CANTIDAD_NUMEROS = 12;
+    private static final int ESTA_CARGANDO = 0;
+    private static final int ESTA_CONECTADO = 1;
+    private static final int TIPO_CONEXION = 2;
+    private static final int CANTIDAD_TEXTOS = 3;
+
+    private static final InstanciaUnica<Metricas> INSTANCIA = new InstanciaUnica<>();
+    private final Context contextoAplicacion;
+    private final ActivityManager gestorActividades;
+    private final CacheEstadoDispositivo cacheEstado;
+    private final SondaAndroid sonda;
+    private final SensorManager gestorSensores;
+    private int periodoLuzMicrosegundos = PERIODO_SENSORES_MICROSEGUNDOS;
+    private int periodoProximidadMicrosegundos = PERIODO_SENSORES_MICROSEGUNDOS;
+    private int latenciaSensoresMicrosegundos = LATENCIA_SENSORES_MICROSEGUNDOS;
+    private boolean sensoresRegistrados;
+    private volatile SondaRed sondaRed = new SondaRed(SondaRed.Modo.CONEXION_TCP, 80, 1000);
+    private volatile int maximoSondasJitter = 8;
+    private volatile long plazoJitterMilisegundos = 10000;
+    private final MuestreadorCPU muestreadorCPU = new MuestreadorCPU();
+    private MuestreadorCPU.InstantaneaCPU instantaneaCPU;
+    private PlanificadorMuestreo planificador;
+    private final java.util.concurrent.ConcurrentHashMap<String, SerieTemporal> series = new java.util.concurrent.ConcurrentHashMap<>();
+    private volatile long ventanaCalificacionMilisegundos = 60000;
+    private final java.util.concurrent.ConcurrentHashMap<String, BosquejoCuantiles> bosquejos = new java.util.concurrent.ConcurrentHashMap<>();
+    private final Trazador trazador;
+    private java.net.URL destinoSubida;
+    private PoliticaSubida politicaSubida = PoliticaSubida.SIEMPRE;
+    private volatile PlanificadorSubida planificadorSubida;
+    /* Los identificadores de los eventos de calificación parten de la fecha
+     * de creación de la instancia, así que no se repiten entre ejecuciones
+     * (salvo que se califique más de una vez por milisegundo). */
+    private final java.util.concurrent.atomic.AtomicLong siguienteIdEvento = new java.util.concurrent.atomic.AtomicLong(System.currentTimeMillis());
+    private final java.util.concurrent.atomic.AtomicLong tramoLatenciaPercibida = new java.util.concurrent.atomic.AtomicLong(Trazador.TRAMO_INVALIDO);
+    private long cpuProcesoMilisegundos;
+    private long relojCPUMilisegundos;
+
+    /* Métricas calculadas por la librería. Se escriben desde los sensores,
+     * el muestreo en segundo plano y los hilos de la aplicación, por lo que
+     * se guardan en un estado que admite lecturas consistentes. */
+    private final EstadoMetricas estado = new EstadoMetricas(CANTIDAD_NUMEROS, CANTIDAD_TEXTOS);
 
+    private Metricas(Context contexto) {
+        this.contextoAplicacion = contexto;
 
-    private class WebServiceClient extends android.os.AsyncTask<String, Integer, Boolean> {
+        /* Los servicios del sistema se obtienen una sola vez. */
+        this.gestorActividades = (ActivityManager) contexto.getSystemService(Context.ACTIVITY_SERVICE);
+        this.gestorSensores = (SensorManager) contexto.getSystemService(Context.SENSOR_SERVICE);
 
-        private Context contextoAplicacion;
+        /* Todas las métricas empiezan en -1 (o null); la fuerza de la señal
+         * empieza en 1, ya que -1 dBm es un valor válido. Las variables "lux"
+         * y "proximidad" empiezan en 0 y se actualizan constantemente. */
+        this.estado.setNumero(FUERZA_SENIAL, 1);
+        this.estado.setNumero(LUX, 0);
+        this.estado.setNumero(PROXIMIDAD, 0);
 
-        public WebServiceClient(Context contexto) {
-            this.contextoAplicacion = contexto;
+        try {
+            this.destinoSubida = new java.net.URL(DESTINO_SUBIDA_POR_DEFECTO);
+        } catch (java.net.MalformedURLException e) {
+            throw new IllegalStateException(e);
         }
 
-        @Override
-        protected Boolean doInBackground(String... strings) {
-            org.json.JSONArray jsonArray = null;
-            java.net.URL url = null;
-
-            try {
-                StrictMode.ThreadPolicy threadPolicy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-
-                StrictMode.setThreadPolicy(threadPolicy);
-                Log.d("APIREST", "Comenzando proceso...");
-
-                url = new java.net.URL("http://localhost/Q2M/upload");
-                java.net.HttpURLConnection httpURLConnection = (java.net.HttpURLConnection) url.openConnection();
-                String inputJson = "{\"metricas\": \"" + strings[0] + "\"}"; // ToDo Ver cómo concatenar bien.
+        /* Las métricas de latencia acumulan además un bosquejo de cuantiles
+         * para poder informar la cola de la distribución (p95, p99). */
+        this.bosquejos.put("Latency", new BosquejoCuantiles());
+        this.bosquejos.put("UserPerceivedLatency", new BosquejoCuantiles());
 
-                httpURLConnection.setDoOutput(true);
-                httpURLConnection.setRequestMethod("POST");
-                httpURLConnection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-                httpURLConnection.setUseCaches(false);
-
-                try (java.io.OutputStream outputStream = httpURLConnection.getOutputStream()) {
-                    byte[] input = inputJson.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        /* Las duraciones de los tramos (en microsegundos) se registran como
+         * cualquier otra métrica. */
+        this.trazador = new Trazador(new SumideroMuestras() {
+            public void recibir(String metrica, long fechaMilisegundos, double valor) {
+                registrarMuestra(metrica, valor);
+            }
+        });
 
-                    outputStream.write(input, 0, input.length);
-                }
+        /* El estado de la red, de la batería y de la señal se mantiene
+         * actualizado con los avisos del sistema; cada cambio se registra
+         * como una muestra y se informa a la subida de métricas. */
+        this.cacheEstado = new CacheEstadoDispositivo(contexto, new SumideroMuestras() {
+            public void recibir(String metrica, long fechaMilisegundos, double valor) {
+                registrarMuestra(metrica, fechaMilisegundos, valor);
 
-                java.io.BufferedReader bufferedReader = new java.io.BufferedReader(new java.io.InputStreamReader(httpURLConnection.getInputStream()));
-                String linea;
-                StringBuffer respuesta = new StringBuffer();
+                PlanificadorSubida planificador = planificadorSubida;
 
-                while ((linea = bufferedReader.readLine()) != null) {
-                    respuesta.append(linea);
+                if (planificador != null && !"SignalStrength".equals(metrica)) {
+                    planificador.notificarCambioEstado();
                 }
-
-                Log.d("APIREST", "Proceso terminado. RESPUESTA: " + respuesta.toString() + ".");
-            } catch (java.net.MalformedURLException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
             }
+        });
+        this.cacheEstado.iniciar();
 
-            return true;
-        }
+        /* Cada sesión del archivo de métricas indica el dispositivo y la
+         * versión de la aplicación que se midió. */
+        String versionAplicacion = null;
 
-    } // ToDo: Cambiar nombre de la clase.
+        try {
+            versionAplicacion = contexto.getPackageManager().getPackageInfo(contexto.getPackageName(), 0).versionName;
+        } catch (android.content.pm.PackageManager.NameNotFoundException e) {
+            Log.e("Error", "No se pudo obtener la versión de la aplicación: " + e.getMessage());
+        }
 
-    private Metricas(Context contexto) {
-        this.contextoAplicacion = contexto;
+        ConstructorXML.setDatosSesion(Build.MANUFACTURER + " " + Build.MODEL, versionAplicacion);
 
-        /* Se inicializan las métricas con valores por defecto. Las variables "lux" y "proximidad" no se
-            inicializan con valores por defecto ya que se actualizan constantemente. */
-        this.calificacionUsuario = null;
-        this.consumoMemoria = -1;
-        this.consumoMemoriaMB = -1;
-        this.estaCargando = null;
-        this.estaConectado = null;
-        this.fuerzaSenial = 1;
-        this.jitter = -1;
-        this.latencia = -1;
-        this.latenciaPercibidaUsuario = -1;
-        this.paquetesPerdidos = -1;
-        this.porcentajeBrillo = -1;
-        this.porcentajeCargaBateria = -1;
-        this.tipoConexion = null;
-        this.usoCPU = -1;
-
-        SensorManager sensorManager = (SensorManager) this.contextoAplicacion.getSystemService(Context.SENSOR_SERVICE);
-        Sensor sensorLux = sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
-        Sensor sensorProximidad = sensorManager.getDefaultSensor(Sensor.TYPE_PROXIMITY);
-
-        sensorManager.registerListener(this, sensorLux, SensorManager.SENSOR_DELAY_FASTEST);
-        sensorManager.registerListener(this, sensorProximidad, SensorManager.SENSOR_DELAY_FASTEST);
+        /* El resto de la clase accede a la plataforma a través de la sonda. */
+        this.sonda = new SondaAndroid(contexto, this.cacheEstado);
+        this.registerSensors();
 
         if (this.contextoAplicacion.checkCallingOrSelfPermission(Manifest.permission.READ_EXTERNAL_STORAGE) == android.content.pm.PackageManager.PERMISSION_DENIED) {
             Log.e("Error", "No se podrá actualizar el archivo «metricas.xml» en el teléfono porque el usuario no brindó el permiso necesario (READ_EXTERNAL_STORAGE).");
@@ -147,7 +162,8 @@ public class Metricas implements android.hardware.SensorEventListener {
     /**
      * Crea y retorna una instancia de la clase <code>Metricas</code>.
      * Si ya se había creado una instancia con anterioridad, este método
-     * simplemente retorna la instancia existente.
+     * simplemente retorna la instancia existente. Se puede llamar desde
+     * cualquier hilo, incluso uno sin <code>Looper</code>.
      *
      * @param contexto El contexto de la aplicación Android que va a hacer uso
      *                 de los servicios de la clase. Es necesario para poder
@@ -159,12 +175,12 @@ public class Metricas implements android.hardware.SensorEventListener {
      * @see #destroyInstance()
      * @see #getInstanceOf()
      */
-    public static Metricas createInstance(Context contexto) {
-        if (instancia == null) {
-            instancia = new Metricas(contexto);
-        }
-
-        return instancia;
+    public static Metricas createInstance(final Context contexto) {
+        return INSTANCIA.obtener(new InstanciaUnica.Fabrica<Metricas>() {
+            public Metricas crear() {
+                return new Metricas(contexto);
+            }
+        });
     }
 
     /**
@@ -176,7 +192,16 @@ public class Metricas implements android.hardware.SensorEventListener {
      * @see #getInstanceOf()
      */
     public static void destroyInstance() {
-        instancia = null;
+        Metricas existente = INSTANCIA.quitar();
+
+        if (existente != null) {
+            existente.unregisterSensors();
+            existente.cacheEstado.detener();
+            existente.stopSampling();
+            existente.detenerSubidas();
+        }
+
+        ConstructorXML.cerrar();
     }
 
     /**
@@ -190,7 +215,7 @@ public class Metricas implements android.hardware.SensorEventListener {
      * @see #destroyInstance()
      */
     public static Metricas getInstanceOf() {
-        return instancia;
+        return INSTANCIA.get();
     }
 
     /* * * Acá comienzan los métodos heredados * * */
@@ -211,92 +236,144 @@ public class Metricas implements android.hardware.SensorEventListener {
      * de métricas que requieren del uso de sensores.
      */
     public void onSensorChanged(android.hardware.SensorEvent evento) {
+        /* Los eventos pueden llegar en lotes, tiempo después de producirse:
+         * la fecha de cada muestra se calcula a partir de la del evento
+         * (que usa el reloj de SystemClock.elapsedRealtimeNanos()). */
+        long fecha = System.currentTimeMillis() - (android.os.SystemClock.elapsedRealtimeNanos() - evento.timestamp) / 1000000;
+
         if (evento.sensor.getType() == Sensor.TYPE_LIGHT) {
-            this.lux = evento.values[0];
+            this.estado.setNumero(LUX, evento.values[0]);
+            this.sonda.actualizarSensor(Sensor.TYPE_LIGHT, evento.values[0]);
+            this.registrarMuestra("EnvironmentLight", fecha, evento.values[0]);
 
-            // Log.i("Cambio en el sensor", "Lux: " + this.lux + ".");
+            // Log.i("Cambio en el sensor", "Lux: " + evento.values[0] + ".");
         } else if (evento.sensor.getType() == Sensor.TYPE_PROXIMITY) {
-            this.proximidad = evento.values[0];
+            this.estado.setNumero(PROXIMIDAD, evento.values[0]);
+            this.sonda.actualizarSensor(Sensor.TYPE_PROXIMITY, evento.values[0]);
+            this.registrarMuestra("Proximity", fecha, evento.values[0]);
 
-            // Log.i("Cambio en el sensor", "Proximidad: " + this.proximidad + ".");
+            // Log.i("Cambio en el sensor", "Proximidad: " + evento.values[0] + ".");
         }
     }
 
     /* * * Acá terminan los métodos heredados * * */
 
-    private String convertirFlujo(java.io.InputStream inputStream) {
-        java.util.Scanner scanner = new java.util.Scanner(inputStream).useDelimiter("\\A");
-
-        return scanner.hasNext() ? scanner.next() : ""; // Retorna una cadena vacía si el flujo de entrada no provee ninguna información.
-    }
-
     /**
      * (Métrica QoE) Devuelve el porcentaje de uso de la CPU que está
      * utilizando la aplicación.
-     * NOTA: Para obtener el resultado de esta métrica se hace uso del proceso
-     * <code>top</code>, razón por la cual el porcentaje obtenido refleja
-     * cuánto del uso actual TOTAL de la CPU (considerado como el 100%) está
-     * ocupando la aplicación. Si bien no es el mejor resultado, es lo más
-     * preciso que se puede obtener.
+     * NOTA: El porcentaje se calcula a partir de los tiempos de CPU que
+     * informa <code>/proc</code> (ver <code>MuestreadorCPU</code>) y refleja
+     * cuánto del uso TOTAL de la CPU (todos los núcleos, considerado como el
+     * 100%) está ocupando la aplicación. Si ya se llamó a este método antes,
+     * el uso corresponde al lapso transcurrido desde esa llamada; si no, se
+     * mide durante una ventana breve.
      *
      * @return El porcentaje en uso de la CPU por la aplicación. Retorna -1 si
      * ocurre algún error durante la obtención de dicho porcentaje.
      * @author Ariel Machini
      */
     public double getCPUConsumption() {
-        ActivityManager activityManager = (ActivityManager) this.contextoAplicacion.getSystemService(Context.ACTIVITY_SERVICE);
-        java.util.List<ActivityManager.RunningAppProcessInfo> listaProcesos = activityManager.getRunningAppProcesses();
-        int PIDaplicacion = -1;
+        double usoCPU = -1;
 
-        for (ActivityManager.RunningAppProcessInfo procesoActual : listaProcesos) {
-            if (procesoActual.processName.equalsIgnoreCase(contextoAplicacion.getPackageName())) {
-                PIDaplicacion = procesoActual.pid;
+        /* La instantánea anterior es compartida: las llamadas concurrentes
+         * se miden de a una. */
+        synchronized (this.muestreadorCPU) {
+            usoCPU = this.medirUsoCPU();
+        }
 
-                break;
-            }
+        // ConstructorXML.adjuntarMetrica("CPUConsumption", String.valueOf(usoCPU));
+        this.estado.setNumero(USO_CPU, usoCPU);
+
+        if (usoCPU != -1) {
+            this.registrarMuestra("CPUConsumption", usoCPU);
         }
 
+        return usoCPU;
+    }
+
+    private double medirUsoCPU() {
         double usoCPU = -1;
-        Process proceso = null;
 
         try {
-            proceso = Runtime.getRuntime().exec("top -n 1 -p " + PIDaplicacion);
-            int codigoSalida = proceso.waitFor();
-
-            if (codigoSalida == 0) {
-                String salidaProceso = this.convertirFlujo(proceso.getInputStream());
-                String[] cadenaSalida = salidaProceso.split("\n");
-
-                for (int i = 0; i < cadenaSalida.length; i++) {
-                    if (cadenaSalida[i].contains("%CPU")) {
-                        /* ¡NO CAMBIAR LOS ÍNDICES YA ESTABLECIDOS! Estos
-                         * fueron puestos así para capturar el porcentaje sin
-                         * importar cuál sea su valor (es decir, comprende
-                         * desde el 0.0 hasta el 100.0. */
-                        usoCPU = Double.valueOf(cadenaSalida[i + 1].substring(42, 47).trim());
-
-                        break;
-                    }
-                }
-            } else {
-                Log.e("Error", "Ocurrió un error durante la ejecución del proceso «getCPUConsumption» (cód. " + codigoSalida + ").");
+            MuestreadorCPU.InstantaneaCPU actual = this.muestreadorCPU.tomarInstantanea(false);
 
-                return -1;
+            if (this.instantaneaCPU == null || actual.getJiffiesProceso() == this.instantaneaCPU.getJiffiesProceso()
+                    && actual.getJiffiesSistema() == this.instantaneaCPU.getJiffiesSistema()) {
+                this.instantaneaCPU = actual;
+
+                Thread.sleep(VENTANA_CPU_MILISEGUNDOS);
+
+                actual = this.muestreadorCPU.tomarInstantanea(false);
             }
+
+            usoCPU = this.muestreadorCPU.calcularUso(this.instantaneaCPU, actual);
+            this.instantaneaCPU = actual;
         } catch (IOException e) {
-            Log.e("Error", "Se produjo un error de E/S durante la ejecución del método «getCPUConsumption».");
+            /* Sin acceso a /proc/self/stat: se usa el tiempo de CPU que
+             * informa el sistema para el proceso. */
+            try {
+                usoCPU = this.getCPUConsumptionSinProc();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
             Log.e("Error", "No se pudo terminar con la ejecución del método «getCPUConsumption» porque esta fue interrumpida.");
-        } finally {
-            proceso.destroy();
         }
 
-        // ConstructorXML.adjuntarMetrica("CPUConsumption", String.valueOf(usoCPU));
-        this.usoCPU = usoCPU;
-
         return usoCPU;
     }
 
+    private double getCPUConsumptionSinProc() throws InterruptedException {
+        long cpuAnterior = this.cpuProcesoMilisegundos;
+        long relojAnterior = this.relojCPUMilisegundos;
+
+        if (relojAnterior == 0) {
+            cpuAnterior = android.os.Process.getElapsedCpuTime();
+            relojAnterior = android.os.SystemClock.elapsedRealtime();
+
+            Thread.sleep(VENTANA_CPU_MILISEGUNDOS);
+        }
+
+        this.cpuProcesoMilisegundos = android.os.Process.getElapsedCpuTime();
+        this.relojCPUMilisegundos = android.os.SystemClock.elapsedRealtime();
+
+        long transcurrido = (this.relojCPUMilisegundos - relojAnterior) * Runtime.getRuntime().availableProcessors();
+
+        if (transcurrido <= 0) {
+            return -1;
+        }
+
+        return Math.min(100, (this.cpuProcesoMilisegundos - cpuAnterior) * 100.0 / transcurrido);
+    }
+
+    /**
+     * Devuelve el porcentaje de uso de la CPU (relativo al total, como en
+     * <code>getCPUConsumption</code>) de cada hilo de la aplicación, medido
+     * durante una ventana breve.
+     *
+     * @return El uso de cada hilo, identificado como «‹nombre›#‹tid›». El
+     * mapa está vacío si ocurre algún error.
+     */
+    public java.util.Map<String, Double> getCPUConsumptionByThread() {
+        try {
+            MuestreadorCPU.InstantaneaCPU anterior = this.muestreadorCPU.tomarInstantanea(true);
+
+            Thread.sleep(VENTANA_CPU_MILISEGUNDOS);
+
+            return this.muestreadorCPU.calcularUsoPorHilo(anterior, this.muestreadorCPU.tomarInstantanea(true));
+        } catch (IOException e) {
+            Log.e("Error", "No se pudo leer /proc durante la ejecución del método «getCPUConsumptionByThread».");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            Log.e("Error", "No se pudo terminar con la ejecución del método «getCPUConsumptionByThread» porque esta fue interrumpida.");
+        }
+
+        return new java.util.HashMap<>();
+    }
+
     /**
      * (Métrica QoE) Retorna el porcentaje de carga actual de la batería del
      * teléfono.
@@ -306,13 +383,17 @@ public class Metricas implements android.hardware.SensorEventListener {
      * @author Ariel Machini
      */
     public int getBatteryPercentage() {
-        android.content.IntentFilter intentFilter = new android.content.IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent estadoBateria = this.contextoAplicacion.registerReceiver(null, intentFilter);
+        int porcentajeCargaBateria = this.sonda.getPorcentajeBateria();
 
-        int porcentajeCargaBateria = (estadoBateria.getIntExtra(BatteryManager.EXTRA_LEVEL, -1) * 100) / estadoBateria.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (porcentajeCargaBateria == -1) {
+            Log.e("Error", "Todavía no se recibió el estado de la batería, por lo que la métrica «getBatteryPercentage» no se guardará.");
+
+            return -1;
+        }
 
         // ConstructorXML.adjuntarMetrica("BatteryCharge", String.valueOf(porcentajeCargaBateria));
-        this.porcentajeCargaBateria = porcentajeCargaBateria;
+        this.estado.setNumero(PORCENTAJE_CARGA_BATERIA, porcentajeCargaBateria);
+        this.registrarMuestra("BatteryCharge", porcentajeCargaBateria);
 
         return porcentajeCargaBateria;
     }
@@ -325,70 +406,18 @@ public class Metricas implements android.hardware.SensorEventListener {
      * @author Ariel Machini
      */
     public String getConnectionType() {
-        ConnectivityManager connectivityManager = (ConnectivityManager) this.contextoAplicacion.getSystemService(Context.CONNECTIVITY_SERVICE);
-
-        if (connectivityManager.getActiveNetworkInfo().getType() == ConnectivityManager.TYPE_WIFI) {
-            // ConstructorXML.adjuntarMetrica("ConnectionType", "Wi-Fi");
-            this.tipoConexion = "Wi-Fi";
-
-            // return "Wi-Fi";
-        } else if (connectivityManager.getActiveNetworkInfo().getType() == ConnectivityManager.TYPE_MOBILE) {
-
-            switch (connectivityManager.getActiveNetworkInfo().getSubtype()) {
-
-                case TelephonyManager.NETWORK_TYPE_EDGE:
-                    // ConstructorXML.adjuntarMetrica("ConnectionType", "EDGE");
-                    this.tipoConexion = "EDGE";
-
-                    // return "EDGE";
-
-                case TelephonyManager.NETWORK_TYPE_GPRS:
-                    // ConstructorXML.adjuntarMetrica("ConnectionType", "GPRS");
-                    this.tipoConexion = "GPRS";
-
-                    // return "GPRS";
-
-                case TelephonyManager.NETWORK_TYPE_IDEN:
-                    // ConstructorXML.adjuntarMetrica("ConnectionType", "2G");
-                    this.tipoConexion = "2G";
-
-                    // return "2G";
-
-                case TelephonyManager.NETWORK_TYPE_UMTS:
-                    // ConstructorXML.adjuntarMetrica("ConnectionType", "3G");
-                    this.tipoConexion = "3G";
-
-                    // return "3G";
-
-                case TelephonyManager.NETWORK_TYPE_LTE:
-                    // ConstructorXML.adjuntarMetrica("ConnectionType", "4G");
-                    this.tipoConexion = "4G";
+        String tipoConexion = this.sonda.getTipoConexion();
 
-                    // return "4G";
+        if (tipoConexion == null) {
+            Log.e("Tipo de conexión", "No hay una red activa, por lo que la métrica no se guardará.");
 
-                default: // Si el tipo de conexión no está contemplado arriba, se retorna igual.
-                    // String tipoConexion = connectivityManager.getActiveNetworkInfo().getSubtypeName();
-
-                    // ConstructorXML.adjuntarMetrica("ConnectionType", tipoConexion);
-                    this.tipoConexion = connectivityManager.getActiveNetworkInfo().getSubtypeName();;
-
-                    // return tipoConexion;
-            }
-
-        } else {
-            /* Si la conexión que está utilizando el usuario no coincide con
-             * ninguno de los tipos arriba especificados, entonces estamos
-             * ante un caso muy particular. De igual manera, se contempla la
-             * posibilidad por más mínima que sea agregando este último «else». */
-            // String tipoConexion = connectivityManager.getActiveNetworkInfo().getTypeName();
-
-            // ConstructorXML.adjuntarMetrica("ConnectionType", tipoConexion);
-            this.tipoConexion = connectivityManager.getActiveNetworkInfo().getTypeName();
-
-            //return tipoConexion;
+            return null;
         }
 
-        return this.tipoConexion;
+        // ConstructorXML.adjuntarMetrica("ConnectionType", tipoConexion);
+        this.estado.setTexto(TIPO_CONEXION, tipoConexion);
+
+        return tipoConexion;
     }
 
     /**
@@ -402,7 +431,7 @@ public class Metricas implements android.hardware.SensorEventListener {
     public float getEnvironmentLight() {
         // ConstructorXML.adjuntarMetrica("EnvironmentLight", String.valueOf(this.lux));
 
-        return this.lux;
+        return (float) this.estado.getNumero(LUX);
     }
 
     /**
@@ -417,61 +446,35 @@ public class Metricas implements android.hardware.SensorEventListener {
      */
     public double getJitter(String direccionIP) {
         if (isActiveNetworkInfoNotNull()) {
-            java.util.ArrayList<Double> latencias = new java.util.ArrayList<>();
-            Process proceso = null;
+            InformeCalidadRed informe;
 
             try {
-                proceso = Runtime.getRuntime().exec("/system/bin/ping -c 4 " + direccionIP);
-                int codigoSalida = proceso.waitFor();
-
-                if (codigoSalida == 0) { // De acuerdo al API de Java, el código de salida 0 indica una ejecución exitosa.
-                    String salidaProceso = this.convertirFlujo(proceso.getInputStream());
-                    String[] cadenaSalida = salidaProceso.split("\n");
+                /* Se buscan cuatro respuestas, pero si alguna sonda resulta en
+                 * timeout se envían sondas adicionales sólo dentro del
+                 * presupuesto y del plazo configurados. */
+                informe = new SesionSondeo(this.sondaRed, 4, INTERVALO_SONDAS_MILISEGUNDOS, 4,
+                        Math.max(4, this.maximoSondasJitter), this.plazoJitterMilisegundos).ejecutar(direccionIP);
+            } catch (IOException e) {
+                Log.e("Error", "Se produjo un error de E/S durante la ejecución del método «getJitter».");
 
-                    for (String linea : cadenaSalida) {
-                        if (!linea.contains("time=")) {
-                            continue;
-                        }
+                return -1;
+            }
 
-                        int indice = linea.indexOf("time=") + 5; // El resultado de la métrica está después de los 5 caracteres de "time=".
-                        double milisegundos = Double.valueOf(linea.substring(indice, linea.indexOf(" ms")));
+            /* Promedio de | T(i+1) - T(i) | sobre las respuestas que hayan
+             * llegado, sean cuatro o menos. */
+            double jitter = informe.getVariacionMedia();
 
-                        latencias.add(milisegundos);
-                    }
-                } else if (codigoSalida == 1) {
-                    // ConstructorXML.adjuntarMetrica("Jitter", "Sin respuesta");
-                    jitter = -1;
-                } else {
-                    Log.e("Error", "Ocurrió un error durante la ejecución del proceso «getJitter» (cód. " + codigoSalida + ").");
+            if (jitter == -1) {
+                Log.e("Error", "No se pudo calcular el jitter porque se recibieron menos de dos respuestas de " + direccionIP + ".");
 
-                    return -1;
-                }
-            } catch (IOException e) {
-                Log.e("Error", "Se produjo un error de E/S durante la ejecución del método «getJitter».");
-            } catch (InterruptedException e) {
-                Log.e("Error", "No se pudo terminar con la ejecución del método «getJitter» porque esta fue interrumpida.");
-            } finally {
-                proceso.destroy();
+                return -1;
             }
 
-            try {
-                /* ((| T2 - T1 |) + (| T3 - T2 |) + (| T4 - T3 |)) / 3. Es una división
-                 * entre tres porque se suman tres valores y se saca el promedio de esa
-                 * suma. */
-                double jitter = (Math.abs(latencias.get(1) - latencias.get(0)) + Math.abs(latencias.get(2) - latencias.get(1)) + Math.abs(latencias.get(3) - latencias.get(2))) / 3;
-
-                // ConstructorXML.adjuntarMetrica("Jitter", String.valueOf(jitter));
-                this.jitter = jitter;
-
-                return jitter;
-            } catch (IndexOutOfBoundsException e) {
-                /* Una excepción de tipo IndexOutOfBoundsException implica que uno
-                 * de los pings que se hizo a direccionIP resultó en timeout, razón
-                 * por la cual se tendrá que volver a ejecutar el método. Esto es
-                 * así porque, de otro modo, no se puede hacer la operación
-                 * ((| T2 - T1 |) + (| T3 - T2 |) + (| T4 - T3 |)) / 3. */
-                return getJitter(direccionIP);
-            }
+            // ConstructorXML.adjuntarMetrica("Jitter", String.valueOf(jitter));
+            this.estado.setNumero(JITTER, jitter);
+            this.registrarMuestra("Jitter", jitter);
+
+            return jitter;
         } else {
             Log.e("Error", "No se puede ejecutar el método «getJitter» porque el teléfono no está conectado a una red.");
 
@@ -479,6 +482,28 @@ public class Metricas implements android.hardware.SensorEventListener {
         }
     }
 
+    /**
+     * Acota el tiempo que puede tardar <code>getJitter</code>. Si alguna de
+     * las cuatro sondas no obtiene respuesta, se envían sondas adicionales
+     * hasta completar cuatro respuestas, sin superar la cantidad máxima de
+     * sondas ni el plazo indicados; luego el jitter se calcula con las
+     * respuestas que hayan llegado. El tiempo de espera de cada sonda se
+     * configura en la sonda de red (ver <code>setNetworkProbe</code>).
+     *
+     * @param maximoSondas      La cantidad máxima de sondas por medición (como
+     *                          mínimo 4). Por defecto, 8.
+     * @param plazoMilisegundos El tiempo máximo de cada medición. Por
+     *                          defecto, 10 segundos.
+     */
+    public void setJitterProbeLimits(int maximoSondas, long plazoMilisegundos) {
+        if (maximoSondas < 4 || plazoMilisegundos <= 0) {
+            throw new IllegalArgumentException("Se requieren como mínimo cuatro sondas y un plazo positivo.");
+        }
+
+        this.maximoSondasJitter = maximoSondas;
+        this.plazoJitterMilisegundos = plazoMilisegundos;
+    }
+
     /**
      * (Métrica QoS) Mide la latencia a una dirección de IP determinada.
      *
@@ -490,45 +515,22 @@ public class Metricas implements android.hardware.SensorEventListener {
      */
     public double getLatency(String direccionIP) {
         if (isActiveNetworkInfoNotNull()) {
-            double milisegundos = 0;
-            Process proceso = null;
+            double milisegundos;
 
             try {
-                proceso = Runtime.getRuntime().exec("/system/bin/ping -c 1 " + direccionIP);
-                int codigoSalida = proceso.waitFor();
-
-                if (codigoSalida == 0) {
-                    String salidaProceso = this.convertirFlujo(proceso.getInputStream());
-                    String[] cadenaSalida = salidaProceso.split("\n");
-
-                    for (String linea : cadenaSalida) {
-                        if (!linea.contains("time=")) {
-                            continue;
-                        }
-
-                        int indice = linea.indexOf("time=") + 5; // El resultado de la métrica está después de los 5 caracteres de "time=".
-                        milisegundos = Double.valueOf(linea.substring(indice, linea.indexOf(" ms")));
-
-                        break;
-                    }
-                } else if (codigoSalida == 1) {
-                    // ConstructorXML.adjuntarMetrica("Latency", "Sin respuesta");
-                    milisegundos = -1;
-                } else {
-                    Log.e("Error", "Ocurrió un error durante la ejecución del proceso «getLatency» (cód. " + codigoSalida + ").");
-
-                    return -1;
-                }
+                milisegundos = this.sondaRed.sondear(direccionIP, 1, 0).getLatenciaMilisegundos();
             } catch (IOException e) {
                 Log.e("Error", "Se produjo un error de E/S durante la ejecución del método «getLatency».");
-            } catch (InterruptedException e) {
-                Log.e("Error", "No se pudo terminar con la ejecución del método «getLatency» porque esta fue interrumpida.");
-            } finally {
-                proceso.destroy();
+
+                return -1;
             }
 
             // ConstructorXML.adjuntarMetrica("Latency", String.valueOf(milisegundos));
-            this.latencia = milisegundos;
+            this.estado.setNumero(LATENCIA, milisegundos);
+
+            if (milisegundos != -1) {
+                this.registrarMuestra("Latency", milisegundos);
+            }
 
             return milisegundos;
         } else {
@@ -541,8 +543,9 @@ public class Metricas implements android.hardware.SensorEventListener {
     /**
      * (Métrica QoS) Calcula la pérdida de paquetes en la comunicación con una
      * dirección de IP determinada.
-     * Cabe mencionar que para determinar la pérdida de paquetes se hace ping
-     * cinco veces a la dirección de IP recibida por parámetros.
+     * Cabe mencionar que para determinar la pérdida de paquetes se envían
+     * cinco sondas a la dirección de IP recibida por parámetros (ver
+     * <code>setNetworkProbe</code>).
      *
      * @param direccionIP La dirección de IP (IPv4 o IPv6) que se va a utilizar
      *                    para ejecutar la métrica.
@@ -551,46 +554,36 @@ public class Metricas implements android.hardware.SensorEventListener {
      * @author Ariel Machini
      */
     public int getPacketLoss(String direccionIP) {
-        if (isActiveNetworkInfoNotNull()) {
-            int paquetesPerdidos = 0;
+        return this.getPacketLoss(direccionIP, 5);
+    }
 
-            Process proceso = null;
+    /**
+     * (Métrica QoS) Calcula la pérdida de paquetes en la comunicación con una
+     * dirección de IP determinada.
+     *
+     * @param direccionIP        La dirección de IP (IPv4 o IPv6) que se va a utilizar
+     *                           para ejecutar la métrica.
+     * @param numeroRepeticiones Cantidad de sondas que se van a enviar a la
+     *                           dirección de IP recibida por parámetros.
+     * @return El porcentaje de paquetes perdidos. Retorna -1 si ocurre algún
+     * problema en la comunicación entre el celular y el host especificado.
+     * @author Ariel Machini
+     */
+    public int getPacketLoss(String direccionIP, int numeroRepeticiones) {
+        if (isActiveNetworkInfoNotNull()) {
+            int paquetesPerdidos;
 
             try {
-                proceso = Runtime.getRuntime().exec("/system/bin/ping -c 5 " + direccionIP);
-                int codigoSalida = proceso.waitFor();
-
-                if (codigoSalida == 0) {
-                    String salidaProceso = this.convertirFlujo(proceso.getInputStream());
-                    String[] cadenaSalida = salidaProceso.split("\n");
-
-                    for (String linea : cadenaSalida) {
-                        if (!linea.contains("packet loss")) {
-                            continue;
-                        }
-
-                        int indiceFin = linea.indexOf("%");
-                        paquetesPerdidos = Integer.valueOf(linea.substring(indiceFin - 3, indiceFin).replace(",", "").trim());
-
-                        break;
-                    }
-                } else if (codigoSalida == 1) {
-                    paquetesPerdidos = 100;
-                } else {
-                    Log.e("Error", "Ocurrió un error durante la ejecución del proceso «getPacketLoss» (cód. " + codigoSalida + ").");
-
-                    return -1;
-                }
+                paquetesPerdidos = this.sondaRed.sondear(direccionIP, numeroRepeticiones, INTERVALO_SONDAS_MILISEGUNDOS).getPorcentajePerdida();
             } catch (IOException e) {
                 Log.e("Error", "Se produjo un error de E/S durante la ejecución del método «getPacketLoss».");
-            } catch (InterruptedException e) {
-                Log.e("Error", "No se pudo respuestaterminar con la ejecución del método «getPacketLoss» porque esta fue interrumpida.");
-            } finally {
-                proceso.destroy();
+
+                return -1;
             }
 
             // ConstructorXML.adjuntarMetrica("PacketLoss", String.valueOf(paquetesPerdidos));
-            this.paquetesPerdidos = paquetesPerdidos;
+            this.estado.setNumero(PAQUETES_PERDIDOS, paquetesPerdidos);
+            this.registrarMuestra("PacketLoss", paquetesPerdidos);
 
             return paquetesPerdidos;
         } else {
@@ -601,65 +594,85 @@ public class Metricas implements android.hardware.SensorEventListener {
     }
 
     /**
-     * (Métrica QoS) Calcula la pérdida de paquetes en la comunicación con una
-     * dirección de IP determinada.
+     * (Métrica QoS) Envía un único tren de cinco sondas a una dirección de IP
+     * y calcula con esas mismas muestras la latencia, el jitter y la pérdida
+     * de paquetes. Es más rápido y consume menos batería que llamar a
+     * <code>getLatency</code>, <code>getJitter</code> y
+     * <code>getPacketLoss</code> por separado, y los tres valores describen
+     * el mismo momento.
      *
-     * @param direccionIP        La dirección de IP (IPv4 o IPv6) que se va a utilizar
-     *                           para ejecutar la métrica.
-     * @param numeroRepeticiones Cantidad de veces que se va a hacer ping a la
-     *                           dirección de IP recibida por parámetros.
-     * @return El porcentaje de paquetes perdidos. Retorna -1 si ocurre algún
-     * problema en la comunicación entre el celular y el host especificado.
-     * @author Ariel Machini
+     * @param direccionIP La dirección de IP (IPv4 o IPv6) que se va a utilizar
+     *                    para ejecutar la métrica.
+     * @return El informe de calidad de la red, o <code>null</code> si el
+     * teléfono no está conectado a una red o si ocurre algún problema en la
+     * comunicación con el host especificado.
+     * @see #getNetworkQuality(String, int)
      */
-    public int getPacketLoss(String direccionIP, int numeroRepeticiones) {
-        if (isActiveNetworkInfoNotNull()) {
-            int paquetesPerdidos = 0;
+    public InformeCalidadRed getNetworkQuality(String direccionIP) {
+        return this.getNetworkQuality(direccionIP, 5);
+    }
 
-            Process proceso = null;
+    /**
+     * (Métrica QoS) Igual que <code>getNetworkQuality(String)</code>, pero
+     * permite elegir la cantidad de sondas.
+     *
+     * @param direccionIP    La dirección de IP (IPv4 o IPv6) que se va a
+     *                       utilizar para ejecutar la métrica.
+     * @param cantidadSondas La cantidad de sondas a enviar.
+     * @return El informe de calidad de la red, o <code>null</code> si no se
+     * pudo obtener.
+     */
+    public InformeCalidadRed getNetworkQuality(String direccionIP, int cantidadSondas) {
+        if (!isActiveNetworkInfoNotNull()) {
+            Log.e("Error", "No se puede ejecutar el método «getNetworkQuality» porque el teléfono no está conectado a una red.");
 
-            try {
-                proceso = Runtime.getRuntime().exec("/system/bin/ping -c " + numeroRepeticiones + " " + direccionIP);
-                int codigoSalida = proceso.waitFor();
+            return null;
+        }
 
-                if (codigoSalida == 0) {
-                    String salidaProceso = this.convertirFlujo(proceso.getInputStream());
-                    String[] cadenaSalida = salidaProceso.split("\n");
+        InformeCalidadRed informe;
 
-                    for (String linea : cadenaSalida) {
-                        if (!linea.contains("packet loss")) {
-                            continue;
-                        }
+        try {
+            informe = new SesionSondeo(this.sondaRed, cantidadSondas, INTERVALO_SONDAS_MILISEGUNDOS).ejecutar(direccionIP);
+        } catch (IOException e) {
+            Log.e("Error", "Se produjo un error de E/S durante la ejecución del método «getNetworkQuality».");
 
-                        int indiceFin = linea.indexOf("% packet loss");
-                        paquetesPerdidos = Integer.valueOf(linea.substring(indiceFin - 3, indiceFin).replace(",", "").trim());
+            return null;
+        }
 
-                        break;
-                    }
-                } else if (codigoSalida == 1) {
-                    paquetesPerdidos = 100;
-                } else {
-                    Log.e("Error", "Ocurrió un error durante la ejecución del proceso «getPacketLoss» (cód. " + codigoSalida + ").");
+        double jitter = informe.getVariacionMedia() != -1 ? informe.getVariacionMedia() : this.estado.getNumero(JITTER);
 
-                    return -1;
-                }
-            } catch (IOException e) {
-                Log.e("Error", "Se produjo un error de E/S durante la ejecución del método «getPacketLoss».");
-            } catch (InterruptedException e) {
-                Log.e("Error", "No se pudo terminar con la ejecución del método «getPacketLoss» porque esta fue interrumpida.");
-            } finally {
-                proceso.destroy();
-            }
+        /* Los tres valores de una misma sonda se publican juntos. */
+        this.estado.setNumeros(LATENCIA, informe.getRttPromedio(), PAQUETES_PERDIDOS, informe.getPorcentajePerdida(), JITTER, jitter);
+        this.registrarMuestra("PacketLoss", informe.getPorcentajePerdida());
 
-            // ConstructorXML.adjuntarMetrica("PacketLoss", String.valueOf(paquetesPerdidos));
-            this.paquetesPerdidos = paquetesPerdidos;
+        if (informe.getRecibidas() > 0) {
+            this.registrarMuestra("Latency", informe.getRttPromedio());
+        }
 
-            return paquetesPerdidos;
-        } else {
-            Log.e("Error", "No se puede ejecutar el método «getPacketLoss» porque el teléfono no está conectado a una red.");
+        if (informe.getVariacionMedia() != -1) {
+            this.registrarMuestra("Jitter", informe.getVariacionMedia());
+        }
 
-            return -1;
+        return informe;
+    }
+
+    /**
+     * Establece la sonda con la que se miden la latencia, el jitter y la
+     * pérdida de paquetes (también en <code>getNetworkQuality</code>). Por
+     * defecto se mide el tiempo de conexión TCP al puerto 80 del host, con un
+     * tiempo de espera de un segundo por sonda.
+     *
+     * @param sonda La sonda a utilizar. Por ejemplo,
+     *              <code>new SondaRed(SondaRed.Modo.UDP_ECO, 7, 1000)</code>
+     *              para medir contra un servicio de eco UDP.
+     * @see SondaRed
+     */
+    public void setNetworkProbe(SondaRed sonda) {
+        if (sonda == null) {
+            throw new IllegalArgumentException("La sonda de red no puede ser null.");
         }
+
+        this.sondaRed = sonda;
     }
 
     /**
@@ -672,7 +685,7 @@ public class Metricas implements android.hardware.SensorEventListener {
     public float getProximity() {
         // ConstructorXML.adjuntarMetrica("Proximity", String.valueOf(this.proximidad));
 
-        return this.proximidad;
+        return (float) this.estado.getNumero(PROXIMIDAD);
     }
 
     /**
@@ -707,7 +720,8 @@ public class Metricas implements android.hardware.SensorEventListener {
 
                 if (porcentajeBrillo != -1) {
                     // ConstructorXML.adjuntarMetrica("ScreenBrightness", String.valueOf(porcentajeBrillo));
-                    this.porcentajeBrillo = porcentajeBrillo;
+                    this.estado.setNumero(PORCENTAJE_BRILLO, porcentajeBrillo);
+                    this.registrarMuestra("ScreenBrightness", porcentajeBrillo);
                 }
             }
         } catch(android.provider.Settings.SettingNotFoundException e) {
@@ -729,64 +743,25 @@ public class Metricas implements android.hardware.SensorEventListener {
      * @author Ariel Machini
      */
     public int getSignalStrength() {
-        if (this.contextoAplicacion.checkCallingOrSelfPermission(Manifest.permission.ACCESS_COARSE_LOCATION) != android.content.pm.PackageManager.PERMISSION_DENIED) {
-            ConnectivityManager connectivityManager = (ConnectivityManager) this.contextoAplicacion.getSystemService(Context.CONNECTIVITY_SERVICE);
-
-            if (connectivityManager.getActiveNetworkInfo().getType() == ConnectivityManager.TYPE_WIFI) {
-                WifiManager wifiManager = (WifiManager) this.contextoAplicacion.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-                int dBm = wifiManager.getConnectionInfo().getRssi();
-
-                // ConstructorXML.adjuntarMetrica("SignalStrength", String.valueOf(dBm));
-                this.fuerzaSenial = dBm;
-
-                return dBm;
-            } else if (connectivityManager.getActiveNetworkInfo().getType() == ConnectivityManager.TYPE_MOBILE) {
-                TelephonyManager telephonyManager = (TelephonyManager) this.contextoAplicacion.getSystemService(Context.TELEPHONY_SERVICE);
-                Object cellInfo = telephonyManager.getAllCellInfo().get(0);
-
-                if (cellInfo instanceof CellInfoLte) {
-                    int dBm = ((CellInfoLte) cellInfo).getCellSignalStrength().getDbm();
-
-                    // ConstructorXML.adjuntarMetrica("SignalStrength", String.valueOf(dBm));
-                    this.fuerzaSenial = dBm;
-
-                    return dBm;
-                } else if (cellInfo instanceof CellInfoGsm) {
-                    int dBm = ((CellInfoGsm) cellInfo).getCellSignalStrength().getDbm();
-
-                    // ConstructorXML.adjuntarMetrica("SignalStrength", String.valueOf(dBm));
-                    this.fuerzaSenial = dBm;
-
-                    return dBm;
-                } else if (cellInfo instanceof CellInfoCdma) {
-                    int dBm = ((CellInfoCdma) cellInfo).getCellSignalStrength().getDbm();
-
-                    // ConstructorXML.adjuntarMetrica("SignalStrength", String.valueOf(dBm));
-                    this.fuerzaSenial = dBm;
+        if (this.contextoAplicacion.checkCallingOrSelfPermission(Manifest.permission.ACCESS_COARSE_LOCATION) == android.content.pm.PackageManager.PERMISSION_DENIED) {
+            Log.e("Error", "La métrica «getSignalStrength» no se puede ejecutar porque el usuario no brindó el permiso necesario (ACCESS_COARSE_LOCATION).");
 
-                    return dBm;
-                } else if (cellInfo instanceof CellInfoWcdma) {
-                    int dBm = ((CellInfoWcdma) cellInfo).getCellSignalStrength().getDbm();
+            return 1;
+        }
 
-                    // ConstructorXML.adjuntarMetrica("SignalStrength", String.valueOf(dBm));
-                    this.fuerzaSenial = dBm;
+        int dBm = this.sonda.getFuerzaSenial();
 
-                    return dBm;
-                } else {
-                    Log.w("Intensidad de la señal", "Tipo de red inalámbrica desconocido. No es posible obtener sus dBm.");
-
-                    return 1; // No debería entrar nunca a este «else», pero es necesario agregarlo.
-                }
-            } else {
-                Log.e("Intensidad de la señal", "No está conectado a una red inalámbrica, por lo que la métrica no se guardará.");
-
-                return 1;
-            }
-        } else {
-            Log.e("Error", "La métrica «getSignalStrength» no se puede ejecutar porque el usuario no brindó el permiso necesario (ACCESS_COARSE_LOCATION).");
+        if (dBm == 1) {
+            Log.e("Intensidad de la señal", "No está conectado a una red inalámbrica conocida, por lo que la métrica no se guardará.");
 
             return 1;
         }
+
+        // ConstructorXML.adjuntarMetrica("SignalStrength", String.valueOf(dBm));
+        this.estado.setNumero(FUERZA_SENIAL, dBm);
+        this.registrarMuestra("SignalStrength", dBm);
+
+        return dBm;
     }
 
     /**
@@ -797,15 +772,15 @@ public class Metricas implements android.hardware.SensorEventListener {
      * @author Ariel Machini
      */
     public double getMemoryConsumptionMB() {
-        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
-        ActivityManager activityManager = (ActivityManager) this.contextoAplicacion.getSystemService(Context.ACTIVITY_SERVICE);
-
-        activityManager.getMemoryInfo(memoryInfo);
+        return this.getMemoryConsumptionMB(this.leerMemoria());
+    }
 
+    private double getMemoryConsumptionMB(ActivityManager.MemoryInfo memoryInfo) {
         double memoriaEnUso = (memoryInfo.totalMem / 0x100000L) - (memoryInfo.availMem / 0x100000L);
 
         // ConstructorXML.adjuntarMetrica("MemoryConsumptionMB", String.valueOf(memoriaEnUso));
-        this.consumoMemoriaMB = memoriaEnUso;
+        this.estado.setNumero(CONSUMO_MEMORIA_MB, memoriaEnUso);
+        this.registrarMuestra("MemoryConsumptionMB", memoriaEnUso);
 
         return memoriaEnUso;
     }
@@ -818,16 +793,16 @@ public class Metricas implements android.hardware.SensorEventListener {
      * @author Ariel Machini
      */
     public double getMemoryConsumptionPercentage() {
-        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
-        ActivityManager activityManager = (ActivityManager) this.contextoAplicacion.getSystemService(Context.ACTIVITY_SERVICE);
-
-        activityManager.getMemoryInfo(memoryInfo);
+        return this.getMemoryConsumptionPercentage(this.leerMemoria());
+    }
 
+    private double getMemoryConsumptionPercentage(ActivityManager.MemoryInfo memoryInfo) {
         double memoriaEnUso = (memoryInfo.totalMem / 0x100000L) - (memoryInfo.availMem / 0x100000L);
         double porcentajeEnUso = memoriaEnUso * 100 / (memoryInfo.totalMem / 0x100000L);
 
         // ConstructorXML.adjuntarMetrica("MemoryConsumption", String.valueOf(porcentajeEnUso));
-        this.consumoMemoria = porcentajeEnUso;
+        this.estado.setNumero(CONSUMO_MEMORIA, porcentajeEnUso);
+        this.registrarMuestra("MemoryConsumption", porcentajeEnUso);
 
         return porcentajeEnUso;
     }
@@ -841,14 +816,10 @@ public class Metricas implements android.hardware.SensorEventListener {
      * @author Ariel Machini
      */
     public boolean isPhoneCharging() {
-        android.content.IntentFilter intentFilter = new android.content.IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent estadoBateria = this.contextoAplicacion.registerReceiver(null, intentFilter);
-        int tipoConexion = estadoBateria.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
-
-        boolean estaCargando = (tipoConexion == BatteryManager.BATTERY_PLUGGED_AC || tipoConexion == BatteryManager.BATTERY_PLUGGED_USB || tipoConexion == BatteryManager.BATTERY_PLUGGED_WIRELESS);
+        boolean estaCargando = this.sonda.estaCargando();
 
         // ConstructorXML.adjuntarMetrica("PhoneCharging", String.valueOf(estaCargando));
-        this.estaCargando = String.valueOf(estaCargando);
+        this.estado.setTexto(ESTA_CARGANDO, String.valueOf(estaCargando));
 
         return estaCargando;
     }
@@ -865,15 +836,80 @@ public class Metricas implements android.hardware.SensorEventListener {
         boolean isPhoneConnected = this.isActiveNetworkInfoNotNull();
 
         // ConstructorXML.adjuntarMetrica("PhoneConnectedToANetwork", String.valueOf(isPhoneConnected));
-        this.estaConectado = String.valueOf(isPhoneConnected);
+        this.estado.setTexto(ESTA_CONECTADO, String.valueOf(isPhoneConnected));
 
         return isPhoneConnected;
     }
 
     private boolean isActiveNetworkInfoNotNull() {
-        ConnectivityManager connectivityManager = (ConnectivityManager) this.contextoAplicacion.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return this.sonda.estaConectado();
+    }
+
+    /**
+     * @return El estado de la red, de la batería y de la señal, que se
+     * mantiene actualizado con los avisos del sistema e incluye la fecha del
+     * último cambio de cada uno.
+     */
+    public CacheEstadoDispositivo getDeviceState() {
+        return this.cacheEstado;
+    }
+
+    /**
+     * @return El acceso a la plataforma (batería, red, sensores, memoria y
+     * CPU) que usa la librería.
+     * @see SondaPlataforma
+     */
+    public SondaPlataforma getPlatformProbe() {
+        return this.sonda;
+    }
+
+    private ActivityManager.MemoryInfo leerMemoria() {
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
 
-        return connectivityManager.getActiveNetworkInfo() != null;
+        this.gestorActividades.getMemoryInfo(memoryInfo);
+
+        return memoryInfo;
+    }
+
+    /**
+     * Obtiene en una sola pasada todas las métricas del dispositivo que no
+     * requieren enviar sondas de red, y las registra como si se hubiera
+     * llamado a cada método por separado. El estado de la memoria se
+     * consulta una sola vez para las dos métricas que lo usan, y el de la red
+     * y la batería se lee del estado que mantienen los avisos del sistema
+     * (ver <code>CacheEstadoDispositivo</code>). De las métricas de red (latencia, jitter y pérdida de paquetes)
+     * y de la latencia percibida se informa el último valor medido.
+     * <p>
+     * La primera vez que se llama, el uso de la CPU se mide durante una
+     * ventana breve (ver <code>getCPUConsumption</code>).
+     *
+     * @return Los valores de todas las métricas.
+     * @see InstantaneaMetricas
+     */
+    public InstantaneaMetricas captureSnapshot() {
+        long fecha = System.currentTimeMillis();
+        ActivityManager.MemoryInfo memoryInfo = this.leerMemoria();
+        int porcentajeCargaBateria = this.getBatteryPercentage();
+        boolean estaCargando = this.isPhoneCharging();
+        double consumoMemoria = this.getMemoryConsumptionPercentage(memoryInfo);
+        double consumoMemoriaMB = this.getMemoryConsumptionMB(memoryInfo);
+        boolean estaConectado = this.isPhoneConnected();
+
+        /* Sin una red activa no hay tipo de conexión ni señal que medir. */
+        String tipoConexion = estaConectado ? this.getConnectionType() : null;
+        int fuerzaSenial = estaConectado ? this.getSignalStrength() : 1;
+        int porcentajeBrillo = this.getScreenBrightness();
+        double usoCPU = this.getCPUConsumption();
+
+        double[] numeros = new double[CANTIDAD_NUMEROS];
+        String[] textos = new String[CANTIDAD_TEXTOS];
+
+        this.estado.leer(numeros, textos);
+
+        return new InstantaneaMetricas(fecha, porcentajeCargaBateria, estaCargando, estaConectado, tipoConexion,
+                fuerzaSenial, consumoMemoria, consumoMemoriaMB, usoCPU, porcentajeBrillo, (float) numeros[LUX],
+                (float) numeros[PROXIMIDAD], numeros[LATENCIA], numeros[JITTER], numeros[PAQUETES_PERDIDOS],
+                (long) numeros[LATENCIA_PERCIBIDA_USUARIO]);
     }
 
     /**
@@ -881,12 +917,17 @@ public class Metricas implements android.hardware.SensorEventListener {
      * llamarse antes de la ejecución de la operación o del conjunto de
      * operaciones que se va a medir. Nótese que no se obtendrá ningún
      * resultado hasta que se llame el método <code>perceivedLatencyStop()</code>.
+     * Si ya había una medición en curso, se descarta. Para medir varias
+     * operaciones a la vez, utilice <code>beginSpan</code>.
      *
      * @author Ariel Machini
      * @see #perceivedLatencyStop()
+     * @see #beginSpan(String)
      */
     public void perceivedLatencyBegin() {
-        this.latenciaPercibidaUsuario = System.currentTimeMillis();
+        long anterior = this.tramoLatenciaPercibida.getAndSet(this.trazador.iniciar("UserPerceivedLatency"));
+
+        this.trazador.descartar(anterior);
     }
 
     /**
@@ -894,22 +935,21 @@ public class Metricas implements android.hardware.SensorEventListener {
      * usuario. Este método debe llamarse después de la ejecución de la
      * operación o del conjunto de operaciones que se va a medir, siempre y
      * cuando se haya llamado a <code>perceivedLatencyBegin()</code> primero.
-     * Retorna la latencia percibida por el usuario en segundos.
+     * En el archivo de métricas, la latencia se registra en microsegundos.
      *
-     * @return La latencia percibida por el usuario en segundos. Retorna
+     * @return La latencia percibida por el usuario en milisegundos. Retorna
      * -1 si no se llamó al método <code>perceivedLatencyBegin()</code>
-     * primero.
+     * primero (o si la medición ya se había finalizado).
      * @author Ariel Machini
      * @see #perceivedLatencyBegin()
      */
     public long perceivedLatencyStop() {
-        if (this.latenciaPercibidaUsuario != -1) {
-            long latenciaPercibidaFinal = (System.currentTimeMillis() - this.latenciaPercibidaUsuario) / 1000;
+        long microsegundos = this.trazador.finalizar(this.tramoLatenciaPercibida.getAndSet(Trazador.TRAMO_INVALIDO));
 
-            // ConstructorXML.adjuntarMetrica("UserPerceivedLatency", String.valueOf(latenciaPercibidaFinal));
-            this.latenciaPercibidaUsuario = latenciaPercibidaFinal;
+        if (microsegundos != -1) {
+            this.estado.setNumero(LATENCIA_PERCIBIDA_USUARIO, microsegundos);
 
-            return latenciaPercibidaFinal;
+            return microsegundos / 1000;
         } else {
             Log.e("Latencia percibida", "Para poder usar el método perceivedLatencyStop() primero debe utilizar el método perceivedLatencyBegin().");
 
@@ -917,6 +957,378 @@ public class Metricas implements android.hardware.SensorEventListener {
         }
     }
 
+    /**
+     * Comienza a medir la duración de una operación. Se pueden medir varias
+     * operaciones a la vez, incluso desde hilos distintos.
+     *
+     * @param nombre El nombre de la operación, con el que se registra su
+     *               duración (en microsegundos) como métrica.
+     * @return El manejador con el que se finaliza la medición mediante
+     * <code>endSpan</code>, o <code>Trazador.TRAMO_INVALIDO</code> si hay
+     * demasiadas mediciones en curso.
+     * @see #beginSpan(String, long)
+     * @see #endSpan(long)
+     */
+    public long beginSpan(String nombre) {
+        return this.trazador.iniciar(nombre);
+    }
+
+    /**
+     * Comienza a medir la duración de una operación que forma parte de otra.
+     *
+     * @param nombre El nombre de la operación.
+     * @param padre  El manejador de la operación que la contiene.
+     * @return El manejador de la medición.
+     * @see #endSpan(long)
+     */
+    public long beginSpan(String nombre, long padre) {
+        return this.trazador.iniciar(nombre, padre);
+    }
+
+    /**
+     * Finaliza la medición de una operación y registra su duración.
+     *
+     * @param tramo El manejador que retornó <code>beginSpan</code>.
+     * @return La duración en microsegundos, o -1 si el manejador no
+     * corresponde a una medición en curso.
+     */
+    public long endSpan(long tramo) {
+        return this.trazador.finalizar(tramo);
+    }
+
+    /**
+     * Comienza a recibir las mediciones de los sensores de luz y de
+     * proximidad, con los períodos configurados mediante
+     * <code>setSensorSamplingPeriod</code>. Se llama automáticamente al crear
+     * la instancia; si los sensores ya estaban registrados, no tiene efecto.
+     *
+     * @see #unregisterSensors()
+     */
+    public synchronized void registerSensors() {
+        if (this.sensoresRegistrados || this.gestorSensores == null) {
+            return;
+        }
+
+        this.registrarSensor(Sensor.TYPE_LIGHT, this.periodoLuzMicrosegundos);
+        this.registrarSensor(Sensor.TYPE_PROXIMITY, this.periodoProximidadMicrosegundos);
+        this.sensoresRegistrados = true;
+    }
+
+    /**
+     * Deja de recibir las mediciones de los sensores (por ejemplo, mientras
+     * la aplicación está en segundo plano). Los métodos
+     * <code>getEnvironmentLight</code> y <code>getProximity</code> retornan
+     * el último valor recibido.
+     *
+     * @see #registerSensors()
+     */
+    public synchronized void unregisterSensors() {
+        if (this.sensoresRegistrados) {
+            this.gestorSensores.unregisterListener(this);
+            this.sensoresRegistrados = false;
+        }
+    }
+
+    /**
+     * Establece cada cuánto se mide un sensor. Por defecto, ambos sensores se
+     * miden cada 200 ms. Si los sensores están registrados, se vuelven a
+     * registrar con el nuevo período.
+     *
+     * @param tipoSensor           <code>Sensor.TYPE_LIGHT</code> o
+     *                             <code>Sensor.TYPE_PROXIMITY</code>.
+     * @param periodoMicrosegundos El período de muestreo deseado (el sistema
+     *                             lo toma como una sugerencia).
+     */
+    public synchronized void setSensorSamplingPeriod(int tipoSensor, int periodoMicrosegundos) {
+        if (periodoMicrosegundos < 0) {
+            throw new IllegalArgumentException("El período de muestreo no puede ser negativo.");
+        }
+
+        if (tipoSensor == Sensor.TYPE_LIGHT) {
+            this.periodoLuzMicrosegundos = periodoMicrosegundos;
+        } else if (tipoSensor == Sensor.TYPE_PROXIMITY) {
+            this.periodoProximidadMicrosegundos = periodoMicrosegundos;
+        } else {
+            throw new IllegalArgumentException("La librería no utiliza el sensor de tipo " + tipoSensor + ".");
+        }
+
+        this.volverARegistrarSensores();
+    }
+
+    /**
+     * Establece cuánto pueden demorarse las mediciones de los sensores antes
+     * de entregarse a la aplicación. Si el sensor tiene una cola en el
+     * hardware, las mediciones se acumulan allí y se entregan en lotes, lo
+     * que evita despertar al procesador por cada una. Por defecto es de 5
+     * segundos.
+     *
+     * @param latenciaMicrosegundos La demora máxima (0 para entregar cada
+     *                              medición de inmediato).
+     */
+    public synchronized void setSensorBatchLatency(int latenciaMicrosegundos) {
+        if (latenciaMicrosegundos < 0) {
+            throw new IllegalArgumentException("La latencia de entrega no puede ser negativa.");
+        }
+
+        this.latenciaSensoresMicrosegundos = latenciaMicrosegundos;
+        this.volverARegistrarSensores();
+    }
+
+    private void registrarSensor(int tipoSensor, int periodoMicrosegundos) {
+        Sensor sensor = this.gestorSensores.getDefaultSensor(tipoSensor);
+
+        if (sensor == null) {
+            Log.w("Sensores", "El dispositivo no tiene un sensor de tipo " + tipoSensor + ".");
+
+            return;
+        }
+
+        if (!this.gestorSensores.registerListener(this, sensor, periodoMicrosegundos, this.latenciaSensoresMicrosegundos)) {
+            Log.e("Error", "No se pudo registrar el sensor «" + sensor.getName() + "».");
+        }
+    }
+
+    /**
+     * Debe llamarse con el monitor tomado.
+     */
+    private void volverARegistrarSensores() {
+        if (this.sensoresRegistrados) {
+            this.unregisterSensors();
+            this.registerSensors();
+        }
+    }
+
+    /**
+     * Comienza a medir periódicamente, en segundo plano, las métricas que no
+     * requieren intervención del usuario y las adjunta al archivo de
+     * métricas con la fecha en la que se tomó cada muestra.
+     *
+     * @param direccionIP La dirección de IP contra la que se miden la
+     *                    latencia, el jitter y la pérdida de paquetes, o
+     *                    <code>null</code> para no medirlos.
+     * @see #startSampling(SumideroMuestras, String)
+     * @see #stopSampling()
+     */
+    public void startSampling(String direccionIP) {
+        this.startSampling(new SumideroMuestras() {
+            public void recibir(String metrica, long fechaMilisegundos, double valor) {
+                ConstructorXML.adjuntarMuestra(metrica, valor, fechaMilisegundos);
+            }
+        }, direccionIP);
+    }
+
+    /**
+     * Comienza a medir periódicamente, en segundo plano, las métricas que no
+     * requieren intervención del usuario. Cada métrica tiene su propio
+     * período (por ejemplo, la batería cada 60 segundos y la memoria cada 5),
+     * que se alarga mientras su valor se mantiene estable. Si ya se estaba
+     * muestreando, el muestreo anterior se detiene.
+     *
+     * @param sumidero    El destino de las muestras.
+     * @param direccionIP La dirección de IP contra la que se miden la
+     *                    latencia, el jitter y la pérdida de paquetes, o
+     *                    <code>null</code> para no medirlos.
+     * @see PlanificadorMuestreo
+     * @see #stopSampling()
+     */
+    public synchronized void startSampling(final SumideroMuestras sumidero, final String direccionIP) {
+        this.stopSampling();
+
+        PlanificadorMuestreo planificador = new PlanificadorMuestreo(sumidero);
+
+        planificador.registrar("BatteryCharge", 60000, 300000, 0, new PlanificadorMuestreo.FuenteMuestra() {
+            public double medir() {
+                return getBatteryPercentage();
+            }
+        });
+        planificador.registrar("MemoryConsumption", 5000, 60000, 0.02, new PlanificadorMuestreo.FuenteMuestra() {
+            public double medir() {
+                return getMemoryConsumptionPercentage();
+            }
+        });
+        planificador.registrar("MemoryConsumptionMB", 5000, 60000, 0.02, new PlanificadorMuestreo.FuenteMuestra() {
+            public double medir() {
+                return getMemoryConsumptionMB();
+            }
+        });
+        planificador.registrar("CPUConsumption", 5000, 60000, 0.1, new PlanificadorMuestreo.FuenteMuestra() {
+            public double medir() {
+                double uso = getCPUConsumption();
+
+                return uso == -1 ? Double.NaN : uso;
+            }
+        });
+        planificador.registrar("ScreenBrightness", 30000, 300000, 0, new PlanificadorMuestreo.FuenteMuestra() {
+            public double medir() {
+                int brillo = getScreenBrightness();
+
+                return brillo == -1 ? Double.NaN : brillo;
+            }
+        });
+        planificador.registrar("SignalStrength", 30000, 300000, 0.05, new PlanificadorMuestreo.FuenteMuestra() {
+            public double medir() {
+                int dBm = getSignalStrength();
+
+                return dBm == 1 ? Double.NaN : dBm;
+            }
+        });
+
+        if (direccionIP != null) {
+            /* Una sola sesión de sondeo produce las tres métricas de red; la
+             * latencia es la que determina el período. */
+            planificador.registrar("Latency", 30000, 300000, 0.2, new PlanificadorMuestreo.FuenteMuestra() {
+                public double medir() {
+                    InformeCalidadRed informe = getNetworkQuality(direccionIP);
+
+                    if (informe == null || informe.getRecibidas() == 0) {
+                        return Double.NaN;
+                    }
+
+                    long fecha = informe.getFechaMilisegundos();
+
+                    if (informe.getVariacionMedia() != -1) {
+                        sumidero.recibir("Jitter", fecha, informe.getVariacionMedia());
+                    }
+
+                    sumidero.recibir("PacketLoss", fecha, informe.getPorcentajePerdida());
+
+                    return informe.getRttPromedio();
+                }
+            });
+        }
+
+        this.planificador = planificador;
+    }
+
+    /**
+     * Detiene el muestreo en segundo plano iniciado con
+     * <code>startSampling</code>, si lo hay.
+     *
+     * @see #startSampling(SumideroMuestras, String)
+     */
+    public synchronized void stopSampling() {
+        if (this.planificador != null) {
+            this.planificador.close();
+            this.planificador = null;
+        }
+    }
+
+    /**
+     * Retorna la serie temporal con las últimas muestras de una métrica.
+     * Cada vez que se mide una métrica numérica (ya sea a pedido o mediante
+     * <code>startSampling</code>) el valor se agrega a su serie.
+     *
+     * @param metrica El nombre de la métrica, tal como aparece en el archivo
+     *                de métricas. Por ejemplo, "Latency".
+     * @return La serie de la métrica, o <code>null</code> si todavía no se
+     * midió.
+     * @see SerieTemporal
+     */
+    public SerieTemporal getTimeSeries(String metrica) {
+        return this.series.get(metrica);
+    }
+
+    /**
+     * Retorna el bosquejo de cuantiles de una métrica de latencia
+     * ("Latency" o "UserPerceivedLatency"), con el que se pueden estimar
+     * percentiles como el p95 o el p99 sin guardar cada muestra.
+     * <p>
+     * Con cada calificación del usuario, el bosquejo se guarda (en Base64)
+     * en el archivo de métricas como «‹métrica›.sketch» y se vacía, por lo
+     * que cada registro cubre las muestras tomadas desde la calificación
+     * anterior. Los registros de distintas calificaciones, sesiones o
+     * dispositivos se pueden unir con <code>BosquejoCuantiles.combinar</code>.
+     *
+     * @param metrica El nombre de la métrica.
+     * @return El bosquejo, o <code>null</code> si la métrica no tiene uno.
+     * @see BosquejoCuantiles
+     */
+    public BosquejoCuantiles getQuantileSketch(String metrica) {
+        return this.bosquejos.get(metrica);
+    }
+
+    /**
+     * Establece el período, anterior a cada calificación del usuario, del
+     * que se guarda un resumen (cantidad de muestras, media, mínimo, máximo,
+     * desviación y percentiles 50, 95 y 99) de cada métrica. Por defecto es
+     * de un minuto.
+     *
+     * @param milisegundos La duración de la ventana, o 0 para no guardar
+     *                     resúmenes.
+     */
+    public void setScoreWindow(long milisegundos) {
+        if (milisegundos < 0) {
+            throw new IllegalArgumentException("La ventana no puede ser negativa.");
+        }
+
+        this.ventanaCalificacionMilisegundos = milisegundos;
+    }
+
+    private void registrarMuestra(String metrica, double valor) {
+        this.registrarMuestra(metrica, System.currentTimeMillis(), valor);
+    }
+
+    private void registrarMuestra(String metrica, long fechaMilisegundos, double valor) {
+        SerieTemporal serie = this.series.get(metrica);
+
+        if (serie == null) {
+            SerieTemporal nueva = new SerieTemporal(CAPACIDAD_SERIES);
+
+            serie = this.series.putIfAbsent(metrica, nueva);
+
+            if (serie == null) {
+                serie = nueva;
+            }
+        }
+
+        serie.agregar(fechaMilisegundos, valor);
+
+        BosquejoCuantiles bosquejo = this.bosquejos.get(metrica);
+
+        if (bosquejo != null) {
+            bosquejo.agregar(valor);
+        }
+    }
+
+    private void agregarBosquejos(java.util.List<RegistroMetrica> mediciones, long fecha) {
+        for (java.util.Map.Entry<String, BosquejoCuantiles> entrada : new java.util.TreeMap<>(this.bosquejos).entrySet()) {
+            BosquejoCuantiles bosquejo = entrada.getValue();
+            String base64;
+
+            synchronized (bosquejo) {
+                if (bosquejo.getCantidad() == 0) {
+                    continue;
+                }
+
+                base64 = bosquejo.aBase64();
+                bosquejo.vaciar();
+            }
+
+            mediciones.add(new RegistroMetrica(null, entrada.getKey() + ".sketch", base64, fecha));
+        }
+    }
+
+    private void agregarResumenes(java.util.List<RegistroMetrica> mediciones, long fecha, long desdeMilisegundos) {
+        SerieTemporal.Resumen resumen = new SerieTemporal.Resumen();
+
+        for (java.util.Map.Entry<String, SerieTemporal> serie : new java.util.TreeMap<>(this.series).entrySet()) {
+            if (serie.getValue().resumir(desdeMilisegundos, resumen).getCantidad() == 0) {
+                continue;
+            }
+
+            String metrica = serie.getKey();
+
+            mediciones.add(new RegistroMetrica(null, metrica + ".count", resumen.getCantidad(), fecha));
+            mediciones.add(new RegistroMetrica(null, metrica + ".mean", resumen.getMedia(), fecha));
+            mediciones.add(new RegistroMetrica(null, metrica + ".min", resumen.getMinimo(), fecha));
+            mediciones.add(new RegistroMetrica(null, metrica + ".max", resumen.getMaximo(), fecha));
+            mediciones.add(new RegistroMetrica(null, metrica + ".stddev", resumen.getDesviacion(), fecha));
+            mediciones.add(new RegistroMetrica(null, metrica + ".p50", resumen.getP50(), fecha));
+            mediciones.add(new RegistroMetrica(null, metrica + ".p95", resumen.getP95(), fecha));
+            mediciones.add(new RegistroMetrica(null, metrica + ".p99", resumen.getP99(), fecha));
+        }
+    }
+
     /**
      * (Métrica QoE) Muestra un diálogo para que el usuario elija una opción que describa la calidad de su
      * experiencia hasta el momento. Este método debería llamarse tras la ejecución de una o más operaciones
@@ -962,71 +1374,270 @@ public class Metricas implements android.hardware.SensorEventListener {
     private void saveScore(CharSequence i) {
         Log.d("Calificación asignada", String.valueOf(i));
 
-        this.calificacionUsuario = String.valueOf(i);
+        String calificacionUsuario = String.valueOf(i);
+
+        /* Se toman todas las métricas de un mismo instante, aunque otros
+         * hilos las sigan actualizando mientras se escriben. */
+        double[] numeros = new double[CANTIDAD_NUMEROS];
+        String[] textos = new String[CANTIDAD_TEXTOS];
+
+        this.estado.leer(numeros, textos);
+
+        /* Todas las métricas de la calificación forman un único evento, con
+         * una sola fecha, calificación e identificador. */
+        long fecha = System.currentTimeMillis();
+        java.util.ArrayList<RegistroMetrica> mediciones = new java.util.ArrayList<>();
 
-        if (this.porcentajeCargaBateria != -1) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "BatteryCharge", String.valueOf(this.porcentajeCargaBateria));
+        if (numeros[PORCENTAJE_CARGA_BATERIA] != -1) {
+            mediciones.add(new RegistroMetrica(null, "BatteryCharge", (int) numeros[PORCENTAJE_CARGA_BATERIA], fecha));
         }
 
-        if (this.tipoConexion != null) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "ConnectionType", this.tipoConexion);
+        if (textos[TIPO_CONEXION] != null) {
+            mediciones.add(new RegistroMetrica(null, "ConnectionType", textos[TIPO_CONEXION], fecha));
         }
 
-        if (this.usoCPU != -1) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "CPUConsumption", String.valueOf(this.usoCPU));
+        if (numeros[USO_CPU] != -1) {
+            mediciones.add(new RegistroMetrica(null, "CPUConsumption", numeros[USO_CPU], fecha));
         }
 
-        ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "EnvironmentLight", String.valueOf(this.lux));
+        mediciones.add(new RegistroMetrica(null, "EnvironmentLight", (float) numeros[LUX], fecha));
 
-        if (this.jitter != -1) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "Jitter", String.valueOf(this.jitter));
+        if (numeros[JITTER] != -1) {
+            mediciones.add(new RegistroMetrica(null, "Jitter", numeros[JITTER], fecha));
         }
 
-        ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "Latency", String.valueOf(this.latencia));
+        mediciones.add(new RegistroMetrica(null, "Latency", numeros[LATENCIA], fecha));
 
-        if (this.consumoMemoria != -1) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "MemoryConsumption", String.valueOf(this.consumoMemoria));
+        if (numeros[CONSUMO_MEMORIA] != -1) {
+            mediciones.add(new RegistroMetrica(null, "MemoryConsumption", numeros[CONSUMO_MEMORIA], fecha));
         }
 
-        if (this.consumoMemoriaMB != -1) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "MemoryConsumptionMB", String.valueOf(this.consumoMemoriaMB));
+        if (numeros[CONSUMO_MEMORIA_MB] != -1) {
+            mediciones.add(new RegistroMetrica(null, "MemoryConsumptionMB", numeros[CONSUMO_MEMORIA_MB], fecha));
         }
 
-        if (this.paquetesPerdidos != -1) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "PacketLoss", String.valueOf(this.paquetesPerdidos));
+        if (numeros[PAQUETES_PERDIDOS] != -1) {
+            mediciones.add(new RegistroMetrica(null, "PacketLoss", numeros[PAQUETES_PERDIDOS], fecha));
         }
 
-        if (this.estaCargando != null) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "PhoneCharging", this.estaCargando);
+        if (textos[ESTA_CARGANDO] != null) {
+            mediciones.add(new RegistroMetrica(null, "PhoneCharging", textos[ESTA_CARGANDO], fecha));
         }
 
-        if (this.estaConectado != null) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "PhoneConnectedToANetwork", this.estaConectado);
+        if (textos[ESTA_CONECTADO] != null) {
+            mediciones.add(new RegistroMetrica(null, "PhoneConnectedToANetwork", textos[ESTA_CONECTADO], fecha));
         }
 
-        ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "Proximity", String.valueOf(this.proximidad));
+        mediciones.add(new RegistroMetrica(null, "Proximity", (float) numeros[PROXIMIDAD], fecha));
 
-        if (this.porcentajeBrillo != -1) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "ScreenBrightness", String.valueOf(this.porcentajeBrillo));
+        if (numeros[PORCENTAJE_BRILLO] != -1) {
+            mediciones.add(new RegistroMetrica(null, "ScreenBrightness", (int) numeros[PORCENTAJE_BRILLO], fecha));
         }
 
-        if (this.fuerzaSenial != 1) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "SignalStrength", String.valueOf(this.fuerzaSenial));
+        if (numeros[FUERZA_SENIAL] != 1) {
+            mediciones.add(new RegistroMetrica(null, "SignalStrength", (int) numeros[FUERZA_SENIAL], fecha));
         }
 
-        if (this.latenciaPercibidaUsuario != -1) {
-            ConstructorXML.adjuntarMetrica(this.calificacionUsuario, "UserPerceivedLatency", String.valueOf(this.latenciaPercibidaUsuario));
+        if (numeros[LATENCIA_PERCIBIDA_USUARIO] != -1) {
+            mediciones.add(new RegistroMetrica(null, "UserPerceivedLatency", (long) numeros[LATENCIA_PERCIBIDA_USUARIO], fecha));
         }
 
+        /* Además del último valor de cada métrica, se guarda un resumen de
+         * las muestras tomadas durante la ventana previa a la calificación. */
+        if (this.ventanaCalificacionMilisegundos > 0) {
+            this.agregarResumenes(mediciones, fecha, fecha - this.ventanaCalificacionMilisegundos);
+        }
+
+        this.agregarBosquejos(mediciones, fecha);
+
+        ConstructorXML.adjuntarEvento(new EventoCalificacion(this.siguienteIdEvento.getAndIncrement(), calificacionUsuario, fecha,
+                mediciones.toArray(new RegistroMetrica[mediciones.size()])));
+
+        /* La calificación se escribe en el archivo sin esperar a que se
+         * acumulen otros registros. */
+        ConstructorXML.vaciar();
+
         // this.upload(); ToDo: ¿Debería llamarse acá?
     }
 
+    /**
+     * Establece la URL a la que <code>upload()</code> envía las métricas.
+     *
+     * @param url La URL del servicio (por ejemplo,
+     *            "https://servidor/Q2M/upload").
+     * @throws IllegalArgumentException Si la URL no es válida.
+     * @see CanalSubida
+     */
+    public void setUploadEndpoint(String url) {
+        java.net.URL destino;
+
+        try {
+            destino = new java.net.URL(url);
+        } catch (java.net.MalformedURLException e) {
+            throw new IllegalArgumentException("La URL «" + url + "» no es válida.");
+        }
+
+        PlanificadorSubida anterior;
+
+        synchronized (this) {
+            this.destinoSubida = destino;
+            anterior = this.quitarPlanificadorSubida();
+        }
+
+        cerrar(anterior);
+    }
+
+    /**
+     * Establece en qué condiciones del dispositivo se pueden subir las
+     * métricas (por ejemplo, sólo por Wi-Fi o sólo mientras carga). Por
+     * defecto se suben en cuanto hay una conexión.
+     *
+     * @param politica La política de subida.
+     * @see PoliticaSubida
+     */
+    public synchronized void setUploadPolicy(PoliticaSubida politica) {
+        if (politica == null) {
+            throw new IllegalArgumentException("La política de subida no puede ser null.");
+        }
+
+        this.politicaSubida = politica;
+
+        if (this.planificadorSubida != null) {
+            this.planificadorSubida.setPolitica(politica);
+        }
+    }
+
+    /**
+     * Solicita que se suban al servidor las métricas del archivo que todavía
+     * no se subieron. La subida se realiza en segundo plano en cuanto el
+     * estado del dispositivo cumple la política de subida; las solicitudes
+     * cercanas en el tiempo se atienden juntas. Si la subida se interrumpe,
+     * la siguiente continúa desde el último lote que el servidor confirmó.
+     *
+     * @see #setUploadEndpoint(String)
+     * @see #setUploadPolicy(PoliticaSubida)
+     * @see PlanificadorSubida
+     */
     public void upload() {
-        new Thread(new Runnable() {
-            public void run() {
-                new WebServiceClient(contextoAplicacion).execute();
+        PlanificadorSubida planificador = this.obtenerPlanificadorSubida();
+
+        if (planificador == null) {
+            return;
+        }
+
+        ConstructorXML.vaciar();
+        planificador.solicitar();
+    }
+
+    /**
+     * @return La cantidad (estimada) de lotes de métricas que todavía no se
+     * subieron al servidor.
+     * @see CanalSubida#getLotesPendientes()
+     */
+    public long getUploadQueueDepth() {
+        PlanificadorSubida planificador = this.planificadorSubida;
+
+        if (planificador == null) {
+            return 0;
+        }
+
+        try {
+            return planificador.getLotesPendientes();
+        } catch (IOException e) {
+            Log.e("Error", "No se pudo leer el cursor de subida: " + e.getMessage());
+
+            return 0;
+        }
+    }
+
+    /**
+     * @return Los milisegundos transcurridos desde la solicitud de subida
+     * pendiente más antigua, o 0 si no hay ninguna.
+     */
+    public long getUploadQueueAgeMillis() {
+        PlanificadorSubida planificador = this.planificadorSubida;
+
+        return planificador != null ? planificador.getAntiguedadMilisegundos() : 0;
+    }
+
+    private PlanificadorSubida obtenerPlanificadorSubida() {
+        java.io.File archivo = ConstructorXML.getArchivo();
+
+        if (archivo.isDirectory()) {
+            Log.e("Error", "La subida de métricas no admite el almacenamiento segmentado.");
+
+            return null;
+        }
+
+        PlanificadorSubida anterior = null;
+        PlanificadorSubida actual;
+
+        synchronized (this) {
+            if (this.planificadorSubida != null && !this.planificadorSubida.getCanal().getRegistro().equals(archivo)) {
+                anterior = this.quitarPlanificadorSubida();
             }
-        }).start();
+
+            actual = this.crearPlanificadorSubida(archivo);
+        }
+
+        cerrar(anterior);
+
+        return actual;
+    }
+
+    /**
+     * Debe llamarse con el monitor tomado.
+     */
+    private PlanificadorSubida crearPlanificadorSubida(java.io.File archivo) {
+        if (this.planificadorSubida == null) {
+            boolean texto = archivo.getName().endsWith(".xml");
+            CanalSubida canal = new CanalSubida(archivo, this.destinoSubida, texto);
+
+            /* El registro en XML se envía como {"metricas": "..."}, que es lo
+             * que espera el servicio. */
+            canal.setCuerpoJSON(texto);
+
+            this.planificadorSubida = new PlanificadorSubida(canal, this.sonda, this.politicaSubida, new PlanificadorSubida.Observador() {
+                public void subidaCompletada(int lotes) {
+                    Log.d("Subida", "Se subieron " + lotes + " lotes de métricas.");
+                }
+
+                public void subidaFallida(IOException error) {
+                    Log.e("Error", "No se pudieron subir las métricas: " + error.getMessage());
+                }
+            });
+        }
+
+        return this.planificadorSubida;
+    }
+
+    private void detenerSubidas() {
+        PlanificadorSubida anterior;
+
+        synchronized (this) {
+            anterior = this.quitarPlanificadorSubida();
+        }
+
+        cerrar(anterior);
+    }
+
+    /**
+     * Debe llamarse con el monitor tomado. El planificador retornado se
+     * tiene que cerrar después de soltarlo, porque cerrarlo puede esperar
+     * varios segundos a que termine una subida en curso.
+     */
+    private PlanificadorSubida quitarPlanificadorSubida() {
+        PlanificadorSubida anterior = this.planificadorSubida;
+
+        this.planificadorSubida = null;
+
+        return anterior;
+    }
+
+    private static void cerrar(PlanificadorSubida planificador) {
+        if (planificador != null) {
+            planificador.close();
+        }
     }
 
 }
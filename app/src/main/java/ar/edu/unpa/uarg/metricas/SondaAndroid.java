@@ -0,0 +1,103 @@
+package ar.edu.unpa.uarg.metricas;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.hardware.Sensor;
+
+/**
+ * La <code>SondaPlataforma</code> de Android. El estado de la red, de la
+ * batería y de la señal se lee de un <code>CacheEstadoDispositivo</code>; la
+ * memoria, del <code>ActivityManager</code>; y el tiempo de CPU, de
+ * <code>android.os.Process</code>. Los valores de los sensores los informa
+ * <code>Metricas</code> a medida que los recibe.
+ */
+public class SondaAndroid implements SondaPlataforma {
+
+    private final CacheEstadoDispositivo cacheEstado;
+    private final ActivityManager gestorActividades;
+
+    private volatile float luz = -1;
+    private volatile float proximidad = -1;
+
+    /**
+     * @param contexto    El contexto de la aplicación.
+     * @param cacheEstado El estado de la red, de la batería y de la señal
+     *                    (debe estar iniciado).
+     */
+    public SondaAndroid(Context contexto, CacheEstadoDispositivo cacheEstado) {
+        if (contexto == null || cacheEstado == null) {
+            throw new IllegalArgumentException("Configuración inválida para la sonda de Android.");
+        }
+
+        this.cacheEstado = cacheEstado;
+        this.gestorActividades = (ActivityManager) contexto.getSystemService(Context.ACTIVITY_SERVICE);
+    }
+
+    public boolean estaConectado() {
+        return this.cacheEstado.estaConectado();
+    }
+
+    public boolean estaEnWifi() {
+        return this.cacheEstado.estaEnWifi();
+    }
+
+    public String getTipoConexion() {
+        return this.cacheEstado.getTipoConexion();
+    }
+
+    public int getFuerzaSenial() {
+        return this.cacheEstado.getFuerzaSenial();
+    }
+
+    public boolean estaCargando() {
+        return this.cacheEstado.estaCargando();
+    }
+
+    public int getPorcentajeBateria() {
+        return this.cacheEstado.getPorcentajeBateria();
+    }
+
+    public float getLuz() {
+        return this.luz;
+    }
+
+    public float getProximidad() {
+        return this.proximidad;
+    }
+
+    public long getMemoriaTotalBytes() {
+        return this.leerMemoria().totalMem;
+    }
+
+    public long getMemoriaDisponibleBytes() {
+        return this.leerMemoria().availMem;
+    }
+
+    public long getTiempoCPUMilisegundos() {
+        return android.os.Process.getElapsedCpuTime();
+    }
+
+    /**
+     * Registra el último valor de un sensor.
+     *
+     * @param tipoSensor <code>Sensor.TYPE_LIGHT</code> o
+     *                   <code>Sensor.TYPE_PROXIMITY</code>.
+     * @param valor      El valor medido.
+     */
+    void actualizarSensor(int tipoSensor, float valor) {
+        if (tipoSensor == Sensor.TYPE_LIGHT) {
+            this.luz = valor;
+        } else if (tipoSensor == Sensor.TYPE_PROXIMITY) {
+            this.proximidad = valor;
+        }
+    }
+
+    private ActivityManager.MemoryInfo leerMemoria() {
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+
+        this.gestorActividades.getMemoryInfo(memoryInfo);
+
+        return memoryInfo;
+    }
+
+}
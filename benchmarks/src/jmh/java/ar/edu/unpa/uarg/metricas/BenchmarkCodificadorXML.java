@@ -0,0 +1,122 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * La codificación XML de los 16 registros de una calificación (los tiempos
+ * y las asignaciones se informan por registro):
+ * <ul>
+ * <li><code>concatenar</code>: como se hacía antes de
+ * <code>EscritorRegistroXML</code>, concatenando los textos de cada línea y
+ * convirtiéndola a UTF-8, con los números ya convertidos a texto por quien
+ * adjunta la métrica;</li>
+ * <li><code>escribirTextos</code>: con <code>CodificadorXML</code> y los
+ * mismos valores como texto;</li>
+ * <li><code>escribirNumeros</code>: con <code>CodificadorXML</code> y los
+ * valores numéricos como primitivos, como los adjunta ahora
+ * <code>saveScore</code> (incluye crear los registros);</li>
+ * <li><code>escribirConEscape</code>: con calificaciones y valores que
+ * necesitan escaparse.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+public class BenchmarkCodificadorXML {
+
+    private static final int REGISTROS = 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SalidaDescartada salida = new SalidaDescartada();
+    private CodificadorXML codificador;
+    private FormateadorFecha formateadorFecha;
+    private char[] fecha;
+    private RegistroMetrica[] textos;
+    private RegistroMetrica[] conEscape;
+    private long fechaMilisegundos;
+
+    @Setup
+    public void preparar() {
+        this.codificador = new CodificadorXML();
+        this.formateadorFecha = new FormateadorFecha(FormateadorFecha.Formato.CLASICO);
+        this.fecha = new char[FormateadorFecha.LONGITUD_MAXIMA];
+        this.fechaMilisegundos = 1564660800000L;
+        this.textos = RegistrosCalificacion.crear(this.fechaMilisegundos);
+        this.conEscape = new RegistroMetrica[REGISTROS];
+
+        for (int i = 0; i < REGISTROS; i++) {
+            RegistroMetrica registro = this.textos[i];
+
+            this.conEscape[i] = new RegistroMetrica("\"Muy buena\" <5/5>", registro.getMetrica(), "A&B " + registro.getValor(), this.fechaMilisegundos);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REGISTROS)
+    public long concatenar() throws IOException {
+        for (RegistroMetrica registro : this.textos) {
+            String fechaFormateada = new String(this.fecha, 0, this.formateadorFecha.formatear(registro.getFechaMilisegundos(), this.fecha, 0));
+            String linea = "<indicator name=\"" + registro.getMetrica() + "\" date=\"" + fechaFormateada + "\" score=\"" + registro.getCalificacionUsuario() + "\">" + registro.getValor() + "</indicator>\n";
+
+            this.salida.write(linea.getBytes(UTF_8));
+        }
+
+        return this.salida.bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REGISTROS)
+    public long escribirTextos() throws IOException {
+        for (RegistroMetrica registro : this.textos) {
+            this.codificador.codificar(registro, this.salida);
+        }
+
+        return this.salida.bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REGISTROS)
+    public long escribirNumeros() throws IOException {
+        for (RegistroMetrica registro : RegistrosCalificacion.crearNumericos(this.fechaMilisegundos)) {
+            this.codificador.codificar(registro, this.salida);
+        }
+
+        return this.salida.bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REGISTROS)
+    public long escribirConEscape() throws IOException {
+        for (RegistroMetrica registro : this.conEscape) {
+            this.codificador.codificar(registro, this.salida);
+        }
+
+        return this.salida.bytes;
+    }
+
+    /**
+     * Cuenta los bytes que recibe y los descarta.
+     */
+    private static final class SalidaDescartada extends OutputStream {
+
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            this.bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int desde, int longitud) {
+            this.bytes += longitud;
+        }
+
+    }
+
+}
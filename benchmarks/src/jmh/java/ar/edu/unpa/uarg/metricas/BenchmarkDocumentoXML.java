@@ -0,0 +1,94 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * El documento XML de <code>CodificadorDocumentoXML</code> (los tiempos y
+ * las asignaciones se informan por registro):
+ * <ul>
+ * <li><code>escribir</code>: los 16 registros de una calificación, con los
+ * valores como primitivos;</li>
+ * <li><code>escribirEvento</code>: las mismas métricas agrupadas en un único
+ * <code>EventoCalificacion</code> (el tiempo se informa por métrica, para
+ * compararlo con <code>escribir</code>);</li>
+ * <li><code>leer</code>: un documento de 16384 registros en memoria, con
+ * <code>LectorDocumentoXML</code>.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+public class BenchmarkDocumentoXML {
+
+    private static final int REGISTROS_CALIFICACION = 16;
+    private static final int REGISTROS_DOCUMENTO = 16384;
+
+    private final ByteArrayOutputStream salida = new ByteArrayOutputStream(64 * 1024);
+    private CodificadorDocumentoXML codificador;
+    private RegistroMetrica[] registros;
+    private RegistroMetrica evento;
+    private byte[] documento;
+
+    @Setup
+    public void preparar() throws IOException {
+        long fechaMilisegundos = 1564660800000L;
+
+        this.codificador = new CodificadorDocumentoXML();
+        this.codificador.setDatosSesion("Benchmark", "1.0");
+        this.registros = RegistrosCalificacion.crearNumericos(fechaMilisegundos);
+        this.evento = RegistrosCalificacion.crearEvento(1, fechaMilisegundos);
+
+        ByteArrayOutputStream documento = new ByteArrayOutputStream(REGISTROS_DOCUMENTO * 128);
+
+        this.codificador.iniciar(documento);
+
+        for (int i = 0; i < REGISTROS_DOCUMENTO; i++) {
+            this.codificador.codificar(this.registros[i % REGISTROS_CALIFICACION], documento);
+        }
+
+        this.codificador.finalizar(documento);
+        this.documento = documento.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REGISTROS_CALIFICACION)
+    public int escribir() throws IOException {
+        this.salida.reset();
+
+        for (RegistroMetrica registro : this.registros) {
+            this.codificador.codificar(registro, this.salida);
+        }
+
+        return this.salida.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REGISTROS_CALIFICACION)
+    public int escribirEvento() throws IOException {
+        this.salida.reset();
+        this.codificador.codificar(this.evento, this.salida);
+
+        return this.salida.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REGISTROS_DOCUMENTO)
+    public int leer() throws IOException {
+        int leidos = 0;
+
+        try (LectorDocumentoXML lector = new LectorDocumentoXML(new ByteArrayInputStream(this.documento))) {
+            while (lector.leer() != null) {
+                leidos++;
+            }
+        }
+
+        return leidos;
+    }
+
+}
@@ -0,0 +1,123 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * La escritura de JSON con <code>EscritorJSON</code>, que se reutiliza entre
+ * documentos y no debería asignar memoria por documento (ver
+ * <code>gc.alloc.rate.norm</code>):
+ * <ul>
+ * <li><code>escribirInstantanea</code>: el documento de
+ * <code>InstantaneaMetricas.escribirJSON</code>;</li>
+ * <li><code>escribirCalificacion</code>: los 16 registros de una
+ * calificación como un arreglo de objetos;</li>
+ * <li><code>construirCalificacion</code>: el mismo documento armado en un
+ * <code>StringBuilder</code> y convertido a UTF-8, como referencia.</li>
+ * </ul>
+ * Los bytes se descartan a medida que se escriben.
+ */
+@State(Scope.Thread)
+public class BenchmarkEscritorJSON {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private SalidaDescartada salida;
+    private EscritorJSON escritor;
+    private InstantaneaMetricas instantanea;
+    private RegistroMetrica[] registros;
+    private StringBuilder texto;
+
+    @Setup
+    public void preparar() {
+        this.salida = new SalidaDescartada();
+        this.escritor = new EscritorJSON(this.salida, 8192);
+        this.instantanea = new InstantaneaMetricas(1564660800000L, 87, false, true, "Wi-Fi", -55, 41.83, 1713.0,
+                12.5, 60, 312.0f, 5.0f, 48.21, 3.4375, 0.0, 230);
+        this.registros = RegistrosCalificacion.crear(1564660800000L);
+        this.texto = new StringBuilder(2048);
+    }
+
+    @Benchmark
+    public long escribirInstantanea() throws IOException {
+        this.escritor.reiniciar(this.salida);
+        this.instantanea.escribirJSON(this.escritor);
+        this.escritor.flush();
+
+        return this.salida.bytes;
+    }
+
+    @Benchmark
+    public long escribirCalificacion() throws IOException {
+        this.escritor.reiniciar(this.salida);
+        this.escritor.iniciarArreglo();
+
+        for (RegistroMetrica registro : this.registros) {
+            this.escritor.iniciarObjeto();
+            this.escritor.nombre("name");
+            this.escritor.valor(registro.getMetrica());
+            this.escritor.nombre("date");
+            this.escritor.valor(registro.getFechaMilisegundos());
+            this.escritor.nombre("score");
+            this.escritor.valor(registro.getCalificacionUsuario());
+            this.escritor.nombre("value");
+            this.escritor.valor(registro.getValor());
+            this.escritor.finalizarObjeto();
+        }
+
+        this.escritor.finalizarArreglo();
+        this.escritor.flush();
+
+        return this.salida.bytes;
+    }
+
+    @Benchmark
+    public long construirCalificacion() throws IOException {
+        this.texto.setLength(0);
+        this.texto.append('[');
+
+        for (int i = 0; i < this.registros.length; i++) {
+            RegistroMetrica registro = this.registros[i];
+
+            if (i > 0) {
+                this.texto.append(',');
+            }
+
+            this.texto.append("{\"name\":\"").append(registro.getMetrica())
+                    .append("\",\"date\":").append(registro.getFechaMilisegundos())
+                    .append(",\"score\":\"").append(registro.getCalificacionUsuario())
+                    .append("\",\"value\":\"").append(registro.getValor()).append("\"}");
+        }
+
+        this.texto.append(']');
+        this.salida.write(this.texto.toString().getBytes(UTF_8));
+
+        return this.salida.bytes;
+    }
+
+    /**
+     * Cuenta los bytes que recibe y los descarta.
+     */
+    private static final class SalidaDescartada extends OutputStream {
+
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            this.bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int desde, int longitud) {
+            this.bytes += longitud;
+        }
+
+    }
+
+}
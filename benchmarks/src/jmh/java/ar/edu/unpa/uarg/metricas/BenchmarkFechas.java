@@ -0,0 +1,100 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * El formateo de la fecha de cada registro XML («yyyy-MM-dd HH:mm:ss»):
+ * <ul>
+ * <li><code>formatearReutilizado</code>: con un único
+ * <code>SimpleDateFormat</code>, como lo hace <code>CodificadorXML</code> (el
+ * formato no es seguro para varios hilos, pero lo usa sólo el hilo
+ * escritor);</li>
+ * <li><code>formatearNuevo</code>: creando el formato en cada llamada, que es
+ * lo que debe hacer cualquier código que formatee fechas desde varios hilos
+ * sin sincronizarse;</li>
+ * <li><code>formateadorClasico</code>, <code>formateadorISO8601</code> y
+ * <code>formateadorBytes</code>: con <code>FormateadorFecha</code>, que
+ * escribe en un arreglo reutilizable y no debería asignar memoria
+ * (<code>gc.alloc.rate.norm</code> cercano a 0);</li>
+ * <li><code>formateadorCompartido</code>: un mismo
+ * <code>FormateadorFecha</code> usado por 4 hilos a la vez.</li>
+ * </ul>
+ * Las fechas avanzan de a 250 ms, como las de registros que se escriben
+ * varias veces por segundo.
+ */
+@State(Scope.Thread)
+public class BenchmarkFechas {
+
+    private static final String PATRON = "yyyy-MM-dd HH:mm:ss";
+
+    private SimpleDateFormat formato;
+    private FormateadorFecha formateadorClasico;
+    private FormateadorFecha formateadorISO8601;
+    private char[] caracteres;
+    private byte[] bytes;
+    private long fechaMilisegundos;
+
+    /**
+     * El formateador que comparten los hilos de
+     * <code>formateadorCompartido</code>.
+     */
+    @State(Scope.Benchmark)
+    public static class Compartido {
+
+        final FormateadorFecha formateador = new FormateadorFecha(FormateadorFecha.Formato.ISO_8601);
+
+    }
+
+    @Setup
+    public void preparar() {
+        this.formato = new SimpleDateFormat(PATRON, Locale.US);
+        this.formateadorClasico = new FormateadorFecha(FormateadorFecha.Formato.CLASICO);
+        this.formateadorISO8601 = new FormateadorFecha(FormateadorFecha.Formato.ISO_8601);
+        this.caracteres = new char[FormateadorFecha.LONGITUD_MAXIMA];
+        this.bytes = new byte[FormateadorFecha.LONGITUD_MAXIMA];
+        this.fechaMilisegundos = 1564660800000L; // 2019-08-01 12:00:00 UTC.
+    }
+
+    @Benchmark
+    public String formatearReutilizado() {
+        return this.formato.format(this.siguienteFecha());
+    }
+
+    @Benchmark
+    public String formatearNuevo() {
+        return new SimpleDateFormat(PATRON, Locale.US).format(this.siguienteFecha());
+    }
+
+    @Benchmark
+    public int formateadorClasico() {
+        return this.formateadorClasico.formatear(this.siguienteFecha(), this.caracteres, 0);
+    }
+
+    @Benchmark
+    public int formateadorISO8601() {
+        return this.formateadorISO8601.formatear(this.siguienteFecha(), this.caracteres, 0);
+    }
+
+    @Benchmark
+    public int formateadorBytes() {
+        return this.formateadorISO8601.formatear(this.siguienteFecha(), this.bytes, 0);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int formateadorCompartido(Compartido compartido) {
+        return compartido.formateador.formatear(this.siguienteFecha(), this.caracteres, 0);
+    }
+
+    private long siguienteFecha() {
+        return this.fechaMilisegundos += 250;
+    }
+
+}
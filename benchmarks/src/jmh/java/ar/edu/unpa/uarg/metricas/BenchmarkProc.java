@@ -0,0 +1,126 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * La medición del uso de CPU de <code>getCPUConsumption</code>. Desde que se
+ * dejó de ejecutar <code>top</code> y de analizar su salida, el trabajo es
+ * leer y analizar los archivos de <code>/proc</code>:
+ * <ul>
+ * <li><code>analizarStatProceso</code> y <code>analizarStatSistema</code>:
+ * sólo el análisis del contenido, ya leído, de <code>/proc/self/stat</code> y
+ * de <code>/proc/stat</code>;</li>
+ * <li><code>analizarStatHilo</code>: lo mismo que para el proceso, pero
+ * obteniendo también el nombre de la tarea, como se hace con cada hilo;</li>
+ * <li><code>tomarInstantanea</code> y <code>tomarInstantaneaConHilos</code>:
+ * una instantánea completa de <code>MuestreadorCPU</code> (lectura incluida)
+ * sobre un <code>/proc</code> de prueba con 24 hilos, para que los
+ * resultados no dependan del equipo ni del sistema operativo.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+public class BenchmarkProc {
+
+    private static final int HILOS = 24;
+
+    private static final String STAT_PROCESO = "4063 (Q2M Demo (main)) S 612 612 0 0 -1 1077952832 48211 0 3 0 "
+            + "1523 417 0 0 10 -10 38 0 254056 15372902400 29417 18446744073709551615 1 1 0 0 0 0 4612 4097 "
+            + "1073775868 0 0 0 17 3 0 0 0 0 0 0 0 0 0 0 0 0 0\n";
+    private static final String STAT_SISTEMA = "cpu  2111548 1204 187133 23005921 16925 0 4077 162142 0 0\n"
+            + "cpu0 527887 301 46783 5751480 4231 0 1019 40535 0 0\n"
+            + "intr 1048576 0 0 0\n";
+
+    private byte[] statProceso;
+    private byte[] statSistema;
+    private StringBuilder nombre;
+    private File raizProc;
+    private MuestreadorCPU muestreador;
+
+    @Setup
+    public void preparar() throws IOException {
+        this.statProceso = STAT_PROCESO.getBytes("US-ASCII");
+        this.statSistema = STAT_SISTEMA.getBytes("US-ASCII");
+        this.nombre = new StringBuilder();
+
+        this.raizProc = File.createTempFile("q2m-proc", "");
+        this.raizProc.delete();
+
+        File tareas = new File(this.raizProc, "self/task");
+
+        if (!tareas.mkdirs()) {
+            throw new IOException("No se puede crear " + tareas);
+        }
+
+        escribir(new File(this.raizProc, "stat"), this.statSistema);
+        escribir(new File(this.raizProc, "self/stat"), this.statProceso);
+
+        for (int i = 0; i < HILOS; i++) {
+            File tarea = new File(tareas, String.valueOf(4063 + i));
+
+            tarea.mkdir();
+            escribir(new File(tarea, "stat"), STAT_PROCESO.replace("Q2M Demo (main)", "Hilo-" + i).getBytes("US-ASCII"));
+        }
+
+        this.muestreador = new MuestreadorCPU(this.raizProc, 100, 4);
+    }
+
+    @TearDown
+    public void borrar() {
+        borrar(this.raizProc);
+    }
+
+    @Benchmark
+    public long analizarStatProceso() throws IOException {
+        return MuestreadorCPU.analizarJiffiesTarea(this.statProceso, this.statProceso.length, null);
+    }
+
+    @Benchmark
+    public long analizarStatHilo() throws IOException {
+        this.nombre.setLength(0);
+
+        return MuestreadorCPU.analizarJiffiesTarea(this.statProceso, this.statProceso.length, this.nombre);
+    }
+
+    @Benchmark
+    public long analizarStatSistema() throws IOException {
+        return MuestreadorCPU.analizarTotalSistema(this.statSistema, this.statSistema.length);
+    }
+
+    @Benchmark
+    public MuestreadorCPU.InstantaneaCPU tomarInstantanea() throws IOException {
+        return this.muestreador.tomarInstantanea(false);
+    }
+
+    @Benchmark
+    public MuestreadorCPU.InstantaneaCPU tomarInstantaneaConHilos() throws IOException {
+        return this.muestreador.tomarInstantanea(true);
+    }
+
+    private static void escribir(File archivo, byte[] contenido) throws IOException {
+        try (OutputStream salida = new FileOutputStream(archivo)) {
+            salida.write(contenido);
+        }
+    }
+
+    private static void borrar(File archivo) {
+        File[] hijos = archivo.listFiles();
+
+        if (hijos != null) {
+            for (File hijo : hijos) {
+                borrar(hijo);
+            }
+        }
+
+        archivo.delete();
+    }
+
+}
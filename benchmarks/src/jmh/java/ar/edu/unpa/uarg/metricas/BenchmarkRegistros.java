@@ -0,0 +1,185 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * El camino de <code>ConstructorXML.adjuntarMetrica</code> y del vaciado de
+ * <code>saveScore</code>. <code>ConstructorXML</code> depende de Android, así
+ * que se mide lo que hace por debajo, que está en el núcleo:
+ * <ul>
+ * <li><code>codificar</code>: el costo de convertir un registro en bytes con
+ * cada codificador;</li>
+ * <li><code>agregar</code> y <code>agregarLote</code>: el trabajo del hilo
+ * escritor por registro (codificar y agregar al <code>SumideroMetricas</code>
+ * con la política de vaciado por defecto), de a uno o en lotes de 64;</li>
+ * <li><code>encolar</code>: lo que paga el hilo que llama a
+ * <code>adjuntarMetrica</code> con la política <code>BLOQUEAR</code>, que a
+ * la larga queda limitado por el ritmo del hilo escritor;</li>
+ * <li><code>vaciarCalificacion</code>: los 16 registros de una calificación,
+ * codificados, agregados y volcados al archivo.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+public class BenchmarkRegistros {
+
+    private static final int REGISTROS_POR_LOTE = 64;
+    private static final int REGISTROS_POR_CALIFICACION = 16;
+
+    @Param({"xml", "q2mb"})
+    public String formato;
+
+    private RegistroMetrica[] registros;
+    private CodificadorRegistros codificador;
+    private BufferReutilizable buffer;
+    private File archivo;
+    private File archivoInmediato;
+    private File archivoEscritor;
+    private SumideroMetricas sumidero;
+    private SumideroMetricas sumideroInmediato;
+    private EscritorAsincrono escritor;
+    private int siguiente;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        /* Se repiten los registros de una calificación con fechas crecientes,
+         * como en una sesión real. */
+        this.registros = new RegistroMetrica[REGISTROS_POR_LOTE * 4];
+
+        long fecha = System.currentTimeMillis();
+
+        for (int i = 0; i < this.registros.length; i += REGISTROS_POR_CALIFICACION) {
+            System.arraycopy(RegistrosCalificacion.crear(fecha + i * 1000L), 0, this.registros, i, REGISTROS_POR_CALIFICACION);
+        }
+
+        this.buffer = new BufferReutilizable();
+        this.archivo = File.createTempFile("q2m-benchmark", "." + this.formato);
+        this.archivoInmediato = File.createTempFile("q2m-benchmark", "." + this.formato);
+        this.archivoEscritor = File.createTempFile("q2m-benchmark", "." + this.formato);
+    }
+
+    /* Los archivos se vuelven a crear en cada iteración para que no crezcan
+     * sin límite durante la medición. */
+    @Setup(Level.Iteration)
+    public void abrir() throws IOException {
+        this.codificador = this.crearCodificador();
+        this.sumidero = this.crearSumidero(this.archivo);
+        this.sumideroInmediato = this.crearSumidero(this.archivoInmediato);
+        this.escritor = new EscritorAsincrono(this.crearSumidero(this.archivoEscritor), this.crearCodificador(),
+                1024, PoliticaContrapresion.BLOQUEAR);
+
+        /* La cabecera (si el formato tiene una) se escribe en un solo
+         * archivo: en este punto sólo importa el estado del codificador. */
+        this.buffer.reset();
+        this.codificador.iniciar(this.buffer);
+        this.sumidero.agregar(this.buffer.getBuffer(), 0, this.buffer.size());
+    }
+
+    @TearDown(Level.Iteration)
+    public void cerrar() throws IOException {
+        this.escritor.close();
+        this.sumidero.close();
+        this.sumideroInmediato.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void borrar() {
+        this.archivo.delete();
+        this.archivoInmediato.delete();
+        this.archivoEscritor.delete();
+    }
+
+    @Benchmark
+    public int codificar() throws IOException {
+        this.buffer.reset();
+        this.codificador.codificar(this.siguienteRegistro(), this.buffer);
+
+        return this.buffer.size();
+    }
+
+    @Benchmark
+    public void agregar() throws IOException {
+        this.agregar(this.siguienteRegistro());
+        this.sumidero.vaciarSiCorresponde();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REGISTROS_POR_LOTE)
+    public void agregarLote() throws IOException {
+        for (int i = 0; i < REGISTROS_POR_LOTE; i++) {
+            this.agregar(this.siguienteRegistro());
+        }
+
+        this.sumidero.vaciarSiCorresponde();
+    }
+
+    @Benchmark
+    public boolean encolar() {
+        return this.escritor.encolar(this.siguienteRegistro());
+    }
+
+    @Benchmark
+    public void vaciarCalificacion() throws IOException {
+        for (int i = 0; i < REGISTROS_POR_CALIFICACION; i++) {
+            this.buffer.reset();
+            this.codificador.codificar(this.registros[i], this.buffer);
+            this.sumideroInmediato.requiereArchivoNuevo(this.buffer.size(), 0);
+            this.sumideroInmediato.agregar(this.buffer.getBuffer(), 0, this.buffer.size());
+        }
+
+        this.sumideroInmediato.flush();
+    }
+
+    private void agregar(RegistroMetrica registro) throws IOException {
+        this.buffer.reset();
+        this.codificador.codificar(registro, this.buffer);
+        this.sumidero.agregar(this.buffer.getBuffer(), 0, this.buffer.size());
+    }
+
+    private RegistroMetrica siguienteRegistro() {
+        RegistroMetrica registro = this.registros[this.siguiente];
+
+        this.siguiente = (this.siguiente + 1) % this.registros.length;
+
+        return registro;
+    }
+
+    private CodificadorRegistros crearCodificador() {
+        return "xml".equals(this.formato) ? new CodificadorXML() : new CodificadorBinario();
+    }
+
+    private SumideroMetricas crearSumidero(File destino) throws IOException {
+        if (!destino.delete() && destino.exists()) {
+            throw new IOException("No se puede borrar " + destino);
+        }
+
+        return new SumideroMetricas(destino, PoliticaVaciado.POR_DEFECTO);
+    }
+
+    /**
+     * Como el buffer del hilo escritor: permite agregar su contenido al
+     * sumidero sin copiarlo, para no medir asignaciones que el camino real
+     * no hace.
+     */
+    private static final class BufferReutilizable extends ByteArrayOutputStream {
+
+        BufferReutilizable() {
+            super(256);
+        }
+
+        byte[] getBuffer() {
+            return this.buf;
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Random;
+
+/**
+ * El cálculo de la latencia, el jitter y la pérdida de paquetes. Desde que
+ * las mediciones de red dejaron de analizar la salida de
+ * <code>/system/bin/ping</code>, lo que se mide es el procesamiento de una
+ * serie de RTT:
+ * <ul>
+ * <li><code>calcularMetricas</code>: lo que hacen <code>getLatency</code>,
+ * <code>getJitter</code> y <code>getPacketLoss</code> con un
+ * <code>ResultadoSondeo</code>;</li>
+ * <li><code>calcularInforme</code>: el <code>InformeCalidadRed</code> de una
+ * sesión de sondeo;</li>
+ * <li><code>sondearLoopback</code>: una sesión completa de sondas TCP a un
+ * puerto cerrado de la interfaz local (cada conexión rechazada cuenta como
+ * respuesta), que incluye el costo de los canales NIO.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+public class BenchmarkSondeo {
+
+    @Param({"10", "100"})
+    public int cantidadSondas;
+
+    private long[] rttNanosegundos;
+    private ResultadoSondeo resultado;
+    private SesionSondeo sesionLoopback;
+    private String direccionLoopback;
+
+    @Setup
+    public void preparar() throws IOException {
+        Random aleatorio = new Random(42);
+
+        this.rttNanosegundos = new long[this.cantidadSondas];
+
+        for (int i = 0; i < this.rttNanosegundos.length; i++) {
+            /* Alrededor de 50 ms con variaciones de hasta 20 ms y un 5% de
+             * sondas perdidas. */
+            this.rttNanosegundos[i] = aleatorio.nextInt(100) < 5
+                    ? ResultadoSondeo.PERDIDA
+                    : 40000000L + aleatorio.nextInt(20000000);
+        }
+
+        this.resultado = new ResultadoSondeo(this.rttNanosegundos);
+
+        int puertoCerrado;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            puertoCerrado = socket.getLocalPort();
+        }
+
+        this.direccionLoopback = InetAddress.getLoopbackAddress().getHostAddress();
+        this.sesionLoopback = new SesionSondeo(new SondaRed(SondaRed.Modo.CONEXION_TCP, puertoCerrado, 1000), this.cantidadSondas, 0);
+    }
+
+    @Benchmark
+    public void calcularMetricas(Blackhole agujero) {
+        ResultadoSondeo resultado = new ResultadoSondeo(this.rttNanosegundos);
+
+        agujero.consume(resultado.getLatenciaMilisegundos());
+        agujero.consume(resultado.getJitterMilisegundos());
+        agujero.consume(resultado.getPorcentajePerdida());
+    }
+
+    @Benchmark
+    public InformeCalidadRed calcularInforme() {
+        return new InformeCalidadRed(this.direccionLoopback, 0, this.resultado);
+    }
+
+    @Benchmark
+    public InformeCalidadRed sondearLoopback() throws IOException {
+        return this.sesionLoopback.ejecutar(this.direccionLoopback);
+    }
+
+}
@@ -0,0 +1,89 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Los registros que escribe <code>Metricas.saveScore</code> cuando el usuario
+ * asigna una calificación y todas las métricas tienen valor: el último valor
+ * de las 15 métricas y un resumen, con la misma calificación y el mismo
+ * instante y con los formatos de valor que produce la librería (enteros,
+ * reales, textos y booleanos).
+ */
+final class RegistrosCalificacion {
+
+    static final String CALIFICACION = "Buena";
+
+    private RegistrosCalificacion() {
+    }
+
+    /**
+     * @param fechaMilisegundos El instante de la calificación.
+     * @return Un arreglo nuevo con los 16 registros.
+     */
+    static RegistroMetrica[] crear(long fechaMilisegundos) {
+        String[][] metricas = {
+                {"BatteryCharge", "87"},
+                {"ConnectionType", "Wi-Fi"},
+                {"CPUConsumption", "12.5"},
+                {"EnvironmentLight", "312.0"},
+                {"Jitter", "3.4375"},
+                {"Latency", "48.21"},
+                {"MemoryConsumption", "41.83"},
+                {"MemoryConsumptionMB", "1713.0"},
+                {"PacketLoss", "0.0"},
+                {"PhoneCharging", "false"},
+                {"PhoneConnectedToANetwork", "true"},
+                {"Proximity", "5.0"},
+                {"ScreenBrightness", "60"},
+                {"SignalStrength", "-55"},
+                {"UserPerceivedLatency", "230"},
+                {"Latency.mean", "51.07142857142857"}
+        };
+        RegistroMetrica[] registros = new RegistroMetrica[metricas.length];
+
+        for (int i = 0; i < metricas.length; i++) {
+            registros[i] = new RegistroMetrica(CALIFICACION, metricas[i][0], metricas[i][1], fechaMilisegundos);
+        }
+
+        return registros;
+    }
+
+    /**
+     * @param fechaMilisegundos El instante de la calificación.
+     * @return Los mismos registros que <code>crear</code>, pero con los
+     * valores numéricos como primitivos, como los adjunta
+     * <code>saveScore</code>.
+     */
+    static RegistroMetrica[] crearNumericos(long fechaMilisegundos) {
+        long f = fechaMilisegundos;
+        String c = CALIFICACION;
+
+        return new RegistroMetrica[]{
+                new RegistroMetrica(c, "BatteryCharge", 87, f),
+                new RegistroMetrica(c, "ConnectionType", "Wi-Fi", f),
+                new RegistroMetrica(c, "CPUConsumption", 12.5, f),
+                new RegistroMetrica(c, "EnvironmentLight", 312.0f, f),
+                new RegistroMetrica(c, "Jitter", 3.4375, f),
+                new RegistroMetrica(c, "Latency", 48.21, f),
+                new RegistroMetrica(c, "MemoryConsumption", 41.83, f),
+                new RegistroMetrica(c, "MemoryConsumptionMB", 1713.0, f),
+                new RegistroMetrica(c, "PacketLoss", 0.0, f),
+                new RegistroMetrica(c, "PhoneCharging", "false", f),
+                new RegistroMetrica(c, "PhoneConnectedToANetwork", "true", f),
+                new RegistroMetrica(c, "Proximity", 5.0f, f),
+                new RegistroMetrica(c, "ScreenBrightness", 60, f),
+                new RegistroMetrica(c, "SignalStrength", -55, f),
+                new RegistroMetrica(c, "UserPerceivedLatency", 230, f),
+                new RegistroMetrica(c, "Latency.mean", 51.07142857142857, f)
+        };
+    }
+
+    /**
+     * @param id                El identificador del evento.
+     * @param fechaMilisegundos El instante de la calificación.
+     * @return Las mismas métricas que <code>crearNumericos</code>, agrupadas
+     * en un único registro, como las adjunta ahora <code>saveScore</code>.
+     */
+    static RegistroMetrica crearEvento(long id, long fechaMilisegundos) {
+        return new RegistroMetrica(new EventoCalificacion(id, CALIFICACION, fechaMilisegundos, crearNumericos(fechaMilisegundos)));
+    }
+
+}
@@ -0,0 +1,73 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Destino de sólo-agregado en el que se persisten los registros ya
+ * codificados. El hilo escritor de <code>ConstructorXML</code> es el único que
+ * utiliza el almacén, por lo que las implementaciones no necesitan admitir
+ * escritores concurrentes, aunque sí deben tolerar que se las cierre desde
+ * otro hilo una vez detenido el escritor.
+ *
+ * @see SumideroMetricas
+ * @see RegistroSegmentado
+ */
+public interface AlmacenMetricas extends java.io.Closeable, java.io.Flushable {
+
+    /**
+     * Agrega un registro. El arreglo recibido puede reutilizarse apenas
+     * retorna el método.
+     *
+     * @param datos    Arreglo que contiene el registro.
+     * @param desde    Posición del primer byte del registro.
+     * @param longitud Cantidad de bytes del registro.
+     * @throws IOException Si el almacén está cerrado o falla la escritura.
+     */
+    void agregar(byte[] datos, int desde, int longitud) throws IOException;
+
+    /**
+     * Se invoca antes de agregar un registro de la longitud indicada. Indica
+     * si el registro, más los bytes reservados para el cierre del archivo, ya
+     * no entran en el archivo actual (por ejemplo, porque el segmento está
+     * casi lleno). En ese caso, quien escribe agrega el cierre (que entra,
+     * porque tenía su lugar reservado) y llama a
+     * <code>comenzarArchivoNuevo</code>, para que el codificador reinicie su
+     * estado y vuelva a escribir su cabecera.
+     *
+     * @param longitud La longitud del próximo registro.
+     * @param reserva  La cantidad de bytes que deben quedar disponibles
+     *                 después del registro para el cierre.
+     * @return <code>true</code> si hay que comenzar un archivo nuevo antes de
+     * agregar el registro.
+     * @throws IOException Si el registro no entra ni siquiera en un archivo
+     *                     vacío, o si el almacén está cerrado.
+     */
+    boolean requiereArchivoNuevo(int longitud, int reserva) throws IOException;
+
+    /**
+     * Comienza un archivo nuevo, al que se agregan los registros siguientes.
+     *
+     * @throws IOException Si falla la creación del archivo nuevo.
+     */
+    void comenzarArchivoNuevo() throws IOException;
+
+    /**
+     * Vuelca los registros pendientes únicamente si la política de vaciado lo
+     * requiere.
+     *
+     * @throws IOException Si falla el volcado.
+     */
+    void vaciarSiCorresponde() throws IOException;
+
+    /**
+     * @return La política de vaciado del almacén.
+     */
+    PoliticaVaciado getPolitica();
+
+    /**
+     * @return El archivo (o directorio) en el que se guardan los registros.
+     */
+    File getArchivo();
+
+}
@@ -0,0 +1,398 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Resumen de tamaño fijo de una distribución de valores positivos (por
+ * ejemplo, latencias) que permite estimar cualquier cuantil, como el p95 o
+ * el p99, sin guardar las muestras.
+ * <p>
+ * Cada valor se cuenta en un contenedor de ancho logarítmico: el contenedor
+ * <code>i</code> abarca los valores en <code>(γ^(i-1), γ^i]</code>, con
+ * <code>γ = (1 + α) / (1 - α)</code>. Así, el cuantil estimado tiene un
+ * error relativo de a lo sumo <code>α</code>, sin importar cuántos valores
+ * se agreguen. La cantidad de contenedores (y la memoria) queda fijada por
+ * el rango de valores indicado al crearlo; los valores fuera del rango se
+ * cuentan en el contenedor del extremo correspondiente, y los valores
+ * iguales a cero o negativos, en un contador aparte.
+ * <p>
+ * Dos bosquejos con los mismos parámetros se pueden combinar sumando sus
+ * contadores, por lo que los bosquejos de distintas sesiones o dispositivos
+ * se pueden unir sin perder precisión. Se pueden serializar en pocos bytes
+ * (o en Base64, para guardarlos en el archivo de métricas). Los datos
+ * serializados se validan al reconstruirlos, así que se pueden recibir de
+ * otros dispositivos sin riesgo de que reserven memoria sin límite.
+ */
+public class BosquejoCuantiles {
+
+    /**
+     * La cantidad máxima de contenedores de un bosquejo (512 KiB de
+     * contadores), que limita la combinación de precisión y rango.
+     */
+    public static final int MAXIMO_CONTENEDORES = 1 << 16;
+
+    private static final byte[] CABECERA = {'Q', '2', 'M', 'Q', 1};
+
+    private final double precisionRelativa;
+    private final double minimoIndexable;
+    private final double maximoIndexable;
+    private final double logaritmoGamma;
+    private final int desplazamiento;
+    private final long[] contadores;
+
+    private long cantidadCeros;
+    private long cantidad;
+    private double minimo = Double.NaN;
+    private double maximo = Double.NaN;
+
+    /**
+     * Crea un bosquejo con un error relativo del 1% para valores entre
+     * 0,001 y 10^9 (unos 1400 contenedores).
+     */
+    public BosquejoCuantiles() {
+        this(0.01, 1e-3, 1e9);
+    }
+
+    /**
+     * @param precisionRelativa El error relativo máximo de los cuantiles
+     *                          (por ejemplo, 0,01 para un 1%).
+     * @param minimoIndexable   El menor valor positivo que se distingue.
+     * @param maximoIndexable   El mayor valor que se distingue.
+     * @throws IllegalArgumentException Si los parámetros no son válidos o
+     *                                  requieren más de
+     *                                  <code>MAXIMO_CONTENEDORES</code>
+     *                                  contenedores.
+     */
+    public BosquejoCuantiles(double precisionRelativa, double minimoIndexable, double maximoIndexable) {
+        if (!(precisionRelativa > 0 && precisionRelativa < 1 && minimoIndexable > 0 && maximoIndexable > minimoIndexable
+                && !Double.isInfinite(maximoIndexable))) {
+            throw new IllegalArgumentException("Parámetros inválidos para el bosquejo de cuantiles.");
+        }
+
+        this.logaritmoGamma = Math.log((1 + precisionRelativa) / (1 - precisionRelativa));
+
+        /* Se verifica antes de convertir los índices a int, que con una
+         * precisión muy pequeña podrían desbordarse. */
+        double contenedores = (Math.log(maximoIndexable) - Math.log(minimoIndexable)) / this.logaritmoGamma + 2;
+
+        if (!(contenedores <= MAXIMO_CONTENEDORES)) {
+            throw new IllegalArgumentException("La precisión y el rango del bosquejo requieren demasiados contenedores.");
+        }
+
+        this.precisionRelativa = precisionRelativa;
+        this.minimoIndexable = minimoIndexable;
+        this.maximoIndexable = maximoIndexable;
+        this.desplazamiento = this.indiceSinDesplazar(minimoIndexable);
+        this.contadores = new long[this.indiceSinDesplazar(maximoIndexable) - this.desplazamiento + 1];
+    }
+
+    public double getPrecisionRelativa() {
+        return this.precisionRelativa;
+    }
+
+    /**
+     * @return La cantidad de valores agregados.
+     */
+    public synchronized long getCantidad() {
+        return this.cantidad;
+    }
+
+    /**
+     * @return El menor valor agregado, o <code>NaN</code> si no hay valores.
+     */
+    public synchronized double getMinimo() {
+        return this.minimo;
+    }
+
+    /**
+     * @return El mayor valor agregado, o <code>NaN</code> si no hay valores.
+     */
+    public synchronized double getMaximo() {
+        return this.maximo;
+    }
+
+    /**
+     * @param valor El valor a agregar.
+     */
+    public void agregar(double valor) {
+        this.agregar(valor, 1);
+    }
+
+    /**
+     * @param valor  El valor a agregar.
+     * @param veces  La cantidad de veces que se observó el valor.
+     */
+    public synchronized void agregar(double valor, long veces) {
+        if (Double.isNaN(valor) || veces <= 0) {
+            return;
+        }
+
+        if (valor < this.minimoIndexable) {
+            this.cantidadCeros += veces;
+        } else {
+            this.contadores[this.indice(valor)] += veces;
+        }
+
+        this.cantidad += veces;
+        this.minimo = Double.isNaN(this.minimo) ? valor : Math.min(this.minimo, valor);
+        this.maximo = Double.isNaN(this.maximo) ? valor : Math.max(this.maximo, valor);
+    }
+
+    /**
+     * Agrega a este bosquejo todos los valores de otro.
+     *
+     * @param otro Un bosquejo creado con los mismos parámetros.
+     * @throws IllegalArgumentException Si los parámetros no coinciden.
+     */
+    public void combinar(BosquejoCuantiles otro) {
+        if (!this.esCompatible(otro)) {
+            throw new IllegalArgumentException("Sólo se pueden combinar bosquejos con los mismos parámetros.");
+        }
+
+        long[] contadoresOtro;
+        long cerosOtro;
+        long cantidadOtro;
+        double minimoOtro;
+        double maximoOtro;
+
+        /* Se copia el otro bosquejo antes de tomar el monitor propio para no
+         * retener dos monitores a la vez. */
+        synchronized (otro) {
+            contadoresOtro = otro.contadores.clone();
+            cerosOtro = otro.cantidadCeros;
+            cantidadOtro = otro.cantidad;
+            minimoOtro = otro.minimo;
+            maximoOtro = otro.maximo;
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < this.contadores.length; i++) {
+                this.contadores[i] += contadoresOtro[i];
+            }
+
+            this.cantidadCeros += cerosOtro;
+            this.cantidad += cantidadOtro;
+
+            if (!Double.isNaN(minimoOtro)) {
+                this.minimo = Double.isNaN(this.minimo) ? minimoOtro : Math.min(this.minimo, minimoOtro);
+                this.maximo = Double.isNaN(this.maximo) ? maximoOtro : Math.max(this.maximo, maximoOtro);
+            }
+        }
+    }
+
+    /**
+     * Estima un cuantil.
+     *
+     * @param q El cuantil, entre 0 y 1 (por ejemplo, 0,99 para el p99).
+     * @return El valor estimado, o <code>NaN</code> si no hay valores.
+     */
+    public synchronized double getCuantil(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("El cuantil debe estar entre 0 y 1.");
+        }
+
+        if (this.cantidad == 0) {
+            return Double.NaN;
+        }
+
+        /* Rango (desde 0) del valor buscado entre todos los agregados. */
+        long rango = (long) Math.ceil(q * this.cantidad) - 1;
+
+        if (rango < this.cantidadCeros) {
+            return this.minimo < this.minimoIndexable ? this.minimo : 0;
+        }
+
+        long acumulado = this.cantidadCeros;
+
+        for (int i = 0; i < this.contadores.length; i++) {
+            acumulado += this.contadores[i];
+
+            if (acumulado > rango) {
+                /* El punto medio (en escala logarítmica) del contenedor tiene
+                 * un error relativo de a lo sumo α respecto de cualquier
+                 * valor del contenedor. */
+                double estimado = 2 * Math.exp((i + this.desplazamiento) * this.logaritmoGamma) / (1 + Math.exp(this.logaritmoGamma));
+
+                return Math.max(this.minimo, Math.min(this.maximo, estimado));
+            }
+        }
+
+        return this.maximo;
+    }
+
+    /**
+     * Descarta todos los valores.
+     */
+    public synchronized void vaciar() {
+        Arrays.fill(this.contadores, 0);
+        this.cantidadCeros = 0;
+        this.cantidad = 0;
+        this.minimo = Double.NaN;
+        this.maximo = Double.NaN;
+    }
+
+    /**
+     * Serializa el bosquejo. Sólo se guardan los contenedores entre el
+     * primero y el último que tienen valores, con enteros de longitud
+     * variable.
+     *
+     * @return Los bytes del bosquejo.
+     * @see #deserializar(byte[])
+     */
+    public synchronized byte[] serializar() {
+        int primero = 0;
+        int ultimo = this.contadores.length - 1;
+
+        while (primero <= ultimo && this.contadores[primero] == 0) {
+            primero++;
+        }
+
+        while (ultimo >= primero && this.contadores[ultimo] == 0) {
+            ultimo--;
+        }
+
+        int ocupados = ultimo - primero + 1;
+        ByteBuffer salida = ByteBuffer.allocate(CABECERA.length + 5 * 8 + (3 + ocupados) * 10);
+
+        salida.put(CABECERA);
+        salida.putDouble(this.precisionRelativa).putDouble(this.minimoIndexable).putDouble(this.maximoIndexable);
+        salida.putDouble(this.minimo).putDouble(this.maximo);
+        escribirVarint(salida, this.cantidadCeros);
+        escribirVarint(salida, primero);
+        escribirVarint(salida, ocupados);
+
+        for (int i = primero; i <= ultimo; i++) {
+            escribirVarint(salida, this.contadores[i]);
+        }
+
+        return Arrays.copyOf(salida.array(), salida.position());
+    }
+
+    /**
+     * @return El bosquejo serializado y codificado en Base64, apto para
+     * guardarse como valor de una métrica.
+     */
+    public String aBase64() {
+        return java.util.Base64.getEncoder().encodeToString(this.serializar());
+    }
+
+    /**
+     * Reconstruye un bosquejo serializado con <code>serializar()</code>.
+     *
+     * @param datos Los bytes del bosquejo.
+     * @return El bosquejo.
+     * @throws IllegalArgumentException Si los datos no son un bosquejo
+     *                                  válido (por ejemplo, si sus parámetros
+     *                                  requieren demasiados contenedores o
+     *                                  algún contador es negativo).
+     */
+    public static BosquejoCuantiles deserializar(byte[] datos) {
+        ByteBuffer entrada = ByteBuffer.wrap(datos);
+
+        try {
+            for (byte esperado : CABECERA) {
+                if (entrada.get() != esperado) {
+                    throw new IllegalArgumentException("Los datos no corresponden a un bosquejo de cuantiles.");
+                }
+            }
+
+            BosquejoCuantiles bosquejo = new BosquejoCuantiles(entrada.getDouble(), entrada.getDouble(), entrada.getDouble());
+
+            bosquejo.minimo = entrada.getDouble();
+            bosquejo.maximo = entrada.getDouble();
+            bosquejo.cantidadCeros = leerContador(entrada, 0);
+            bosquejo.cantidad = bosquejo.cantidadCeros;
+
+            long primero = leerVarint(entrada);
+            long ocupados = leerVarint(entrada);
+
+            /* Se comparan como long (y sin sumarlos, que podría desbordar):
+             * un valor enorme no debe volverse válido al convertirlo a int. */
+            if (primero < 0 || ocupados < 0 || ocupados > bosquejo.contadores.length - primero) {
+                throw new IllegalArgumentException("Los contenedores del bosquejo están fuera de rango.");
+            }
+
+            for (int i = 0; i < ocupados; i++) {
+                long contador = leerContador(entrada, bosquejo.cantidad);
+
+                bosquejo.contadores[(int) primero + i] = contador;
+                bosquejo.cantidad += contador;
+            }
+
+            if (bosquejo.cantidad > 0 && !(bosquejo.minimo <= bosquejo.maximo)) {
+                throw new IllegalArgumentException("El mínimo y el máximo del bosquejo no son válidos.");
+            }
+
+            return bosquejo;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("El bosquejo de cuantiles está truncado.");
+        }
+    }
+
+    /**
+     * @param base64 El bosquejo, tal como lo retorna <code>aBase64()</code>.
+     * @return El bosquejo.
+     */
+    public static BosquejoCuantiles desdeBase64(String base64) {
+        return deserializar(java.util.Base64.getDecoder().decode(base64));
+    }
+
+    private boolean esCompatible(BosquejoCuantiles otro) {
+        return this.precisionRelativa == otro.precisionRelativa
+                && this.minimoIndexable == otro.minimoIndexable
+                && this.maximoIndexable == otro.maximoIndexable;
+    }
+
+    private int indice(double valor) {
+        int indice = this.indiceSinDesplazar(Math.min(valor, this.maximoIndexable)) - this.desplazamiento;
+
+        return Math.max(0, Math.min(this.contadores.length - 1, indice));
+    }
+
+    private int indiceSinDesplazar(double valor) {
+        return (int) Math.ceil(Math.log(valor) / this.logaritmoGamma);
+    }
+
+    private static void escribirVarint(ByteBuffer salida, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            salida.put((byte) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+
+        salida.put((byte) valor);
+    }
+
+    /**
+     * @param acumulado La suma de los contadores ya leídos.
+     * @return Un contador no negativo cuya suma con <code>acumulado</code> no
+     * desborda.
+     */
+    private static long leerContador(ByteBuffer entrada, long acumulado) {
+        long contador = leerVarint(entrada);
+
+        if (contador < 0 || acumulado + contador < 0) {
+            throw new IllegalArgumentException("El bosquejo tiene un contador inválido.");
+        }
+
+        return contador;
+    }
+
+    private static long leerVarint(ByteBuffer entrada) {
+        long valor = 0;
+
+        for (int desplazamiento = 0; desplazamiento < 64; desplazamiento += 7) {
+            byte actual = entrada.get();
+
+            valor |= (long) (actual & 0x7F) << desplazamiento;
+
+            if ((actual & 0x80) == 0) {
+                return valor;
+            }
+        }
+
+        throw new IllegalArgumentException("Entero de longitud variable inválido.");
+    }
+
+}
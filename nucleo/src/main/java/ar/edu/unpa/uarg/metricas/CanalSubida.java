@@ -0,0 +1,599 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sube al servidor, en lotes comprimidos con gzip, el contenido del archivo
+ * de métricas que todavía no se subió.
+ * <p>
+ * El canal guarda junto al archivo un cursor (el desplazamiento del primer
+ * byte no subido), que sólo avanza cuando el servidor confirma un lote. El
+ * cursor se reemplaza de forma atómica, por lo que si la aplicación termina
+ * o la red se corta a mitad de una subida, la siguiente continúa desde el
+ * último lote confirmado en lugar de reenviar todo el archivo. Cada lote
+ * indica su desplazamiento en el encabezado <code>X-Q2M-Desplazamiento</code>,
+ * de modo que el servidor puede descartar un lote que ya había recibido (o
+ * reemplazar lo recibido desde ese desplazamiento).
+ * <p>
+ * Junto con el cursor se guardan los primeros bytes subidos y un CRC-32 del
+ * final de lo subido (la última línea, con los formatos de texto), y antes
+ * de cada lote se comprueba que el archivo no haya cambiado. Si se
+ * reemplazó (por ejemplo, se renombró y se creó otro con el mismo nombre),
+ * se sube desde el inicio; si sólo cambió ese final (por ejemplo, porque se
+ * quitó la etiqueta de cierre del documento XML para seguir escribiéndolo),
+ * el cursor retrocede al comienzo del final y se vuelve a subir desde allí.
+ * <p>
+ * Con los formatos de texto (como el XML) los lotes se cortan al final de
+ * una línea, así cada lote contiene registros completos, y se pueden enviar
+ * dentro de un documento JSON (ver <code>setCuerpoJSON</code>). Los errores
+ * de red y las respuestas 408, 429 y 5xx se reintentan con espera
+ * exponencial.
+ * <p>
+ * Cada lote se lee del archivo por bloques y se comprime directamente en la
+ * conexión (con transferencia por partes), por lo que la memoria usada no
+ * depende del tamaño del lote.
+ */
+public class CanalSubida {
+
+    /** El tamaño máximo por defecto de cada lote, antes de comprimirlo. */
+    public static final int BYTES_POR_LOTE = 256 * 1024;
+
+    private static final int MAXIMO_INTENTOS = 5;
+    private static final long ESPERA_INICIAL_MILISEGUNDOS = 1000;
+    private static final long ESPERA_MAXIMA_MILISEGUNDOS = 60000;
+    private static final int TIEMPO_CONEXION_MILISEGUNDOS = 15000;
+    private static final int BYTES_POR_BLOQUE = 8192;
+
+    /**
+     * La cantidad de bytes del comienzo del archivo que se comparan para
+     * reconocerlo. Con el documento XML incluyen el identificador de la
+     * primera sesión. Con los formatos binarios, es también la cantidad de
+     * bytes del final de lo subido que se verifican.
+     */
+    private static final int BYTES_IDENTIFICACION = 128;
+
+    /**
+     * Un error que justifica reintentar el envío.
+     */
+    private static final class ErrorTransitorio extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        ErrorTransitorio(String mensaje, Throwable causa) {
+            super(mensaje, causa);
+        }
+
+    }
+
+    private final File registro;
+    private final File archivoCursor;
+    private final URL destino;
+    private final boolean cortarEnLineas;
+    private final int maximoIntentos;
+    private final int bytesPorLote;
+    private final byte[] bloque = new byte[BYTES_POR_BLOQUE];
+    private final Random azar = new Random();
+
+    /* Se publica para getLotesPendientes(), que no espera a que termine una
+     * subida en curso. */
+    private volatile long cursor = -1;
+
+    /* Lo que permite verificar que el archivo no cambió antes del cursor: sus
+     * primeros bytes y el CRC-32 de los bytes desde inicioFinal hasta el
+     * cursor. */
+    private byte[] comienzo = new byte[0];
+    private long inicioFinal;
+    private long crcFinal;
+
+    /* Los mismos datos, calculados con los bytes del último envío. */
+    private final CRC32 crcEnviado = new CRC32();
+    private byte[] comienzoEnviado;
+    private long inicioFinalEnviado;
+    private boolean cuerpoJSON;
+    private EscritorJSON escritorJSON;
+
+    /**
+     * Crea un canal con lotes de hasta <code>BYTES_POR_LOTE</code> bytes y
+     * hasta cinco intentos por lote.
+     *
+     * @param registro       El archivo de métricas.
+     * @param destino        La URL a la que se envía cada lote (con POST).
+     * @param cortarEnLineas Si los lotes se deben cortar al final de una
+     *                       línea (para formatos de texto).
+     */
+    public CanalSubida(File registro, URL destino, boolean cortarEnLineas) {
+        this(registro, destino, cortarEnLineas, BYTES_POR_LOTE, MAXIMO_INTENTOS);
+    }
+
+    /**
+     * @param registro       El archivo de métricas.
+     * @param destino        La URL a la que se envía cada lote (con POST).
+     * @param cortarEnLineas Si los lotes se deben cortar al final de una
+     *                       línea (para formatos de texto).
+     * @param bytesPorLote   El tamaño máximo de cada lote antes de
+     *                       comprimirlo (sólo determina cuántos bytes se
+     *                       confirman por vez, no la memoria usada).
+     * @param maximoIntentos La cantidad de veces que se intenta enviar cada
+     *                       lote antes de desistir.
+     */
+    public CanalSubida(File registro, URL destino, boolean cortarEnLineas, int bytesPorLote, int maximoIntentos) {
+        if (registro == null || destino == null || bytesPorLote < 1 || maximoIntentos < 1) {
+            throw new IllegalArgumentException("Configuración inválida para el canal de subida.");
+        }
+
+        this.registro = registro;
+        this.archivoCursor = new File(registro.getPath() + ".cursor");
+        this.destino = destino;
+        this.cortarEnLineas = cortarEnLineas;
+        this.maximoIntentos = maximoIntentos;
+        this.bytesPorLote = bytesPorLote;
+    }
+
+    public File getRegistro() {
+        return this.registro;
+    }
+
+    public URL getDestino() {
+        return this.destino;
+    }
+
+    /**
+     * Determina si cada lote se envía dentro de un documento JSON de la forma
+     * <code>{"archivo": ..., "desplazamiento": ..., "metricas": "..."}</code>
+     * (comprimido con gzip) en lugar de enviarse tal cual. Sólo tiene sentido
+     * para los formatos de texto en UTF-8.
+     *
+     * @param cuerpoJSON Si los lotes se envían en un documento JSON.
+     */
+    public synchronized void setCuerpoJSON(boolean cuerpoJSON) {
+        this.cuerpoJSON = cuerpoJSON;
+    }
+
+    public synchronized boolean isCuerpoJSON() {
+        return this.cuerpoJSON;
+    }
+
+    /**
+     * @return El desplazamiento del primer byte del archivo que todavía no
+     * se subió.
+     * @throws IOException Si no se puede leer el cursor guardado.
+     */
+    public synchronized long getCursor() throws IOException {
+        return this.leerCursor();
+    }
+
+    /**
+     * @return La cantidad de bytes del archivo que todavía no se subieron.
+     * @throws IOException Si no se puede leer el cursor guardado.
+     */
+    public synchronized long getBytesPendientes() throws IOException {
+        return Math.max(0, this.registro.length() - this.leerCursor());
+    }
+
+    /**
+     * Estima cuántos lotes quedan por subir, sin esperar a que termine una
+     * subida en curso.
+     *
+     * @return La cantidad de lotes de <code>bytesPorLote</code> bytes que
+     * ocupan los bytes pendientes. Al cortar en líneas los lotes pueden ser
+     * algo más cortos, por lo que es una cota inferior.
+     * @throws IOException Si no se puede leer el cursor guardado.
+     */
+    public long getLotesPendientes() throws IOException {
+        long actual = this.cursor;
+
+        if (actual < 0) {
+            actual = this.getCursor();
+        }
+
+        long pendientes = Math.max(0, this.registro.length() - actual);
+
+        return (pendientes + this.bytesPorLote - 1) / this.bytesPorLote;
+    }
+
+    /**
+     * Sube todos los lotes pendientes.
+     *
+     * @return La cantidad de lotes subidos.
+     * @throws IOException Si un lote no se pudo subir tras todos los
+     *                     intentos. Los lotes subidos hasta ese momento
+     *                     quedan confirmados.
+     */
+    public synchronized int subir() throws IOException {
+        int lotes = 0;
+
+        while (this.subirLote()) {
+            lotes++;
+        }
+
+        return lotes;
+    }
+
+    /**
+     * Sube el siguiente lote pendiente, si lo hay.
+     *
+     * @return <code>true</code> si se subió un lote y <code>false</code> si
+     * no había nada (completo) para subir.
+     * @throws IOException Si el lote no se pudo subir tras todos los
+     *                     intentos.
+     */
+    public synchronized boolean subirLote() throws IOException {
+        long desde = this.leerCursor();
+        int longitud = this.medirLote(desde);
+
+        if (longitud == 0) {
+            return false;
+        }
+
+        long espera = ESPERA_INICIAL_MILISEGUNDOS;
+
+        for (int intento = 1; ; intento++) {
+            try {
+                this.enviar(desde, longitud);
+
+                break;
+            } catch (ErrorTransitorio e) {
+                if (intento >= this.maximoIntentos) {
+                    throw new IOException("No se pudo subir el lote tras " + intento + " intentos.", e.getCause() != null ? e.getCause() : e);
+                }
+            }
+
+            /* Espera exponencial con una variación aleatoria para que los
+             * dispositivos no reintenten todos a la vez. */
+            esperar(espera / 2 + (long) (this.azar.nextDouble() * espera / 2));
+            espera = Math.min(ESPERA_MAXIMA_MILISEGUNDOS, espera * 2);
+        }
+
+        this.guardarCursor(desde + longitud, this.comienzoEnviado, this.inicioFinalEnviado, this.crcEnviado.getValue());
+
+        return true;
+    }
+
+    /**
+     * Determina cuántos bytes, a partir de <code>desde</code>, forman el
+     * próximo lote. El archivo se recorre por bloques, sin cargar el lote en
+     * memoria.
+     */
+    private int medirLote(long desde) throws IOException {
+        if (!this.registro.isFile()) {
+            return 0;
+        }
+
+        int leidos = 0;
+        int finDeLinea = 0;
+
+        try (RandomAccessFile archivo = new RandomAccessFile(this.registro, "r")) {
+            long disponibles = archivo.length() - desde;
+
+            if (disponibles <= 0) {
+                return 0;
+            }
+
+            int aLeer = (int) Math.min(this.bytesPorLote, disponibles);
+
+            if (!this.cortarEnLineas) {
+                return aLeer;
+            }
+
+            archivo.seek(desde);
+
+            while (leidos < aLeer) {
+                int n = archivo.read(this.bloque, 0, Math.min(this.bloque.length, aLeer - leidos));
+
+                if (n < 0) {
+                    break;
+                }
+
+                for (int i = n - 1; i >= 0; i--) {
+                    if (this.bloque[i] == '\n') {
+                        finDeLinea = leidos + i + 1;
+
+                        break;
+                    }
+                }
+
+                leidos += n;
+            }
+        }
+
+        /* Si no hay ningún fin de línea y el lote está lleno se trata de una
+         * línea más larga que un lote y se envía igual; si no, es una línea
+         * que el escritor todavía no terminó. */
+        if (finDeLinea == 0 && leidos == this.bytesPorLote) {
+            return leidos;
+        }
+
+        return finDeLinea;
+    }
+
+    /**
+     * Copia el lote del archivo a la conexión, por bloques, y calcula con
+     * los bytes enviados los datos que permiten verificar el cursor.
+     */
+    private void escribirLote(OutputStream salida, long desde, int longitud) throws IOException {
+        long fin = desde + longitud;
+
+        this.comienzoEnviado = Arrays.copyOf(this.comienzo, (int) Math.min(fin, BYTES_IDENTIFICACION));
+        this.inicioFinalEnviado = this.cortarEnLineas ? desde : Math.max(desde, fin - BYTES_IDENTIFICACION);
+        this.crcEnviado.reset();
+
+        try (RandomAccessFile archivo = new RandomAccessFile(this.registro, "r")) {
+            archivo.seek(desde);
+
+            for (long posicion = desde; posicion < fin; ) {
+                int n = archivo.read(this.bloque, 0, (int) Math.min(this.bloque.length, fin - posicion));
+
+                if (n < 0) {
+                    throw new IOException("El archivo de métricas se truncó durante la subida.");
+                }
+
+                if (this.cuerpoJSON) {
+                    this.escritorJSON.escribirTextoUTF8(this.bloque, 0, n);
+                } else {
+                    salida.write(this.bloque, 0, n);
+                }
+
+                this.registrarEnviados(posicion, n, fin);
+                posicion += n;
+            }
+        }
+    }
+
+    /**
+     * Agrega a los datos de verificación un bloque enviado que comienza en
+     * <code>posicion</code>.
+     */
+    private void registrarEnviados(long posicion, int n, long fin) {
+        if (posicion < this.comienzoEnviado.length) {
+            System.arraycopy(this.bloque, 0, this.comienzoEnviado, (int) posicion, (int) Math.min(n, this.comienzoEnviado.length - posicion));
+        }
+
+        int inicio = 0;
+
+        if (this.cortarEnLineas) {
+            /* El final es la última línea del lote: comienza después del
+             * último salto de línea, sin contar el que la termina. */
+            for (int i = (posicion + n == fin ? n - 1 : n) - 1; i >= 0; i--) {
+                if (this.bloque[i] == '\n') {
+                    this.crcEnviado.reset();
+                    this.inicioFinalEnviado = posicion + i + 1;
+                    inicio = i + 1;
+
+                    break;
+                }
+            }
+        } else {
+            inicio = (int) Math.max(0, Math.min(n, this.inicioFinalEnviado - posicion));
+        }
+
+        this.crcEnviado.update(this.bloque, inicio, n - inicio);
+    }
+
+    private void escribirCuerpo(OutputStream conexion, long desde, int longitud) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(conexion, BYTES_POR_BLOQUE);
+
+        try {
+            if (this.cuerpoJSON) {
+                if (this.escritorJSON == null) {
+                    this.escritorJSON = new EscritorJSON(gzip, BYTES_POR_BLOQUE);
+                } else {
+                    this.escritorJSON.reiniciar(gzip);
+                }
+
+                this.escritorJSON.iniciarObjeto();
+                this.escritorJSON.nombre("archivo");
+                this.escritorJSON.valor(this.registro.getName());
+                this.escritorJSON.nombre("desplazamiento");
+                this.escritorJSON.valor(desde);
+                this.escritorJSON.nombre("metricas");
+                this.escritorJSON.iniciarTexto();
+                this.escribirLote(gzip, desde, longitud);
+                this.escritorJSON.finalizarTexto();
+                this.escritorJSON.finalizarObjeto();
+                this.escritorJSON.flush();
+            } else {
+                this.escribirLote(gzip, desde, longitud);
+            }
+
+            gzip.finish();
+        } finally {
+            gzip.close();
+        }
+    }
+
+    private void enviar(long desde, int longitud) throws IOException, ErrorTransitorio {
+        HttpURLConnection conexion;
+
+        try {
+            conexion = (HttpURLConnection) this.destino.openConnection();
+        } catch (IOException e) {
+            throw new ErrorTransitorio("No se pudo abrir la conexión.", e);
+        }
+
+        try {
+            conexion.setDoOutput(true);
+            conexion.setRequestMethod("POST");
+            conexion.setUseCaches(false);
+            conexion.setConnectTimeout(TIEMPO_CONEXION_MILISEGUNDOS);
+            conexion.setReadTimeout(TIEMPO_CONEXION_MILISEGUNDOS);
+            conexion.setChunkedStreamingMode(BYTES_POR_BLOQUE);
+            conexion.setRequestProperty("Content-Type", this.cuerpoJSON ? "application/json; charset=utf-8" : "application/octet-stream");
+            conexion.setRequestProperty("Content-Encoding", "gzip");
+            conexion.setRequestProperty("X-Q2M-Archivo", this.registro.getName());
+            conexion.setRequestProperty("X-Q2M-Desplazamiento", String.valueOf(desde));
+
+            int codigo;
+
+            try {
+                this.escribirCuerpo(conexion.getOutputStream(), desde, longitud);
+
+                codigo = conexion.getResponseCode();
+                descartarRespuesta(codigo >= 400 ? conexion.getErrorStream() : conexion.getInputStream());
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new ErrorTransitorio("Error de red al enviar el lote.", e);
+            }
+
+            if (codigo >= 200 && codigo < 300) {
+                return;
+            }
+
+            if (codigo == 408 || codigo == 429 || codigo >= 500) {
+                throw new ErrorTransitorio("El servidor respondió " + codigo + ".", null);
+            }
+
+            throw new IOException("El servidor rechazó el lote (código " + codigo + ").");
+        } finally {
+            conexion.disconnect();
+        }
+    }
+
+    /**
+     * Lee y descarta el cuerpo de la respuesta, para que la conexión se
+     * pueda reutilizar.
+     */
+    private void descartarRespuesta(InputStream respuesta) throws IOException {
+        if (respuesta == null) {
+            return;
+        }
+
+        try (InputStream entrada = respuesta) {
+            while (entrada.read(this.bloque) >= 0) {
+                // Nada que hacer con el contenido.
+            }
+        }
+    }
+
+    private long leerCursor() throws IOException {
+        if (this.cursor < 0) {
+            this.cursor = 0;
+
+            if (this.archivoCursor.isFile()) {
+                try (DataInputStream entrada = new DataInputStream(new FileInputStream(this.archivoCursor))) {
+                    long guardado = entrada.readLong();
+                    byte[] comienzoGuardado = new byte[entrada.readUnsignedShort()];
+
+                    entrada.readFully(comienzoGuardado);
+                    this.inicioFinal = entrada.readLong();
+                    this.crcFinal = entrada.readLong();
+                    this.comienzo = comienzoGuardado;
+                    this.cursor = guardado;
+                } catch (EOFException e) {
+                    // Un cursor incompleto no se puede verificar: se sube desde el inicio.
+                }
+            }
+        }
+
+        if (this.cursor > 0) {
+            this.verificarCursor();
+        }
+
+        return this.cursor;
+    }
+
+    /**
+     * Comprueba que el archivo no haya cambiado antes del cursor, y si
+     * cambió, retrocede el cursor hasta donde se puede asegurar que no.
+     */
+    private void verificarCursor() throws IOException {
+        boolean mismoArchivo = false;
+        boolean mismoFinal = false;
+        long longitud = 0;
+
+        if (this.registro.isFile()) {
+            try (RandomAccessFile archivo = new RandomAccessFile(this.registro, "r")) {
+                byte[] comienzoActual = new byte[this.comienzo.length];
+
+                longitud = archivo.length();
+                mismoArchivo = longitud >= comienzoActual.length && this.inicioFinal <= this.cursor;
+
+                if (mismoArchivo) {
+                    archivo.readFully(comienzoActual);
+                    mismoArchivo = Arrays.equals(comienzoActual, this.comienzo);
+                }
+
+                mismoFinal = mismoArchivo && this.cursor <= longitud && this.calcularCRC(archivo, this.inicioFinal, this.cursor) == this.crcFinal;
+            }
+        }
+
+        if (!mismoArchivo || this.inicioFinal > longitud) {
+            this.guardarCursor(0, new byte[0], 0, 0);
+        } else if (!mismoFinal) {
+            long inicio = this.inicioFinal;
+
+            this.guardarCursor(inicio, Arrays.copyOf(this.comienzo, (int) Math.min(this.comienzo.length, inicio)), inicio, 0);
+        }
+    }
+
+    private long calcularCRC(RandomAccessFile archivo, long desde, long hasta) throws IOException {
+        CRC32 crc = new CRC32();
+
+        archivo.seek(desde);
+
+        for (long posicion = desde; posicion < hasta; ) {
+            int n = archivo.read(this.bloque, 0, (int) Math.min(this.bloque.length, hasta - posicion));
+
+            if (n < 0) {
+                break;
+            }
+
+            crc.update(this.bloque, 0, n);
+            posicion += n;
+        }
+
+        return crc.getValue();
+    }
+
+    private void guardarCursor(long nuevoCursor, byte[] nuevoComienzo, long nuevoInicioFinal, long nuevoCrcFinal) throws IOException {
+        File temporal = new File(this.archivoCursor.getPath() + ".tmp");
+
+        try (FileOutputStream archivo = new FileOutputStream(temporal)) {
+            DataOutputStream salida = new DataOutputStream(archivo);
+
+            salida.writeLong(nuevoCursor);
+            salida.writeShort(nuevoComienzo.length);
+            salida.write(nuevoComienzo);
+            salida.writeLong(nuevoInicioFinal);
+            salida.writeLong(nuevoCrcFinal);
+            salida.flush();
+            archivo.getFD().sync();
+        }
+
+        if (!temporal.renameTo(this.archivoCursor)) {
+            throw new IOException("No se pudo actualizar el cursor de subida " + this.archivoCursor + ".");
+        }
+
+        this.comienzo = nuevoComienzo;
+        this.inicioFinal = nuevoInicioFinal;
+        this.crcFinal = nuevoCrcFinal;
+        this.cursor = nuevoCursor;
+    }
+
+    private static void esperar(long milisegundos) throws InterruptedIOException {
+        try {
+            Thread.sleep(milisegundos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Se interrumpió la subida de métricas.");
+        }
+    }
+
+}
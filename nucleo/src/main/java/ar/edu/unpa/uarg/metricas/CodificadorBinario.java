@@ -0,0 +1,498 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Codifica los registros en un formato binario compacto. En lugar de repetir
+ * el nombre de la métrica y la fecha formateada en cada registro (unos 100
+ * bytes por línea en XML), se escriben:
+ * <ul>
+ * <li>un identificador numérico del nombre, definido una única vez mediante
+ * un diccionario que se va construyendo a medida que aparecen nombres
+ * nuevos;</li>
+ * <li>la diferencia en milisegundos con el registro anterior, como varint
+ * zigzag;</li>
+ * <li>un byte con la calificación del usuario;</li>
+ * <li>el valor como varint (si es entero), como un decimal (una mantisa
+ * entera y la cantidad de decimales, en un único varint) si el real tiene
+ * pocos decimales, como <code>double</code> de 8 bytes, o como una
+ * referencia al diccionario si es un texto.</li>
+ * </ul>
+ * Una muestra numérica ocupa así entre 6 y 16 bytes.
+ * <p>
+ * Un <code>EventoCalificacion</code> se escribe como un único registro, con
+ * la fecha, la calificación y el identificador (como diferencia con el del
+ * evento anterior) una sola vez. Los nombres de sus mediciones forman una
+ * plantilla, que se define la primera vez que aparece; el evento indica su
+ * plantilla y un mapa de bits con las mediciones cuyo valor cambió desde
+ * el evento anterior con la misma plantilla, y sólo se escriben esos
+ * valores (cada uno con su etiqueta). Si las métricas no cambiaron, un
+ * evento ocupa unos 10 bytes.
+ * <p>
+ * Cada vez que se abre el archivo se escribe una cabecera que reinicia el
+ * diccionario y la fecha base, por lo que un mismo archivo puede contener
+ * varias sesiones una detrás de otra. Para leerlo, o convertirlo al formato
+ * XML, se utiliza <code>DecodificadorBinario</code>.
+ *
+ * @see DecodificadorBinario
+ */
+public class CodificadorBinario implements CodificadorRegistros {
+
+    /* La versión 2 agrega los eventos de calificación, y la 3, los valores
+     * decimales y las plantillas de los eventos. */
+    static final byte[] CABECERA = {'Q', '2', 'M', 'B', 3};
+
+    static final int ETIQUETA_DEFINIR_NOMBRE = 0x01;
+    static final int ETIQUETA_DEFINIR_CALIFICACION = 0x02;
+    static final int ETIQUETA_DEFINIR_PLANTILLA = 0x03;
+    static final int ETIQUETA_VALOR_ENTERO = 0x10;
+    static final int ETIQUETA_VALOR_REAL = 0x11;
+    static final int ETIQUETA_VALOR_REAL_ENTERO = 0x12;
+    static final int ETIQUETA_VALOR_TEXTO = 0x13;
+    static final int ETIQUETA_VALOR_TEXTO_LITERAL = 0x14;
+    static final int ETIQUETA_VALOR_DECIMAL = 0x15;
+    static final int ETIQUETA_EVENTO = 0x20; // Versión 2: con los nombres y los valores de todas las mediciones.
+    static final int ETIQUETA_EVENTO_PLANTILLA = 0x21;
+
+    /** La mayor cantidad de decimales de un valor decimal (ocupa 4 bits). */
+    static final int MAXIMA_ESCALA_DECIMAL = 15;
+
+    /** La mayor cantidad de mediciones de un evento. */
+    static final int MAXIMO_MEDICIONES_EVENTO = 1 << 16;
+
+    static final double[] POTENCIAS_DIEZ = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    /** Valor del byte de calificación para los registros que no tienen una. */
+    static final int SIN_CALIFICACION = 0xFF;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAXIMO_NOMBRES = 4096;
+    private static final int LONGITUD_MAXIMA_TEXTO_INTERNADO = 64;
+    private static final long MENOS_CERO = Double.doubleToRawLongBits(-0.0);
+    private static final double MAXIMO_EXACTO_DOUBLE = 1L << 53;
+
+    /* Si se llega a este límite, las plantillas se vuelven a definir desde
+     * el identificador 0. */
+    private static final int MAXIMO_PLANTILLAS = 64;
+
+    /**
+     * Los nombres de las mediciones de un evento, en orden, y los valores
+     * que se escribieron en el último evento con esos nombres.
+     */
+    private static final class Plantilla {
+
+        final int id;
+        final int[] etiquetas;
+        final long[] enteros; // Para un real de 8 bytes, sus bits.
+        final String[] textos;
+
+        Plantilla(int id, int cantidad) {
+            this.id = id;
+            this.etiquetas = new int[cantidad];
+            this.enteros = new long[cantidad];
+            this.textos = new String[cantidad];
+
+            java.util.Arrays.fill(this.etiquetas, -1); // Todavía no se escribió ningún valor.
+        }
+
+    }
+
+    private final HashMap<String, Integer> nombres = new HashMap<>();
+    private final HashMap<String, Integer> calificaciones = new HashMap<>();
+    private final HashMap<ArrayList<String>, Plantilla> plantillas = new HashMap<>();
+    private final ArrayList<String> nombresEvento = new ArrayList<>();
+    private long fechaAnterior;
+    private long idEventoAnterior;
+
+    /* El último valor clasificado (ver clasificarValor). */
+    private long entero;
+    private double real;
+    private String texto;
+
+    @Override
+    public void iniciar(OutputStream salida) throws IOException {
+        this.nombres.clear();
+        this.calificaciones.clear();
+        this.plantillas.clear();
+        this.fechaAnterior = 0;
+        this.idEventoAnterior = 0;
+
+        salida.write(CABECERA);
+    }
+
+    /**
+     * Un archivo binario admite varias sesiones seguidas (cada una con su
+     * cabecera), así que no hace falta modificarlo.
+     */
+    @Override
+    public void reanudar(File archivo) {
+    }
+
+    @Override
+    public void codificar(RegistroMetrica registro, OutputStream salida) throws IOException {
+        if (registro.getTipoValor() == RegistroMetrica.TipoValor.EVENTO) {
+            this.codificarEvento(registro.getEvento(), salida);
+
+            return;
+        }
+
+        int idMetrica = this.internarNombre(registro.getMetrica(), salida);
+        int calificacion = this.internarCalificacion(registro.getCalificacionUsuario(), salida);
+        int etiqueta = this.clasificarValor(registro);
+        int idTexto = etiqueta == ETIQUETA_VALOR_TEXTO ? this.internarNombre(this.texto, salida) : -1;
+
+        salida.write(etiqueta);
+        escribirVarint(salida, idMetrica);
+        escribirVarint(salida, zigzag(registro.getFechaMilisegundos() - this.fechaAnterior));
+        salida.write(calificacion);
+        this.escribirValor(etiqueta, idTexto, salida);
+
+        this.fechaAnterior = registro.getFechaMilisegundos();
+    }
+
+    @Override
+    public void finalizar(OutputStream salida) {
+        // Los registros no necesitan un cierre.
+    }
+
+    @Override
+    public int getBytesCierre() {
+        return 0;
+    }
+
+    @Override
+    public String getExtension() {
+        return "q2mb";
+    }
+
+    /**
+     * Escribe un evento en un único registro: la etiqueta, el identificador
+     * (como diferencia con el del evento anterior), la fecha, la
+     * calificación, el identificador de la plantilla y el mapa de bits de
+     * las mediciones que cambiaron (el bit <code>i % 8</code> del byte
+     * <code>i / 8</code> corresponde a la medición <code>i</code>), y luego,
+     * por cada una de ellas, la etiqueta de su valor y el valor.
+     */
+    private void codificarEvento(EventoCalificacion evento, OutputStream salida) throws IOException {
+        int cantidad = evento.getCantidadMediciones();
+
+        if (cantidad > MAXIMO_MEDICIONES_EVENTO) {
+            throw new IOException("El formato binario admite hasta " + MAXIMO_MEDICIONES_EVENTO + " mediciones por evento.");
+        }
+
+        int calificacion = this.internarCalificacion(evento.getCalificacionUsuario(), salida);
+
+        /* Las definiciones del diccionario y de las plantillas son registros
+         * independientes, así que los nombres, la plantilla y los textos
+         * nuevos se definen antes del evento. */
+        for (int i = 0; i < cantidad; i++) {
+            this.internarNombre(evento.getMedicion(i).getMetrica(), salida);
+        }
+
+        Plantilla plantilla = this.internarPlantilla(evento, salida);
+        byte[] cambios = new byte[(cantidad + 7) / 8];
+
+        for (int i = 0; i < cantidad; i++) {
+            int etiqueta = this.clasificarValor(evento.getMedicion(i));
+            long entero = etiqueta == ETIQUETA_VALOR_REAL ? Double.doubleToRawLongBits(this.real) : this.entero;
+
+            if (etiqueta == ETIQUETA_VALOR_TEXTO) {
+                this.internarNombre(this.texto, salida);
+            }
+
+            if (etiqueta != plantilla.etiquetas[i] || entero != plantilla.enteros[i] || !igualTexto(this.texto, plantilla.textos[i])) {
+                cambios[i / 8] |= 1 << (i % 8);
+                plantilla.etiquetas[i] = etiqueta;
+                plantilla.enteros[i] = entero;
+                plantilla.textos[i] = this.texto;
+            }
+        }
+
+        salida.write(ETIQUETA_EVENTO_PLANTILLA);
+        escribirVarint(salida, zigzag(evento.getId() - this.idEventoAnterior));
+        escribirVarint(salida, zigzag(evento.getFechaMilisegundos() - this.fechaAnterior));
+        salida.write(calificacion);
+        escribirVarint(salida, plantilla.id);
+        salida.write(cambios);
+
+        /* Los valores que cambiaron quedaron en la plantilla. */
+        for (int i = 0; i < cantidad; i++) {
+            if ((cambios[i / 8] & (1 << (i % 8))) != 0) {
+                int etiqueta = plantilla.etiquetas[i];
+
+                this.entero = plantilla.enteros[i];
+                this.real = Double.longBitsToDouble(plantilla.enteros[i]);
+                this.texto = plantilla.textos[i];
+
+                salida.write(etiqueta);
+                this.escribirValor(etiqueta, etiqueta == ETIQUETA_VALOR_TEXTO ? this.nombres.get(this.texto) : -1, salida);
+            }
+        }
+
+        this.idEventoAnterior = evento.getId();
+        this.fechaAnterior = evento.getFechaMilisegundos();
+    }
+
+    /**
+     * @return La plantilla con los nombres de las mediciones del evento
+     * (que ya están en el diccionario), que se define si todavía no existe.
+     */
+    private Plantilla internarPlantilla(EventoCalificacion evento, OutputStream salida) throws IOException {
+        int cantidad = evento.getCantidadMediciones();
+
+        this.nombresEvento.clear();
+
+        for (int i = 0; i < cantidad; i++) {
+            this.nombresEvento.add(evento.getMedicion(i).getMetrica());
+        }
+
+        Plantilla plantilla = this.plantillas.get(this.nombresEvento);
+
+        if (plantilla != null) {
+            return plantilla;
+        }
+
+        if (this.plantillas.size() == MAXIMO_PLANTILLAS) {
+            this.plantillas.clear();
+        }
+
+        plantilla = new Plantilla(this.plantillas.size(), cantidad);
+        this.plantillas.put(new ArrayList<>(this.nombresEvento), plantilla);
+
+        salida.write(ETIQUETA_DEFINIR_PLANTILLA);
+        escribirVarint(salida, plantilla.id);
+        escribirVarint(salida, cantidad);
+
+        for (String nombre : this.nombresEvento) {
+            escribirVarint(salida, this.nombres.get(nombre));
+        }
+
+        return plantilla;
+    }
+
+    /**
+     * Elige la etiqueta con la que se escribe el valor del registro y deja
+     * el valor en <code>entero</code>, <code>real</code> o
+     * <code>texto</code>, según corresponda.
+     */
+    private int clasificarValor(RegistroMetrica registro) {
+        RegistroMetrica.TipoValor tipo = registro.getTipoValor();
+
+        this.texto = null;
+
+        if (tipo == RegistroMetrica.TipoValor.ENTERO) {
+            this.entero = registro.getValorEntero();
+
+            return ETIQUETA_VALOR_ENTERO;
+        }
+
+        if (tipo == RegistroMetrica.TipoValor.REAL && !Double.isNaN(registro.getValorReal())) {
+            /* Los mismos casos que para un texto, pero sin formatearlo y
+             * volver a leerlo: Double.toString escribe «N.0» para los enteros
+             * menores que 10^7 (salvo -0.0). */
+            double real = registro.getValorReal();
+
+            if (real == Math.rint(real) && Math.abs(real) < 1e7 && Double.doubleToRawLongBits(real) != MENOS_CERO) {
+                this.entero = (long) real;
+
+                return ETIQUETA_VALOR_REAL_ENTERO;
+            }
+
+            return this.etiquetaReal(real);
+        }
+
+        String valor = registro.getValor();
+        double real;
+
+        this.texto = valor;
+
+        if (esEntero(valor)) {
+            this.entero = Long.parseLong(valor);
+
+            return ETIQUETA_VALOR_ENTERO;
+        }
+
+        if (pareceNumero(valor) && (real = leerReal(valor)) == real) {
+            if (real == Math.rint(real) && Math.abs(real) < (1L << 53) && valor.equals((long) real + ".0")) {
+                this.entero = (long) real;
+
+                return ETIQUETA_VALOR_REAL_ENTERO;
+            }
+
+            if (Double.toString(real).equals(valor)) {
+                return this.etiquetaReal(real);
+            }
+        }
+
+        return this.etiquetaTexto(valor);
+    }
+
+    /**
+     * Elige entre un valor decimal, si el real es una mantisa de hasta 53
+     * bits dividida por una potencia de 10 (la división está correctamente
+     * redondeada, así que el decodificador recupera exactamente el mismo
+     * valor), y un real de 8 bytes.
+     */
+    private int etiquetaReal(double real) {
+        long bits = Double.doubleToRawLongBits(real);
+
+        for (int escala = 1; escala <= MAXIMA_ESCALA_DECIMAL; escala++) {
+            double escalado = real * POTENCIAS_DIEZ[escala];
+
+            if (!(Math.abs(escalado) < MAXIMO_EXACTO_DOUBLE)) {
+                break; // También descarta los infinitos.
+            }
+
+            long mantisa = (long) Math.rint(escalado);
+
+            if (Double.doubleToRawLongBits(mantisa / POTENCIAS_DIEZ[escala]) == bits) {
+                this.entero = (zigzag(mantisa) << 4) | escala;
+
+                return ETIQUETA_VALOR_DECIMAL;
+            }
+        }
+
+        this.real = real;
+
+        return ETIQUETA_VALOR_REAL;
+    }
+
+    private void escribirValor(int etiqueta, int idTexto, OutputStream salida) throws IOException {
+        switch (etiqueta) {
+            case ETIQUETA_VALOR_ENTERO:
+            case ETIQUETA_VALOR_REAL_ENTERO:
+                escribirVarint(salida, zigzag(this.entero));
+                break;
+            case ETIQUETA_VALOR_DECIMAL:
+                escribirVarint(salida, this.entero);
+                break;
+            case ETIQUETA_VALOR_REAL:
+                long bits = Double.doubleToRawLongBits(this.real);
+
+                for (int desplazamiento = 56; desplazamiento >= 0; desplazamiento -= 8) {
+                    salida.write((int) (bits >>> desplazamiento));
+                }
+
+                break;
+            case ETIQUETA_VALOR_TEXTO:
+                escribirVarint(salida, idTexto);
+                break;
+            default:
+                escribirTexto(salida, this.texto);
+        }
+    }
+
+    private int etiquetaTexto(String valor) {
+        boolean internable = valor.length() <= LONGITUD_MAXIMA_TEXTO_INTERNADO
+                && (this.nombres.containsKey(valor) || this.nombres.size() < MAXIMO_NOMBRES);
+
+        return internable ? ETIQUETA_VALOR_TEXTO : ETIQUETA_VALOR_TEXTO_LITERAL;
+    }
+
+    private int internarNombre(String nombre, OutputStream salida) throws IOException {
+        Integer id = this.nombres.get(nombre);
+
+        if (id == null) {
+            id = this.nombres.size();
+            this.nombres.put(nombre, id);
+
+            salida.write(ETIQUETA_DEFINIR_NOMBRE);
+            escribirVarint(salida, id);
+            escribirTexto(salida, nombre);
+        }
+
+        return id;
+    }
+
+    private int internarCalificacion(String calificacion, OutputStream salida) throws IOException {
+        if (calificacion == null) {
+            return SIN_CALIFICACION;
+        }
+
+        Integer id = this.calificaciones.get(calificacion);
+
+        if (id == null) {
+            if (this.calificaciones.size() >= SIN_CALIFICACION) {
+                throw new IOException("El formato binario admite hasta " + SIN_CALIFICACION + " calificaciones distintas por sesión.");
+            }
+
+            id = this.calificaciones.size();
+            this.calificaciones.put(calificacion, id);
+
+            salida.write(ETIQUETA_DEFINIR_CALIFICACION);
+            salida.write(id);
+            escribirTexto(salida, calificacion);
+        }
+
+        return id;
+    }
+
+    private static boolean igualTexto(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static boolean esEntero(String valor) {
+        int longitud = valor.length();
+        int inicio = longitud > 0 && valor.charAt(0) == '-' ? 1 : 0;
+
+        if (longitud == inicio || longitud - inicio > 18 || (longitud - inicio > 1 && valor.charAt(inicio) == '0')) {
+            return false; // Vacío, posible desborde o ceros a la izquierda (no se podrían reconstruir).
+        }
+
+        for (int i = inicio; i < longitud; i++) {
+            char caracter = valor.charAt(i);
+
+            if (caracter < '0' || caracter > '9') {
+                return false;
+            }
+        }
+
+        return !valor.equals("-0");
+    }
+
+    private static boolean pareceNumero(String valor) {
+        if (valor.isEmpty()) {
+            return false;
+        }
+
+        char primero = valor.charAt(0);
+
+        return (primero >= '0' && primero <= '9') || primero == '-' || primero == 'I';
+    }
+
+    private static double leerReal(String valor) {
+        try {
+            return Double.parseDouble(valor);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    static long zigzag(long valor) {
+        return (valor << 1) ^ (valor >> 63);
+    }
+
+    static void escribirVarint(OutputStream salida, long valor) throws IOException {
+        while ((valor & ~0x7FL) != 0) {
+            salida.write((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+
+        salida.write((int) valor);
+    }
+
+    private static void escribirTexto(OutputStream salida, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(UTF_8);
+
+        escribirVarint(salida, bytes.length);
+        salida.write(bytes);
+    }
+
+}
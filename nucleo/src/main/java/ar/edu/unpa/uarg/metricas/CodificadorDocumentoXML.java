@@ -0,0 +1,277 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.UUID;
+
+/**
+ * Codifica los registros como un documento XML bien formado, que se puede
+ * leer de principio a fin con cualquier analizador XML (por ejemplo, con
+ * <code>LectorDocumentoXML</code>):
+ * <pre>
+ * &lt;?xml version="1.0" encoding="UTF-8"?&gt;
+ * &lt;metrics version="2"&gt;
+ * &lt;session id="..." date="2019-08-01T12:00:00.000-03:00" device="..." appVersion="1.2"/&gt;
+ * &lt;indicator name="Latency" date="2019-08-01T12:00:05.250-03:00" score="Buena" value="72.0"/&gt;
+ * &lt;indicator name="CPU" date="2019-08-01T12:00:06.000-03:00" value="3.5"/&gt;
+ * &lt;/metrics&gt;
+ * </pre>
+ * Todos los registros tienen el mismo esquema; los que no tienen una
+ * calificación simplemente no incluyen el atributo <code>score</code>.
+ * <p>
+ * Un <code>EventoCalificacion</code> se escribe como un único elemento, con
+ * la calificación, la fecha y el identificador una sola vez y los valores
+ * de las métricas en una lista; los nombres se declaran una única vez por
+ * sesión en un elemento <code>ratingFields</code> (ver
+ * <code>EscritorEventoXML</code>):
+ * <pre>
+ * &lt;ratingFields id="0" names="BatteryCharge|Latency|..."/&gt;
+ * &lt;rating id="17" date="..." score="Buena" fields="0" values="87|48.21|..."/&gt;
+ * </pre>
+ * <p>
+ * Cada vez que se abre el archivo se escribe un elemento
+ * <code>session</code> con el identificador de la sesión (uno por instancia
+ * del codificador), el dispositivo y la versión de la aplicación. El
+ * elemento raíz se cierra con <code>finalizar</code> al cerrar el archivo, y
+ * <code>reanudar</code> quita ese cierre antes de volver a abrirlo, de modo
+ * que el archivo sigue siendo un único documento a lo largo de las sesiones
+ * (si el cierre ya se había subido, <code>CanalSubida</code> lo detecta y
+ * vuelve a subir el documento desde ahí).
+ * Si la aplicación termina sin cerrar el archivo, el documento queda sin la
+ * etiqueta final hasta la próxima sesión (los registros ya escritos se
+ * pueden leer igual). Un archivo existente con el formato por líneas de
+ * <code>CodificadorXML</code> se conserva con la extensión «.anterior» y se
+ * comienza un documento nuevo.
+ * <p>
+ * Con el almacenamiento segmentado, cada segmento contiene su propio
+ * documento: se cierra antes de comenzar el siguiente segmento, y cada
+ * apertura del almacén comienza un segmento nuevo.
+ *
+ * @see LectorDocumentoXML
+ * @see CodificadorXML
+ */
+public class CodificadorDocumentoXML implements CodificadorRegistros {
+
+    static final String ELEMENTO_RAIZ = "metrics";
+    static final String ELEMENTO_SESION = "session";
+    static final String ELEMENTO_REGISTRO = "indicator";
+    static final String ELEMENTO_EVENTO = "rating";
+    static final String ELEMENTO_MEDICION = "metric";
+    static final String ELEMENTO_CAMPOS = "ratingFields";
+
+    /* La versión 2 declara una vez los nombres de las métricas de los
+     * eventos. */
+    static final int VERSION_FORMATO = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String DECLARACION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+    private static final String ETIQUETA_CIERRE = "</" + ELEMENTO_RAIZ + ">";
+    private static final byte[] CIERRE = (ETIQUETA_CIERRE + "\n").getBytes(UTF_8);
+    private static final int BYTES_FINAL_REVISADOS = 4096;
+
+    private final String idSesion = UUID.randomUUID().toString();
+    private final FormateadorFecha formateadorFecha;
+    private final EscritorRegistroXML escritor;
+    private final EscritorEventoXML escritorEventos = new EscritorEventoXML();
+
+    private volatile String dispositivo;
+    private volatile String versionAplicacion;
+    private boolean documentoIniciado;
+
+    /**
+     * Crea un codificador que escribe las fechas en ISO 8601, con
+     * milisegundos y zona horaria.
+     */
+    public CodificadorDocumentoXML() {
+        this(FormateadorFecha.Formato.ISO_8601);
+    }
+
+    /**
+     * @param formatoFecha El formato con el que se escriben las fechas.
+     */
+    public CodificadorDocumentoXML(FormateadorFecha.Formato formatoFecha) {
+        this.formateadorFecha = new FormateadorFecha(formatoFecha);
+        this.escritor = new EscritorRegistroXML(new java.io.ByteArrayOutputStream(0), 512); // Cada registro indica su flujo.
+    }
+
+    /**
+     * Establece los datos que se escriben en la cabecera de cada sesión. El
+     * cambio se aplica la próxima vez que se abra el archivo.
+     *
+     * @param dispositivo       El fabricante y el modelo del dispositivo, o
+     *                          <code>null</code> para omitirlo.
+     * @param versionAplicacion La versión de la aplicación que se mide, o
+     *                          <code>null</code> para omitirla.
+     */
+    public void setDatosSesion(String dispositivo, String versionAplicacion) {
+        this.dispositivo = dispositivo;
+        this.versionAplicacion = versionAplicacion;
+    }
+
+    /**
+     * @return El identificador que se escribe en las cabeceras de sesión de
+     * este codificador.
+     */
+    public String getIdSesion() {
+        return this.idSesion;
+    }
+
+    @Override
+    public void reanudar(File archivo) throws IOException {
+        this.documentoIniciado = false;
+
+        if (!archivo.isFile() || archivo.length() == 0) {
+            return;
+        }
+
+        boolean esDocumento;
+
+        try (RandomAccessFile acceso = new RandomAccessFile(archivo, "rw")) {
+            byte[] comienzo = new byte[5];
+
+            esDocumento = acceso.read(comienzo) == comienzo.length && new String(comienzo, UTF_8).equals("<?xml");
+
+            if (esDocumento) {
+                acceso.setLength(buscarFinContenido(acceso));
+                this.documentoIniciado = acceso.length() > 0;
+            }
+        }
+
+        if (!esDocumento) {
+            conservarArchivoAnterior(archivo);
+        }
+    }
+
+    @Override
+    public void iniciar(OutputStream salida) throws IOException {
+        this.escritor.reiniciar(salida);
+        this.escritorEventos.reiniciar();
+
+        if (!this.documentoIniciado) {
+            this.escritor.textoLiteral(DECLARACION);
+            this.escritor.iniciarElemento(ELEMENTO_RAIZ);
+            this.escritor.atributo("version", VERSION_FORMATO);
+            this.escritor.nuevaLinea();
+            this.documentoIniciado = true;
+        }
+
+        String dispositivoActual = this.dispositivo;
+        String versionActual = this.versionAplicacion;
+
+        this.escritor.iniciarElemento(ELEMENTO_SESION);
+        this.escritor.atributo("id", this.idSesion);
+        this.escritor.atributo("date", System.currentTimeMillis(), this.formateadorFecha);
+
+        if (dispositivoActual != null) {
+            this.escritor.atributo("device", dispositivoActual);
+        }
+
+        if (versionActual != null) {
+            this.escritor.atributo("appVersion", versionActual);
+        }
+
+        this.escritor.finalizarElementoVacio();
+        this.escritor.nuevaLinea();
+        this.escritor.flush();
+    }
+
+    @Override
+    public void codificar(RegistroMetrica registro, OutputStream salida) throws IOException {
+        this.escritor.reiniciar(salida);
+
+        if (registro.getTipoValor() == RegistroMetrica.TipoValor.EVENTO) {
+            this.escritorEventos.escribir(this.escritor, registro.getEvento(), this.formateadorFecha);
+            this.escritor.nuevaLinea();
+            this.escritor.flush();
+
+            return;
+        }
+
+        this.escritor.iniciarElemento(ELEMENTO_REGISTRO);
+        this.escritor.atributo("name", registro.getMetrica());
+        this.escritor.atributo("date", registro.getFechaMilisegundos(), this.formateadorFecha);
+
+        if (registro.getCalificacionUsuario() != null) {
+            this.escritor.atributo("score", registro.getCalificacionUsuario());
+        }
+
+        this.escritor.atributo("value", registro);
+        this.escritor.finalizarElementoVacio();
+        this.escritor.nuevaLinea();
+        this.escritor.flush();
+    }
+
+    @Override
+    public void finalizar(OutputStream salida) throws IOException {
+        if (this.documentoIniciado) {
+            salida.write(CIERRE);
+            this.documentoIniciado = false;
+        }
+    }
+
+    @Override
+    public int getBytesCierre() {
+        return CIERRE.length;
+    }
+
+    @Override
+    public String getExtension() {
+        return "xml";
+    }
+
+    /**
+     * @return La longitud del archivo sin la etiqueta final del documento ni
+     * la última línea, si quedó a medio escribir.
+     */
+    private static long buscarFinContenido(RandomAccessFile acceso) throws IOException {
+        long longitud = acceso.length();
+        int cantidad = (int) Math.min(longitud, BYTES_FINAL_REVISADOS);
+        byte[] ultimosBytes = new byte[cantidad];
+
+        acceso.seek(longitud - cantidad);
+        acceso.readFully(ultimosBytes);
+
+        /* Se descarta lo que siga al último salto de línea: cada registro
+         * termina con uno, así que es un registro incompleto. */
+        int fin = cantidad;
+
+        while (fin > 0 && ultimosBytes[fin - 1] != '\n') {
+            fin--;
+        }
+
+        if (fin == 0) {
+            return longitud == cantidad ? 0 : longitud; // Una única línea incompleta, o una línea demasiado larga.
+        }
+
+        /* Si la última línea completa es el cierre, también se quita. */
+        int inicioLinea = fin - 1;
+
+        while (inicioLinea > 0 && ultimosBytes[inicioLinea - 1] != '\n') {
+            inicioLinea--;
+        }
+
+        String ultimaLinea = new String(ultimosBytes, inicioLinea, fin - inicioLinea, UTF_8).trim();
+
+        if (ultimaLinea.equals(ETIQUETA_CIERRE)) {
+            fin = inicioLinea;
+        }
+
+        return longitud - cantidad + fin;
+    }
+
+    private static void conservarArchivoAnterior(File archivo) throws IOException {
+        File anterior = new File(archivo.getPath() + ".anterior");
+
+        for (int i = 2; anterior.exists(); i++) {
+            anterior = new File(archivo.getPath() + ".anterior." + i);
+        }
+
+        if (!archivo.renameTo(anterior)) {
+            throw new IOException("No se pudo renombrar el archivo «" + archivo + "», que no es un documento XML de métricas.");
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Convierte objetos <code>RegistroMetrica</code> en los bytes que se guardan
+ * en el archivo de métricas. Un codificador puede tener estado (por ejemplo,
+ * un diccionario de nombres ya escritos), por lo que cada instancia se usa
+ * para un único archivo a la vez y siempre desde el mismo hilo.
+ *
+ * @see CodificadorDocumentoXML
+ * @see CodificadorXML
+ * @see CodificadorBinario
+ */
+public interface CodificadorRegistros {
+
+    /**
+     * Se invoca cada vez que se abre el archivo de destino, antes de
+     * codificar el primer registro. Permite escribir una cabecera y descartar
+     * el estado de una sesión anterior.
+     *
+     * @param salida El flujo en el que se escribe la cabecera.
+     * @throws IOException Si falla la escritura.
+     */
+    void iniciar(OutputStream salida) throws IOException;
+
+    /**
+     * Se invoca antes de volver a abrir un archivo existente para agregarle
+     * registros (no se invoca para el almacenamiento segmentado). Permite
+     * dejar el archivo listo para continuarlo; por ejemplo, quitar el cierre
+     * que escribió <code>finalizar</code> o una línea a medio escribir.
+     *
+     * @param archivo El archivo que se va a abrir. Puede no existir.
+     * @throws IOException Si falla la lectura o la modificación del archivo.
+     */
+    void reanudar(File archivo) throws IOException;
+
+    /**
+     * Escribe el registro en el flujo de salida.
+     *
+     * @param registro El registro a codificar.
+     * @param salida   El flujo en el que se escribe el registro.
+     * @throws IOException Si falla la escritura.
+     */
+    void codificar(RegistroMetrica registro, OutputStream salida) throws IOException;
+
+    /**
+     * Se invoca antes de cerrar el archivo, después del último registro.
+     * Permite escribir un cierre (por ejemplo, la etiqueta final de un
+     * documento).
+     *
+     * @param salida El flujo en el que se escribe el cierre.
+     * @throws IOException Si falla la escritura.
+     */
+    void finalizar(OutputStream salida) throws IOException;
+
+    /**
+     * @return La cantidad máxima de bytes que escribe <code>finalizar</code>.
+     * El almacenamiento segmentado deja ese espacio libre en cada segmento,
+     * para poder cerrarlo antes de comenzar el siguiente.
+     */
+    int getBytesCierre();
+
+    /**
+     * @return La extensión (sin el punto) del archivo que genera este
+     * codificador. Por ejemplo, "xml".
+     */
+    String getExtension();
+
+}
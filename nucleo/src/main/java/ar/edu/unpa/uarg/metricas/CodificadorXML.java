@@ -0,0 +1,124 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Codifica cada registro como una línea XML, que es el formato histórico del
+ * archivo «metricas.xml»:
+ * <pre>
+ * &lt;indicator name="Latency" date="2019-08-01 12:00:00" score="Buena"&gt;72.0&lt;/indicator&gt;
+ * </pre>
+ * Los registros sin calificación se escriben con el esquema anterior
+ * (<code>&lt;metrica indicador="..." fecha="..."&gt;</code>), y los eventos
+ * de calificación, en una línea con el mismo elemento
+ * <code>&lt;rating&gt;</code> que usa <code>CodificadorDocumentoXML</code>
+ * (la declaración de sus nombres, que se escribe una vez por archivo,
+ * ocupa otra línea).
+ * <p>
+ * Los nombres, las calificaciones y los valores se escapan, y los valores
+ * numéricos se escriben sin convertirlos antes a texto. Las fechas se
+ * escriben por defecto con el formato histórico, con una resolución de un
+ * segundo; con <code>FormateadorFecha.Formato.ISO_8601</code> incluyen los
+ * milisegundos y la zona horaria.
+ *
+ * @see EscritorRegistroXML
+ * @see FormateadorFecha
+ */
+public class CodificadorXML implements CodificadorRegistros {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final FormateadorFecha formateadorFecha;
+    private final EscritorRegistroXML escritor;
+    private final EscritorEventoXML escritorEventos = new EscritorEventoXML();
+
+    /**
+     * Crea un codificador que escribe las fechas con el formato histórico
+     * («yyyy-MM-dd HH:mm:ss»).
+     */
+    public CodificadorXML() {
+        this(FormateadorFecha.Formato.CLASICO);
+    }
+
+    /**
+     * @param formatoFecha El formato con el que se escriben las fechas.
+     */
+    public CodificadorXML(FormateadorFecha.Formato formatoFecha) {
+        this.formateadorFecha = new FormateadorFecha(formatoFecha);
+        this.escritor = new EscritorRegistroXML(new java.io.ByteArrayOutputStream(0), 512); // Cada registro indica su flujo.
+    }
+
+    @Override
+    public void iniciar(OutputStream salida) {
+        /* El formato XML por líneas no tiene cabecera, pero los nombres de
+         * los eventos se vuelven a declarar en cada archivo. */
+        this.escritorEventos.reiniciar();
+    }
+
+    @Override
+    public void reanudar(File archivo) {
+        // Las líneas se agregan al final tal como están.
+    }
+
+    @Override
+    public void codificar(RegistroMetrica registro, OutputStream salida) throws IOException {
+        this.escritor.reiniciar(salida);
+
+        if (registro.getTipoValor() == RegistroMetrica.TipoValor.EVENTO) {
+            this.escritorEventos.escribir(this.escritor, registro.getEvento(), this.formateadorFecha);
+        } else if (registro.getCalificacionUsuario() == null) {
+            this.escritor.iniciarElemento("metrica");
+            this.escritor.atributo("indicador", registro.getMetrica());
+            this.escritor.atributo("fecha", registro.getFechaMilisegundos(), this.formateadorFecha);
+            this.escritor.valor(registro);
+            this.escritor.finalizarElemento("metrica");
+        } else {
+            this.escritor.iniciarElemento("indicator");
+            this.escritor.atributo("name", registro.getMetrica());
+            this.escritor.atributo("date", registro.getFechaMilisegundos(), this.formateadorFecha);
+            this.escritor.atributo("score", registro.getCalificacionUsuario());
+            this.escritor.valor(registro);
+            this.escritor.finalizarElemento("indicator");
+        }
+
+        this.escritor.nuevaLinea();
+        this.escritor.flush();
+    }
+
+    @Override
+    public void finalizar(OutputStream salida) {
+        // El formato XML por líneas no tiene cierre.
+    }
+
+    @Override
+    public int getBytesCierre() {
+        return 0;
+    }
+
+    @Override
+    public String getExtension() {
+        return "xml";
+    }
+
+    /**
+     * @param registro El registro a formatear.
+     * @return La línea XML que corresponde al registro, con su terminador
+     * (para un evento de calificación, precedida por la declaración de sus
+     * nombres si este codificador todavía no la había escrito).
+     */
+    public String formatear(RegistroMetrica registro) {
+        java.io.ByteArrayOutputStream linea = new java.io.ByteArrayOutputStream(128);
+
+        try {
+            this.codificar(registro, linea);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Un ByteArrayOutputStream no falla.
+        }
+
+        return new String(linea.toByteArray(), UTF_8);
+    }
+
+}
@@ -0,0 +1,148 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cola circular acotada y libre de bloqueos (basada en el algoritmo de
+ * Dmitry Vyukov). Admite varios productores y varios consumidores
+ * concurrentes; en la librería se usa con muchos productores (los hilos de la
+ * aplicación) y un único consumidor (el hilo escritor), aunque los
+ * productores también pueden extraer elementos para descartar los más
+ * antiguos cuando la cola está llena.
+ * <p>
+ * Cada celda tiene un número de secuencia que indica si está libre para el
+ * productor de la vuelta actual o lista para el consumidor, lo que evita
+ * tener que bloquear la cola completa.
+ *
+ * @param <E> El tipo de los elementos almacenados.
+ */
+public final class ColaRegistros<E> {
+
+    private final int mascara;
+    private final AtomicReferenceArray<E> elementos;
+    private final AtomicLongArray secuencias;
+    private final AtomicLong posicionEscritura = new AtomicLong();
+    private final AtomicLong posicionLectura = new AtomicLong();
+
+    /**
+     * @param capacidad La cantidad máxima de elementos. Se redondea a la
+     *                  siguiente potencia de dos.
+     */
+    public ColaRegistros(int capacidad) {
+        if (capacidad < 2 || capacidad > (1 << 30)) {
+            throw new IllegalArgumentException("La capacidad de la cola debe estar entre 2 y 2^30 (se recibió " + capacidad + ").");
+        }
+
+        int capacidadReal = Integer.highestOneBit(capacidad - 1) << 1;
+
+        this.mascara = capacidadReal - 1;
+        this.elementos = new AtomicReferenceArray<>(capacidadReal);
+        this.secuencias = new AtomicLongArray(capacidadReal);
+
+        for (int i = 0; i < capacidadReal; i++) {
+            this.secuencias.set(i, i);
+        }
+    }
+
+    /**
+     * Intenta agregar un elemento al final de la cola.
+     *
+     * @param elemento El elemento a agregar (no puede ser <code>null</code>).
+     * @return <code>true</code> si se agregó y <code>false</code> si la cola
+     * estaba llena.
+     */
+    public boolean ofrecer(E elemento) {
+        long posicion = this.posicionEscritura.get();
+
+        while (true) {
+            int indice = (int) (posicion & this.mascara);
+            long diferencia = this.secuencias.get(indice) - posicion;
+
+            if (diferencia == 0) {
+                if (this.posicionEscritura.compareAndSet(posicion, posicion + 1)) {
+                    this.elementos.lazySet(indice, elemento);
+                    this.secuencias.set(indice, posicion + 1);
+
+                    return true;
+                }
+            } else if (diferencia < 0) {
+                return false; // La celda todavía no fue consumida en la vuelta anterior: la cola está llena.
+            }
+
+            posicion = this.posicionEscritura.get();
+        }
+    }
+
+    /**
+     * Extrae el elemento más antiguo de la cola.
+     *
+     * @return El elemento extraído o <code>null</code> si la cola está vacía.
+     */
+    public E extraer() {
+        long posicion = this.posicionLectura.get();
+
+        while (true) {
+            int indice = (int) (posicion & this.mascara);
+            long diferencia = this.secuencias.get(indice) - (posicion + 1);
+
+            if (diferencia == 0) {
+                if (this.posicionLectura.compareAndSet(posicion, posicion + 1)) {
+                    E elemento = this.elementos.get(indice);
+
+                    this.elementos.lazySet(indice, null);
+                    this.secuencias.set(indice, posicion + this.mascara + 1);
+
+                    return elemento;
+                }
+            } else if (diferencia < 0) {
+                return null;
+            }
+
+            posicion = this.posicionLectura.get();
+        }
+    }
+
+    /**
+     * Extrae hasta <code>destino.length</code> elementos y los copia en el
+     * arreglo recibido, en orden de llegada.
+     *
+     * @param destino El arreglo en el que se copian los elementos extraídos.
+     * @return La cantidad de elementos extraídos.
+     */
+    public int drenar(E[] destino) {
+        int cantidad = 0;
+
+        while (cantidad < destino.length) {
+            E elemento = this.extraer();
+
+            if (elemento == null) {
+                break;
+            }
+
+            destino[cantidad++] = elemento;
+        }
+
+        return cantidad;
+    }
+
+    /**
+     * @return La cantidad aproximada de elementos en la cola. El valor puede
+     * estar desactualizado si hay hilos operando sobre la cola.
+     */
+    public int tamanio() {
+        long tamanio = this.posicionEscritura.get() - this.posicionLectura.get();
+
+        return (int) Math.max(0, Math.min(tamanio, this.mascara + 1));
+    }
+
+    public boolean estaVacia() {
+        return this.tamanio() == 0;
+    }
+
+    public int getCapacidad() {
+        return this.mascara + 1;
+    }
+
+}
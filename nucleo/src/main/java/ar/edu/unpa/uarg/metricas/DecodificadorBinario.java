@@ -0,0 +1,381 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * Lee, registro por registro, un archivo generado por
+ * <code>CodificadorBinario</code>. La lectura es secuencial y no requiere
+ * cargar el archivo completo en memoria, por lo que también sirve para
+ * convertir archivos grandes al formato XML que utilizan las herramientas
+ * existentes (ver <code>convertirAXML</code>).
+ *
+ * @see CodificadorBinario
+ */
+public class DecodificadorBinario {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final InputStream entrada;
+    private final ArrayList<String> nombres = new ArrayList<>();
+    private final String[] calificaciones = new String[CodificadorBinario.SIN_CALIFICACION];
+
+    /* Por cada plantilla, los nombres de las mediciones y los últimos valores
+     * leídos (null si todavía no se leyó ninguno). */
+    private final ArrayList<String[]> nombresPlantillas = new ArrayList<>();
+    private final ArrayList<String[]> valoresPlantillas = new ArrayList<>();
+    private long fechaAnterior;
+    private long idEventoAnterior;
+
+    /**
+     * @param entrada El flujo del que se leen los registros. Conviene que
+     *                tenga buffer (por ejemplo, un
+     *                <code>BufferedInputStream</code>), ya que se lee byte a
+     *                byte.
+     */
+    public DecodificadorBinario(InputStream entrada) {
+        this.entrada = entrada;
+    }
+
+    /**
+     * Lee el siguiente registro del flujo.
+     *
+     * @return El registro leído o <code>null</code> si se llegó al final del
+     * flujo.
+     * @throws IOException Si el flujo no respeta el formato o termina en medio
+     *                     de un registro.
+     */
+    public RegistroMetrica leer() throws IOException {
+        while (true) {
+            int etiqueta = this.entrada.read();
+
+            if (etiqueta == -1) {
+                return null;
+            }
+
+            switch (etiqueta) {
+                case 'Q':
+                    this.leerCabecera();
+                    break;
+                case CodificadorBinario.ETIQUETA_DEFINIR_NOMBRE:
+                    int id = (int) this.leerVarint();
+
+                    if (id != this.nombres.size()) {
+                        throw new IOException("Identificador de nombre fuera de secuencia: " + id + ".");
+                    }
+
+                    this.nombres.add(this.leerTexto());
+                    break;
+                case CodificadorBinario.ETIQUETA_DEFINIR_CALIFICACION:
+                    this.calificaciones[this.leerByte()] = this.leerTexto();
+                    break;
+                case CodificadorBinario.ETIQUETA_DEFINIR_PLANTILLA:
+                    this.leerPlantilla();
+                    break;
+                case CodificadorBinario.ETIQUETA_VALOR_ENTERO:
+                case CodificadorBinario.ETIQUETA_VALOR_REAL:
+                case CodificadorBinario.ETIQUETA_VALOR_REAL_ENTERO:
+                case CodificadorBinario.ETIQUETA_VALOR_TEXTO:
+                case CodificadorBinario.ETIQUETA_VALOR_TEXTO_LITERAL:
+                case CodificadorBinario.ETIQUETA_VALOR_DECIMAL:
+                    return this.leerMuestra(etiqueta);
+                case CodificadorBinario.ETIQUETA_EVENTO:
+                    return this.leerEvento();
+                case CodificadorBinario.ETIQUETA_EVENTO_PLANTILLA:
+                    return this.leerEventoPlantilla();
+                default:
+                    throw new IOException("Etiqueta desconocida en el archivo binario de métricas: 0x" + Integer.toHexString(etiqueta) + ".");
+            }
+        }
+    }
+
+    /**
+     * Convierte un archivo binario completo al formato XML por líneas que
+     * genera <code>CodificadorXML</code>.
+     *
+     * @param entrada El flujo con los registros en formato binario.
+     * @param salida  El flujo en el que se escriben las líneas XML.
+     * @return La cantidad de registros convertidos.
+     * @throws IOException Si falla la lectura o la escritura.
+     */
+    public static long convertirAXML(InputStream entrada, OutputStream salida) throws IOException {
+        DecodificadorBinario decodificador = new DecodificadorBinario(entrada);
+        CodificadorXML codificadorXML = new CodificadorXML();
+        RegistroMetrica registro;
+        long cantidad = 0;
+
+        codificadorXML.iniciar(salida);
+
+        while ((registro = decodificador.leer()) != null) {
+            codificadorXML.codificar(registro, salida);
+            cantidad++;
+        }
+
+        return cantidad;
+    }
+
+    private void leerCabecera() throws IOException {
+        byte[] cabecera = CodificadorBinario.CABECERA;
+
+        for (int i = 1; i < cabecera.length - 1; i++) {
+            if (this.leerByte() != cabecera[i]) {
+                throw new IOException("Cabecera inválida en el archivo binario de métricas.");
+            }
+        }
+
+        int version = this.leerByte();
+
+        if (version < 1 || version > cabecera[cabecera.length - 1]) {
+            throw new IOException("Versión no soportada del formato binario de métricas: " + version + ".");
+        }
+
+        this.nombres.clear();
+        java.util.Arrays.fill(this.calificaciones, null);
+        this.nombresPlantillas.clear();
+        this.valoresPlantillas.clear();
+        this.fechaAnterior = 0;
+        this.idEventoAnterior = 0;
+    }
+
+    private RegistroMetrica leerMuestra(int etiqueta) throws IOException {
+        String metrica = this.nombre(this.leerVarint());
+        long fecha = this.fechaAnterior + dezigzag(this.leerVarint());
+        String calificacion = this.leerCalificacion();
+        String valor = this.leerValor(etiqueta);
+
+        this.fechaAnterior = fecha;
+
+        return new RegistroMetrica(calificacion, metrica, valor, fecha);
+    }
+
+    private RegistroMetrica leerEvento() throws IOException {
+        long id = this.idEventoAnterior + dezigzag(this.leerVarint());
+        long fecha = this.fechaAnterior + dezigzag(this.leerVarint());
+        String calificacion = this.leerCalificacion();
+        long cantidad = this.leerVarint();
+
+        if (calificacion == null || cantidad < 0 || cantidad > Integer.MAX_VALUE) {
+            throw new IOException("Evento de calificación inválido: " + id + ".");
+        }
+
+        ArrayList<RegistroMetrica> mediciones = new ArrayList<>();
+
+        for (long i = 0; i < cantidad; i++) {
+            int etiqueta = this.leerEtiquetaValor(id);
+            String metrica = this.nombre(this.leerVarint());
+
+            mediciones.add(new RegistroMetrica(null, metrica, this.leerValor(etiqueta), fecha));
+        }
+
+        this.idEventoAnterior = id;
+        this.fechaAnterior = fecha;
+
+        try {
+            return new RegistroMetrica(new EventoCalificacion(id, calificacion, fecha, mediciones.toArray(new RegistroMetrica[mediciones.size()])));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Lee la definición de una plantilla. Un identificador ya definido se
+     * reemplaza (el codificador vuelve a empezar desde 0 al llegar a su
+     * límite de plantillas).
+     */
+    private void leerPlantilla() throws IOException {
+        long id = this.leerVarint();
+        long cantidad = this.leerVarint();
+
+        /* Los nombres se pueden repetir dentro de una plantilla, así que la
+         * cantidad sólo se limita para no reservar memoria sin límite; cada
+         * nombre se verifica al leerlo. */
+        if (id < 0 || id > this.nombresPlantillas.size() || cantidad < 0 || cantidad > CodificadorBinario.MAXIMO_MEDICIONES_EVENTO) {
+            throw new IOException("Definición de plantilla inválida: " + id + ".");
+        }
+
+        String[] nombresPlantilla = new String[(int) cantidad];
+
+        for (int i = 0; i < nombresPlantilla.length; i++) {
+            nombresPlantilla[i] = this.nombre(this.leerVarint());
+        }
+
+        if (id == this.nombresPlantillas.size()) {
+            this.nombresPlantillas.add(nombresPlantilla);
+            this.valoresPlantillas.add(new String[nombresPlantilla.length]);
+        } else {
+            this.nombresPlantillas.set((int) id, nombresPlantilla);
+            this.valoresPlantillas.set((int) id, new String[nombresPlantilla.length]);
+        }
+    }
+
+    /**
+     * Lee un evento de la versión 3: las mediciones que no cambiaron toman
+     * el último valor leído con la misma plantilla.
+     */
+    private RegistroMetrica leerEventoPlantilla() throws IOException {
+        long id = this.idEventoAnterior + dezigzag(this.leerVarint());
+        long fecha = this.fechaAnterior + dezigzag(this.leerVarint());
+        String calificacion = this.leerCalificacion();
+        long idPlantilla = this.leerVarint();
+
+        if (calificacion == null || idPlantilla < 0 || idPlantilla >= this.nombresPlantillas.size()) {
+            throw new IOException("Evento de calificación inválido: " + id + ".");
+        }
+
+        String[] nombresPlantilla = this.nombresPlantillas.get((int) idPlantilla);
+        String[] valores = this.valoresPlantillas.get((int) idPlantilla);
+        byte[] cambios = new byte[(nombresPlantilla.length + 7) / 8];
+
+        for (int i = 0; i < cambios.length; i++) {
+            cambios[i] = (byte) this.leerByte();
+        }
+
+        RegistroMetrica[] mediciones = new RegistroMetrica[nombresPlantilla.length];
+
+        for (int i = 0; i < mediciones.length; i++) {
+            if ((cambios[i / 8] & (1 << (i % 8))) != 0) {
+                valores[i] = this.leerValor(this.leerEtiquetaValor(id));
+            } else if (valores[i] == null) {
+                throw new IOException("El evento " + id + " no tiene el valor de «" + nombresPlantilla[i] + "».");
+            }
+
+            mediciones[i] = new RegistroMetrica(null, nombresPlantilla[i], valores[i], fecha);
+        }
+
+        this.idEventoAnterior = id;
+        this.fechaAnterior = fecha;
+
+        return new RegistroMetrica(new EventoCalificacion(id, calificacion, fecha, mediciones));
+    }
+
+    private int leerEtiquetaValor(long idEvento) throws IOException {
+        int etiqueta = this.leerByte();
+
+        if (etiqueta < CodificadorBinario.ETIQUETA_VALOR_ENTERO || etiqueta > CodificadorBinario.ETIQUETA_VALOR_DECIMAL) {
+            throw new IOException("Etiqueta de valor desconocida en el evento " + idEvento + ": 0x" + Integer.toHexString(etiqueta) + ".");
+        }
+
+        return etiqueta;
+    }
+
+    private String leerCalificacion() throws IOException {
+        int idCalificacion = this.leerByte();
+
+        if (idCalificacion == CodificadorBinario.SIN_CALIFICACION) {
+            return null;
+        }
+
+        String calificacion = this.calificaciones[idCalificacion];
+
+        if (calificacion == null) {
+            throw new IOException("Calificación no definida: " + idCalificacion + ".");
+        }
+
+        return calificacion;
+    }
+
+    private String leerValor(int etiqueta) throws IOException {
+        String valor;
+
+        switch (etiqueta) {
+            case CodificadorBinario.ETIQUETA_VALOR_ENTERO:
+                valor = Long.toString(dezigzag(this.leerVarint()));
+                break;
+            case CodificadorBinario.ETIQUETA_VALOR_REAL_ENTERO:
+                valor = dezigzag(this.leerVarint()) + ".0";
+                break;
+            case CodificadorBinario.ETIQUETA_VALOR_REAL:
+                long bits = 0;
+
+                for (int i = 0; i < 8; i++) {
+                    bits = (bits << 8) | this.leerByte();
+                }
+
+                valor = Double.toString(Double.longBitsToDouble(bits));
+                break;
+            case CodificadorBinario.ETIQUETA_VALOR_DECIMAL:
+                long decimal = this.leerVarint();
+                int escala = (int) (decimal & 0xF);
+
+                if (escala == 0) {
+                    throw new IOException("Valor decimal sin decimales en el archivo binario de métricas.");
+                }
+
+                valor = Double.toString(dezigzag(decimal >>> 4) / CodificadorBinario.POTENCIAS_DIEZ[escala]);
+                break;
+            case CodificadorBinario.ETIQUETA_VALOR_TEXTO:
+                valor = this.nombre(this.leerVarint());
+                break;
+            default:
+                valor = this.leerTexto();
+        }
+
+        return valor;
+    }
+
+    private String nombre(long id) throws IOException {
+        if (id < 0 || id >= this.nombres.size()) {
+            throw new IOException("Nombre no definido: " + id + ".");
+        }
+
+        return this.nombres.get((int) id);
+    }
+
+    private int leerByte() throws IOException {
+        int valor = this.entrada.read();
+
+        if (valor == -1) {
+            throw new EOFException("El archivo binario de métricas termina en medio de un registro.");
+        }
+
+        return valor;
+    }
+
+    private long leerVarint() throws IOException {
+        long valor = 0;
+
+        for (int desplazamiento = 0; desplazamiento < 64; desplazamiento += 7) {
+            int actual = this.leerByte();
+
+            valor |= (long) (actual & 0x7F) << desplazamiento;
+
+            if ((actual & 0x80) == 0) {
+                return valor;
+            }
+        }
+
+        throw new IOException("Varint demasiado largo en el archivo binario de métricas.");
+    }
+
+    private String leerTexto() throws IOException {
+        long longitud = this.leerVarint();
+
+        if (longitud < 0 || longitud > Integer.MAX_VALUE) {
+            throw new IOException("Longitud de texto inválida: " + longitud + ".");
+        }
+
+        byte[] bytes = new byte[(int) longitud];
+        int leidos = 0;
+
+        while (leidos < bytes.length) {
+            int cantidad = this.entrada.read(bytes, leidos, bytes.length - leidos);
+
+            if (cantidad == -1) {
+                throw new EOFException("El archivo binario de métricas termina en medio de un registro.");
+            }
+
+            leidos += cantidad;
+        }
+
+        return new String(bytes, UTF_8);
+    }
+
+    private static long dezigzag(long valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+
+}
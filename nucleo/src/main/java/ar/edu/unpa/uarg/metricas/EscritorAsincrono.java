@@ -0,0 +1,455 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Traslada la escritura de registros a un único hilo en segundo plano. Los
+ * hilos de la aplicación (incluido el hilo principal) sólo encolan el
+ * registro en una <code>ColaRegistros</code> y retornan de inmediato; el hilo
+ * escritor la drena en lotes, codifica cada registro con el
+ * <code>CodificadorRegistros</code> indicado y lo agrega al
+ * <code>AlmacenMetricas</code>.
+ * <p>
+ * Si la cola se llena, se aplica la <code>PoliticaContrapresion</code>
+ * indicada y se lleva la cuenta de los registros descartados.
+ * <p>
+ * Al cerrarse, el hilo escritor espera a los productores que ya estaban
+ * encolando antes de drenar la cola por última vez: un registro que se
+ * aceptó siempre llega al almacén.
+ * <p>
+ * Si falla una escritura en el almacén, se pierden los bytes que no se
+ * escribieron, que pueden incluir definiciones del codificador (un nombre
+ * del diccionario binario, una declaración de métricas) a las que se
+ * refieren los registros siguientes. Por eso, antes del siguiente registro
+ * se vuelve a invocar <code>iniciar</code> y se agrega su cabecera: el
+ * codificador comienza una sesión nueva, con su estado vacío, y el resto
+ * del archivo se puede leer.
+ * <p>
+ * El almacén también lo abre el hilo escritor (ver <code>Apertura</code>),
+ * así que crear el escritor no espera ninguna operación de E/S. Si no se
+ * puede abrir, los registros se pierden y se informa el error, y se vuelve a
+ * intentar con el registro siguiente.
+ *
+ * @see ColaRegistros
+ * @see CodificadorRegistros
+ * @see AlmacenMetricas
+ */
+public class EscritorAsincrono implements java.io.Closeable {
+
+    /**
+     * Abre el almacén en el que escribe un <code>EscritorAsincrono</code>.
+     */
+    public interface Apertura {
+
+        /**
+         * Lo invoca el hilo escritor antes de escribir el primer registro y,
+         * si falla, antes de cada registro siguiente hasta que lo logra.
+         *
+         * @return El almacén abierto.
+         * @throws IOException Si no se pudo abrir el almacén.
+         */
+        AlmacenMetricas abrir() throws IOException;
+
+    }
+
+    private static final int TAMANIO_LOTE = 64;
+    private static final long ESPERA_PRODUCTOR_NANOS = 100000L; // 0,1 ms.
+    private static final long ESPERA_MAXIMA_ESCRITOR_NANOS = 1000000000L; // 1 s.
+
+    private final java.io.File archivo;
+    private final Apertura apertura;
+    private final CodificadorRegistros codificador;
+    private final ColaRegistros<RegistroMetrica> cola;
+    private final PoliticaContrapresion politica;
+    private final Thread hiloEscritor;
+    private final AtomicLong registrosDescartados = new AtomicLong();
+    private final AtomicInteger productoresActivos = new AtomicInteger();
+    private final long esperaEscritorNanos;
+
+    private volatile boolean escritorEsperando;
+    private volatile boolean vaciadoSolicitado;
+    private volatile boolean detenido;
+    private volatile IOException ultimoError;
+
+    /* Sólo los usa el hilo escritor (ver reiniciarCodificador). */
+    private AlmacenMetricas almacen;
+    private boolean codificadorInvalido = true;
+
+    /**
+     * Crea el escritor e inicia su hilo.
+     *
+     * @param almacen   El almacén al que se van a agregar los registros. A
+     *                  partir de este momento sólo lo utiliza el hilo
+     *                  escritor, que lo cierra al cerrarse este objeto.
+     * @param codificador El codificador con el que se convierten los
+     *                    registros en bytes. Sólo lo utiliza el hilo escritor.
+     * @param capacidad La cantidad máxima de registros que pueden esperar en
+     *                  la cola.
+     * @param politica  Qué hacer cuando la cola está llena.
+     */
+    public EscritorAsincrono(final AlmacenMetricas almacen, CodificadorRegistros codificador, int capacidad, PoliticaContrapresion politica) {
+        this(almacen.getArchivo(), almacen.getPolitica(), new Apertura() {
+            public AlmacenMetricas abrir() {
+                return almacen;
+            }
+        }, codificador, capacidad, politica);
+    }
+
+    /**
+     * Crea el escritor e inicia su hilo, que abre el almacén antes de
+     * escribir.
+     *
+     * @param archivo         El archivo (o directorio) del almacén.
+     * @param politicaVaciado La política de vaciado del almacén.
+     * @param apertura        Abre el almacén desde el hilo escritor, que lo
+     *                        cierra al cerrarse este objeto.
+     * @param codificador     El codificador con el que se convierten los
+     *                        registros en bytes. Sólo lo utiliza el hilo
+     *                        escritor.
+     * @param capacidad       La cantidad máxima de registros que pueden
+     *                        esperar en la cola.
+     * @param politica        Qué hacer cuando la cola está llena.
+     */
+    public EscritorAsincrono(java.io.File archivo, PoliticaVaciado politicaVaciado, Apertura apertura, CodificadorRegistros codificador, int capacidad, PoliticaContrapresion politica) {
+        this.archivo = archivo;
+        this.apertura = apertura;
+        this.codificador = codificador;
+        this.cola = new ColaRegistros<>(capacidad);
+        this.politica = politica;
+
+        long maximoMilisegundos = politicaVaciado.getMaximoMilisegundos();
+        this.esperaEscritorNanos = maximoMilisegundos > 0
+                ? Math.min(ESPERA_MAXIMA_ESCRITOR_NANOS, maximoMilisegundos * 1000000L)
+                : ESPERA_MAXIMA_ESCRITOR_NANOS;
+
+        this.hiloEscritor = new Thread(new Runnable() {
+            public void run() {
+                ejecutarEscritor();
+            }
+        }, "Q2M-EscritorMetricas");
+        this.hiloEscritor.setDaemon(true);
+        this.hiloEscritor.start();
+    }
+
+    /**
+     * Encola un registro para que el hilo escritor lo agregue al almacén.
+     *
+     * @param registro El registro a escribir.
+     * @return <code>true</code> si el registro se encoló y <code>false</code>
+     * si no: porque la cola estaba llena y la política es
+     * <code>DESCARTAR_MAS_NUEVO</code> (el registro se cuenta como
+     * descartado), o porque el escritor se está cerrando (el registro no se
+     * cuenta, y quien lo encoló puede enviarlo a otro escritor).
+     */
+    public boolean encolar(RegistroMetrica registro) {
+        /* El hilo escritor no drena la cola por última vez mientras haya
+         * productores activos, así que un productor que vio el escritor
+         * abierto termina de encolar antes de ese drenado. */
+        this.productoresActivos.incrementAndGet();
+
+        try {
+            if (this.detenido) {
+                return false;
+            }
+
+            while (!this.cola.ofrecer(registro)) {
+                switch (this.politica) {
+                    case DESCARTAR_MAS_NUEVO:
+                        this.registrosDescartados.incrementAndGet();
+
+                        return false;
+                    case DESCARTAR_MAS_ANTIGUO:
+                        if (this.cola.extraer() != null) {
+                            this.registrosDescartados.incrementAndGet();
+                        }
+
+                        break;
+                    default: // BLOQUEAR
+                        this.despertarEscritor();
+                        LockSupport.parkNanos(this, ESPERA_PRODUCTOR_NANOS);
+                }
+            }
+        } finally {
+            this.productoresActivos.decrementAndGet();
+        }
+
+        if (this.escritorEsperando) {
+            this.despertarEscritor();
+        }
+
+        return true;
+    }
+
+    /**
+     * Pide al hilo escritor que escriba en el archivo todo lo que se encoló
+     * hasta el momento. El método no espera a que la escritura termine.
+     */
+    public void solicitarVaciado() {
+        this.vaciadoSolicitado = true;
+        this.despertarEscritor();
+    }
+
+    /**
+     * @return El archivo (o directorio) en el que escribe el almacén de este
+     * escritor.
+     */
+    public java.io.File getArchivo() {
+        return this.archivo;
+    }
+
+    /**
+     * @return La cantidad de registros descartados desde que se creó el
+     * escritor.
+     */
+    public long getRegistrosDescartados() {
+        return this.registrosDescartados.get();
+    }
+
+    /**
+     * @return Si se comenzó a cerrar el escritor. A partir de ese momento,
+     * <code>encolar</code> rechaza los registros.
+     */
+    public boolean estaCerrado() {
+        return this.detenido;
+    }
+
+    /**
+     * @return La cantidad aproximada de registros que esperan en la cola.
+     */
+    public int getRegistrosPendientes() {
+        return this.cola.tamanio();
+    }
+
+    /**
+     * Retorna el último error de E/S que ocurrió en el hilo escritor y lo
+     * borra, de modo que cada error se informa una sola vez.
+     *
+     * @return El error o <code>null</code> si no hubo errores nuevos.
+     */
+    public IOException consumirUltimoError() {
+        IOException error = this.ultimoError;
+
+        this.ultimoError = null;
+
+        return error;
+    }
+
+    /**
+     * Escribe los registros encolados, cierra el almacén y detiene el hilo
+     * escritor. Este método espera a que el hilo termine.
+     *
+     * @throws IOException Si el hilo escritor no pudo escribir o cerrar el
+     *                     archivo.
+     */
+    @Override
+    public void close() throws IOException {
+        this.detenido = true;
+        this.despertarEscritor();
+
+        boolean interrumpido = false;
+
+        while (this.hiloEscritor.isAlive()) {
+            try {
+                this.hiloEscritor.join();
+            } catch (InterruptedException e) {
+                interrumpido = true;
+            }
+        }
+
+        if (interrumpido) {
+            Thread.currentThread().interrupt();
+        }
+
+        IOException error = this.consumirUltimoError();
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void despertarEscritor() {
+        LockSupport.unpark(this.hiloEscritor);
+    }
+
+    private void ejecutarEscritor() {
+        RegistroMetrica[] lote = new RegistroMetrica[TAMANIO_LOTE];
+        BufferBytes buffer = new BufferBytes();
+
+        try {
+            this.reiniciarCodificador(buffer);
+        } catch (IOException e) {
+            this.registrarError(e);
+        }
+
+        while (true) {
+            int cantidad = this.escribirLote(lote, buffer);
+
+            if (cantidad > 0) {
+                continue;
+            }
+
+            if (this.vaciadoSolicitado) {
+                /* Se vuelve a drenar después de leer la bandera: todo lo que se
+                 * encoló antes de la solicitud queda incluido en el vaciado. */
+                this.vaciadoSolicitado = false;
+
+                while (this.escribirLote(lote, buffer) > 0) {
+                    // Se sigue drenando hasta vaciar la cola.
+                }
+
+                try {
+                    if (this.almacen != null) {
+                        this.almacen.flush();
+                    }
+                } catch (IOException e) {
+                    this.registrarError(e);
+                }
+            } else if (this.detenido) {
+                break;
+            } else {
+                try {
+                    if (this.almacen != null) {
+                        this.almacen.vaciarSiCorresponde();
+                    }
+                } catch (IOException e) {
+                    this.registrarError(e);
+                }
+
+                this.escritorEsperando = true;
+
+                if (this.cola.estaVacia() && !this.vaciadoSolicitado && !this.detenido) {
+                    LockSupport.parkNanos(this, this.esperaEscritorNanos);
+                }
+
+                this.escritorEsperando = false;
+            }
+        }
+
+        /* Los productores que comprobaron que el escritor seguía abierto
+         * pueden estar por encolar: se los espera, drenando la cola mientras
+         * tanto (con BLOQUEAR, pueden estar esperando lugar). */
+        while (this.productoresActivos.get() > 0) {
+            if (this.escribirLote(lote, buffer) == 0) {
+                LockSupport.parkNanos(this, ESPERA_PRODUCTOR_NANOS);
+            }
+        }
+
+        while (this.escribirLote(lote, buffer) > 0) {
+            // Registros encolados durante el cierre.
+        }
+
+        if (this.almacen == null) {
+            return;
+        }
+
+        try {
+            buffer.reset();
+            this.codificador.finalizar(buffer);
+            this.agregarSiNoEstaVacio(buffer);
+        } catch (IOException e) {
+            this.ultimoError = e;
+        }
+
+        try {
+            this.almacen.close();
+        } catch (IOException e) {
+            this.ultimoError = e;
+        }
+    }
+
+    private int escribirLote(RegistroMetrica[] lote, BufferBytes buffer) {
+        int cantidad = this.cola.drenar(lote);
+
+        for (int i = 0; i < cantidad; i++) {
+            try {
+                this.reiniciarCodificador(buffer);
+                buffer.reset();
+                this.codificador.codificar(lote[i], buffer);
+
+                if (this.almacen.requiereArchivoNuevo(buffer.size(), this.codificador.getBytesCierre())) {
+                    this.cambiarDeArchivo(buffer);
+                    buffer.reset();
+                    this.codificador.codificar(lote[i], buffer);
+                }
+
+                this.almacen.agregar(buffer.getBuffer(), 0, buffer.size());
+            } catch (IOException e) {
+                this.registrarError(e);
+            }
+
+            lote[i] = null;
+        }
+
+        return cantidad;
+    }
+
+    /**
+     * Guarda el error para informarlo y marca el estado del codificador como
+     * inválido, ya que puede no coincidir con lo que quedó en el almacén.
+     */
+    private void registrarError(IOException error) {
+        this.ultimoError = error;
+        this.codificadorInvalido = true;
+    }
+
+    /**
+     * Al comenzar, o después de un error, abre el almacén si todavía no está
+     * abierto y comienza una sesión nueva del codificador. Si vuelve a
+     * fallar, se reintenta con el registro siguiente.
+     */
+    private void reiniciarCodificador(BufferBytes buffer) throws IOException {
+        if (!this.codificadorInvalido) {
+            return;
+        }
+
+        if (this.almacen == null) {
+            this.almacen = this.apertura.abrir();
+        }
+
+        buffer.reset();
+        this.codificador.iniciar(buffer);
+        this.agregarSiNoEstaVacio(buffer);
+        this.codificadorInvalido = false;
+    }
+
+    /**
+     * Cierra el archivo actual del almacén (el cierre entra, porque tenía su
+     * lugar reservado) y comienza uno nuevo con la cabecera del codificador,
+     * que reinicia su estado para que cada archivo sea legible por sí solo.
+     */
+    private void cambiarDeArchivo(BufferBytes buffer) throws IOException {
+        buffer.reset();
+        this.codificador.finalizar(buffer);
+        this.agregarSiNoEstaVacio(buffer);
+        this.almacen.comenzarArchivoNuevo();
+        buffer.reset();
+        this.codificador.iniciar(buffer);
+        this.agregarSiNoEstaVacio(buffer);
+    }
+
+    private void agregarSiNoEstaVacio(BufferBytes buffer) throws IOException {
+        if (buffer.size() > 0) {
+            this.almacen.agregar(buffer.getBuffer(), 0, buffer.size());
+        }
+    }
+
+    /**
+     * Buffer reutilizable que permite agregar su contenido al almacén sin
+     * copiarlo a un arreglo nuevo.
+     */
+    private static final class BufferBytes extends java.io.ByteArrayOutputStream {
+
+        BufferBytes() {
+            super(256);
+        }
+
+        byte[] getBuffer() {
+            return this.buf;
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Escribe los eventos de calificación en los dos formatos XML. Los nombres
+ * de las métricas no se repiten en cada evento: la primera vez que aparece
+ * un conjunto de nombres se declara, en orden, con un identificador, y cada
+ * evento indica a qué declaración corresponde y lista sólo los valores, en
+ * el mismo orden:
+ * <pre>
+ * &lt;ratingFields id="0" names="BatteryCharge|ConnectionType|Latency"/&gt;
+ * &lt;rating id="17" date="..." score="Buena" fields="0" values="87|Wi-Fi|48.21"/&gt;
+ * </pre>
+ * Las listas se escriben con <code>EscritorRegistroXML.iniciarLista</code>,
+ * así que un nombre o un valor puede contener cualquier carácter (incluso el
+ * separador) y los nombres se pueden repetir sin que el elemento tenga
+ * atributos duplicados.
+ * <p>
+ * Las declaraciones valen hasta el próximo <code>reiniciar</code>, que los
+ * codificadores invocan al comenzar cada archivo, de modo que cada archivo
+ * se puede leer por sí solo.
+ *
+ * @see LectorDocumentoXML
+ */
+final class EscritorEventoXML {
+
+    /* Sólo hay unos pocos conjuntos de nombres (cambian si una métrica no
+     * tiene valor o aparece una serie nueva); si se llega a este límite, se
+     * vuelven a declarar desde el identificador 0. */
+    private static final int MAXIMO_DECLARACIONES = 64;
+
+    private final HashMap<ArrayList<String>, Integer> declaraciones = new HashMap<>();
+    private final ArrayList<String> nombres = new ArrayList<>();
+
+    /**
+     * Olvida las declaraciones escritas.
+     */
+    void reiniciar() {
+        this.declaraciones.clear();
+    }
+
+    /**
+     * Escribe el evento (sin salto de línea al final), precedido, si hace
+     * falta, por la declaración de sus nombres en una línea propia.
+     */
+    void escribir(EscritorRegistroXML escritor, EventoCalificacion evento, FormateadorFecha formateadorFecha) throws IOException {
+        int cantidad = evento.getCantidadMediciones();
+        int idCampos = cantidad > 0 ? this.declarar(escritor, evento) : -1;
+
+        escritor.iniciarElemento(CodificadorDocumentoXML.ELEMENTO_EVENTO);
+        escritor.atributo("id", evento.getId());
+        escritor.atributo("date", evento.getFechaMilisegundos(), formateadorFecha);
+        escritor.atributo("score", evento.getCalificacionUsuario());
+
+        if (idCampos >= 0) {
+            escritor.atributo("fields", idCampos);
+            escritor.iniciarLista("values");
+
+            for (int i = 0; i < cantidad; i++) {
+                escritor.elementoLista(evento.getMedicion(i));
+            }
+
+            escritor.finalizarLista();
+        }
+
+        escritor.finalizarElementoVacio();
+    }
+
+    /**
+     * @return El identificador de la declaración de los nombres del evento,
+     * que se escribe si todavía no existe.
+     */
+    private int declarar(EscritorRegistroXML escritor, EventoCalificacion evento) throws IOException {
+        this.nombres.clear();
+
+        for (int i = 0; i < evento.getCantidadMediciones(); i++) {
+            this.nombres.add(evento.getMedicion(i).getMetrica());
+        }
+
+        Integer id = this.declaraciones.get(this.nombres);
+
+        if (id != null) {
+            return id;
+        }
+
+        if (this.declaraciones.size() == MAXIMO_DECLARACIONES) {
+            this.declaraciones.clear();
+        }
+
+        id = this.declaraciones.size();
+        this.declaraciones.put(new ArrayList<>(this.nombres), id);
+
+        escritor.iniciarElemento(CodificadorDocumentoXML.ELEMENTO_CAMPOS);
+        escritor.atributo("id", id);
+        escritor.iniciarLista("names");
+
+        for (String nombre : this.nombres) {
+            escritor.elementoLista(nombre);
+        }
+
+        escritor.finalizarLista();
+        escritor.finalizarElementoVacio();
+        escritor.nuevaLinea();
+
+        return id;
+    }
+
+}
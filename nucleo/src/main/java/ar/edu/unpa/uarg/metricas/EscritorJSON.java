@@ -0,0 +1,396 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Escribe un documento JSON en UTF-8 directamente sobre un flujo de salida,
+ * sin armar cadenas intermedias. Los bytes se acumulan en un buffer propio
+ * que se vuelca al flujo cada vez que se llena, por lo que la memoria usada
+ * no depende del tamaño del documento. El mismo escritor (y su buffer) se
+ * puede reutilizar para varios documentos mediante <code>reiniciar</code>.
+ * <p>
+ * Los textos largos, como el contenido de un archivo, se pueden escribir
+ * por partes con <code>iniciarTexto</code>, <code>escribirTextoUTF8</code> y
+ * <code>finalizarTexto</code>.
+ * <p>
+ * El escritor verifica la estructura del documento (comas, nombres y
+ * anidamiento) y lanza <code>IllegalStateException</code> ante un uso
+ * incorrecto. No es seguro para usarse desde varios hilos.
+ */
+public class EscritorJSON implements java.io.Closeable, java.io.Flushable {
+
+    private static final int MAXIMA_PROFUNDIDAD = 64;
+
+    private static final byte DOCUMENTO = 0;
+    private static final byte OBJETO_VACIO = 1;
+    private static final byte OBJETO = 2;
+    private static final byte NOMBRE = 3;
+    private static final byte ARREGLO_VACIO = 4;
+    private static final byte ARREGLO = 5;
+    private static final byte TEXTO = 6;
+    private static final byte FINALIZADO = 7;
+
+    private static final byte[] HEXADECIMAL = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final byte[] NULO = {'n', 'u', 'l', 'l'};
+    private static final byte[] VERDADERO = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSO = {'f', 'a', 'l', 's', 'e'};
+
+    private final byte[] buffer;
+    private final byte[] pila = new byte[MAXIMA_PROFUNDIDAD + 1];
+    private OutputStream salida;
+    private int posicion;
+    private int profundidad;
+
+    /**
+     * @param salida  El flujo en el que se escribe el documento.
+     * @param tamanio El tamaño del buffer en bytes (al menos 16).
+     */
+    public EscritorJSON(OutputStream salida, int tamanio) {
+        if (tamanio < 16) {
+            throw new IllegalArgumentException("El buffer debe tener al menos 16 bytes.");
+        }
+
+        this.buffer = new byte[tamanio];
+        this.reiniciar(salida);
+    }
+
+    /**
+     * Descarta el estado del documento anterior (sin volcar lo que quedó en
+     * el buffer) y prepara el escritor para escribir un documento nuevo.
+     *
+     * @param salida El flujo en el que se escribe el nuevo documento.
+     */
+    public void reiniciar(OutputStream salida) {
+        if (salida == null) {
+            throw new IllegalArgumentException("El flujo de salida no puede ser null.");
+        }
+
+        this.salida = salida;
+        this.posicion = 0;
+        this.profundidad = 0;
+        this.pila[0] = DOCUMENTO;
+    }
+
+    public void iniciarObjeto() throws IOException {
+        this.antesDeValor();
+        this.escribirByte('{');
+        this.apilar(OBJETO_VACIO);
+    }
+
+    public void finalizarObjeto() throws IOException {
+        byte estado = this.pila[this.profundidad];
+
+        if (estado != OBJETO_VACIO && estado != OBJETO) {
+            throw new IllegalStateException("No hay un objeto abierto.");
+        }
+
+        this.profundidad--;
+        this.escribirByte('}');
+    }
+
+    public void iniciarArreglo() throws IOException {
+        this.antesDeValor();
+        this.escribirByte('[');
+        this.apilar(ARREGLO_VACIO);
+    }
+
+    public void finalizarArreglo() throws IOException {
+        byte estado = this.pila[this.profundidad];
+
+        if (estado != ARREGLO_VACIO && estado != ARREGLO) {
+            throw new IllegalStateException("No hay un arreglo abierto.");
+        }
+
+        this.profundidad--;
+        this.escribirByte(']');
+    }
+
+    /**
+     * Escribe el nombre del próximo miembro del objeto abierto.
+     *
+     * @param nombre El nombre del miembro.
+     */
+    public void nombre(String nombre) throws IOException {
+        byte estado = this.pila[this.profundidad];
+
+        if (estado == OBJETO) {
+            this.escribirByte(',');
+        } else if (estado != OBJETO_VACIO) {
+            throw new IllegalStateException("Sólo se puede escribir un nombre dentro de un objeto.");
+        }
+
+        this.escribirCadena(nombre);
+        this.escribirByte(':');
+        this.pila[this.profundidad] = NOMBRE;
+    }
+
+    public void valor(String valor) throws IOException {
+        if (valor == null) {
+            this.valorNulo();
+
+            return;
+        }
+
+        this.antesDeValor();
+        this.escribirCadena(valor);
+    }
+
+    public void valor(long valor) throws IOException {
+        this.antesDeValor();
+        this.escribirEntero(valor);
+    }
+
+    /**
+     * @param valor El valor. <code>NaN</code> y los infinitos, que JSON no
+     *              admite, se escriben como <code>null</code>.
+     */
+    public void valor(double valor) throws IOException {
+        if (Double.isNaN(valor) || Double.isInfinite(valor)) {
+            this.valorNulo();
+        } else if (valor == (long) valor && Math.abs(valor) < 1e15) {
+            this.valor((long) valor);
+        } else {
+            this.antesDeValor();
+            this.escribirAscii(Double.toString(valor));
+        }
+    }
+
+    public void valor(boolean valor) throws IOException {
+        this.antesDeValor();
+        this.escribirBytes(valor ? VERDADERO : FALSO);
+    }
+
+    public void valorNulo() throws IOException {
+        this.antesDeValor();
+        this.escribirBytes(NULO);
+    }
+
+    /**
+     * Comienza un valor de texto que se escribe por partes con
+     * <code>escribirTextoUTF8</code>.
+     */
+    public void iniciarTexto() throws IOException {
+        this.antesDeValor();
+        this.escribirByte('"');
+        this.apilar(TEXTO);
+    }
+
+    /**
+     * Agrega bytes en UTF-8 al texto iniciado con <code>iniciarTexto</code>,
+     * escapando los caracteres que JSON lo requiere. Una secuencia UTF-8
+     * puede quedar dividida entre dos llamadas.
+     *
+     * @param datos    Los bytes a agregar.
+     * @param desde    La posición del primer byte.
+     * @param longitud La cantidad de bytes.
+     */
+    public void escribirTextoUTF8(byte[] datos, int desde, int longitud) throws IOException {
+        if (this.pila[this.profundidad] != TEXTO) {
+            throw new IllegalStateException("No hay un texto abierto.");
+        }
+
+        int fin = desde + longitud;
+
+        for (int i = desde; i < fin; i++) {
+            byte b = datos[i];
+
+            if (b >= 0x20 && b != '"' && b != '\\' || b < 0) {
+                if (this.posicion == this.buffer.length) {
+                    this.volcar();
+                }
+
+                this.buffer[this.posicion++] = b; // Incluye los bytes de caracteres no ASCII.
+            } else {
+                this.escribirEscape(b);
+            }
+        }
+    }
+
+    public void finalizarTexto() throws IOException {
+        if (this.pila[this.profundidad] != TEXTO) {
+            throw new IllegalStateException("No hay un texto abierto.");
+        }
+
+        this.profundidad--;
+        this.escribirByte('"');
+    }
+
+    /**
+     * Vuelca el buffer en el flujo de salida y lo vacía.
+     */
+    @Override
+    public void flush() throws IOException {
+        this.volcar();
+        this.salida.flush();
+    }
+
+    /**
+     * Vuelca el buffer y cierra el flujo de salida.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.volcar();
+        } finally {
+            this.salida.close();
+        }
+    }
+
+    private void antesDeValor() throws IOException {
+        switch (this.pila[this.profundidad]) {
+            case DOCUMENTO:
+                this.pila[this.profundidad] = FINALIZADO;
+                break;
+            case NOMBRE:
+                this.pila[this.profundidad] = OBJETO;
+                break;
+            case ARREGLO_VACIO:
+                this.pila[this.profundidad] = ARREGLO;
+                break;
+            case ARREGLO:
+                this.escribirByte(',');
+                break;
+            case OBJETO_VACIO:
+            case OBJETO:
+                throw new IllegalStateException("Falta el nombre del miembro.");
+            default:
+                throw new IllegalStateException("No se puede escribir un valor en este punto del documento.");
+        }
+    }
+
+    private void apilar(byte estado) {
+        if (this.profundidad == MAXIMA_PROFUNDIDAD) {
+            throw new IllegalStateException("El documento está anidado demasiado profundo.");
+        }
+
+        this.pila[++this.profundidad] = estado;
+    }
+
+    private void escribirCadena(String texto) throws IOException {
+        this.escribirByte('"');
+
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+
+            if (this.buffer.length - this.posicion < 4) {
+                this.volcar();
+            }
+
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    this.buffer[this.posicion++] = (byte) c;
+                } else {
+                    this.escribirEscape((byte) c);
+                }
+            } else if (c < 0x800) {
+                this.buffer[this.posicion++] = (byte) (0xC0 | (c >> 6));
+                this.buffer[this.posicion++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length() && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int codigo = Character.toCodePoint(c, texto.charAt(++i));
+
+                this.buffer[this.posicion++] = (byte) (0xF0 | (codigo >> 18));
+                this.buffer[this.posicion++] = (byte) (0x80 | ((codigo >> 12) & 0x3F));
+                this.buffer[this.posicion++] = (byte) (0x80 | ((codigo >> 6) & 0x3F));
+                this.buffer[this.posicion++] = (byte) (0x80 | (codigo & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                this.buffer[this.posicion++] = '?'; // Sustituto sin su par: no es representable en UTF-8.
+            } else {
+                this.buffer[this.posicion++] = (byte) (0xE0 | (c >> 12));
+                this.buffer[this.posicion++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                this.buffer[this.posicion++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        this.escribirByte('"');
+    }
+
+    private void escribirEscape(byte b) throws IOException {
+        if (this.buffer.length - this.posicion < 6) {
+            this.volcar();
+        }
+
+        this.buffer[this.posicion++] = '\\';
+
+        switch (b) {
+            case '"':
+            case '\\':
+                this.buffer[this.posicion++] = b;
+                break;
+            case '\n':
+                this.buffer[this.posicion++] = 'n';
+                break;
+            case '\r':
+                this.buffer[this.posicion++] = 'r';
+                break;
+            case '\t':
+                this.buffer[this.posicion++] = 't';
+                break;
+            default:
+                this.buffer[this.posicion++] = 'u';
+                this.buffer[this.posicion++] = '0';
+                this.buffer[this.posicion++] = '0';
+                this.buffer[this.posicion++] = HEXADECIMAL[(b >> 4) & 0xF];
+                this.buffer[this.posicion++] = HEXADECIMAL[b & 0xF];
+        }
+    }
+
+    private void escribirEntero(long valor) throws IOException {
+        if (this.buffer.length - this.posicion < 20) {
+            this.volcar();
+        }
+
+        if (valor == Long.MIN_VALUE) {
+            this.escribirAscii("-9223372036854775808");
+
+            return;
+        }
+
+        if (valor < 0) {
+            this.buffer[this.posicion++] = '-';
+            valor = -valor;
+        }
+
+        /* Los dígitos se escriben de atrás hacia adelante. */
+        int digitos = 1;
+
+        for (long resto = valor / 10; resto > 0; resto /= 10) {
+            digitos++;
+        }
+
+        for (int i = this.posicion + digitos - 1; i >= this.posicion; i--) {
+            this.buffer[i] = (byte) ('0' + valor % 10);
+            valor /= 10;
+        }
+
+        this.posicion += digitos;
+    }
+
+    private void escribirAscii(String texto) throws IOException {
+        for (int i = 0; i < texto.length(); i++) {
+            this.escribirByte(texto.charAt(i));
+        }
+    }
+
+    private void escribirBytes(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            this.escribirByte(b);
+        }
+    }
+
+    private void escribirByte(int b) throws IOException {
+        if (this.posicion == this.buffer.length) {
+            this.volcar();
+        }
+
+        this.buffer[this.posicion++] = (byte) b;
+    }
+
+    private void volcar() throws IOException {
+        if (this.posicion > 0) {
+            this.salida.write(this.buffer, 0, this.posicion);
+            this.posicion = 0;
+        }
+    }
+
+}
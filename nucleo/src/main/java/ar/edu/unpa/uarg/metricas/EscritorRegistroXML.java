@@ -0,0 +1,708 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Escribe elementos XML en UTF-8 directamente sobre un flujo de salida, sin
+ * armar cadenas intermedias: los nombres, los atributos y los valores se
+ * copian a un buffer propio que se vuelca al flujo cada vez que se llena (o
+ * al llamar a <code>flush</code>). El mismo escritor se puede reutilizar
+ * para cualquier cantidad de registros mediante <code>reiniciar</code>.
+ * <p>
+ * Los textos y los valores de los atributos se escapan: <code>&amp;</code>,
+ * <code>&lt;</code>, <code>&gt;</code> y <code>&quot;</code> se reemplazan por
+ * sus entidades, los saltos de línea y tabulaciones de los atributos por
+ * referencias numéricas (para que no se normalicen al leerlos) y los
+ * caracteres que XML 1.0 no admite por U+FFFD. Un texto sin caracteres
+ * especiales se copia sin más trabajo que recorrerlo.
+ * <p>
+ * Los valores numéricos se escriben con el mismo texto que
+ * <code>String.valueOf</code>, pero sin crear objetos en los casos comunes
+ * (enteros, y reales entre 0,001 y 10<sup>7</sup> con pocos decimales).
+ * <p>
+ * Los nombres de los elementos y de los atributos no se verifican ni se
+ * escapan. No es seguro para usarse desde varios hilos.
+ */
+public class EscritorRegistroXML implements java.io.Flushable {
+
+    /** Separa los elementos de una lista (ver <code>iniciarLista</code>). */
+    public static final char SEPARADOR_LISTA = '|';
+
+    /** Precede a un separador o a otro escape dentro de un elemento. */
+    public static final char ESCAPE_LISTA = '\\';
+
+    private static final byte[] ENTIDAD_AMPERSAND = {'&', 'a', 'm', 'p', ';'};
+    private static final byte[] ENTIDAD_MENOR = {'&', 'l', 't', ';'};
+    private static final byte[] ENTIDAD_MAYOR = {'&', 'g', 't', ';'};
+    private static final byte[] ENTIDAD_COMILLAS = {'&', 'q', 'u', 'o', 't', ';'};
+    private static final byte[] REFERENCIA_TABULACION = {'&', '#', '9', ';'};
+    private static final byte[] REFERENCIA_SALTO_LINEA = {'&', '#', '1', '0', ';'};
+    private static final byte[] REFERENCIA_RETORNO = {'&', '#', '1', '3', ';'};
+    private static final byte[] REEMPLAZO = {(byte) 0xEF, (byte) 0xBF, (byte) 0xBD}; // U+FFFD en UTF-8.
+
+    private static final double[] POTENCIAS_DIEZ = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17
+    };
+    private static final long MAXIMO_EXACTO_DOUBLE = 1L << 53;
+    private static final long MAXIMO_EXACTO_FLOAT = 1L << 24;
+    private static final int MAXIMOS_DECIMALES_FLOAT = 10; // 10^10 todavía es exacto como float.
+
+    /* Las formas de escribir un texto, que son también los índices de las
+     * cachés. */
+    private static final int LITERAL = 0;
+    private static final int ATRIBUTO = 1;
+    private static final int CONTENIDO = 2;
+
+    private static final int ENTRADAS_CACHE = 256; // Potencia de 2.
+    private static final int LONGITUD_MAXIMA_CACHE = 64;
+
+    private final byte[] buffer;
+    private OutputStream salida;
+    private int posicion;
+    private boolean enApertura;
+    private int elementosLista = -1;
+
+    /* Los nombres, las calificaciones y muchos valores se repiten en casi
+     * todos los registros, así que se guardan ya codificados (y escapados)
+     * en una caché de correspondencia directa por cada forma de escribirlos.
+     * Un texto se guarda recién la segunda vez que aparece seguido en su
+     * entrada, para no asignar memoria por los que nunca se repiten. */
+    private final String[] textosCache = new String[3 * ENTRADAS_CACHE];
+    private final byte[][] bytesCache = new byte[3 * ENTRADAS_CACHE][];
+
+    /**
+     * @param salida  El flujo en el que se escriben los elementos.
+     * @param tamanio El tamaño del buffer en bytes (al menos 64).
+     */
+    public EscritorRegistroXML(OutputStream salida, int tamanio) {
+        if (tamanio < 64) {
+            throw new IllegalArgumentException("El buffer debe tener al menos 64 bytes.");
+        }
+
+        this.buffer = new byte[tamanio];
+        this.reiniciar(salida);
+    }
+
+    /**
+     * Descarta lo que quedó en el buffer y prepara el escritor para escribir
+     * en otro flujo (o en el mismo, desde el principio).
+     *
+     * @param salida El flujo en el que se escriben los elementos.
+     */
+    public void reiniciar(OutputStream salida) {
+        if (salida == null) {
+            throw new IllegalArgumentException("El flujo de salida no puede ser null.");
+        }
+
+        this.salida = salida;
+        this.posicion = 0;
+        this.enApertura = false;
+        this.elementosLista = -1;
+    }
+
+    /**
+     * Escribe «&lt;nombre». A continuación se pueden escribir atributos.
+     */
+    public void iniciarElemento(String nombre) throws IOException {
+        this.finalizarApertura();
+        this.escribirByte('<');
+        this.escribirNombre(nombre);
+        this.enApertura = true;
+    }
+
+    public void atributo(String nombre, String valor) throws IOException {
+        this.iniciarAtributo(nombre);
+        this.escribirTexto(valor, ATRIBUTO);
+        this.escribirByte('"');
+    }
+
+    public void atributo(String nombre, long valor) throws IOException {
+        this.iniciarAtributo(nombre);
+        this.escribirEntero(valor);
+        this.escribirByte('"');
+    }
+
+    /**
+     * Escribe una fecha como valor de un atributo.
+     *
+     * @param nombre            El nombre del atributo.
+     * @param fechaMilisegundos La fecha, en milisegundos desde 1970.
+     * @param formateador       El formato de la fecha.
+     */
+    public void atributo(String nombre, long fechaMilisegundos, FormateadorFecha formateador) throws IOException {
+        this.iniciarAtributo(nombre);
+        this.asegurarEspacio(FormateadorFecha.LONGITUD_MAXIMA + 1);
+        this.posicion += formateador.formatear(fechaMilisegundos, this.buffer, this.posicion);
+        this.buffer[this.posicion++] = '"';
+    }
+
+    /**
+     * Escribe el valor de un registro, según su tipo, como valor de un
+     * atributo.
+     *
+     * @param nombre   El nombre del atributo.
+     * @param registro El registro cuyo valor se escribe.
+     */
+    public void atributo(String nombre, RegistroMetrica registro) throws IOException {
+        this.iniciarAtributo(nombre);
+        this.escribirValorAtributo(registro);
+        this.escribirByte('"');
+    }
+
+    /**
+     * Comienza un atributo cuyo valor es una lista de textos, que se agregan
+     * con <code>elementoLista</code>. Los elementos se separan con
+     * <code>SEPARADOR_LISTA</code>, y ese carácter y
+     * <code>ESCAPE_LISTA</code> se escriben precedidos por
+     * <code>ESCAPE_LISTA</code> dentro de cada elemento.
+     *
+     * @param nombre El nombre del atributo.
+     */
+    public void iniciarLista(String nombre) throws IOException {
+        this.iniciarAtributo(nombre);
+        this.elementosLista = 0;
+    }
+
+    public void elementoLista(String texto) throws IOException {
+        this.separarElementoLista();
+        this.escribirTexto(escaparElementoLista(texto), ATRIBUTO);
+    }
+
+    /**
+     * Agrega el valor de un registro, según su tipo, a la lista.
+     */
+    public void elementoLista(RegistroMetrica registro) throws IOException {
+        this.separarElementoLista();
+
+        if (registro.getTipoValor() == RegistroMetrica.TipoValor.TEXTO) {
+            this.escribirTexto(escaparElementoLista(registro.getValor()), ATRIBUTO);
+        } else {
+            this.escribirValorAtributo(registro); // Un número no contiene separadores.
+        }
+    }
+
+    /**
+     * Cierra el atributo que comenzó <code>iniciarLista</code>.
+     */
+    public void finalizarLista() throws IOException {
+        if (this.elementosLista < 0) {
+            throw new IllegalStateException("No hay una lista abierta.");
+        }
+
+        this.elementosLista = -1;
+        this.escribirByte('"');
+    }
+
+    /**
+     * Separa los elementos de una lista escrita por <code>elementoLista</code>,
+     * quitando los escapes.
+     *
+     * @param lista    El valor del atributo.
+     * @param cantidad La cantidad de elementos que se esperan (al menos 1).
+     * @return Los elementos, o <code>null</code> si no son la cantidad
+     * esperada.
+     */
+    public static String[] separarLista(String lista, int cantidad) {
+        String[] elementos = new String[cantidad];
+        StringBuilder actual = new StringBuilder();
+        int leidos = 0;
+
+        for (int i = 0; i < lista.length(); i++) {
+            char c = lista.charAt(i);
+
+            if (c == ESCAPE_LISTA && i + 1 < lista.length()) {
+                actual.append(lista.charAt(++i));
+            } else if (c == SEPARADOR_LISTA) {
+                if (leidos == cantidad - 1) {
+                    return null;
+                }
+
+                elementos[leidos++] = actual.toString();
+                actual.setLength(0);
+            } else {
+                actual.append(c);
+            }
+        }
+
+        if (leidos != cantidad - 1) {
+            return null;
+        }
+
+        elementos[leidos] = actual.toString();
+
+        return elementos;
+    }
+
+    private void separarElementoLista() throws IOException {
+        if (this.elementosLista < 0) {
+            throw new IllegalStateException("Los elementos de una lista deben escribirse después de iniciarLista.");
+        }
+
+        if (this.elementosLista++ > 0) {
+            this.escribirByte(SEPARADOR_LISTA);
+        }
+    }
+
+    private static String escaparElementoLista(String texto) {
+        if (texto.indexOf(SEPARADOR_LISTA) < 0 && texto.indexOf(ESCAPE_LISTA) < 0) {
+            return texto;
+        }
+
+        StringBuilder escapado = new StringBuilder(texto.length() + 8);
+
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+
+            if (c == SEPARADOR_LISTA || c == ESCAPE_LISTA) {
+                escapado.append(ESCAPE_LISTA);
+            }
+
+            escapado.append(c);
+        }
+
+        return escapado.toString();
+    }
+
+    private void escribirValorAtributo(RegistroMetrica registro) throws IOException {
+        switch (registro.getTipoValor()) {
+            case ENTERO:
+                this.escribirEntero(registro.getValorEntero());
+                break;
+            case REAL:
+                if (!this.escribirReal(registro.getValorReal(), false)) {
+                    this.escribirAscii(Double.toString(registro.getValorReal()));
+                }
+
+                break;
+            case REAL_SIMPLE:
+                if (!this.escribirReal(registro.getValorReal(), true)) {
+                    this.escribirAscii(Float.toString((float) registro.getValorReal()));
+                }
+
+                break;
+            default:
+                this.escribirTexto(registro.getValor(), ATRIBUTO);
+        }
+    }
+
+    /**
+     * Escribe texto como contenido del elemento actual.
+     */
+    public void texto(String texto) throws IOException {
+        this.finalizarApertura();
+        this.escribirTexto(texto, CONTENIDO);
+    }
+
+    public void valor(long valor) throws IOException {
+        this.finalizarApertura();
+        this.escribirEntero(valor);
+    }
+
+    public void valor(double valor) throws IOException {
+        this.finalizarApertura();
+
+        if (!this.escribirReal(valor, false)) {
+            this.escribirAscii(Double.toString(valor));
+        }
+    }
+
+    public void valor(float valor) throws IOException {
+        this.finalizarApertura();
+
+        if (!this.escribirReal(valor, true)) {
+            this.escribirAscii(Float.toString(valor));
+        }
+    }
+
+    /**
+     * Escribe el valor de un registro según su tipo.
+     */
+    public void valor(RegistroMetrica registro) throws IOException {
+        switch (registro.getTipoValor()) {
+            case ENTERO:
+                this.valor(registro.getValorEntero());
+                break;
+            case REAL:
+                this.valor(registro.getValorReal());
+                break;
+            case REAL_SIMPLE:
+                this.valor((float) registro.getValorReal());
+                break;
+            default:
+                this.texto(registro.getValor());
+        }
+    }
+
+    /**
+     * Escribe «&lt;/nombre&gt;».
+     */
+    public void finalizarElemento(String nombre) throws IOException {
+        this.finalizarApertura();
+        this.escribirByte('<');
+        this.escribirByte('/');
+        this.escribirNombre(nombre);
+        this.escribirByte('>');
+    }
+
+    /**
+     * Cierra el elemento que se está abriendo sin contenido («/&gt;»).
+     */
+    public void finalizarElementoVacio() throws IOException {
+        if (!this.enApertura) {
+            throw new IllegalStateException("No hay un elemento abierto sin contenido.");
+        }
+
+        this.enApertura = false;
+        this.escribirByte('/');
+        this.escribirByte('>');
+    }
+
+    public void nuevaLinea() throws IOException {
+        this.finalizarApertura();
+        this.escribirByte('\n');
+    }
+
+    /**
+     * Escribe texto sin escaparlo (por ejemplo, una declaración XML o un
+     * comentario armado por quien llama).
+     */
+    public void textoLiteral(String texto) throws IOException {
+        this.finalizarApertura();
+        this.escribirTexto(texto, LITERAL);
+    }
+
+    /**
+     * Vuelca el buffer en el flujo de salida y lo vacía.
+     */
+    @Override
+    public void flush() throws IOException {
+        this.volcar();
+        this.salida.flush();
+    }
+
+    private void iniciarAtributo(String nombre) throws IOException {
+        if (!this.enApertura) {
+            throw new IllegalStateException("Los atributos deben escribirse inmediatamente después de iniciar el elemento.");
+        }
+
+        this.escribirByte(' ');
+        this.escribirNombre(nombre);
+        this.escribirByte('=');
+        this.escribirByte('"');
+    }
+
+    private void finalizarApertura() throws IOException {
+        if (this.enApertura) {
+            this.enApertura = false;
+            this.escribirByte('>');
+        }
+    }
+
+    private void escribirNombre(String nombre) throws IOException {
+        this.escribirTexto(nombre, LITERAL);
+    }
+
+    private void escribirTexto(String texto, int forma) throws IOException {
+        int longitud = texto.length();
+
+        if (longitud > LONGITUD_MAXIMA_CACHE) {
+            this.codificar(texto, forma);
+
+            return;
+        }
+
+        int hash = texto.hashCode();
+        int entrada = forma * ENTRADAS_CACHE + ((hash ^ (hash >>> 16) ^ (hash >>> 8)) & (ENTRADAS_CACHE - 1));
+        String guardado = this.textosCache[entrada];
+        boolean repetido = guardado == texto || (guardado != null && guardado.equals(texto));
+        byte[] codificado = this.bytesCache[entrada];
+
+        if (repetido && codificado != null) {
+            this.escribirBytes(codificado);
+        } else if (repetido && longitud * 6 <= this.buffer.length) {
+            this.asegurarEspacio(longitud * 6); // Así el texto queda entero en el buffer.
+
+            int inicio = this.posicion;
+
+            this.codificar(texto, forma);
+            this.bytesCache[entrada] = java.util.Arrays.copyOfRange(this.buffer, inicio, this.posicion);
+        } else {
+            this.codificar(texto, forma);
+            this.textosCache[entrada] = texto;
+            this.bytesCache[entrada] = null;
+        }
+    }
+
+    private void codificar(String texto, int forma) throws IOException {
+        boolean escapar = forma != LITERAL;
+        boolean atributo = forma == ATRIBUTO;
+        int longitud = texto.length();
+        int i = 0;
+
+        while (i < longitud) {
+            this.asegurarEspacio(6);
+
+            /* Camino rápido: se copian de una vez los caracteres ASCII que no
+             * requieren escape, hasta llenar el buffer o encontrar otro. */
+            byte[] destino = this.buffer;
+            int posicion = this.posicion;
+            int limite = Math.min(longitud, i + destino.length - posicion);
+            char c = 0;
+
+            while (i < limite) {
+                c = texto.charAt(i);
+
+                if (c >= 0x80 || c < 0x20 || (escapar && (c == '&' || c == '<' || c == '>' || c == '"'))) {
+                    break;
+                }
+
+                destino[posicion++] = (byte) c;
+                i++;
+            }
+
+            this.posicion = posicion;
+
+            if (i == limite) {
+                continue;
+            }
+
+            this.asegurarEspacio(6);
+
+            if (c < 0x80) {
+                this.escribirEspecial(c, atributo, escapar);
+            } else if (c < 0x800) {
+                this.buffer[this.posicion++] = (byte) (0xC0 | (c >> 6));
+                this.buffer[this.posicion++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < longitud && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int codigo = Character.toCodePoint(c, texto.charAt(++i));
+
+                this.buffer[this.posicion++] = (byte) (0xF0 | (codigo >> 18));
+                this.buffer[this.posicion++] = (byte) (0x80 | ((codigo >> 12) & 0x3F));
+                this.buffer[this.posicion++] = (byte) (0x80 | ((codigo >> 6) & 0x3F));
+                this.buffer[this.posicion++] = (byte) (0x80 | (codigo & 0x3F));
+            } else if (Character.isSurrogate(c) || c == 0xFFFE || c == 0xFFFF) {
+                this.escribirBytes(REEMPLAZO); // No es representable en UTF-8 o no es válido en XML.
+            } else {
+                this.buffer[this.posicion++] = (byte) (0xE0 | (c >> 12));
+                this.buffer[this.posicion++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                this.buffer[this.posicion++] = (byte) (0x80 | (c & 0x3F));
+            }
+
+            i++;
+        }
+    }
+
+    private void escribirEspecial(char c, boolean atributo, boolean escapar) throws IOException {
+        switch (c) {
+            case '&':
+                this.escribirBytes(ENTIDAD_AMPERSAND);
+                break;
+            case '<':
+                this.escribirBytes(ENTIDAD_MENOR);
+                break;
+            case '>':
+                this.escribirBytes(ENTIDAD_MAYOR);
+                break;
+            case '"':
+                this.escribirBytes(ENTIDAD_COMILLAS);
+                break;
+            case '\t':
+                if (atributo && escapar) {
+                    this.escribirBytes(REFERENCIA_TABULACION);
+                } else {
+                    this.buffer[this.posicion++] = '\t';
+                }
+
+                break;
+            case '\n':
+                if (atributo && escapar) {
+                    this.escribirBytes(REFERENCIA_SALTO_LINEA);
+                } else {
+                    this.buffer[this.posicion++] = '\n';
+                }
+
+                break;
+            case '\r':
+                if (escapar) {
+                    this.escribirBytes(REFERENCIA_RETORNO); // Si no, el lector lo convertiría en '\n'.
+                } else {
+                    this.buffer[this.posicion++] = '\r';
+                }
+
+                break;
+            default:
+                this.escribirBytes(REEMPLAZO); // Carácter de control: XML 1.0 no lo admite.
+        }
+    }
+
+    private void escribirEntero(long valor) throws IOException {
+        this.asegurarEspacio(20);
+
+        if (valor == Long.MIN_VALUE) {
+            this.escribirAscii("-9223372036854775808");
+
+            return;
+        }
+
+        if (valor < 0) {
+            this.buffer[this.posicion++] = '-';
+            valor = -valor;
+        }
+
+        this.escribirDigitos(valor, 1);
+    }
+
+    /**
+     * Escribe los dígitos de un valor no negativo, completando con ceros a
+     * la izquierda hasta la cantidad mínima indicada.
+     */
+    private void escribirDigitos(long valor, int minimoDigitos) {
+        int digitos = 1;
+
+        for (long resto = valor / 10; resto > 0; resto /= 10) {
+            digitos++;
+        }
+
+        digitos = Math.max(digitos, minimoDigitos);
+
+        for (int i = this.posicion + digitos - 1; i >= this.posicion; i--) {
+            this.buffer[i] = (byte) ('0' + valor % 10);
+            valor /= 10;
+        }
+
+        this.posicion += digitos;
+    }
+
+    /**
+     * Escribe un real en notación decimal con la menor cantidad de
+     * decimales (al menos uno) que permite recuperar exactamente el mismo
+     * valor, que es lo que hacen <code>Double.toString</code> y
+     * <code>Float.toString</code> en el rango en el que no usan notación
+     * científica.
+     *
+     * @return <code>false</code> si el valor está fuera del rango en el que se
+     * puede escribir así; en ese caso no se escribió nada.
+     */
+    private boolean escribirReal(double valor, boolean simple) throws IOException {
+        double absoluto = Math.abs(valor);
+
+        if (absoluto == 0) {
+            this.asegurarEspacio(4);
+
+            if (Double.doubleToRawLongBits(valor) != 0) {
+                this.buffer[this.posicion++] = '-';
+            }
+
+            this.buffer[this.posicion++] = '0';
+            this.buffer[this.posicion++] = '.';
+            this.buffer[this.posicion++] = '0';
+
+            return true;
+        }
+
+        if (!(absoluto >= 1e-3 && absoluto < 1e7)) {
+            return false; // También descarta NaN.
+        }
+
+        if (absoluto == Math.rint(absoluto)) {
+            this.asegurarEspacio(12);
+
+            if (valor < 0) {
+                this.buffer[this.posicion++] = '-';
+            }
+
+            this.escribirDigitos((long) absoluto, 1);
+            this.buffer[this.posicion++] = '.';
+            this.buffer[this.posicion++] = '0';
+
+            return true;
+        }
+
+        int maximoDecimales = simple ? MAXIMOS_DECIMALES_FLOAT : POTENCIAS_DIEZ.length - 1;
+
+        for (int decimales = 1; decimales <= maximoDecimales; decimales++) {
+            double potencia = POTENCIAS_DIEZ[decimales];
+            double escalado = absoluto * potencia;
+
+            if (escalado >= (simple ? MAXIMO_EXACTO_FLOAT : MAXIMO_EXACTO_DOUBLE)) {
+                return false;
+            }
+
+            long mantisa = (long) Math.rint(escalado); // Los empates, al par, como en Float.toString.
+
+            /* Con la mantisa y la potencia representables exactamente, la
+             * división está correctamente redondeada, igual que la lectura
+             * del texto decimal: si coincide, el texto recupera el valor. */
+            boolean exacto = simple
+                    ? (float) mantisa / (float) potencia == (float) absoluto
+                    : mantisa / potencia == absoluto;
+
+            if (exacto) {
+                this.asegurarEspacio(2 + 20 + decimales);
+
+                if (valor < 0) {
+                    this.buffer[this.posicion++] = '-';
+                }
+
+                long divisor = (long) potencia;
+
+                this.escribirDigitos(mantisa / divisor, 1);
+                this.buffer[this.posicion++] = '.';
+                this.escribirDigitos(mantisa % divisor, decimales);
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void escribirAscii(String texto) throws IOException {
+        for (int i = 0; i < texto.length(); i++) {
+            this.escribirByte(texto.charAt(i));
+        }
+    }
+
+    private void escribirBytes(byte[] bytes) throws IOException {
+        this.asegurarEspacio(bytes.length);
+
+        byte[] destino = this.buffer;
+        int posicion = this.posicion;
+
+        /* Casi todos los textos son cortos: para ellos, copiar byte a byte
+         * es más rápido que preparar System.arraycopy. */
+        if (bytes.length <= 16) {
+            for (byte b : bytes) {
+                destino[posicion++] = b;
+            }
+        } else {
+            System.arraycopy(bytes, 0, destino, posicion, bytes.length);
+            posicion += bytes.length;
+        }
+
+        this.posicion = posicion;
+    }
+
+    private void escribirByte(int b) throws IOException {
+        if (this.posicion == this.buffer.length) {
+            this.volcar();
+        }
+
+        this.buffer[this.posicion++] = (byte) b;
+    }
+
+    private void asegurarEspacio(int bytes) throws IOException {
+        if (this.buffer.length - this.posicion < bytes) {
+            this.volcar();
+        }
+    }
+
+    private void volcar() throws IOException {
+        if (this.posicion > 0) {
+            this.salida.write(this.buffer, 0, this.posicion);
+            this.posicion = 0;
+        }
+    }
+
+}
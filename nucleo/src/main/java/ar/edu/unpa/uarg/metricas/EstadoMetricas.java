@@ -0,0 +1,176 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Guarda el último valor de un conjunto fijo de métricas, identificadas por
+ * su posición, de modo que se puedan escribir desde varios hilos (los
+ * sensores, el muestreo en segundo plano y la aplicación) y leer todas
+ * juntas de forma consistente.
+ * <p>
+ * Cada valor numérico se guarda en un <code>AtomicLongArray</code> (con la
+ * representación binaria del <code>double</code>) y cada texto en un
+ * <code>AtomicReferenceArray</code>, por lo que una lectura individual nunca
+ * ve un valor a medio escribir. Para leer varios valores a la vez se usa un
+ * contador de secuencia («seqlock»): los escritores lo dejan impar mientras
+ * escriben y los lectores repiten la lectura si el contador cambió, sin
+ * bloquear nunca a los escritores.
+ */
+public class EstadoMetricas {
+
+    /**
+     * La cantidad de intentos de lectura optimista antes de tomar el turno de
+     * escritura para leer (y así no esperar indefinidamente si los
+     * escritores no dejan de escribir).
+     */
+    private static final int INTENTOS_LECTURA = 64;
+
+    private final AtomicLong secuencia = new AtomicLong();
+    private final AtomicLongArray numeros;
+    private final AtomicReferenceArray<String> textos;
+
+    /**
+     * @param cantidadNumeros La cantidad de métricas numéricas. Todas
+     *                        empiezan en -1.
+     * @param cantidadTextos  La cantidad de métricas de texto. Todas empiezan
+     *                        en <code>null</code>.
+     */
+    public EstadoMetricas(int cantidadNumeros, int cantidadTextos) {
+        if (cantidadNumeros < 0 || cantidadTextos < 0) {
+            throw new IllegalArgumentException("La cantidad de métricas no puede ser negativa.");
+        }
+
+        this.numeros = new AtomicLongArray(cantidadNumeros);
+        this.textos = new AtomicReferenceArray<>(cantidadTextos);
+
+        for (int i = 0; i < cantidadNumeros; i++) {
+            this.numeros.set(i, Double.doubleToRawLongBits(-1));
+        }
+    }
+
+    public int getCantidadNumeros() {
+        return this.numeros.length();
+    }
+
+    public int getCantidadTextos() {
+        return this.textos.length();
+    }
+
+    public double getNumero(int indice) {
+        return Double.longBitsToDouble(this.numeros.get(indice));
+    }
+
+    public String getTexto(int indice) {
+        return this.textos.get(indice);
+    }
+
+    public void setNumero(int indice, double valor) {
+        this.comenzarEscritura();
+
+        try {
+            this.numeros.set(indice, Double.doubleToRawLongBits(valor));
+        } finally {
+            this.terminarEscritura();
+        }
+    }
+
+    public void setTexto(int indice, String valor) {
+        this.comenzarEscritura();
+
+        try {
+            this.textos.set(indice, valor);
+        } finally {
+            this.terminarEscritura();
+        }
+    }
+
+    /**
+     * Actualiza tres métricas numéricas en una sola escritura, de modo que
+     * ningún lector vea sólo una parte (por ejemplo, la latencia, el jitter
+     * y la pérdida de paquetes de una misma sonda).
+     */
+    public void setNumeros(int indiceA, double valorA, int indiceB, double valorB, int indiceC, double valorC) {
+        this.comenzarEscritura();
+
+        try {
+            this.numeros.set(indiceA, Double.doubleToRawLongBits(valorA));
+            this.numeros.set(indiceB, Double.doubleToRawLongBits(valorB));
+            this.numeros.set(indiceC, Double.doubleToRawLongBits(valorC));
+        } finally {
+            this.terminarEscritura();
+        }
+    }
+
+    /**
+     * Copia todas las métricas, tal como estaban en un mismo instante.
+     *
+     * @param numeros El destino de las métricas numéricas (con al menos
+     *                <code>getCantidadNumeros()</code> elementos).
+     * @param textos  El destino de las métricas de texto (con al menos
+     *                <code>getCantidadTextos()</code> elementos).
+     */
+    public void leer(double[] numeros, String[] textos) {
+        if (numeros.length < this.numeros.length() || textos.length < this.textos.length()) {
+            throw new IllegalArgumentException("Los arreglos de destino son demasiado cortos.");
+        }
+
+        for (int intento = 0; intento < INTENTOS_LECTURA; intento++) {
+            long inicio = this.secuencia.get();
+
+            if ((inicio & 1) != 0) {
+                Thread.yield(); // Hay una escritura en curso.
+
+                continue;
+            }
+
+            this.copiar(numeros, textos);
+
+            if (this.secuencia.get() == inicio) {
+                return;
+            }
+        }
+
+        /* Los escritores no dieron tregua: se lee con el turno de escritura
+         * tomado, lo que impide que escriban mientras tanto. */
+        this.comenzarEscritura();
+
+        try {
+            this.copiar(numeros, textos);
+        } finally {
+            this.terminarEscritura();
+        }
+    }
+
+    private void copiar(double[] numeros, String[] textos) {
+        for (int i = 0; i < this.numeros.length(); i++) {
+            numeros[i] = Double.longBitsToDouble(this.numeros.get(i));
+        }
+
+        for (int i = 0; i < this.textos.length(); i++) {
+            textos[i] = this.textos.get(i);
+        }
+    }
+
+    /**
+     * Toma el turno de escritura, dejando la secuencia en un valor impar.
+     * Las escrituras son breves, así que se espera activamente.
+     */
+    private void comenzarEscritura() {
+        while (true) {
+            long actual = this.secuencia.get();
+
+            if ((actual & 1) == 0 && this.secuencia.compareAndSet(actual, actual + 1)) {
+                return;
+            }
+
+            Thread.yield();
+        }
+    }
+
+    private void terminarEscritura() {
+        this.secuencia.incrementAndGet();
+    }
+
+}
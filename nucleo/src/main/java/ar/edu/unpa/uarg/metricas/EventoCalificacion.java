@@ -0,0 +1,84 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Todas las métricas que se tomaron cuando el usuario asignó una
+ * calificación, agrupadas en un único registro. La calificación, la fecha y
+ * el identificador del evento se guardan una sola vez, en lugar de repetirse
+ * en una fila por métrica, y las métricas de una misma experiencia quedan
+ * juntas en el archivo sin tener que reunirlas después.
+ * <p>
+ * Cada medición es un <code>RegistroMetrica</code> del que sólo se usan el
+ * nombre y el valor (su calificación y su fecha se ignoran). Un nombre se
+ * puede repetir (por ejemplo, si un tramo del usuario tiene el mismo nombre
+ * que un resumen): se conservan todas las mediciones, en orden.
+ * <p>
+ * Para agregarlo a la cola de escritura se envuelve en un
+ * <code>RegistroMetrica</code> de tipo <code>EVENTO</code>. Los objetos de
+ * esta clase son inmutables.
+ *
+ * @see RegistroMetrica#RegistroMetrica(EventoCalificacion)
+ */
+public final class EventoCalificacion {
+
+    /** El nombre con el que figura el evento como métrica. */
+    public static final String NOMBRE = "Rating";
+
+    private final long id;
+    private final String calificacionUsuario;
+    private final long fechaMilisegundos;
+    private final RegistroMetrica[] mediciones;
+
+    /**
+     * @param id                  El identificador del evento.
+     * @param calificacionUsuario La calificación que eligió el usuario.
+     * @param fechaMilisegundos   El instante de la calificación.
+     * @param mediciones          Las métricas tomadas (se copia el arreglo).
+     */
+    public EventoCalificacion(long id, String calificacionUsuario, long fechaMilisegundos, RegistroMetrica[] mediciones) {
+        if (calificacionUsuario == null || mediciones == null) {
+            throw new IllegalArgumentException("La calificación y las mediciones del evento no pueden ser null.");
+        }
+
+        for (RegistroMetrica medicion : mediciones) {
+            if (medicion.getTipoValor() == RegistroMetrica.TipoValor.EVENTO) {
+                throw new IllegalArgumentException("Un evento no puede contener otro evento.");
+            }
+        }
+
+        this.id = id;
+        this.calificacionUsuario = calificacionUsuario;
+        this.fechaMilisegundos = fechaMilisegundos;
+        this.mediciones = mediciones.clone();
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public String getCalificacionUsuario() {
+        return this.calificacionUsuario;
+    }
+
+    public long getFechaMilisegundos() {
+        return this.fechaMilisegundos;
+    }
+
+    public int getCantidadMediciones() {
+        return this.mediciones.length;
+    }
+
+    /**
+     * @param indice La posición de la medición, entre 0 y
+     *               <code>getCantidadMediciones() - 1</code>.
+     * @return La medición.
+     */
+    public RegistroMetrica getMedicion(int indice) {
+        return this.mediciones[indice];
+    }
+
+    @Override
+    public String toString() {
+        return NOMBRE + " " + this.id + " (" + this.calificacionUsuario + ", " + this.fechaMilisegundos + ", " + this.mediciones.length + " mediciones)";
+    }
+
+}
@@ -0,0 +1,378 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.util.TimeZone;
+
+/**
+ * Formatea fechas sin asignar memoria y desde cualquier cantidad de hilos, a
+ * diferencia de <code>SimpleDateFormat</code>, que no es seguro para varios
+ * hilos y crea un <code>Date</code>, un <code>StringBuffer</code> y un
+ * <code>String</code> en cada llamada.
+ * <p>
+ * La parte de la fecha que sólo cambia una vez por segundo (año, mes, día,
+ * hora, minutos, segundos y zona horaria) se calcula una vez y se guarda;
+ * mientras los registros sigan cayendo en el mismo segundo, sólo se copian
+ * esos caracteres y se escriben los milisegundos. Los dígitos se escriben
+ * directamente en el arreglo que indica quien llama.
+ * <p>
+ * Las fechas se calculan con el calendario gregoriano (también antes de
+ * 1582); las anteriores al año 0 o posteriores al 9999 se llevan al extremo
+ * más cercano de ese rango. <code>analizar</code> hace la conversión
+ * inversa.
+ */
+public final class FormateadorFecha {
+
+    /**
+     * Los formatos disponibles.
+     */
+    public enum Formato {
+        /** «yyyy-MM-dd HH:mm:ss», el formato histórico de «metricas.xml». */
+        CLASICO,
+        /**
+         * ISO 8601 con milisegundos y la diferencia con UTC, por ejemplo
+         * «2019-08-01T09:00:00.250-03:00» (o «...Z» en UTC). Permite ordenar
+         * los registros que se escriben dentro de un mismo segundo.
+         */
+        ISO_8601
+    }
+
+    /** La longitud máxima, en caracteres, de una fecha formateada. */
+    public static final int LONGITUD_MAXIMA = 29;
+
+    private static final int LONGITUD_PREFIJO = 19; // yyyy-MM-ddTHH:mm:ss
+    private static final long MILISEGUNDOS_POR_DIA = 86400000L;
+    private static final long FECHA_MINIMA = -62167219200000L; // 0000-01-01T00:00:00.000Z
+    private static final long FECHA_MAXIMA = 253402300799999L; // 9999-12-31T23:59:59.999Z
+
+    private final Formato formato;
+    private final TimeZone zonaHoraria;
+
+    /* El último segundo formateado. Es inmutable: si otro hilo necesita un
+     * segundo distinto, lo reemplaza entero. */
+    private volatile Segundo ultimoSegundo;
+
+    /**
+     * Crea un formateador que usa la zona horaria por defecto, como
+     * <code>SimpleDateFormat</code>.
+     *
+     * @param formato El formato de las fechas.
+     */
+    public FormateadorFecha(Formato formato) {
+        this(formato, TimeZone.getDefault());
+    }
+
+    /**
+     * @param formato     El formato de las fechas.
+     * @param zonaHoraria La zona horaria en la que se expresan las fechas.
+     */
+    public FormateadorFecha(Formato formato, TimeZone zonaHoraria) {
+        if (formato == null || zonaHoraria == null) {
+            throw new IllegalArgumentException("Configuración inválida para el formateador de fechas.");
+        }
+
+        this.formato = formato;
+        this.zonaHoraria = (TimeZone) zonaHoraria.clone();
+        this.ultimoSegundo = this.calcularSegundo(0);
+    }
+
+    public Formato getFormato() {
+        return this.formato;
+    }
+
+    /**
+     * Escribe la fecha en un arreglo de caracteres.
+     *
+     * @param fechaMilisegundos La fecha, en milisegundos desde 1970 (UTC).
+     * @param destino           El arreglo en el que se escribe.
+     * @param desde             La posición del primer carácter.
+     * @return La cantidad de caracteres escritos (como mucho
+     * <code>LONGITUD_MAXIMA</code>).
+     */
+    public int formatear(long fechaMilisegundos, char[] destino, int desde) {
+        fechaMilisegundos = limitar(fechaMilisegundos);
+
+        Segundo segundo = this.obtenerSegundo(fechaMilisegundos);
+        char[] prefijo = segundo.prefijo;
+
+        System.arraycopy(prefijo, 0, destino, desde, prefijo.length);
+
+        if (this.formato == Formato.CLASICO) {
+            return prefijo.length;
+        }
+
+        int posicion = desde + prefijo.length;
+        int milisegundos = (int) (fechaMilisegundos - segundo.segundo * 1000);
+
+        destino[posicion++] = '.';
+        destino[posicion++] = (char) ('0' + milisegundos / 100);
+        destino[posicion++] = (char) ('0' + milisegundos / 10 % 10);
+        destino[posicion++] = (char) ('0' + milisegundos % 10);
+
+        char[] zona = segundo.zona;
+
+        System.arraycopy(zona, 0, destino, posicion, zona.length);
+
+        return posicion + zona.length - desde;
+    }
+
+    /**
+     * Escribe la fecha en ASCII (y, por lo tanto, también en UTF-8).
+     *
+     * @param fechaMilisegundos La fecha, en milisegundos desde 1970 (UTC).
+     * @param destino           El arreglo en el que se escribe.
+     * @param desde             La posición del primer byte.
+     * @return La cantidad de bytes escritos (como mucho
+     * <code>LONGITUD_MAXIMA</code>).
+     */
+    public int formatear(long fechaMilisegundos, byte[] destino, int desde) {
+        fechaMilisegundos = limitar(fechaMilisegundos);
+
+        Segundo segundo = this.obtenerSegundo(fechaMilisegundos);
+        byte[] prefijo = segundo.prefijoBytes;
+
+        System.arraycopy(prefijo, 0, destino, desde, prefijo.length);
+
+        if (this.formato == Formato.CLASICO) {
+            return prefijo.length;
+        }
+
+        int posicion = desde + prefijo.length;
+        int milisegundos = (int) (fechaMilisegundos - segundo.segundo * 1000);
+
+        destino[posicion++] = '.';
+        destino[posicion++] = (byte) ('0' + milisegundos / 100);
+        destino[posicion++] = (byte) ('0' + milisegundos / 10 % 10);
+        destino[posicion++] = (byte) ('0' + milisegundos % 10);
+
+        byte[] zona = segundo.zonaBytes;
+
+        System.arraycopy(zona, 0, destino, posicion, zona.length);
+
+        return posicion + zona.length - desde;
+    }
+
+    /**
+     * @param fechaMilisegundos La fecha, en milisegundos desde 1970 (UTC).
+     * @return La fecha formateada. A diferencia de los otros métodos, éste
+     * crea el <code>String</code> del resultado.
+     */
+    public String formatear(long fechaMilisegundos) {
+        char[] texto = new char[LONGITUD_MAXIMA];
+
+        return new String(texto, 0, this.formatear(fechaMilisegundos, texto, 0));
+    }
+
+    /**
+     * Interpreta una fecha escrita con cualquiera de los dos formatos (con o
+     * sin milisegundos, con «T» o con un espacio entre la fecha y la hora).
+     * Si el texto no indica la zona horaria, se toma la de este formateador.
+     *
+     * @param texto La fecha formateada.
+     * @return La fecha, en milisegundos desde 1970 (UTC).
+     * @throws IllegalArgumentException Si el texto no es una fecha válida.
+     */
+    public long analizar(CharSequence texto) {
+        int longitud = texto.length();
+
+        if (longitud < LONGITUD_PREFIJO
+                || texto.charAt(4) != '-' || texto.charAt(7) != '-'
+                || (texto.charAt(10) != ' ' && texto.charAt(10) != 'T')
+                || texto.charAt(13) != ':' || texto.charAt(16) != ':') {
+            throw new IllegalArgumentException("La fecha «" + texto + "» no tiene un formato válido.");
+        }
+
+        int anio = leerDigitos(texto, 0, 4);
+        int mes = leerDigitos(texto, 5, 2);
+        int dia = leerDigitos(texto, 8, 2);
+        int hora = leerDigitos(texto, 11, 2);
+        int minutos = leerDigitos(texto, 14, 2);
+        int segundos = leerDigitos(texto, 17, 2);
+        int milisegundos = 0;
+        int posicion = LONGITUD_PREFIJO;
+
+        if (mes < 1 || mes > 12 || dia < 1 || dia > 31 || hora > 23 || minutos > 59 || segundos > 59) {
+            throw new IllegalArgumentException("La fecha «" + texto + "» no es válida.");
+        }
+
+        if (posicion < longitud && texto.charAt(posicion) == '.') {
+            milisegundos = leerDigitos(texto, posicion + 1, 3);
+            posicion += 4;
+        }
+
+        /* Fecha civil a días desde 1970 («days_from_civil»), la inversa de
+         * la conversión de calcularSegundo. */
+        long anioDesdeMarzo = mes <= 2 ? anio - 1 : anio;
+        long era = (anioDesdeMarzo >= 0 ? anioDesdeMarzo : anioDesdeMarzo - 399) / 400;
+        long anioDeEra = anioDesdeMarzo - era * 400;
+        long diaDelAnio = (153 * (mes > 2 ? mes - 3 : mes + 9) + 2) / 5 + dia - 1;
+        long diaDeEra = anioDeEra * 365 + anioDeEra / 4 - anioDeEra / 100 + diaDelAnio;
+        long dias = era * 146097 + diaDeEra - 719468;
+        long local = dias * MILISEGUNDOS_POR_DIA + (hora * 3600 + minutos * 60 + segundos) * 1000L + milisegundos;
+
+        if (posicion == longitud) {
+            /* Sin zona horaria: la diferencia con UTC depende del instante
+             * que se busca, así que se estima con la diferencia estándar y se
+             * corrige si cae en otro horario (de verano). */
+            long fecha = local - this.zonaHoraria.getOffset(local - this.zonaHoraria.getRawOffset());
+            int diferencia = this.zonaHoraria.getOffset(fecha);
+
+            return local - diferencia;
+        }
+
+        char signo = texto.charAt(posicion);
+
+        if (signo == 'Z' && posicion + 1 == longitud) {
+            return local;
+        }
+
+        if ((signo != '+' && signo != '-') || posicion + 6 != longitud || texto.charAt(posicion + 3) != ':') {
+            throw new IllegalArgumentException("La zona horaria de la fecha «" + texto + "» no es válida.");
+        }
+
+        int diferencia = (leerDigitos(texto, posicion + 1, 2) * 60 + leerDigitos(texto, posicion + 4, 2)) * 60000;
+
+        return signo == '+' ? local - diferencia : local + diferencia;
+    }
+
+    private Segundo obtenerSegundo(long fechaMilisegundos) {
+        long segundo = dividirHaciaAbajo(fechaMilisegundos, 1000);
+        Segundo actual = this.ultimoSegundo;
+
+        if (actual.segundo != segundo) {
+            actual = this.calcularSegundo(segundo);
+            this.ultimoSegundo = actual;
+        }
+
+        return actual;
+    }
+
+    private Segundo calcularSegundo(long segundo) {
+        long fechaMilisegundos = segundo * 1000;
+        int diferenciaMilisegundos = this.zonaHoraria.getOffset(fechaMilisegundos);
+        long local = fechaMilisegundos + diferenciaMilisegundos;
+        long dias = dividirHaciaAbajo(local, MILISEGUNDOS_POR_DIA);
+        int segundosDelDia = (int) ((local - dias * MILISEGUNDOS_POR_DIA) / 1000);
+
+        /* Días desde 1970 a fecha civil (algoritmo «civil_from_days» de
+         * Howard Hinnant), sin pasar por Calendar. */
+        long z = dias + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long diaDeEra = z - era * 146097;
+        long anioDeEra = (diaDeEra - diaDeEra / 1460 + diaDeEra / 36524 - diaDeEra / 146096) / 365;
+        long diaDelAnio = diaDeEra - (365 * anioDeEra + anioDeEra / 4 - anioDeEra / 100);
+        long mesDesdeMarzo = (5 * diaDelAnio + 2) / 153;
+        int dia = (int) (diaDelAnio - (153 * mesDesdeMarzo + 2) / 5 + 1);
+        int mes = (int) (mesDesdeMarzo < 10 ? mesDesdeMarzo + 3 : mesDesdeMarzo - 9);
+        int anio = (int) (anioDeEra + era * 400 + (mes <= 2 ? 1 : 0));
+
+        if (anio < 0) { // Sólo puede pasar por la zona horaria cerca de FECHA_MINIMA.
+            anio = 0;
+            mes = 1;
+            dia = 1;
+            segundosDelDia = 0;
+        } else if (anio > 9999) {
+            anio = 9999;
+            mes = 12;
+            dia = 31;
+            segundosDelDia = 86399;
+        }
+
+        char[] prefijo = new char[LONGITUD_PREFIJO];
+
+        escribirDigitos(anio, 4, prefijo, 0);
+        prefijo[4] = '-';
+        escribirDigitos(mes, 2, prefijo, 5);
+        prefijo[7] = '-';
+        escribirDigitos(dia, 2, prefijo, 8);
+        prefijo[10] = this.formato == Formato.CLASICO ? ' ' : 'T';
+        escribirDigitos(segundosDelDia / 3600, 2, prefijo, 11);
+        prefijo[13] = ':';
+        escribirDigitos(segundosDelDia / 60 % 60, 2, prefijo, 14);
+        prefijo[16] = ':';
+        escribirDigitos(segundosDelDia % 60, 2, prefijo, 17);
+
+        char[] zona;
+
+        if (diferenciaMilisegundos == 0) {
+            zona = new char[]{'Z'};
+        } else {
+            int minutos = Math.abs(diferenciaMilisegundos) / 60000;
+
+            zona = new char[6];
+            zona[0] = diferenciaMilisegundos < 0 ? '-' : '+';
+            escribirDigitos(minutos / 60, 2, zona, 1);
+            zona[3] = ':';
+            escribirDigitos(minutos % 60, 2, zona, 4);
+        }
+
+        return new Segundo(segundo, prefijo, zona);
+    }
+
+    private static void escribirDigitos(int valor, int cantidad, char[] destino, int desde) {
+        for (int i = desde + cantidad - 1; i >= desde; i--) {
+            destino[i] = (char) ('0' + valor % 10);
+            valor /= 10;
+        }
+    }
+
+    private static int leerDigitos(CharSequence texto, int desde, int cantidad) {
+        if (desde + cantidad > texto.length()) {
+            throw new IllegalArgumentException("La fecha «" + texto + "» está incompleta.");
+        }
+
+        int valor = 0;
+
+        for (int i = desde; i < desde + cantidad; i++) {
+            char c = texto.charAt(i);
+
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("La fecha «" + texto + "» tiene un carácter inválido: «" + c + "».");
+            }
+
+            valor = valor * 10 + (c - '0');
+        }
+
+        return valor;
+    }
+
+    private static long dividirHaciaAbajo(long dividendo, long divisor) {
+        long cociente = dividendo / divisor;
+
+        return dividendo % divisor < 0 ? cociente - 1 : cociente;
+    }
+
+    private static long limitar(long fechaMilisegundos) {
+        return Math.max(FECHA_MINIMA, Math.min(FECHA_MAXIMA, fechaMilisegundos));
+    }
+
+    /**
+     * Los caracteres que corresponden a un segundo, en ambas codificaciones.
+     */
+    private static final class Segundo {
+
+        final long segundo;
+        final char[] prefijo;
+        final char[] zona;
+        final byte[] prefijoBytes;
+        final byte[] zonaBytes;
+
+        Segundo(long segundo, char[] prefijo, char[] zona) {
+            this.segundo = segundo;
+            this.prefijo = prefijo;
+            this.zona = zona;
+            this.prefijoBytes = aBytes(prefijo);
+            this.zonaBytes = aBytes(zona);
+        }
+
+        private static byte[] aBytes(char[] caracteres) {
+            byte[] bytes = new byte[caracteres.length];
+
+            for (int i = 0; i < caracteres.length; i++) {
+                bytes[i] = (byte) caracteres[i];
+            }
+
+            return bytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Resumen de la calidad de la red calculado a partir de una única serie de
+ * sondas (ver <code>SesionSondeo</code>). Como la latencia, el jitter y la
+ * pérdida provienen de las mismas muestras, los tres valores describen el
+ * mismo momento.
+ * <p>
+ * Todos los tiempos se expresan en milisegundos. Las estadísticas de RTT
+ * valen -1 si ninguna sonda obtuvo respuesta, y las de jitter si se
+ * recibieron menos de dos respuestas.
+ *
+ * @see SesionSondeo
+ */
+public final class InformeCalidadRed {
+
+    private final String direccion;
+    private final long fechaMilisegundos;
+    private final int enviadas;
+    private final int recibidas;
+    private final double rttMinimo;
+    private final double rttPromedio;
+    private final double rttMaximo;
+    private final double rttDesviacion;
+    private final double jitterRFC3550;
+    private final double variacionMedia;
+
+    /**
+     * Calcula el informe a partir del resultado de una serie de sondas.
+     *
+     * @param direccion         El host al que se enviaron las sondas.
+     * @param fechaMilisegundos El instante en el que comenzó la serie.
+     * @param resultado         Los RTT obtenidos.
+     */
+    public InformeCalidadRed(String direccion, long fechaMilisegundos, ResultadoSondeo resultado) {
+        this.direccion = direccion;
+        this.fechaMilisegundos = fechaMilisegundos;
+        this.enviadas = resultado.getEnviadas();
+        this.recibidas = resultado.getRecibidas();
+
+        double minimo = Double.MAX_VALUE;
+        double maximo = -1;
+        double suma = 0;
+        double sumaCuadrados = 0;
+        double jitter = 0;
+        double sumaDiferencias = 0;
+        double anterior = -1;
+
+        for (int i = 0; i < this.enviadas; i++) {
+            long rttNanosegundos = resultado.getRttNanosegundos(i);
+
+            if (rttNanosegundos == ResultadoSondeo.PERDIDA) {
+                continue;
+            }
+
+            double rtt = rttNanosegundos / 1000000.0;
+
+            minimo = Math.min(minimo, rtt);
+            maximo = Math.max(maximo, rtt);
+            suma += rtt;
+            sumaCuadrados += rtt * rtt;
+
+            if (anterior >= 0) {
+                double diferencia = Math.abs(rtt - anterior);
+
+                /* RFC 3550, sección 6.4.1: J(i) = J(i-1) + (|D(i-1,i)| - J(i-1)) / 16.
+                 * Con RTT, D es la diferencia entre los RTT de dos respuestas
+                 * consecutivas. */
+                jitter += (diferencia - jitter) / 16;
+                sumaDiferencias += diferencia;
+            }
+
+            anterior = rtt;
+        }
+
+        if (this.recibidas > 0) {
+            double promedio = suma / this.recibidas;
+
+            this.rttMinimo = minimo;
+            this.rttPromedio = promedio;
+            this.rttMaximo = maximo;
+            this.rttDesviacion = Math.sqrt(Math.max(0, sumaCuadrados / this.recibidas - promedio * promedio));
+        } else {
+            this.rttMinimo = -1;
+            this.rttPromedio = -1;
+            this.rttMaximo = -1;
+            this.rttDesviacion = -1;
+        }
+
+        this.jitterRFC3550 = this.recibidas >= 2 ? jitter : -1;
+        this.variacionMedia = this.recibidas >= 2 ? sumaDiferencias / (this.recibidas - 1) : -1;
+    }
+
+    public String getDireccion() {
+        return this.direccion;
+    }
+
+    public long getFechaMilisegundos() {
+        return this.fechaMilisegundos;
+    }
+
+    public int getEnviadas() {
+        return this.enviadas;
+    }
+
+    public int getRecibidas() {
+        return this.recibidas;
+    }
+
+    /**
+     * @return El porcentaje (de 0 a 100) de sondas sin respuesta.
+     */
+    public int getPorcentajePerdida() {
+        return this.enviadas == 0 ? 0 : (this.enviadas - this.recibidas) * 100 / this.enviadas;
+    }
+
+    public double getRttMinimo() {
+        return this.rttMinimo;
+    }
+
+    public double getRttPromedio() {
+        return this.rttPromedio;
+    }
+
+    public double getRttMaximo() {
+        return this.rttMaximo;
+    }
+
+    /**
+     * @return La desviación estándar (poblacional) de los RTT.
+     */
+    public double getRttDesviacion() {
+        return this.rttDesviacion;
+    }
+
+    /**
+     * @return El jitter entre llegadas según el estimador suavizado de la
+     * RFC 3550.
+     */
+    public double getJitterRFC3550() {
+        return this.jitterRFC3550;
+    }
+
+    /**
+     * @return El promedio de la diferencia absoluta entre RTT consecutivos
+     * (el jitter que informa <code>Metricas.getJitter</code>).
+     */
+    public double getVariacionMedia() {
+        return this.variacionMedia;
+    }
+
+    @Override
+    public String toString() {
+        return this.direccion + ": rtt min/avg/max/stddev = " + this.rttMinimo + "/" + this.rttPromedio + "/" + this.rttMaximo + "/" + this.rttDesviacion
+                + " ms, jitter = " + this.jitterRFC3550 + " ms, pérdida = " + this.getPorcentajePerdida() + "%";
+    }
+
+}
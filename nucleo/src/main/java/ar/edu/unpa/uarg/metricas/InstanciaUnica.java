@@ -0,0 +1,71 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Guarda una instancia que se crea la primera vez que se pide y que se
+ * comparte entre todos los hilos (como la de <code>Metricas</code>).
+ * <p>
+ * La instancia se publica en un campo <code>volatile</code> después de
+ * construirla por completo, con un doble control: la creación se hace con
+ * el monitor tomado, así que se crea una sola vez aunque varios hilos la
+ * pidan a la vez, y las lecturas posteriores no toman el monitor. Todo hilo
+ * que obtiene la instancia ve los valores que le asignó su constructor.
+ *
+ * @param <T> El tipo de la instancia.
+ */
+public class InstanciaUnica<T> {
+
+    /**
+     * Crea la instancia. Se invoca con el monitor tomado, a lo sumo una vez
+     * por cada <code>quitar()</code>.
+     */
+    public interface Fabrica<T> {
+
+        T crear();
+
+    }
+
+    private volatile T instancia;
+
+    /**
+     * @param fabrica Crea la instancia si todavía no existe.
+     * @return La instancia existente o la recién creada.
+     */
+    public T obtener(Fabrica<T> fabrica) {
+        T existente = this.instancia;
+
+        if (existente == null) {
+            synchronized (this) {
+                existente = this.instancia;
+
+                if (existente == null) {
+                    existente = fabrica.crear();
+                    this.instancia = existente;
+                }
+            }
+        }
+
+        return existente;
+    }
+
+    /**
+     * @return La instancia, o <code>null</code> si no existe.
+     */
+    public T get() {
+        return this.instancia;
+    }
+
+    /**
+     * Olvida la instancia, de modo que el próximo <code>obtener</code> cree
+     * otra.
+     *
+     * @return La instancia que existía, o <code>null</code>.
+     */
+    public synchronized T quitar() {
+        T existente = this.instancia;
+
+        this.instancia = null;
+
+        return existente;
+    }
+
+}
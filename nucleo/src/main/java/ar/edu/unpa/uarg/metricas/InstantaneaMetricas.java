@@ -0,0 +1,195 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.IOException;
+
+/**
+ * Los valores de todas las métricas del dispositivo en un mismo instante,
+ * tal como los retorna <code>Metricas.captureSnapshot()</code>. Es inmutable
+ * y plana (sólo contiene tipos primitivos y cadenas), por lo que se puede
+ * compartir entre hilos y serializar directamente, ya sea con la
+ * serialización de Java o con <code>escribirJSON</code>.
+ * <p>
+ * Las métricas que no se pudieron obtener valen -1 (o <code>null</code>),
+ * como en los métodos individuales de <code>Metricas</code>; la fuerza de la
+ * señal vale 1 en ese caso.
+ */
+public final class InstantaneaMetricas implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long fechaMilisegundos;
+    private final int porcentajeCargaBateria;
+    private final boolean estaCargando;
+    private final boolean estaConectado;
+    private final String tipoConexion;
+    private final int fuerzaSenial;
+    private final double consumoMemoria;
+    private final double consumoMemoriaMB;
+    private final double usoCPU;
+    private final int porcentajeBrillo;
+    private final float lux;
+    private final float proximidad;
+    private final double latencia;
+    private final double jitter;
+    private final double paquetesPerdidos;
+    private final long latenciaPercibidaUsuario;
+
+    InstantaneaMetricas(long fechaMilisegundos, int porcentajeCargaBateria, boolean estaCargando, boolean estaConectado,
+                        String tipoConexion, int fuerzaSenial, double consumoMemoria, double consumoMemoriaMB, double usoCPU,
+                        int porcentajeBrillo, float lux, float proximidad, double latencia, double jitter,
+                        double paquetesPerdidos, long latenciaPercibidaUsuario) {
+        this.fechaMilisegundos = fechaMilisegundos;
+        this.porcentajeCargaBateria = porcentajeCargaBateria;
+        this.estaCargando = estaCargando;
+        this.estaConectado = estaConectado;
+        this.tipoConexion = tipoConexion;
+        this.fuerzaSenial = fuerzaSenial;
+        this.consumoMemoria = consumoMemoria;
+        this.consumoMemoriaMB = consumoMemoriaMB;
+        this.usoCPU = usoCPU;
+        this.porcentajeBrillo = porcentajeBrillo;
+        this.lux = lux;
+        this.proximidad = proximidad;
+        this.latencia = latencia;
+        this.jitter = jitter;
+        this.paquetesPerdidos = paquetesPerdidos;
+        this.latenciaPercibidaUsuario = latenciaPercibidaUsuario;
+    }
+
+    /**
+     * @return La fecha en la que se tomó la instantánea, en milisegundos
+     * desde la época Unix.
+     */
+    public long getFechaMilisegundos() {
+        return this.fechaMilisegundos;
+    }
+
+    public int getPorcentajeCargaBateria() {
+        return this.porcentajeCargaBateria;
+    }
+
+    public boolean isEstaCargando() {
+        return this.estaCargando;
+    }
+
+    public boolean isEstaConectado() {
+        return this.estaConectado;
+    }
+
+    public String getTipoConexion() {
+        return this.tipoConexion;
+    }
+
+    public int getFuerzaSenial() {
+        return this.fuerzaSenial;
+    }
+
+    public double getConsumoMemoria() {
+        return this.consumoMemoria;
+    }
+
+    public double getConsumoMemoriaMB() {
+        return this.consumoMemoriaMB;
+    }
+
+    public double getUsoCPU() {
+        return this.usoCPU;
+    }
+
+    public int getPorcentajeBrillo() {
+        return this.porcentajeBrillo;
+    }
+
+    public float getLux() {
+        return this.lux;
+    }
+
+    public float getProximidad() {
+        return this.proximidad;
+    }
+
+    /**
+     * @return La última latencia medida (en milisegundos). Las métricas de
+     * red no se miden al tomar la instantánea, porque requieren enviar
+     * sondas; se informa el último valor obtenido.
+     */
+    public double getLatencia() {
+        return this.latencia;
+    }
+
+    /**
+     * @return El último jitter medido (en milisegundos).
+     */
+    public double getJitter() {
+        return this.jitter;
+    }
+
+    /**
+     * @return El último porcentaje de paquetes perdidos medido.
+     */
+    public double getPaquetesPerdidos() {
+        return this.paquetesPerdidos;
+    }
+
+    /**
+     * @return La última latencia percibida por el usuario, en microsegundos.
+     */
+    public long getLatenciaPercibidaUsuario() {
+        return this.latenciaPercibidaUsuario;
+    }
+
+    /**
+     * Escribe la instantánea como un objeto JSON, con los mismos nombres de
+     * métrica que el archivo de métricas.
+     *
+     * @param escritor El escritor en el que se escribe el objeto.
+     * @throws IOException Si no se puede escribir.
+     */
+    public void escribirJSON(EscritorJSON escritor) throws IOException {
+        escritor.iniciarObjeto();
+        escritor.nombre("Date");
+        escritor.valor(this.fechaMilisegundos);
+        escritor.nombre("BatteryCharge");
+        escritor.valor(this.porcentajeCargaBateria);
+        escritor.nombre("PhoneCharging");
+        escritor.valor(this.estaCargando);
+        escritor.nombre("PhoneConnectedToANetwork");
+        escritor.valor(this.estaConectado);
+        escritor.nombre("ConnectionType");
+        escritor.valor(this.tipoConexion);
+        escritor.nombre("SignalStrength");
+        escritor.valor(this.fuerzaSenial);
+        escritor.nombre("MemoryConsumption");
+        escritor.valor(this.consumoMemoria);
+        escritor.nombre("MemoryConsumptionMB");
+        escritor.valor(this.consumoMemoriaMB);
+        escritor.nombre("CPUConsumption");
+        escritor.valor(this.usoCPU);
+        escritor.nombre("ScreenBrightness");
+        escritor.valor(this.porcentajeBrillo);
+        escritor.nombre("EnvironmentLight");
+        escritor.valor(this.lux);
+        escritor.nombre("Proximity");
+        escritor.valor(this.proximidad);
+        escritor.nombre("Latency");
+        escritor.valor(this.latencia);
+        escritor.nombre("Jitter");
+        escritor.valor(this.jitter);
+        escritor.nombre("PacketLoss");
+        escritor.valor(this.paquetesPerdidos);
+        escritor.nombre("UserPerceivedLatency");
+        escritor.valor(this.latenciaPercibidaUsuario);
+        escritor.finalizarObjeto();
+    }
+
+    @Override
+    public String toString() {
+        return "InstantaneaMetricas[fecha=" + this.fechaMilisegundos + ", bateria=" + this.porcentajeCargaBateria
+                + "%, cargando=" + this.estaCargando + ", conectado=" + this.estaConectado + ", conexion=" + this.tipoConexion
+                + ", senial=" + this.fuerzaSenial + " dBm, memoria=" + this.consumoMemoria + "% (" + this.consumoMemoriaMB
+                + " MB), cpu=" + this.usoCPU + "%, brillo=" + this.porcentajeBrillo + "%, lux=" + this.lux
+                + ", proximidad=" + this.proximidad + ", latencia=" + this.latencia + " ms, jitter=" + this.jitter
+                + " ms, perdida=" + this.paquetesPerdidos + "%, latenciaPercibida=" + this.latenciaPercibidaUsuario + " us]";
+    }
+
+}
@@ -0,0 +1,285 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TimeZone;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Lee los registros de un documento generado por
+ * <code>CodificadorDocumentoXML</code>. La lectura es secuencial (con StAX,
+ * sin construir un árbol del documento), así que la memoria que se utiliza
+ * no depende del tamaño del archivo y se pueden recorrer archivos de cientos
+ * de megabytes.
+ * <p>
+ * Los valores se entregan como texto, tal como están en el archivo, y las
+ * fechas sin zona horaria se interpretan en la zona indicada. Cada evento de
+ * calificación se entrega como un único registro de tipo
+ * <code>EVENTO</code>, tanto si tiene sus valores en una lista (con los
+ * nombres declarados en un elemento <code>ratingFields</code> anterior)
+ * como si tiene un atributo por métrica, como en la versión 1 del
+ * documento. Las cabeceras de sesión no se entregan como
+ * registros: los datos de la última leída se consultan con
+ * <code>getIdSesion</code>, <code>getDispositivo</code> y
+ * <code>getVersionAplicacion</code>.
+ * <p>
+ * Un documento que no terminó de escribirse (por ejemplo, porque la
+ * aplicación se cerró sin cerrar el archivo) se lee hasta el último registro
+ * completo; el error se informa recién al pedir el siguiente.
+ * <p>
+ * Android no incluye StAX: esta clase está pensada para analizar los
+ * archivos en una JVM de escritorio.
+ *
+ * @see CodificadorDocumentoXML
+ */
+public class LectorDocumentoXML implements java.io.Closeable {
+
+    private final XMLStreamReader lector;
+    private final FormateadorFecha formateadorFecha;
+
+    /** Los nombres de las métricas de los eventos, por identificador. */
+    private final HashMap<String, String[]> campos = new HashMap<>();
+
+    private String idSesion;
+    private String dispositivo;
+    private String versionAplicacion;
+    private long fechaSesion;
+
+    /**
+     * Crea un lector que interpreta las fechas sin zona horaria en la zona
+     * por defecto (como las escribe <code>CodificadorXML</code>).
+     *
+     * @param entrada El flujo del que se lee el documento.
+     * @throws IOException Si no se puede comenzar a leer el documento.
+     */
+    public LectorDocumentoXML(InputStream entrada) throws IOException {
+        this(entrada, TimeZone.getDefault());
+    }
+
+    /**
+     * @param entrada     El flujo del que se lee el documento.
+     * @param zonaHoraria La zona de las fechas que no indican una.
+     * @throws IOException Si no se puede comenzar a leer el documento.
+     */
+    public LectorDocumentoXML(InputStream entrada, TimeZone zonaHoraria) throws IOException {
+        XMLInputFactory fabrica = XMLInputFactory.newInstance();
+
+        /* Los documentos de métricas no usan DTD ni entidades externas: se
+         * desactivan para que un archivo manipulado no pueda leer otros
+         * archivos ni expandir entidades sin límite. */
+        fabrica.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        fabrica.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        try {
+            this.lector = fabrica.createXMLStreamReader(entrada);
+        } catch (XMLStreamException e) {
+            throw new IOException("No se pudo comenzar a leer el documento de métricas.", e);
+        }
+
+        this.formateadorFecha = new FormateadorFecha(FormateadorFecha.Formato.ISO_8601, zonaHoraria);
+    }
+
+    /**
+     * Lee el siguiente registro del documento.
+     *
+     * @return El registro leído, o <code>null</code> si se llegó al final del
+     * documento.
+     * @throws IOException Si el documento está mal formado o tiene un
+     *                     registro inválido.
+     */
+    public RegistroMetrica leer() throws IOException {
+        try {
+            while (this.lector.hasNext()) {
+                if (this.lector.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                String elemento = this.lector.getLocalName();
+
+                if (elemento.equals(CodificadorDocumentoXML.ELEMENTO_REGISTRO)) {
+                    return this.leerRegistro();
+                }
+
+                if (elemento.equals(CodificadorDocumentoXML.ELEMENTO_EVENTO)) {
+                    return this.leerEvento();
+                }
+
+                if (elemento.equals(CodificadorDocumentoXML.ELEMENTO_CAMPOS)) {
+                    this.leerCampos();
+                } else if (elemento.equals(CodificadorDocumentoXML.ELEMENTO_SESION)) {
+                    this.leerSesion();
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("El documento de métricas está mal formado: " + e.getMessage(), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return El identificador de la última sesión leída, o
+     * <code>null</code> si todavía no se leyó ninguna.
+     */
+    public String getIdSesion() {
+        return this.idSesion;
+    }
+
+    /**
+     * @return El dispositivo de la última sesión leída, o <code>null</code>
+     * si no se indicó.
+     */
+    public String getDispositivo() {
+        return this.dispositivo;
+    }
+
+    /**
+     * @return La versión de la aplicación de la última sesión leída, o
+     * <code>null</code> si no se indicó.
+     */
+    public String getVersionAplicacion() {
+        return this.versionAplicacion;
+    }
+
+    /**
+     * @return La fecha de comienzo de la última sesión leída, en
+     * milisegundos desde 1970.
+     */
+    public long getFechaSesion() {
+        return this.fechaSesion;
+    }
+
+    /**
+     * Cierra el lector. No cierra el flujo de entrada.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.lector.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private RegistroMetrica leerRegistro() throws IOException {
+        String metrica = this.lector.getAttributeValue(null, "name");
+        String valor = this.lector.getAttributeValue(null, "value");
+
+        if (metrica == null || valor == null) {
+            throw new IOException("Hay un registro sin nombre o sin valor en la línea " + this.lector.getLocation().getLineNumber() + ".");
+        }
+
+        return new RegistroMetrica(this.lector.getAttributeValue(null, "score"), metrica, valor, this.leerFecha());
+    }
+
+    /**
+     * Lee un evento de calificación. Si el atributo <code>fields</code>
+     * corresponde a una declaración leída, los valores de la lista
+     * <code>values</code> son las mediciones con esos nombres; si no (en un
+     * evento de la versión 1, donde <code>fields</code> podía ser el nombre
+     * de una métrica), lo son todos los atributos que no son el
+     * identificador, la fecha o la calificación. En ambos casos también son
+     * mediciones los elementos <code>metric</code> que contiene.
+     */
+    private RegistroMetrica leerEvento() throws IOException, XMLStreamException {
+        String id = this.lector.getAttributeValue(null, "id");
+        String calificacion = this.lector.getAttributeValue(null, "score");
+        long fecha = this.leerFecha();
+        int linea = this.lector.getLocation().getLineNumber();
+        ArrayList<RegistroMetrica> mediciones = new ArrayList<>();
+        String idCampos = this.lector.getAttributeValue(null, "fields");
+        String[] nombres = idCampos != null ? this.campos.get(idCampos) : null;
+
+        if (nombres != null) {
+            String valores = this.lector.getAttributeValue(null, "values");
+            String[] lista = valores != null ? EscritorRegistroXML.separarLista(valores, nombres.length) : null;
+
+            if (lista == null) {
+                throw new IOException("El evento de calificación de la línea " + linea + " no tiene un valor por cada métrica declarada.");
+            }
+
+            for (int i = 0; i < nombres.length; i++) {
+                mediciones.add(new RegistroMetrica(null, nombres[i], lista[i], fecha));
+            }
+        } else {
+            for (int i = 0; i < this.lector.getAttributeCount(); i++) {
+                String nombre = this.lector.getAttributeLocalName(i);
+
+                if (!nombre.equals("id") && !nombre.equals("date") && !nombre.equals("score")) {
+                    mediciones.add(new RegistroMetrica(null, nombre, this.lector.getAttributeValue(i), fecha));
+                }
+            }
+        }
+
+        while (this.lector.next() != XMLStreamConstants.END_ELEMENT
+                || !this.lector.getLocalName().equals(CodificadorDocumentoXML.ELEMENTO_EVENTO)) {
+            if (this.lector.isStartElement() && this.lector.getLocalName().equals(CodificadorDocumentoXML.ELEMENTO_MEDICION)) {
+                String nombre = this.lector.getAttributeValue(null, "name");
+                String valor = this.lector.getAttributeValue(null, "value");
+
+                if (nombre == null || valor == null) {
+                    throw new IOException("Hay una medición sin nombre o sin valor en la línea " + this.lector.getLocation().getLineNumber() + ".");
+                }
+
+                mediciones.add(new RegistroMetrica(null, nombre, valor, fecha));
+            }
+        }
+
+        try {
+            return new RegistroMetrica(new EventoCalificacion(Long.parseLong(id), calificacion, fecha, mediciones.toArray(new RegistroMetrica[mediciones.size()])));
+        } catch (IllegalArgumentException e) { // También NumberFormatException.
+            throw new IOException("El evento de calificación de la línea " + linea + " no es válido: " + e.getMessage(), e);
+        }
+    }
+
+    private void leerCampos() throws IOException {
+        String id = this.lector.getAttributeValue(null, "id");
+        String nombres = this.lector.getAttributeValue(null, "names");
+
+        if (id == null || nombres == null) {
+            throw new IOException("Hay una declaración de métricas sin identificador o sin nombres en la línea " + this.lector.getLocation().getLineNumber() + ".");
+        }
+
+        int cantidad = 1;
+
+        for (int i = 0; i < nombres.length(); i++) {
+            char c = nombres.charAt(i);
+
+            if (c == EscritorRegistroXML.ESCAPE_LISTA) {
+                i++;
+            } else if (c == EscritorRegistroXML.SEPARADOR_LISTA) {
+                cantidad++;
+            }
+        }
+
+        this.campos.put(id, EscritorRegistroXML.separarLista(nombres, cantidad));
+    }
+
+    private void leerSesion() throws IOException {
+        this.idSesion = this.lector.getAttributeValue(null, "id");
+        this.dispositivo = this.lector.getAttributeValue(null, "device");
+        this.versionAplicacion = this.lector.getAttributeValue(null, "appVersion");
+        this.fechaSesion = this.leerFecha();
+    }
+
+    private long leerFecha() throws IOException {
+        String fecha = this.lector.getAttributeValue(null, "date");
+
+        if (fecha == null) {
+            throw new IOException("Falta la fecha del elemento de la línea " + this.lector.getLocation().getLineNumber() + ".");
+        }
+
+        try {
+            return this.formateadorFecha.analizar(fecha);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage() + " (línea " + this.lector.getLocation().getLineNumber() + ")", e);
+        }
+    }
+
+}
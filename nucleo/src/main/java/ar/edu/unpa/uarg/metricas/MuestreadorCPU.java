@@ -0,0 +1,328 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Calcula el uso de CPU de la aplicación leyendo directamente los archivos
+ * de <code>/proc</code>, sin lanzar procesos como <code>top</code>. El uso se
+ * obtiene como la diferencia entre dos instantáneas:
+ * <ul>
+ * <li>los jiffies de CPU del proceso (<code>utime + stime</code> de
+ * <code>/proc/self/stat</code>);</li>
+ * <li>los jiffies totales del sistema (primera línea de
+ * <code>/proc/stat</code>).</li>
+ * </ul>
+ * Como en <code>top</code>, el porcentaje es relativo al total de la CPU
+ * (todos los núcleos). Desde Android 8 las aplicaciones no pueden leer
+ * <code>/proc/stat</code>; en ese caso el total se estima a partir del tiempo
+ * transcurrido, la frecuencia del reloj y la cantidad de núcleos.
+ * <p>
+ * La raíz de <code>/proc</code> es configurable para poder probar el
+ * análisis de los archivos con copias de ellos.
+ */
+public class MuestreadorCPU {
+
+    /**
+     * Los valores leídos en un momento dado. Sólo sirve para compararse con
+     * otra instantánea del mismo muestreador.
+     */
+    public static final class InstantaneaCPU {
+
+        private final long nanosegundos;
+        private final long jiffiesProceso;
+        private final long jiffiesSistema;
+        private final Map<String, Long> jiffiesHilos;
+
+        InstantaneaCPU(long nanosegundos, long jiffiesProceso, long jiffiesSistema, Map<String, Long> jiffiesHilos) {
+            this.nanosegundos = nanosegundos;
+            this.jiffiesProceso = jiffiesProceso;
+            this.jiffiesSistema = jiffiesSistema;
+            this.jiffiesHilos = jiffiesHilos;
+        }
+
+        public long getJiffiesProceso() {
+            return this.jiffiesProceso;
+        }
+
+        /**
+         * @return Los jiffies totales del sistema, o -1 si
+         * <code>/proc/stat</code> no se pudo leer.
+         */
+        public long getJiffiesSistema() {
+            return this.jiffiesSistema;
+        }
+
+    }
+
+    private static final int CAMPO_UTIME = 14; // Numeración de proc(5), empezando en 1.
+    private static final int CAMPOS_TOTAL_CPU = 8; // user, nice, system, idle, iowait, irq, softirq, steal.
+
+    private final File raizProc;
+    private final int frecuenciaReloj;
+    private final int nucleos;
+    private final byte[] buffer = new byte[4096];
+
+    /**
+     * Crea un muestreador que lee <code>/proc</code> con la frecuencia de
+     * reloj estándar de Linux (100 Hz).
+     */
+    public MuestreadorCPU() {
+        this(new File("/proc"), 100, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param raizProc        El directorio que hace las veces de
+     *                        <code>/proc</code>.
+     * @param frecuenciaReloj Los jiffies por segundo (<code>_SC_CLK_TCK</code>).
+     * @param nucleos         La cantidad de núcleos, usada cuando no se puede
+     *                        leer <code>/proc/stat</code>.
+     */
+    public MuestreadorCPU(File raizProc, int frecuenciaReloj, int nucleos) {
+        if (frecuenciaReloj <= 0 || nucleos <= 0) {
+            throw new IllegalArgumentException("La frecuencia de reloj y la cantidad de núcleos deben ser positivas.");
+        }
+
+        this.raizProc = raizProc;
+        this.frecuenciaReloj = frecuenciaReloj;
+        this.nucleos = nucleos;
+    }
+
+    /**
+     * @return Los jiffies por segundo con los que se interpretan los tiempos.
+     */
+    public int getFrecuenciaReloj() {
+        return this.frecuenciaReloj;
+    }
+
+    /**
+     * Toma una instantánea del proceso actual.
+     *
+     * @param incluirHilos Si se deben leer también los tiempos de cada hilo
+     *                     (<code>/proc/self/task/‹tid›/stat</code>).
+     * @return La instantánea.
+     * @throws IOException Si no se puede leer <code>/proc/self/stat</code>.
+     */
+    public synchronized InstantaneaCPU tomarInstantanea(boolean incluirHilos) throws IOException {
+        long ahora = System.nanoTime();
+        File self = new File(this.raizProc, "self");
+        long proceso = this.leerJiffiesTarea(new File(self, "stat"), null);
+        long sistema;
+
+        try {
+            sistema = analizarTotalSistema(this.buffer, this.leer(new File(this.raizProc, "stat")));
+        } catch (IOException e) {
+            sistema = -1; // Sin permiso de lectura (Android 8 o posterior).
+        }
+
+        Map<String, Long> hilos = null;
+
+        if (incluirHilos) {
+            hilos = new LinkedHashMap<>();
+            File[] tareas = new File(self, "task").listFiles();
+
+            if (tareas != null) {
+                StringBuilder nombre = new StringBuilder();
+
+                for (File tarea : tareas) {
+                    nombre.setLength(0);
+
+                    try {
+                        long jiffies = this.leerJiffiesTarea(new File(tarea, "stat"), nombre);
+
+                        hilos.put(nombre.append('#').append(tarea.getName()).toString(), jiffies);
+                    } catch (IOException e) {
+                        // El hilo terminó entre el listado y la lectura.
+                    }
+                }
+            }
+        }
+
+        return new InstantaneaCPU(ahora, proceso, sistema, hilos);
+    }
+
+    /**
+     * Calcula el porcentaje de CPU (de 0 a 100) que usó el proceso entre dos
+     * instantáneas.
+     *
+     * @param anterior La instantánea más antigua.
+     * @param actual   La instantánea más reciente.
+     * @return El porcentaje de uso, o -1 si las instantáneas no permiten
+     * calcularlo (por ejemplo, si son del mismo momento).
+     */
+    public double calcularUso(InstantaneaCPU anterior, InstantaneaCPU actual) {
+        return this.porcentaje(actual.jiffiesProceso - anterior.jiffiesProceso, anterior, actual);
+    }
+
+    /**
+     * Calcula el porcentaje de CPU que usó cada hilo entre dos instantáneas
+     * tomadas con <code>incluirHilos</code>. Los hilos que no existían en la
+     * instantánea anterior se omiten.
+     *
+     * @param anterior La instantánea más antigua.
+     * @param actual   La instantánea más reciente.
+     * @return El porcentaje de cada hilo, identificado como
+     * «‹nombre›#‹tid›».
+     */
+    public Map<String, Double> calcularUsoPorHilo(InstantaneaCPU anterior, InstantaneaCPU actual) {
+        Map<String, Double> uso = new LinkedHashMap<>();
+
+        if (anterior.jiffiesHilos == null || actual.jiffiesHilos == null) {
+            return uso;
+        }
+
+        for (Map.Entry<String, Long> hilo : actual.jiffiesHilos.entrySet()) {
+            Long jiffiesAnteriores = anterior.jiffiesHilos.get(hilo.getKey());
+
+            if (jiffiesAnteriores != null) {
+                uso.put(hilo.getKey(), this.porcentaje(hilo.getValue() - jiffiesAnteriores, anterior, actual));
+            }
+        }
+
+        return uso;
+    }
+
+    private double porcentaje(long jiffiesUsados, InstantaneaCPU anterior, InstantaneaCPU actual) {
+        double jiffiesDisponibles;
+
+        if (anterior.jiffiesSistema >= 0 && actual.jiffiesSistema >= 0) {
+            jiffiesDisponibles = actual.jiffiesSistema - anterior.jiffiesSistema;
+        } else {
+            jiffiesDisponibles = (actual.nanosegundos - anterior.nanosegundos) / 1e9 * this.frecuenciaReloj * this.nucleos;
+        }
+
+        if (jiffiesDisponibles <= 0) {
+            return -1;
+        }
+
+        return Math.min(100, Math.max(0, jiffiesUsados * 100 / jiffiesDisponibles));
+    }
+
+    private long leerJiffiesTarea(File archivoStat, StringBuilder nombre) throws IOException {
+        return analizarJiffiesTarea(this.buffer, this.leer(archivoStat), nombre);
+    }
+
+    private int leer(File archivo) throws IOException {
+        try (FileInputStream entrada = new FileInputStream(archivo)) {
+            int total = 0;
+            int leidos;
+
+            while (total < this.buffer.length && (leidos = entrada.read(this.buffer, total, this.buffer.length - total)) > 0) {
+                total += leidos;
+            }
+
+            return total;
+        }
+    }
+
+    /**
+     * Obtiene <code>utime + stime</code> del contenido de un archivo
+     * <code>/proc/‹pid›/stat</code> (o <code>.../task/‹tid›/stat</code>).
+     *
+     * @param datos    El contenido del archivo.
+     * @param longitud La cantidad de bytes válidos en <code>datos</code>.
+     * @param nombre   Si no es <code>null</code>, se le agrega el nombre de
+     *                 la tarea (el campo <code>comm</code>).
+     * @return Los jiffies de CPU en modo usuario y núcleo.
+     * @throws IOException Si el contenido no tiene el formato esperado.
+     */
+    static long analizarJiffiesTarea(byte[] datos, int longitud, StringBuilder nombre) throws IOException {
+        int inicioNombre = -1;
+        int finNombre = -1;
+
+        /* El nombre puede contener espacios y paréntesis, así que se busca el
+         * último ')' de la línea. */
+        for (int i = 0; i < longitud; i++) {
+            if (datos[i] == '(' && inicioNombre == -1) {
+                inicioNombre = i + 1;
+            } else if (datos[i] == ')') {
+                finNombre = i;
+            }
+        }
+
+        if (inicioNombre == -1 || finNombre < inicioNombre) {
+            throw new IOException("Formato de stat inesperado.");
+        }
+
+        if (nombre != null) {
+            for (int i = inicioNombre; i < finNombre; i++) {
+                nombre.append((char) (datos[i] & 0xFF));
+            }
+        }
+
+        /* Después del nombre viene el campo 3 (estado). */
+        int posicion = finNombre + 1;
+        int campo = 2;
+        long utime = -1;
+
+        while (posicion < longitud) {
+            while (posicion < longitud && datos[posicion] == ' ') {
+                posicion++;
+            }
+
+            campo++;
+
+            if (campo == CAMPO_UTIME || campo == CAMPO_UTIME + 1) {
+                long valor = 0;
+
+                while (posicion < longitud && datos[posicion] >= '0' && datos[posicion] <= '9') {
+                    valor = valor * 10 + (datos[posicion++] - '0');
+                }
+
+                if (campo == CAMPO_UTIME) {
+                    utime = valor;
+                } else {
+                    return utime + valor;
+                }
+            }
+
+            while (posicion < longitud && datos[posicion] != ' ') {
+                posicion++;
+            }
+        }
+
+        throw new IOException("Formato de stat inesperado: faltan los campos utime/stime.");
+    }
+
+    /**
+     * Obtiene la suma de los jiffies de la línea «cpu» (la primera) de
+     * <code>/proc/stat</code>.
+     *
+     * @param datos    El contenido del archivo.
+     * @param longitud La cantidad de bytes válidos en <code>datos</code>.
+     * @return El total de jiffies del sistema.
+     * @throws IOException Si el contenido no tiene el formato esperado.
+     */
+    static long analizarTotalSistema(byte[] datos, int longitud) throws IOException {
+        if (longitud < 4 || datos[0] != 'c' || datos[1] != 'p' || datos[2] != 'u' || datos[3] != ' ') {
+            throw new IOException("Formato de /proc/stat inesperado.");
+        }
+
+        int posicion = 4;
+        long total = 0;
+
+        for (int campo = 0; campo < CAMPOS_TOTAL_CPU; campo++) {
+            while (posicion < longitud && datos[posicion] == ' ') {
+                posicion++;
+            }
+
+            if (posicion >= longitud || datos[posicion] == '\n') {
+                break; // Núcleos antiguos informan menos columnas.
+            }
+
+            long valor = 0;
+
+            while (posicion < longitud && datos[posicion] >= '0' && datos[posicion] <= '9') {
+                valor = valor * 10 + (datos[posicion++] - '0');
+            }
+
+            total += valor;
+        }
+
+        return total;
+    }
+
+}
@@ -0,0 +1,300 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Toma muestras periódicas de varias métricas con un único hilo en segundo
+ * plano y las envía, con la fecha en la que se tomaron, a un
+ * <code>SumideroMuestras</code>.
+ * <p>
+ * Cada métrica se registra con su propio período. En lugar de programar una
+ * tarea por métrica, el planificador programa un solo despertar para la
+ * próxima métrica pendiente y, al despertar, mide todas las que vencen dentro
+ * de la ventana de coalescencia. Así, métricas con períodos parecidos
+ * comparten el mismo despertar del dispositivo.
+ * <p>
+ * El período es adaptativo: mientras los valores de una métrica se mantienen
+ * estables (dentro de la tolerancia indicada) el período se duplica, hasta el
+ * período máximo; ante el primer cambio vuelve al período mínimo.
+ *
+ * @see SumideroMuestras
+ */
+public class PlanificadorMuestreo implements java.io.Closeable {
+
+    /**
+     * Una métrica que el planificador sabe medir.
+     */
+    public interface FuenteMuestra {
+
+        /**
+         * @return El valor actual de la métrica, o <code>Double.NaN</code> si
+         * no se pudo medir (en ese caso la muestra se descarta).
+         */
+        double medir();
+
+    }
+
+    private static final class Entrada {
+
+        final String metrica;
+        final FuenteMuestra fuente;
+        final long periodoMinimoNanos;
+        final long periodoMaximoNanos;
+        final double tolerancia;
+
+        long periodoNanos;
+        long proximaNanos;
+        double ultimoValor = Double.NaN;
+
+        Entrada(String metrica, FuenteMuestra fuente, long periodoMinimoNanos, long periodoMaximoNanos, double tolerancia, long ahora) {
+            this.metrica = metrica;
+            this.fuente = fuente;
+            this.periodoMinimoNanos = periodoMinimoNanos;
+            this.periodoMaximoNanos = periodoMaximoNanos;
+            this.tolerancia = tolerancia;
+            this.periodoNanos = periodoMinimoNanos;
+            this.proximaNanos = ahora;
+        }
+
+    }
+
+    private final SumideroMuestras sumidero;
+    private final long ventanaNanos;
+    private final ScheduledThreadPoolExecutor ejecutor;
+    private final List<Entrada> entradas = new ArrayList<>();
+    private final Runnable despertar = new Runnable() {
+        public void run() {
+            muestrearPendientes();
+        }
+    };
+
+    private ScheduledFuture<?> proximoDespertar;
+    private long proximoDespertarNanos;
+
+    /**
+     * Crea el planificador con una ventana de coalescencia de un segundo.
+     *
+     * @param sumidero El destino de las muestras.
+     */
+    public PlanificadorMuestreo(SumideroMuestras sumidero) {
+        this(sumidero, 1000);
+    }
+
+    /**
+     * @param sumidero                  El destino de las muestras.
+     * @param ventanaMilisegundos       Cuánto antes de su vencimiento se
+     *                                  puede medir una métrica para
+     *                                  aprovechar el despertar de otra.
+     */
+    public PlanificadorMuestreo(SumideroMuestras sumidero, long ventanaMilisegundos) {
+        if (sumidero == null || ventanaMilisegundos < 0) {
+            throw new IllegalArgumentException("Configuración inválida para el planificador de muestreo.");
+        }
+
+        this.sumidero = sumidero;
+        this.ventanaNanos = TimeUnit.MILLISECONDS.toNanos(ventanaMilisegundos);
+        this.ejecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable tarea) {
+                Thread hilo = new Thread(tarea, "Q2M-Muestreo");
+
+                hilo.setDaemon(true);
+
+                return hilo;
+            }
+        });
+        this.ejecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Registra una métrica con un período fijo.
+     *
+     * @param metrica             El nombre con el que se envían las muestras.
+     * @param periodoMilisegundos El tiempo entre dos muestras.
+     * @param fuente              La forma de medir la métrica.
+     */
+    public void registrar(String metrica, long periodoMilisegundos, FuenteMuestra fuente) {
+        this.registrar(metrica, periodoMilisegundos, periodoMilisegundos, 0, fuente);
+    }
+
+    /**
+     * Registra una métrica con un período adaptativo. La primera muestra se
+     * toma de inmediato.
+     *
+     * @param metrica                    El nombre con el que se envían las
+     *                                   muestras.
+     * @param periodoMinimoMilisegundos  El período mientras el valor cambia.
+     * @param periodoMaximoMilisegundos  El período más largo al que se llega
+     *                                   mientras el valor se mantiene estable.
+     * @param tolerancia                 El cambio relativo (por ejemplo, 0,05
+     *                                   para un 5%) por debajo del cual se
+     *                                   considera que el valor no cambió.
+     * @param fuente                     La forma de medir la métrica.
+     */
+    public synchronized void registrar(String metrica, long periodoMinimoMilisegundos, long periodoMaximoMilisegundos, double tolerancia, FuenteMuestra fuente) {
+        if (metrica == null || fuente == null || periodoMinimoMilisegundos <= 0
+                || periodoMaximoMilisegundos < periodoMinimoMilisegundos || tolerancia < 0) {
+            throw new IllegalArgumentException("Configuración inválida para la métrica «" + metrica + "».");
+        }
+
+        if (this.ejecutor.isShutdown()) {
+            throw new IllegalStateException("El planificador de muestreo está cerrado.");
+        }
+
+        this.cancelar(metrica);
+
+        long ahora = System.nanoTime();
+
+        this.entradas.add(new Entrada(metrica, fuente, TimeUnit.MILLISECONDS.toNanos(periodoMinimoMilisegundos),
+                TimeUnit.MILLISECONDS.toNanos(periodoMaximoMilisegundos), tolerancia, ahora));
+        this.programar(ahora);
+    }
+
+    /**
+     * Deja de muestrear la métrica indicada.
+     *
+     * @param metrica El nombre con el que se registró la métrica.
+     * @return <code>true</code> si la métrica estaba registrada.
+     */
+    public synchronized boolean cancelar(String metrica) {
+        for (int i = 0; i < this.entradas.size(); i++) {
+            if (this.entradas.get(i).metrica.equals(metrica)) {
+                this.entradas.remove(i);
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param metrica El nombre con el que se registró la métrica.
+     * @return El período actual de la métrica en milisegundos, o -1 si no
+     * está registrada.
+     */
+    public synchronized long getPeriodoActual(String metrica) {
+        for (Entrada entrada : this.entradas) {
+            if (entrada.metrica.equals(metrica)) {
+                return TimeUnit.NANOSECONDS.toMillis(entrada.periodoNanos);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Detiene el muestreo. Si hay una medición en curso, se interrumpe.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.entradas.clear();
+        }
+
+        this.ejecutor.shutdownNow();
+
+        try {
+            this.ejecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void muestrearPendientes() {
+        List<Entrada> pendientes = new ArrayList<>();
+
+        synchronized (this) {
+            this.proximoDespertar = null;
+
+            long limite = System.nanoTime() + this.ventanaNanos;
+
+            for (Entrada entrada : this.entradas) {
+                if (entrada.proximaNanos - limite <= 0) {
+                    pendientes.add(entrada);
+                }
+            }
+        }
+
+        /* Las mediciones (como las sondas de red) pueden tardar, por lo que se
+         * hacen sin retener el monitor. */
+        for (Entrada entrada : pendientes) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            double valor;
+
+            try {
+                valor = entrada.fuente.medir();
+            } catch (RuntimeException e) {
+                valor = Double.NaN;
+            }
+
+            long fin = System.nanoTime();
+
+            if (!Double.isNaN(valor)) {
+                this.sumidero.recibir(entrada.metrica, System.currentTimeMillis(), valor);
+            }
+
+            synchronized (this) {
+                if (!Double.isNaN(valor)) {
+                    ajustarPeriodo(entrada, valor);
+                }
+
+                entrada.proximaNanos = fin + entrada.periodoNanos;
+            }
+        }
+
+        synchronized (this) {
+            this.programar(System.nanoTime());
+        }
+    }
+
+    private static void ajustarPeriodo(Entrada entrada, double valor) {
+        boolean estable = !Double.isNaN(entrada.ultimoValor)
+                && Math.abs(valor - entrada.ultimoValor) <= entrada.tolerancia * Math.abs(entrada.ultimoValor);
+
+        if (estable) {
+            entrada.periodoNanos = Math.min(entrada.periodoMaximoNanos, entrada.periodoNanos * 2);
+        } else {
+            entrada.periodoNanos = entrada.periodoMinimoNanos;
+        }
+
+        entrada.ultimoValor = valor;
+    }
+
+    /**
+     * Programa el despertar para la próxima métrica pendiente, salvo que ya
+     * haya uno programado antes. Debe llamarse con el monitor tomado.
+     */
+    private void programar(long ahora) {
+        if (this.entradas.isEmpty() || this.ejecutor.isShutdown()) {
+            return;
+        }
+
+        long proxima = this.entradas.get(0).proximaNanos;
+
+        for (Entrada entrada : this.entradas) {
+            if (entrada.proximaNanos - proxima < 0) {
+                proxima = entrada.proximaNanos;
+            }
+        }
+
+        if (this.proximoDespertar != null) {
+            if (this.proximoDespertarNanos - proxima <= 0) {
+                return;
+            }
+
+            this.proximoDespertar.cancel(false);
+        }
+
+        this.proximoDespertarNanos = proxima;
+        this.proximoDespertar = this.ejecutor.schedule(this.despertar, Math.max(0, proxima - ahora), TimeUnit.NANOSECONDS);
+    }
+
+}
@@ -0,0 +1,296 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decide cuándo subir las métricas con un <code>CanalSubida</code>. Las
+ * solicitudes de subida no se ejecutan de inmediato: se retienen hasta que
+ * el estado del dispositivo cumple la <code>PoliticaSubida</code> (por
+ * ejemplo, Wi-Fi y batería suficiente).
+ * <p>
+ * Las solicitudes que llegan dentro de la ventana de coalescencia se
+ * atienden juntas, con una única activación de la radio que sube todos los
+ * lotes pendientes. Si la política no se cumple, el estado se vuelve a
+ * evaluar periódicamente o cuando se informa un cambio mediante
+ * <code>notificarCambioEstado()</code>.
+ *
+ * @see PoliticaSubida
+ * @see CanalSubida
+ */
+public class PlanificadorSubida implements java.io.Closeable {
+
+    /**
+     * El estado del dispositivo que la política necesita conocer.
+     */
+    public interface Condiciones {
+
+        boolean estaConectado();
+
+        boolean estaEnWifi();
+
+        boolean estaCargando();
+
+        /**
+         * @return El porcentaje de carga de la batería (de 0 a 100).
+         */
+        int getPorcentajeBateria();
+
+    }
+
+    /**
+     * Recibe el resultado de cada subida. Se invoca desde el hilo del
+     * planificador.
+     */
+    public interface Observador {
+
+        void subidaCompletada(int lotes);
+
+        void subidaFallida(IOException error);
+
+    }
+
+    private final CanalSubida canal;
+    private final Condiciones condiciones;
+    private final Observador observador;
+    private final ScheduledThreadPoolExecutor ejecutor;
+    private final Runnable evaluar = new Runnable() {
+        public void run() {
+            evaluarPendientes();
+        }
+    };
+
+    private volatile PoliticaSubida politica;
+    private long ventanaMilisegundos;
+    private long reintentoMilisegundos;
+
+    private int solicitudesPendientes;
+    private long primeraSolicitudMilisegundos;
+    private ScheduledFuture<?> proximaEvaluacion;
+
+    /**
+     * @param canal        El canal con el que se suben las métricas.
+     * @param condiciones  La fuente del estado del dispositivo.
+     * @param politica     Las condiciones que se deben cumplir para subir.
+     * @param observador   El destino de los resultados de cada subida (puede
+     *                     ser <code>null</code>).
+     */
+    public PlanificadorSubida(CanalSubida canal, Condiciones condiciones, PoliticaSubida politica, Observador observador) {
+        if (canal == null || condiciones == null || politica == null) {
+            throw new IllegalArgumentException("Configuración inválida para el planificador de subida.");
+        }
+
+        this.canal = canal;
+        this.condiciones = condiciones;
+        this.politica = politica;
+        this.observador = observador;
+        this.ventanaMilisegundos = 5000;
+        this.reintentoMilisegundos = 15 * 60 * 1000;
+        this.ejecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable tarea) {
+                Thread hilo = new Thread(tarea, "Q2M-Subida");
+
+                hilo.setDaemon(true);
+
+                return hilo;
+            }
+        });
+        this.ejecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    public CanalSubida getCanal() {
+        return this.canal;
+    }
+
+    public PoliticaSubida getPolitica() {
+        return this.politica;
+    }
+
+    /**
+     * @param politica La nueva política. Se aplica a partir de la próxima
+     *                 evaluación.
+     */
+    public void setPolitica(PoliticaSubida politica) {
+        if (politica == null) {
+            throw new IllegalArgumentException("La política de subida no puede ser null.");
+        }
+
+        this.politica = politica;
+        this.notificarCambioEstado();
+    }
+
+    /**
+     * @param ventanaMilisegundos   Cuánto se espera, desde la primera
+     *                              solicitud, para atender juntas las que
+     *                              lleguen después.
+     * @param reintentoMilisegundos Cada cuánto se vuelve a evaluar el estado
+     *                              del dispositivo mientras la política no se
+     *                              cumple o la última subida falló.
+     */
+    public synchronized void setTiempos(long ventanaMilisegundos, long reintentoMilisegundos) {
+        if (ventanaMilisegundos < 0 || reintentoMilisegundos <= 0) {
+            throw new IllegalArgumentException("Tiempos inválidos para el planificador de subida.");
+        }
+
+        this.ventanaMilisegundos = ventanaMilisegundos;
+        this.reintentoMilisegundos = reintentoMilisegundos;
+    }
+
+    /**
+     * Solicita que se suban las métricas pendientes en cuanto la política lo
+     * permita.
+     */
+    public synchronized void solicitar() {
+        if (this.ejecutor.isShutdown()) {
+            return;
+        }
+
+        if (this.solicitudesPendientes++ == 0) {
+            this.primeraSolicitudMilisegundos = System.currentTimeMillis();
+            this.programar(this.ventanaMilisegundos);
+        }
+    }
+
+    /**
+     * Informa que cambió el estado del dispositivo (por ejemplo, se conectó a
+     * una red Wi-Fi o empezó a cargar). Si hay solicitudes pendientes, se
+     * evalúan de inmediato.
+     */
+    public synchronized void notificarCambioEstado() {
+        if (this.solicitudesPendientes > 0 && !this.ejecutor.isShutdown()) {
+            this.programar(0);
+        }
+    }
+
+    /**
+     * @return La cantidad de solicitudes de subida que todavía no se
+     * atendieron.
+     */
+    public synchronized int getSolicitudesPendientes() {
+        return this.solicitudesPendientes;
+    }
+
+    /**
+     * @return El tiempo transcurrido desde la solicitud pendiente más
+     * antigua, o 0 si no hay ninguna.
+     */
+    public synchronized long getAntiguedadMilisegundos() {
+        return this.solicitudesPendientes == 0 ? 0 : System.currentTimeMillis() - this.primeraSolicitudMilisegundos;
+    }
+
+    /**
+     * @return La cantidad (estimada) de lotes que todavía no se subieron.
+     * @throws IOException Si no se puede leer el cursor de subida.
+     * @see CanalSubida#getLotesPendientes()
+     */
+    public long getLotesPendientes() throws IOException {
+        return this.canal.getLotesPendientes();
+    }
+
+    /**
+     * @return La cantidad de bytes del archivo de métricas que todavía no se
+     * subieron.
+     * @throws IOException Si no se puede leer el cursor de subida.
+     */
+    public long getBytesPendientes() throws IOException {
+        return this.canal.getBytesPendientes();
+    }
+
+    /**
+     * Detiene el planificador. Las solicitudes pendientes se descartan; si
+     * hay una subida en curso, se interrumpe (y se retoma en la próxima
+     * subida desde el último lote confirmado).
+     */
+    @Override
+    public void close() {
+        /* Se detiene con el monitor tomado para que solicitar() no programe
+         * una evaluación en un ejecutor ya detenido; la espera, en cambio,
+         * se hace sin él. */
+        synchronized (this) {
+            this.solicitudesPendientes = 0;
+            this.ejecutor.shutdownNow();
+        }
+
+        try {
+            this.ejecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Debe llamarse con el monitor tomado.
+     */
+    private void programar(long demoraMilisegundos) {
+        if (this.proximaEvaluacion != null) {
+            if (this.proximaEvaluacion.getDelay(TimeUnit.MILLISECONDS) <= demoraMilisegundos) {
+                return;
+            }
+
+            this.proximaEvaluacion.cancel(false);
+        }
+
+        this.proximaEvaluacion = this.ejecutor.schedule(this.evaluar, demoraMilisegundos, TimeUnit.MILLISECONDS);
+    }
+
+    private void evaluarPendientes() {
+        int atendidas;
+
+        synchronized (this) {
+            this.proximaEvaluacion = null;
+            atendidas = this.solicitudesPendientes;
+
+            if (atendidas == 0) {
+                return;
+            }
+        }
+
+        boolean permitida;
+
+        try {
+            permitida = this.politica.permite(this.condiciones.estaConectado(), this.condiciones.estaEnWifi(),
+                    this.condiciones.estaCargando(), this.condiciones.getPorcentajeBateria());
+        } catch (RuntimeException e) {
+            permitida = false; // El estado no se pudo consultar; se reintenta más tarde.
+        }
+
+        IOException error = null;
+        int lotes = 0;
+
+        if (permitida) {
+            try {
+                lotes = this.canal.subir();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        synchronized (this) {
+            if (permitida && error == null) {
+                /* Las solicitudes que llegaron durante la subida quedan
+                 * pendientes para la próxima. Si close() las descartó
+                 * mientras tanto, no quedan pendientes negativas. */
+                this.solicitudesPendientes = Math.max(0, this.solicitudesPendientes - atendidas);
+
+                if (this.solicitudesPendientes > 0 && !this.ejecutor.isShutdown()) {
+                    this.primeraSolicitudMilisegundos = System.currentTimeMillis();
+                    this.programar(this.ventanaMilisegundos);
+                }
+            } else if (!this.ejecutor.isShutdown()) {
+                this.programar(this.reintentoMilisegundos);
+            }
+        }
+
+        if (this.observador != null && permitida) {
+            if (error == null) {
+                this.observador.subidaCompletada(lotes);
+            } else {
+                this.observador.subidaFallida(error);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Indica qué hacer con un registro nuevo cuando la cola del escritor
+ * asíncrono está llena.
+ *
+ * @see EscritorAsincrono
+ */
+public enum PoliticaContrapresion {
+
+    /**
+     * El hilo que adjunta la métrica espera hasta que haya lugar en la cola.
+     * No se pierde ningún registro.
+     */
+    BLOQUEAR,
+
+    /**
+     * Se descarta el registro más antiguo de la cola para hacerle lugar al
+     * nuevo.
+     */
+    DESCARTAR_MAS_ANTIGUO,
+
+    /**
+     * Se descarta el registro nuevo y la cola queda como estaba.
+     */
+    DESCARTAR_MAS_NUEVO
+
+}
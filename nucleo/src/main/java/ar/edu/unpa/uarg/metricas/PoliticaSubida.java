@@ -0,0 +1,70 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Determina en qué condiciones del dispositivo se pueden subir las
+ * métricas: sólo por Wi-Fi, sólo mientras el teléfono carga y con un
+ * porcentaje mínimo de batería. Todas las condiciones habilitadas deben
+ * cumplirse a la vez.
+ *
+ * @see PlanificadorSubida
+ */
+public final class PoliticaSubida {
+
+    /**
+     * Política por defecto: se sube en cuanto hay una conexión, sea cual sea
+     * el estado de la batería.
+     */
+    public static final PoliticaSubida SIEMPRE = new PoliticaSubida(false, false, 0);
+
+    /**
+     * Sólo se sube por Wi-Fi y, si el teléfono no está cargando, con al menos
+     * un 20% de batería.
+     */
+    public static final PoliticaSubida WIFI = new PoliticaSubida(true, false, 20);
+
+    /**
+     * Sólo se sube por Wi-Fi y mientras el teléfono carga.
+     */
+    public static final PoliticaSubida WIFI_Y_CARGANDO = new PoliticaSubida(true, true, 0);
+
+    private final boolean soloWifi;
+    private final boolean soloCargando;
+    private final int bateriaMinima;
+
+    /**
+     * @param soloWifi      Si sólo se puede subir por Wi-Fi.
+     * @param soloCargando  Si sólo se puede subir mientras el teléfono carga.
+     * @param bateriaMinima El porcentaje mínimo de batería (0 para no
+     *                      exigir ninguno). No se exige mientras el
+     *                      teléfono carga.
+     */
+    public PoliticaSubida(boolean soloWifi, boolean soloCargando, int bateriaMinima) {
+        if (bateriaMinima < 0 || bateriaMinima > 100) {
+            throw new IllegalArgumentException("El porcentaje mínimo de batería debe estar entre 0 y 100.");
+        }
+
+        this.soloWifi = soloWifi;
+        this.soloCargando = soloCargando;
+        this.bateriaMinima = bateriaMinima;
+    }
+
+    public boolean isSoloWifi() {
+        return this.soloWifi;
+    }
+
+    public boolean isSoloCargando() {
+        return this.soloCargando;
+    }
+
+    public int getBateriaMinima() {
+        return this.bateriaMinima;
+    }
+
+    boolean permite(boolean conectado, boolean wifi, boolean cargando, int porcentajeBateria) {
+        return conectado
+                && (!this.soloWifi || wifi)
+                && (!this.soloCargando || cargando)
+                && (cargando || porcentajeBateria >= this.bateriaMinima);
+    }
+
+}
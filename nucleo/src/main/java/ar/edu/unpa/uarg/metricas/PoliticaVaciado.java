@@ -0,0 +1,73 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Determina cuándo un <code>SumideroMetricas</code> debe volcar al archivo
+ * los registros que fue acumulando en memoria. El volcado ocurre en cuanto
+ * se cumple cualquiera de los tres umbrales: cantidad de registros, cantidad
+ * de bytes o tiempo transcurrido desde el último volcado.
+ * <p>
+ * Un umbral con valor 0 se considera deshabilitado (salvo en el caso de la
+ * cantidad de registros, donde 1 significa "volcar en cada registro").
+ *
+ * @see SumideroMetricas
+ */
+public final class PoliticaVaciado {
+
+    /**
+     * Política por defecto: se vuelca cada 64 registros, cada 8 KiB o cada
+     * dos segundos, lo que ocurra primero.
+     */
+    public static final PoliticaVaciado POR_DEFECTO = new PoliticaVaciado(64, 8 * 1024, 2000);
+
+    /**
+     * Política equivalente al comportamiento original de la librería: cada
+     * registro se escribe en el archivo apenas se recibe.
+     */
+    public static final PoliticaVaciado INMEDIATA = new PoliticaVaciado(1, 0, 0);
+
+    private final int maximoRegistros;
+    private final int maximoBytes;
+    private final long maximoMilisegundos;
+
+    /**
+     * @param maximoRegistros    Cantidad de registros pendientes a partir de la
+     *                           cual se vuelca el buffer (mayor o igual a 1).
+     * @param maximoBytes        Cantidad de bytes pendientes a partir de la cual
+     *                           se vuelca el buffer (0 para deshabilitar).
+     * @param maximoMilisegundos Tiempo máximo, en milisegundos, que un registro
+     *                           puede permanecer sin volcarse (0 para
+     *                           deshabilitar).
+     */
+    public PoliticaVaciado(int maximoRegistros, int maximoBytes, long maximoMilisegundos) {
+        if (maximoRegistros < 1 || maximoBytes < 0 || maximoMilisegundos < 0) {
+            throw new IllegalArgumentException("Los umbrales de la política de vaciado no pueden ser negativos.");
+        }
+
+        this.maximoRegistros = maximoRegistros;
+        this.maximoBytes = maximoBytes;
+        this.maximoMilisegundos = maximoMilisegundos;
+    }
+
+    public int getMaximoRegistros() {
+        return this.maximoRegistros;
+    }
+
+    public int getMaximoBytes() {
+        return this.maximoBytes;
+    }
+
+    public long getMaximoMilisegundos() {
+        return this.maximoMilisegundos;
+    }
+
+    boolean debeVaciar(int registrosPendientes, int bytesPendientes, long milisegundosTranscurridos) {
+        if (registrosPendientes == 0) {
+            return false;
+        }
+
+        return registrosPendientes >= this.maximoRegistros
+                || (this.maximoBytes > 0 && bytesPendientes >= this.maximoBytes)
+                || (this.maximoMilisegundos > 0 && milisegundosTranscurridos >= this.maximoMilisegundos);
+    }
+
+}
@@ -0,0 +1,198 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Una medición individual tal como se guarda en el archivo de métricas: el
+ * nombre del indicador, su valor, la calificación que eligió el usuario (si
+ * la hay) y el instante en el que se registró.
+ * <p>
+ * El valor puede ser un texto o un número. Los valores numéricos se guardan
+ * como primitivos, para que los codificadores los escriban sin convertirlos
+ * antes a <code>String</code>; su representación como texto es la de
+ * <code>String.valueOf</code> para el tipo correspondiente.
+ * <p>
+ * Un registro también puede llevar un <code>EventoCalificacion</code>, con
+ * todas las métricas de una calificación, para que pase por la misma cola y
+ * los mismos codificadores que el resto.
+ * <p>
+ * Los objetos de esta clase son inmutables.
+ *
+ * @see CodificadorRegistros
+ */
+public final class RegistroMetrica {
+
+    /**
+     * El tipo del valor de un registro.
+     */
+    public enum TipoValor {
+        TEXTO,
+        /** Un <code>long</code> (o un <code>int</code>). */
+        ENTERO,
+        /** Un <code>double</code>. */
+        REAL,
+        /** Un <code>float</code>, que se escribe con menos dígitos. */
+        REAL_SIMPLE,
+        /** Un <code>EventoCalificacion</code> (ver <code>getEvento</code>). */
+        EVENTO
+    }
+
+    private final String calificacionUsuario;
+    private final String metrica;
+    private final String valor;
+    private final TipoValor tipoValor;
+    private final long valorEntero;
+    private final double valorReal;
+    private final EventoCalificacion evento;
+    private final long fechaMilisegundos;
+
+    /**
+     * @param calificacionUsuario La calificación del usuario o
+     *                            <code>null</code> si el registro no está
+     *                            asociado a ninguna (formato anterior de la
+     *                            librería).
+     * @param metrica             El nombre de la métrica. Por ejemplo,
+     *                            "Latency".
+     * @param valor               El valor de la métrica.
+     * @param fechaMilisegundos   El instante del registro en milisegundos
+     *                            desde la época Unix.
+     */
+    public RegistroMetrica(String calificacionUsuario, String metrica, String valor, long fechaMilisegundos) {
+        if (metrica == null || valor == null) {
+            throw new IllegalArgumentException("El nombre y el valor de la métrica no pueden ser null.");
+        }
+
+        this.calificacionUsuario = calificacionUsuario;
+        this.metrica = metrica;
+        this.valor = valor;
+        this.tipoValor = TipoValor.TEXTO;
+        this.valorEntero = 0;
+        this.valorReal = 0;
+        this.evento = null;
+        this.fechaMilisegundos = fechaMilisegundos;
+    }
+
+    /**
+     * Crea un registro con un valor entero.
+     *
+     * @see #RegistroMetrica(String, String, String, long)
+     */
+    public RegistroMetrica(String calificacionUsuario, String metrica, long valor, long fechaMilisegundos) {
+        this(calificacionUsuario, metrica, TipoValor.ENTERO, valor, 0, fechaMilisegundos);
+    }
+
+    /**
+     * Crea un registro con un valor real.
+     *
+     * @see #RegistroMetrica(String, String, String, long)
+     */
+    public RegistroMetrica(String calificacionUsuario, String metrica, double valor, long fechaMilisegundos) {
+        this(calificacionUsuario, metrica, TipoValor.REAL, 0, valor, fechaMilisegundos);
+    }
+
+    /**
+     * Crea un registro con un valor real de precisión simple (por ejemplo,
+     * el de un sensor).
+     *
+     * @see #RegistroMetrica(String, String, String, long)
+     */
+    public RegistroMetrica(String calificacionUsuario, String metrica, float valor, long fechaMilisegundos) {
+        this(calificacionUsuario, metrica, TipoValor.REAL_SIMPLE, 0, valor, fechaMilisegundos);
+    }
+
+    /**
+     * Crea un registro que agrupa todas las métricas de una calificación. La
+     * calificación y la fecha del registro son las del evento, y su nombre
+     * es <code>EventoCalificacion.NOMBRE</code>.
+     *
+     * @param evento El evento de calificación.
+     */
+    public RegistroMetrica(EventoCalificacion evento) {
+        this.calificacionUsuario = evento.getCalificacionUsuario();
+        this.metrica = EventoCalificacion.NOMBRE;
+        this.valor = null;
+        this.tipoValor = TipoValor.EVENTO;
+        this.valorEntero = evento.getId();
+        this.valorReal = 0;
+        this.evento = evento;
+        this.fechaMilisegundos = evento.getFechaMilisegundos();
+    }
+
+    private RegistroMetrica(String calificacionUsuario, String metrica, TipoValor tipoValor, long valorEntero, double valorReal, long fechaMilisegundos) {
+        if (metrica == null) {
+            throw new IllegalArgumentException("El nombre de la métrica no puede ser null.");
+        }
+
+        this.calificacionUsuario = calificacionUsuario;
+        this.metrica = metrica;
+        this.valor = null;
+        this.tipoValor = tipoValor;
+        this.valorEntero = valorEntero;
+        this.valorReal = valorReal;
+        this.evento = null;
+        this.fechaMilisegundos = fechaMilisegundos;
+    }
+
+    public String getCalificacionUsuario() {
+        return this.calificacionUsuario;
+    }
+
+    public String getMetrica() {
+        return this.metrica;
+    }
+
+    /**
+     * @return El valor como texto. Para los valores numéricos, el texto se
+     * crea en cada llamada; los codificadores deberían usar
+     * <code>getTipoValor</code> y los métodos específicos de cada tipo.
+     */
+    public String getValor() {
+        switch (this.tipoValor) {
+            case ENTERO:
+            case EVENTO:
+                return String.valueOf(this.valorEntero);
+            case REAL:
+                return String.valueOf(this.valorReal);
+            case REAL_SIMPLE:
+                return String.valueOf((float) this.valorReal);
+            default:
+                return this.valor;
+        }
+    }
+
+    public TipoValor getTipoValor() {
+        return this.tipoValor;
+    }
+
+    /**
+     * @return El valor, si el tipo es <code>ENTERO</code>, o el
+     * identificador del evento, si es <code>EVENTO</code>.
+     */
+    public long getValorEntero() {
+        return this.valorEntero;
+    }
+
+    /**
+     * @return El valor, si el tipo es <code>REAL</code> o
+     * <code>REAL_SIMPLE</code>.
+     */
+    public double getValorReal() {
+        return this.valorReal;
+    }
+
+    /**
+     * @return El evento, si el tipo es <code>EVENTO</code>; si no,
+     * <code>null</code>.
+     */
+    public EventoCalificacion getEvento() {
+        return this.evento;
+    }
+
+    public long getFechaMilisegundos() {
+        return this.fechaMilisegundos;
+    }
+
+    @Override
+    public String toString() {
+        return this.metrica + "=" + this.getValor() + " (" + this.calificacionUsuario + ", " + this.fechaMilisegundos + ")";
+    }
+
+}
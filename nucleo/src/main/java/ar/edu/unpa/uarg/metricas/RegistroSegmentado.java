@@ -0,0 +1,379 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.zip.CRC32;
+
+/**
+ * Almacén de métricas formado por segmentos de tamaño fijo que se escriben
+ * mediante <code>MappedByteBuffer</code>. Cuando un segmento se llena se
+ * comienza uno nuevo y, si se supera la cantidad máxima de segmentos o de
+ * bytes, se eliminan los más antiguos. De esta manera el espacio ocupado en
+ * el almacenamiento nunca supera el límite configurado.
+ * <p>
+ * Cada registro se guarda como <code>[longitud][CRC32][datos]</code>
+ * (longitud y CRC32 son enteros de 4 bytes). La longitud se escribe en último
+ * lugar, de modo que un registro a medio escribir queda con longitud 0. Al
+ * abrir el almacén se recorre el último segmento, se descarta lo que siga al
+ * último registro cuya longitud y CRC son válidos y, si el segmento tiene
+ * registros, se comienza uno nuevo: cada segmento contiene una única sesión
+ * de escritura, con la cabecera y el cierre de su codificador.
+ * <p>
+ * Agregar un registro no crea objetos nuevos (salvo al cambiar de segmento).
+ * Los registros se pueden leer con <code>recorrer</code>.
+ *
+ * @see AlmacenMetricas
+ */
+public class RegistroSegmentado implements AlmacenMetricas {
+
+    /**
+     * Recibe los registros leídos mediante <code>recorrer</code>.
+     */
+    public interface ProcesadorRegistros {
+
+        /**
+         * @param datos    Arreglo que contiene el registro. Se reutiliza entre
+         *                 llamadas, por lo que no debe conservarse.
+         * @param longitud Cantidad de bytes del registro (desde la posición 0).
+         * @throws IOException Si el procesamiento falla; se interrumpe el
+         *                     recorrido.
+         */
+        void procesar(byte[] datos, int longitud) throws IOException;
+
+    }
+
+    private static final int BYTES_CABECERA_REGISTRO = 8;
+    private static final String EXTENSION_SEGMENTO = ".seg";
+
+    private final File directorio;
+    private final int bytesPorSegmento;
+    private final int maximoSegmentos;
+    private final long maximoBytes;
+    private final PoliticaVaciado politica;
+    private final CRC32 crc = new CRC32();
+    private final ArrayDeque<File> segmentos = new ArrayDeque<>();
+
+    private long numeroSegmentoActual;
+    private RandomAccessFile archivoActual;
+    private MappedByteBuffer mapa;
+    private int posicion;
+    private int registrosSinForzar;
+    private int bytesSinForzar;
+    private long instanteUltimoForzado;
+    private boolean cerrado;
+
+    /**
+     * Abre el almacén ubicado en el directorio indicado (creándolo si no
+     * existe). Los registros se agregan a un segmento nuevo, salvo que el
+     * último esté vacío.
+     *
+     * @param directorio       El directorio que contiene los segmentos.
+     * @param bytesPorSegmento El tamaño fijo de cada segmento.
+     * @param maximoSegmentos  La cantidad máxima de segmentos a conservar
+     *                         (como mínimo 1).
+     * @param maximoBytes      La cantidad máxima de bytes que pueden ocupar
+     *                         los segmentos en total (0 para no limitarla).
+     * @param politica         Cuándo forzar la escritura del segmento al
+     *                         almacenamiento (<code>force()</code>).
+     * @throws IOException Si no se puede crear el directorio o abrir el
+     *                     segmento.
+     */
+    public RegistroSegmentado(File directorio, int bytesPorSegmento, int maximoSegmentos, long maximoBytes, PoliticaVaciado politica) throws IOException {
+        if (bytesPorSegmento <= BYTES_CABECERA_REGISTRO || maximoSegmentos < 1 || maximoBytes < 0) {
+            throw new IllegalArgumentException("Configuración inválida para el registro segmentado.");
+        }
+
+        if (!directorio.isDirectory() && !directorio.mkdirs()) {
+            throw new IOException("No se pudo crear el directorio «" + directorio + "».");
+        }
+
+        this.directorio = directorio;
+        this.bytesPorSegmento = bytesPorSegmento;
+        this.maximoSegmentos = maximoSegmentos;
+        this.maximoBytes = maximoBytes;
+        this.politica = politica;
+        this.instanteUltimoForzado = System.nanoTime();
+
+        this.segmentos.addAll(listarSegmentos(directorio));
+
+        if (this.segmentos.isEmpty()) {
+            this.abrirSegmento(1);
+        } else {
+            File ultimo = this.segmentos.removeLast();
+
+            this.abrirSegmento(numeroSegmento(ultimo));
+            this.recuperar();
+
+            if (this.posicion > 0) {
+                this.rotar();
+            }
+        }
+
+        this.aplicarRetencion();
+    }
+
+    @Override
+    public synchronized boolean requiereArchivoNuevo(int longitud, int reserva) throws IOException {
+        this.verificarAbierto();
+
+        int bytesReserva = reserva > 0 ? BYTES_CABECERA_REGISTRO + reserva : 0; // El cierre es otro registro.
+
+        if (longitud <= 0 || longitud > this.bytesPorSegmento - BYTES_CABECERA_REGISTRO - bytesReserva) {
+            throw new IOException("Un registro de " + longitud + " bytes no entra en un segmento de " + this.bytesPorSegmento + " bytes.");
+        }
+
+        return this.posicion + BYTES_CABECERA_REGISTRO + longitud + bytesReserva > this.bytesPorSegmento;
+    }
+
+    @Override
+    public synchronized void comenzarArchivoNuevo() throws IOException {
+        this.verificarAbierto();
+        this.rotar();
+    }
+
+    /**
+     * Agrega un registro al segmento actual o, si no entra, al siguiente.
+     */
+    @Override
+    public synchronized void agregar(byte[] datos, int desde, int longitud) throws IOException {
+        if (this.requiereArchivoNuevo(longitud, 0)) {
+            this.rotar();
+        }
+
+        this.crc.reset();
+        this.crc.update(datos, desde, longitud);
+
+        int inicio = this.posicion;
+
+        this.mapa.position(inicio + BYTES_CABECERA_REGISTRO);
+        this.mapa.put(datos, desde, longitud);
+        this.mapa.putInt(inicio + 4, (int) this.crc.getValue());
+        this.mapa.putInt(inicio, longitud); // Se escribe al final: confirma el registro.
+
+        this.posicion = inicio + BYTES_CABECERA_REGISTRO + longitud;
+        this.registrosSinForzar++;
+        this.bytesSinForzar += BYTES_CABECERA_REGISTRO + longitud;
+
+        this.vaciarSiCorresponde();
+    }
+
+    @Override
+    public synchronized void vaciarSiCorresponde() throws IOException {
+        if (this.cerrado) {
+            return;
+        }
+
+        long milisegundos = (System.nanoTime() - this.instanteUltimoForzado) / 1000000L;
+
+        if (this.politica.debeVaciar(this.registrosSinForzar, this.bytesSinForzar, milisegundos)) {
+            this.forzar();
+        }
+    }
+
+    /**
+     * Fuerza la escritura del segmento actual al almacenamiento.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        this.verificarAbierto();
+        this.forzar();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.cerrado) {
+            return;
+        }
+
+        try {
+            this.forzar();
+        } finally {
+            this.cerrado = true;
+            this.mapa = null;
+            this.archivoActual.close();
+        }
+    }
+
+    @Override
+    public PoliticaVaciado getPolitica() {
+        return this.politica;
+    }
+
+    /**
+     * @return El directorio que contiene los segmentos.
+     */
+    @Override
+    public File getArchivo() {
+        return this.directorio;
+    }
+
+    /**
+     * @return La cantidad de segmentos presentes (incluido el actual).
+     */
+    public synchronized int getCantidadSegmentos() {
+        return this.segmentos.size() + 1;
+    }
+
+    /**
+     * Lee, en orden, todos los registros válidos de los segmentos de un
+     * directorio. La lectura de cada segmento termina en el primer registro
+     * incompleto o con CRC inválido.
+     *
+     * @param directorio  El directorio que contiene los segmentos.
+     * @param procesador  El objeto que recibe cada registro.
+     * @throws IOException Si no se puede leer algún segmento o si el
+     *                     procesador lanza una excepción.
+     */
+    public static void recorrer(File directorio, ProcesadorRegistros procesador) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] datos = new byte[1024];
+
+        for (File segmento : listarSegmentos(directorio)) {
+            try (RandomAccessFile archivo = new RandomAccessFile(segmento, "r")) {
+                FileChannel canal = archivo.getChannel();
+                ByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+                int posicion = 0;
+                int longitud;
+
+                while ((longitud = longitudValida(mapa, posicion, crc)) > 0) {
+                    if (datos.length < longitud) {
+                        datos = new byte[Math.max(longitud, datos.length * 2)];
+                    }
+
+                    mapa.position(posicion + BYTES_CABECERA_REGISTRO);
+                    mapa.get(datos, 0, longitud);
+                    procesador.procesar(datos, longitud);
+
+                    posicion += BYTES_CABECERA_REGISTRO + longitud;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return La longitud del registro que comienza en la posición indicada,
+     * o 0 si allí no hay un registro válido.
+     */
+    private static int longitudValida(ByteBuffer mapa, int posicion, CRC32 crc) {
+        if (posicion + BYTES_CABECERA_REGISTRO > mapa.capacity()) {
+            return 0;
+        }
+
+        int longitud = mapa.getInt(posicion);
+
+        if (longitud <= 0 || longitud > mapa.capacity() - posicion - BYTES_CABECERA_REGISTRO) {
+            return 0;
+        }
+
+        ByteBuffer contenido = mapa.duplicate();
+
+        contenido.limit(posicion + BYTES_CABECERA_REGISTRO + longitud);
+        contenido.position(posicion + BYTES_CABECERA_REGISTRO);
+        crc.reset();
+        crc.update(contenido);
+
+        return (int) crc.getValue() == mapa.getInt(posicion + 4) ? longitud : 0;
+    }
+
+    private void recuperar() {
+        this.posicion = 0;
+
+        int longitud;
+
+        while ((longitud = longitudValida(this.mapa, this.posicion, this.crc)) > 0) {
+            this.posicion += BYTES_CABECERA_REGISTRO + longitud;
+        }
+
+        /* Se borra lo que haya quedado después del último registro válido
+         * (por ejemplo, un registro a medio escribir antes de un cierre
+         * inesperado). */
+        for (int i = this.posicion; i < this.bytesPorSegmento; i++) {
+            this.mapa.put(i, (byte) 0);
+        }
+    }
+
+    private void rotar() throws IOException {
+        this.forzar();
+        this.archivoActual.close();
+        this.segmentos.addLast(this.archivoSegmento(this.numeroSegmentoActual));
+        this.abrirSegmento(this.numeroSegmentoActual + 1);
+        this.aplicarRetencion();
+    }
+
+    private void abrirSegmento(long numero) throws IOException {
+        this.archivoActual = new RandomAccessFile(this.archivoSegmento(numero), "rw");
+        this.mapa = this.archivoActual.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.bytesPorSegmento);
+        this.numeroSegmentoActual = numero;
+        this.posicion = 0;
+    }
+
+    private void aplicarRetencion() throws IOException {
+        while (!this.segmentos.isEmpty()
+                && (this.segmentos.size() + 1 > this.maximoSegmentos
+                || (this.maximoBytes > 0 && (long) (this.segmentos.size() + 1) * this.bytesPorSegmento > this.maximoBytes))) {
+            File masAntiguo = this.segmentos.removeFirst();
+
+            if (!masAntiguo.delete() && masAntiguo.exists()) {
+                throw new IOException("No se pudo eliminar el segmento «" + masAntiguo.getName() + "».");
+            }
+        }
+    }
+
+    private void forzar() {
+        this.mapa.force();
+        this.registrosSinForzar = 0;
+        this.bytesSinForzar = 0;
+        this.instanteUltimoForzado = System.nanoTime();
+    }
+
+    private File archivoSegmento(long numero) {
+        return new File(this.directorio, String.format(java.util.Locale.US, "%016d", numero) + EXTENSION_SEGMENTO);
+    }
+
+    private void verificarAbierto() throws IOException {
+        if (this.cerrado) {
+            throw new IOException("El registro segmentado «" + this.directorio.getName() + "» está cerrado.");
+        }
+    }
+
+    private static ArrayList<File> listarSegmentos(File directorio) {
+        ArrayList<File> segmentos = new ArrayList<>();
+        File[] archivos = directorio.listFiles();
+
+        if (archivos != null) {
+            for (File archivo : archivos) {
+                if (numeroSegmento(archivo) > 0) {
+                    segmentos.add(archivo);
+                }
+            }
+        }
+
+        /* Los nombres tienen ceros a la izquierda, así que el orden
+         * alfabético coincide con el numérico. */
+        Collections.sort(segmentos);
+
+        return segmentos;
+    }
+
+    private static long numeroSegmento(File archivo) {
+        String nombre = archivo.getName();
+
+        if (!nombre.endsWith(EXTENSION_SEGMENTO)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(nombre.substring(0, nombre.length() - EXTENSION_SEGMENTO.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Los tiempos de ida y vuelta (RTT) obtenidos en una ejecución de
+ * <code>SondaRed</code>. A partir de una misma serie de sondas se pueden
+ * calcular la latencia, el jitter y la pérdida de paquetes.
+ *
+ * @see SondaRed
+ */
+public final class ResultadoSondeo {
+
+    /** Valor de RTT que indica que la sonda no obtuvo respuesta. */
+    public static final long PERDIDA = -1;
+
+    private final long[] rttNanosegundos;
+    private final int recibidas;
+
+    ResultadoSondeo(long[] rttNanosegundos) {
+        int recibidas = 0;
+
+        for (long rtt : rttNanosegundos) {
+            if (rtt != PERDIDA) {
+                recibidas++;
+            }
+        }
+
+        this.rttNanosegundos = rttNanosegundos;
+        this.recibidas = recibidas;
+    }
+
+    /**
+     * Une dos series de sondas enviadas una a continuación de la otra.
+     *
+     * @param primera La serie enviada en primer lugar.
+     * @param segunda La serie enviada a continuación.
+     * @return Una serie con los RTT de ambas, en orden.
+     */
+    static ResultadoSondeo concatenar(ResultadoSondeo primera, ResultadoSondeo segunda) {
+        long[] rtts = java.util.Arrays.copyOf(primera.rttNanosegundos, primera.rttNanosegundos.length + segunda.rttNanosegundos.length);
+
+        System.arraycopy(segunda.rttNanosegundos, 0, rtts, primera.rttNanosegundos.length, segunda.rttNanosegundos.length);
+
+        return new ResultadoSondeo(rtts);
+    }
+
+    /**
+     * @return La cantidad de sondas enviadas.
+     */
+    public int getEnviadas() {
+        return this.rttNanosegundos.length;
+    }
+
+    /**
+     * @return La cantidad de sondas que obtuvieron respuesta.
+     */
+    public int getRecibidas() {
+        return this.recibidas;
+    }
+
+    /**
+     * @param indice El número de sonda (desde 0).
+     * @return El RTT de la sonda en nanosegundos, o <code>PERDIDA</code> si
+     * no obtuvo respuesta.
+     */
+    public long getRttNanosegundos(int indice) {
+        return this.rttNanosegundos[indice];
+    }
+
+    /**
+     * @return El RTT promedio en milisegundos de las sondas que obtuvieron
+     * respuesta, o -1 si ninguna la obtuvo.
+     */
+    public double getLatenciaMilisegundos() {
+        if (this.recibidas == 0) {
+            return -1;
+        }
+
+        long suma = 0;
+
+        for (long rtt : this.rttNanosegundos) {
+            if (rtt != PERDIDA) {
+                suma += rtt;
+            }
+        }
+
+        return suma / (this.recibidas * 1000000.0);
+    }
+
+    /**
+     * @return El promedio, en milisegundos, de la diferencia absoluta entre
+     * los RTT de sondas respondidas consecutivas, o -1 si se recibieron menos
+     * de dos respuestas.
+     */
+    public double getJitterMilisegundos() {
+        if (this.recibidas < 2) {
+            return -1;
+        }
+
+        long anterior = PERDIDA;
+        long sumaDiferencias = 0;
+
+        for (long rtt : this.rttNanosegundos) {
+            if (rtt == PERDIDA) {
+                continue;
+            }
+
+            if (anterior != PERDIDA) {
+                sumaDiferencias += Math.abs(rtt - anterior);
+            }
+
+            anterior = rtt;
+        }
+
+        return sumaDiferencias / ((this.recibidas - 1) * 1000000.0);
+    }
+
+    /**
+     * @return El porcentaje (de 0 a 100) de sondas que no obtuvieron
+     * respuesta.
+     */
+    public int getPorcentajePerdida() {
+        if (this.rttNanosegundos.length == 0) {
+            return 0;
+        }
+
+        return (this.rttNanosegundos.length - this.recibidas) * 100 / this.rttNanosegundos.length;
+    }
+
+}
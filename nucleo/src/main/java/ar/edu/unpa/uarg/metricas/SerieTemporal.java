@@ -0,0 +1,400 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.util.Arrays;
+
+/**
+ * Las últimas muestras de una métrica, guardadas en un búfer circular de
+ * capacidad fija con arreglos primitivos (sin objetos por muestra). Cuando
+ * el búfer se llena, cada muestra nueva reemplaza a la más antigua.
+ * <p>
+ * Las estadísticas se calculan sobre una ventana: las muestras tomadas a
+ * partir de un instante dado. Además de los valores, el búfer guarda sus
+ * sumas acumuladas (y las de sus cuadrados), por lo que la media y la
+ * varianza de cualquier ventana se obtienen en tiempo constante una vez
+ * ubicado su comienzo, que se busca por bisección. El mínimo, el máximo y
+ * los percentiles recorren la ventana sobre un arreglo auxiliar que se
+ * reutiliza entre consultas.
+ * <p>
+ * Las muestras se mantienen ordenadas por fecha. Agregarlas en orden
+ * cronológico cuesta tiempo constante; una muestra atrasada (por ejemplo, un
+ * evento de un sensor que llega en un lote, o una fecha tomada de otro
+ * reloj) se ubica en su lugar, con un costo proporcional a la cantidad de
+ * muestras posteriores. Todos los métodos son seguros para usarse desde
+ * varios hilos.
+ */
+public class SerieTemporal {
+
+    /**
+     * Las estadísticas de una ventana de la serie. Se puede reutilizar
+     * entre consultas para no crear un objeto nuevo cada vez.
+     */
+    public static final class Resumen {
+
+        private int cantidad;
+        private double media;
+        private double minimo;
+        private double maximo;
+        private double varianza;
+        private double p50;
+        private double p95;
+        private double p99;
+
+        /**
+         * @return La cantidad de muestras de la ventana. Si es 0, el resto de
+         * los valores es <code>NaN</code>.
+         */
+        public int getCantidad() {
+            return this.cantidad;
+        }
+
+        public double getMedia() {
+            return this.media;
+        }
+
+        public double getMinimo() {
+            return this.minimo;
+        }
+
+        public double getMaximo() {
+            return this.maximo;
+        }
+
+        /**
+         * @return La varianza poblacional.
+         */
+        public double getVarianza() {
+            return this.varianza;
+        }
+
+        public double getDesviacion() {
+            return Math.sqrt(this.varianza);
+        }
+
+        public double getP50() {
+            return this.p50;
+        }
+
+        public double getP95() {
+            return this.p95;
+        }
+
+        public double getP99() {
+            return this.p99;
+        }
+
+    }
+
+    private final long[] fechas;
+    private final double[] valores;
+    private final double[] sumas;
+    private final double[] sumasCuadrados;
+    private final double[] auxiliar;
+
+    private int inicio;
+    private int cantidad;
+    private int agregadosDesdeRecalculo;
+
+    /**
+     * El valor que se resta a cada muestra antes de acumularla, para que las
+     * sumas no crezcan sin límite y la varianza no pierda precisión.
+     */
+    private double referencia = Double.NaN;
+
+    /**
+     * @param capacidad La cantidad máxima de muestras que se conservan.
+     */
+    public SerieTemporal(int capacidad) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("La capacidad debe ser mayor que 0.");
+        }
+
+        this.fechas = new long[capacidad];
+        this.valores = new double[capacidad];
+        this.sumas = new double[capacidad];
+        this.sumasCuadrados = new double[capacidad];
+        this.auxiliar = new double[capacidad];
+    }
+
+    public int getCapacidad() {
+        return this.valores.length;
+    }
+
+    public synchronized int getCantidad() {
+        return this.cantidad;
+    }
+
+    /**
+     * Agrega una muestra. Si el búfer está lleno, se descarta la más antigua
+     * (que puede ser la muestra agregada, si su fecha es anterior a la de
+     * todas las demás).
+     *
+     * @param fechaMilisegundos El instante en el que se tomó la muestra.
+     * @param valor             El valor medido.
+     */
+    public synchronized void agregar(long fechaMilisegundos, double valor) {
+        int capacidad = this.valores.length;
+
+        if (Double.isNaN(this.referencia)) {
+            this.referencia = valor;
+        }
+
+        if (this.cantidad > 0 && fechaMilisegundos < this.fechas[(this.inicio + this.cantidad - 1) % capacidad]) {
+            this.insertarAtrasada(fechaMilisegundos, valor);
+
+            return;
+        }
+
+        int posicion;
+
+        if (this.cantidad < capacidad) {
+            posicion = (this.inicio + this.cantidad) % capacidad;
+            this.cantidad++;
+        } else {
+            posicion = this.inicio;
+            this.inicio = (this.inicio + 1) % capacidad;
+        }
+
+        double desplazado = valor - this.referencia;
+        int anterior = (posicion + capacidad - 1) % capacidad;
+        boolean primera = this.cantidad == 1;
+
+        this.fechas[posicion] = fechaMilisegundos;
+        this.valores[posicion] = valor;
+        this.sumas[posicion] = (primera ? 0 : this.sumas[anterior]) + desplazado;
+        this.sumasCuadrados[posicion] = (primera ? 0 : this.sumasCuadrados[anterior]) + desplazado * desplazado;
+
+        /* Las sumas acumuladas sólo crecen; cada «capacidad» muestras se
+         * recalculan desde la más antigua (costo amortizado constante). */
+        if (++this.agregadosDesdeRecalculo >= capacidad) {
+            this.recalcularSumas();
+        }
+    }
+
+    /**
+     * Ubica una muestra anterior a la última: corre una posición las
+     * posteriores y recalcula sus sumas acumuladas.
+     */
+    private void insertarAtrasada(long fechaMilisegundos, double valor) {
+        int capacidad = this.valores.length;
+        int indice = this.buscarComienzo(fechaMilisegundos + 1); // Después de las de la misma fecha.
+
+        if (this.cantidad == capacidad) {
+            if (indice == 0) {
+                return; // Sería la más antigua, que es la que se descarta.
+            }
+
+            this.inicio = (this.inicio + 1) % capacidad;
+            this.cantidad--;
+            indice--;
+        }
+
+        for (int i = this.cantidad; i > indice; i--) {
+            int destino = (this.inicio + i) % capacidad;
+            int origen = (this.inicio + i - 1) % capacidad;
+
+            this.fechas[destino] = this.fechas[origen];
+            this.valores[destino] = this.valores[origen];
+        }
+
+        int posicion = (this.inicio + indice) % capacidad;
+
+        this.fechas[posicion] = fechaMilisegundos;
+        this.valores[posicion] = valor;
+        this.cantidad++;
+
+        double suma = indice == 0 ? 0 : this.sumas[(posicion + capacidad - 1) % capacidad];
+        double sumaCuadrados = indice == 0 ? 0 : this.sumasCuadrados[(posicion + capacidad - 1) % capacidad];
+
+        for (int i = indice; i < this.cantidad; i++) {
+            int actual = (this.inicio + i) % capacidad;
+            double desplazado = this.valores[actual] - this.referencia;
+
+            suma += desplazado;
+            sumaCuadrados += desplazado * desplazado;
+            this.sumas[actual] = suma;
+            this.sumasCuadrados[actual] = sumaCuadrados;
+        }
+
+        if (++this.agregadosDesdeRecalculo >= capacidad) {
+            this.recalcularSumas();
+        }
+    }
+
+    /**
+     * Descarta todas las muestras.
+     */
+    public synchronized void vaciar() {
+        this.inicio = 0;
+        this.cantidad = 0;
+        this.agregadosDesdeRecalculo = 0;
+        this.referencia = Double.NaN;
+    }
+
+    /**
+     * @param desdeMilisegundos El comienzo de la ventana.
+     * @return La cantidad de muestras tomadas desde el instante indicado.
+     */
+    public synchronized int contar(long desdeMilisegundos) {
+        return this.cantidad - this.buscarComienzo(desdeMilisegundos);
+    }
+
+    /**
+     * @param desdeMilisegundos El comienzo de la ventana.
+     * @return La media de las muestras de la ventana, o <code>NaN</code> si
+     * está vacía.
+     */
+    public synchronized double getMedia(long desdeMilisegundos) {
+        int primera = this.buscarComienzo(desdeMilisegundos);
+        int n = this.cantidad - primera;
+
+        return n == 0 ? Double.NaN : this.referencia + this.sumaDesde(this.sumas, primera) / n;
+    }
+
+    /**
+     * @param desdeMilisegundos El comienzo de la ventana.
+     * @return La varianza (poblacional) de las muestras de la ventana, o
+     * <code>NaN</code> si está vacía.
+     */
+    public synchronized double getVarianza(long desdeMilisegundos) {
+        int primera = this.buscarComienzo(desdeMilisegundos);
+
+        return this.varianza(primera, this.cantidad - primera);
+    }
+
+    /**
+     * @param desdeMilisegundos El comienzo de la ventana.
+     * @return El resumen de las muestras tomadas desde el instante indicado.
+     */
+    public Resumen resumir(long desdeMilisegundos) {
+        return this.resumir(desdeMilisegundos, new Resumen());
+    }
+
+    /**
+     * Calcula el resumen de una ventana sobre un objeto existente.
+     *
+     * @param desdeMilisegundos El comienzo de la ventana.
+     * @param destino           El resumen a completar.
+     * @return El mismo objeto <code>destino</code>.
+     */
+    public synchronized Resumen resumir(long desdeMilisegundos, Resumen destino) {
+        int primera = this.buscarComienzo(desdeMilisegundos);
+        int n = this.cantidad - primera;
+
+        destino.cantidad = n;
+
+        if (n == 0) {
+            destino.media = destino.minimo = destino.maximo = destino.varianza = Double.NaN;
+            destino.p50 = destino.p95 = destino.p99 = Double.NaN;
+
+            return destino;
+        }
+
+        int capacidad = this.valores.length;
+
+        for (int i = 0; i < n; i++) {
+            this.auxiliar[i] = this.valores[(this.inicio + primera + i) % capacidad];
+        }
+
+        Arrays.sort(this.auxiliar, 0, n);
+
+        destino.media = this.referencia + this.sumaDesde(this.sumas, primera) / n;
+        destino.varianza = this.varianza(primera, n);
+        destino.minimo = this.auxiliar[0];
+        destino.maximo = this.auxiliar[n - 1];
+        destino.p50 = this.auxiliar[rango(0.50, n)];
+        destino.p95 = this.auxiliar[rango(0.95, n)];
+        destino.p99 = this.auxiliar[rango(0.99, n)];
+
+        return destino;
+    }
+
+    /**
+     * @return El índice del percentil <code>p</code> en <code>n</code>
+     * valores ordenados, según el método del rango más cercano.
+     */
+    private static int rango(double p, int n) {
+        return Math.max(0, (int) Math.ceil(p * n) - 1);
+    }
+
+    private double varianza(int primera, int n) {
+        if (n == 0) {
+            return Double.NaN;
+        }
+
+        double media = this.sumaDesde(this.sumas, primera) / n;
+
+        return Math.max(0, this.sumaDesde(this.sumasCuadrados, primera) / n - media * media);
+    }
+
+    /**
+     * @return La suma acumulada desde la muestra lógica <code>primera</code>
+     * (0 es la más antigua) hasta la más reciente.
+     */
+    private double sumaDesde(double[] acumuladas, int primera) {
+        int capacidad = this.valores.length;
+        int ultima = (this.inicio + this.cantidad - 1) % capacidad;
+
+        if (primera == 0) {
+            int posicionInicio = this.inicio;
+            double previa = acumuladas[posicionInicio] - this.valorAcumulado(acumuladas, posicionInicio);
+
+            return acumuladas[ultima] - previa;
+        }
+
+        return acumuladas[ultima] - acumuladas[(this.inicio + primera - 1) % capacidad];
+    }
+
+    private double valorAcumulado(double[] acumuladas, int posicion) {
+        double desplazado = this.valores[posicion] - this.referencia;
+
+        return acumuladas == this.sumas ? desplazado : desplazado * desplazado;
+    }
+
+    /**
+     * @return La posición lógica (0 es la más antigua) de la primera muestra
+     * tomada en <code>desdeMilisegundos</code> o después, o
+     * <code>cantidad</code> si no hay ninguna.
+     */
+    private int buscarComienzo(long desdeMilisegundos) {
+        int capacidad = this.fechas.length;
+        int bajo = 0;
+        int alto = this.cantidad;
+
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+
+            if (this.fechas[(this.inicio + medio) % capacidad] < desdeMilisegundos) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+
+        return bajo;
+    }
+
+    private void recalcularSumas() {
+        int capacidad = this.valores.length;
+        double suma = 0;
+        double sumaCuadrados = 0;
+
+        /* Se toma como referencia la media actual para minimizar la magnitud
+         * de los valores acumulados. */
+        if (this.cantidad > 0) {
+            this.referencia += this.sumaDesde(this.sumas, 0) / this.cantidad;
+        }
+
+        for (int i = 0; i < this.cantidad; i++) {
+            int posicion = (this.inicio + i) % capacidad;
+            double desplazado = this.valores[posicion] - this.referencia;
+
+            suma += desplazado;
+            sumaCuadrados += desplazado * desplazado;
+            this.sumas[posicion] = suma;
+            this.sumasCuadrados[posicion] = sumaCuadrados;
+        }
+
+        this.agregadosDesdeRecalculo = 0;
+    }
+
+}
@@ -0,0 +1,118 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envía un único tren de sondas a un host y calcula con esas mismas muestras
+ * la latencia, el jitter y la pérdida de paquetes. Reemplaza a la secuencia
+ * <code>getLatency</code> + <code>getJitter</code> +
+ * <code>getPacketLoss</code>, que enviaba diez sondas en tres tandas
+ * distintas y obtenía cada valor en un momento diferente.
+ * <p>
+ * Opcionalmente, si no se alcanza una cantidad mínima de respuestas, la
+ * sesión envía sondas adicionales sin superar un presupuesto máximo de
+ * sondas ni un plazo total. Así el peor caso de cada medición está acotado:
+ * nunca dura más que el plazo ni que
+ * <code>maximoSondas × (espera por sonda + intervalo)</code>.
+ *
+ * @see InformeCalidadRed
+ * @see SondaRed
+ */
+public class SesionSondeo {
+
+    private final SondaRed sonda;
+    private final int cantidadSondas;
+    private final long intervaloMilisegundos;
+    private final int minimoRespuestas;
+    private final int maximoSondas;
+    private final long plazoMilisegundos;
+
+    /**
+     * @param sonda                 La sonda con la que se mide cada RTT.
+     * @param cantidadSondas        La cantidad de sondas del tren.
+     * @param intervaloMilisegundos El tiempo mínimo entre dos sondas
+     *                              consecutivas.
+     */
+    public SesionSondeo(SondaRed sonda, int cantidadSondas, long intervaloMilisegundos) {
+        this(sonda, cantidadSondas, intervaloMilisegundos, 0, cantidadSondas, 0);
+    }
+
+    /**
+     * @param sonda                 La sonda con la que se mide cada RTT.
+     * @param cantidadSondas        La cantidad de sondas del tren inicial.
+     * @param intervaloMilisegundos El tiempo mínimo entre dos sondas
+     *                              consecutivas.
+     * @param minimoRespuestas      La cantidad de respuestas que se busca
+     *                              obtener. Si el tren inicial no las
+     *                              consigue, se envían sondas adicionales.
+     * @param maximoSondas          La cantidad máxima de sondas a enviar en
+     *                              total (incluidas las del tren inicial).
+     * @param plazoMilisegundos     El tiempo máximo que puede durar la sesión
+     *                              (0 para no limitarlo).
+     */
+    public SesionSondeo(SondaRed sonda, int cantidadSondas, long intervaloMilisegundos, int minimoRespuestas, int maximoSondas, long plazoMilisegundos) {
+        if (sonda == null || cantidadSondas < 1 || intervaloMilisegundos < 0 || minimoRespuestas < 0
+                || maximoSondas < cantidadSondas || plazoMilisegundos < 0) {
+            throw new IllegalArgumentException("Configuración inválida para la sesión de sondeo.");
+        }
+
+        this.sonda = sonda;
+        this.cantidadSondas = cantidadSondas;
+        this.intervaloMilisegundos = intervaloMilisegundos;
+        this.minimoRespuestas = minimoRespuestas;
+        this.maximoSondas = maximoSondas;
+        this.plazoMilisegundos = plazoMilisegundos;
+    }
+
+    public int getCantidadSondas() {
+        return this.cantidadSondas;
+    }
+
+    public long getIntervaloMilisegundos() {
+        return this.intervaloMilisegundos;
+    }
+
+    public int getMinimoRespuestas() {
+        return this.minimoRespuestas;
+    }
+
+    public int getMaximoSondas() {
+        return this.maximoSondas;
+    }
+
+    public long getPlazoMilisegundos() {
+        return this.plazoMilisegundos;
+    }
+
+    /**
+     * Envía el tren de sondas (y, si hace falta, sondas adicionales dentro
+     * del presupuesto y el plazo) y calcula el informe con todas las
+     * respuestas obtenidas.
+     *
+     * @param direccion El nombre o la dirección IP del host.
+     * @return El informe de calidad de la red.
+     * @throws IOException Si no se puede resolver el host o abrir los canales.
+     */
+    public InformeCalidadRed ejecutar(String direccion) throws IOException {
+        long fecha = System.currentTimeMillis();
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.plazoMilisegundos > 0 ? this.plazoMilisegundos : TimeUnit.DAYS.toMillis(365));
+        ResultadoSondeo resultado = this.sonda.sondear(direccion, this.cantidadSondas, this.intervaloMilisegundos, limite);
+
+        while (resultado.getRecibidas() < this.minimoRespuestas
+                && resultado.getEnviadas() < this.maximoSondas
+                && System.nanoTime() - limite < 0) {
+            int faltantes = Math.min(this.minimoRespuestas - resultado.getRecibidas(), this.maximoSondas - resultado.getEnviadas());
+            ResultadoSondeo adicional = this.sonda.sondear(direccion, faltantes, this.intervaloMilisegundos, limite);
+
+            if (adicional.getEnviadas() == 0) {
+                break; // Venció el plazo.
+            }
+
+            resultado = ResultadoSondeo.concatenar(resultado, adicional);
+        }
+
+        return new InformeCalidadRed(direccion, fecha, resultado);
+    }
+
+}
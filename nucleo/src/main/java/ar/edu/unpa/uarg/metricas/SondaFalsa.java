@@ -0,0 +1,104 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Una <code>SondaPlataforma</code> cuyos valores se fijan a mano, para
+ * ejercitar y medir el resto de la librería con un estado del dispositivo
+ * conocido (por ejemplo, en las pruebas de rendimiento o para simular que se
+ * pierde la conexión). Todos los valores se pueden cambiar desde cualquier
+ * hilo mientras otros los leen.
+ * <p>
+ * Por defecto simula un teléfono conectado por Wi-Fi con -55 dBm, la batería
+ * al 100% sin cargar, 4 GiB de memoria con la mitad disponible y sensores
+ * de luz (300 lx) y proximidad (5 cm).
+ */
+public class SondaFalsa implements SondaPlataforma {
+
+    private volatile boolean conectado = true;
+    private volatile boolean enWifi = true;
+    private volatile String tipoConexion = "Wi-Fi";
+    private volatile int fuerzaSenial = -55;
+    private volatile boolean cargando;
+    private volatile int porcentajeBateria = 100;
+    private volatile float luz = 300;
+    private volatile float proximidad = 5;
+    private volatile long memoriaTotalBytes = 4L << 30;
+    private volatile long memoriaDisponibleBytes = 2L << 30;
+    private volatile long tiempoCPUMilisegundos;
+
+    public boolean estaConectado() {
+        return this.conectado;
+    }
+
+    public boolean estaEnWifi() {
+        return this.conectado && this.enWifi;
+    }
+
+    public String getTipoConexion() {
+        return this.conectado ? this.tipoConexion : null;
+    }
+
+    public int getFuerzaSenial() {
+        return this.conectado ? this.fuerzaSenial : 1;
+    }
+
+    public boolean estaCargando() {
+        return this.cargando;
+    }
+
+    public int getPorcentajeBateria() {
+        return this.porcentajeBateria;
+    }
+
+    public float getLuz() {
+        return this.luz;
+    }
+
+    public float getProximidad() {
+        return this.proximidad;
+    }
+
+    public long getMemoriaTotalBytes() {
+        return this.memoriaTotalBytes;
+    }
+
+    public long getMemoriaDisponibleBytes() {
+        return this.memoriaDisponibleBytes;
+    }
+
+    public long getTiempoCPUMilisegundos() {
+        return this.tiempoCPUMilisegundos;
+    }
+
+    /**
+     * @param conectado    Si hay una red activa.
+     * @param enWifi       Si la red activa es Wi-Fi.
+     * @param tipoConexion El nombre del tipo de conexión.
+     * @param fuerzaSenial La intensidad de la señal en dBm.
+     */
+    public void setRed(boolean conectado, boolean enWifi, String tipoConexion, int fuerzaSenial) {
+        this.conectado = conectado;
+        this.enWifi = enWifi;
+        this.tipoConexion = tipoConexion;
+        this.fuerzaSenial = fuerzaSenial;
+    }
+
+    public void setBateria(int porcentajeBateria, boolean cargando) {
+        this.porcentajeBateria = porcentajeBateria;
+        this.cargando = cargando;
+    }
+
+    public void setSensores(float luz, float proximidad) {
+        this.luz = luz;
+        this.proximidad = proximidad;
+    }
+
+    public void setMemoria(long memoriaTotalBytes, long memoriaDisponibleBytes) {
+        this.memoriaTotalBytes = memoriaTotalBytes;
+        this.memoriaDisponibleBytes = memoriaDisponibleBytes;
+    }
+
+    public void setTiempoCPUMilisegundos(long tiempoCPUMilisegundos) {
+        this.tiempoCPUMilisegundos = tiempoCPUMilisegundos;
+    }
+
+}
@@ -0,0 +1,269 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Una <code>SondaPlataforma</code> para Linux (o para una JVM común en
+ * Linux), que lee el estado del equipo de <code>/sys</code> y
+ * <code>/proc</code>:
+ * <ul>
+ * <li>la batería y la carga, de <code>/sys/class/power_supply</code>;</li>
+ * <li>la red activa, de <code>/sys/class/net</code> (una interfaz distinta
+ * de <code>lo</code> en estado <code>up</code>; si tiene el directorio
+ * <code>wireless</code>, es Wi-Fi);</li>
+ * <li>la intensidad de la señal Wi-Fi, de <code>/proc/net/wireless</code>;</li>
+ * <li>la memoria, de <code>/proc/meminfo</code>;</li>
+ * <li>el tiempo de CPU del proceso, de <code>/proc/self/stat</code> (ver
+ * <code>MuestreadorCPU</code>).</li>
+ * </ul>
+ * No hay sensores de luz ni de proximidad. Cada consulta lee los archivos
+ * correspondientes; los errores de lectura se informan como valores
+ * desconocidos.
+ */
+public class SondaLinux implements SondaPlataforma {
+
+    private final File raizSys;
+    private final File raizProc;
+    private final MuestreadorCPU muestreadorCPU;
+    private final byte[] buffer = new byte[8192];
+
+    /**
+     * Crea una sonda que lee <code>/sys</code> y <code>/proc</code>.
+     */
+    public SondaLinux() {
+        this(new File("/sys"), new File("/proc"));
+    }
+
+    /**
+     * @param raizSys  El directorio que hace las veces de <code>/sys</code>.
+     * @param raizProc El directorio que hace las veces de <code>/proc</code>.
+     */
+    public SondaLinux(File raizSys, File raizProc) {
+        if (raizSys == null || raizProc == null) {
+            throw new IllegalArgumentException("Los directorios de la sonda no pueden ser null.");
+        }
+
+        this.raizSys = raizSys;
+        this.raizProc = raizProc;
+        this.muestreadorCPU = new MuestreadorCPU(raizProc, 100, Runtime.getRuntime().availableProcessors());
+    }
+
+    public synchronized boolean estaConectado() {
+        return this.buscarInterfazActiva() != null;
+    }
+
+    public synchronized boolean estaEnWifi() {
+        File interfaz = this.buscarInterfazActiva();
+
+        return interfaz != null && new File(interfaz, "wireless").isDirectory();
+    }
+
+    public synchronized String getTipoConexion() {
+        File interfaz = this.buscarInterfazActiva();
+
+        if (interfaz == null) {
+            return null;
+        }
+
+        return new File(interfaz, "wireless").isDirectory() ? "Wi-Fi" : "Ethernet";
+    }
+
+    public synchronized boolean estaCargando() {
+        File[] fuentes = new File(this.raizSys, "class/power_supply").listFiles();
+
+        if (fuentes == null) {
+            return false;
+        }
+
+        for (File fuente : fuentes) {
+            String tipo = this.leerTexto(new File(fuente, "type"));
+
+            if ("Battery".equals(tipo)) {
+                String estado = this.leerTexto(new File(fuente, "status"));
+
+                if ("Charging".equals(estado) || "Full".equals(estado)) {
+                    return true;
+                }
+            } else if ("1".equals(this.leerTexto(new File(fuente, "online")))) {
+                return true; // Una fuente externa (red eléctrica o USB) conectada.
+            }
+        }
+
+        return false;
+    }
+
+    public synchronized int getPorcentajeBateria() {
+        File[] fuentes = new File(this.raizSys, "class/power_supply").listFiles();
+
+        if (fuentes == null) {
+            return -1;
+        }
+
+        for (File fuente : fuentes) {
+            if ("Battery".equals(this.leerTexto(new File(fuente, "type")))) {
+                return (int) analizarEntero(this.leerTexto(new File(fuente, "capacity")));
+            }
+        }
+
+        return -1;
+    }
+
+    public synchronized int getFuerzaSenial() {
+        File interfaz = this.buscarInterfazActiva();
+
+        if (interfaz == null) {
+            return 1;
+        }
+
+        String contenido = this.leerTexto(new File(this.raizProc, "net/wireless"));
+
+        if (contenido == null) {
+            return 1;
+        }
+
+        /* Formato: dos líneas de encabezado y luego, por interfaz,
+         * "wlan0: 0000   54.  -56.  -256 ...": el nivel es la cuarta columna. */
+        String prefijo = interfaz.getName() + ":";
+
+        for (String linea : contenido.split("\n")) {
+            String[] columnas = linea.trim().split("\\s+");
+
+            if (columnas.length >= 4 && columnas[0].equals(prefijo)) {
+                long nivel = analizarEntero(columnas[3]);
+
+                return nivel < 0 ? (int) nivel : 1;
+            }
+        }
+
+        return 1;
+    }
+
+    public float getLuz() {
+        return -1;
+    }
+
+    public float getProximidad() {
+        return -1;
+    }
+
+    public synchronized long getMemoriaTotalBytes() {
+        return this.leerMemoria("MemTotal:");
+    }
+
+    public synchronized long getMemoriaDisponibleBytes() {
+        return this.leerMemoria("MemAvailable:");
+    }
+
+    public long getTiempoCPUMilisegundos() {
+        try {
+            return this.muestreadorCPU.tomarInstantanea(false).getJiffiesProceso() * 1000 / this.muestreadorCPU.getFrecuenciaReloj();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private File buscarInterfazActiva() {
+        File[] interfaces = new File(this.raizSys, "class/net").listFiles();
+
+        if (interfaces == null) {
+            return null;
+        }
+
+        File cableada = null;
+
+        for (File interfaz : interfaces) {
+            if (interfaz.getName().equals("lo") || !"up".equals(this.leerTexto(new File(interfaz, "operstate")))) {
+                continue;
+            }
+
+            if (new File(interfaz, "wireless").isDirectory()) {
+                return interfaz;
+            }
+
+            if (cableada == null) {
+                cableada = interfaz;
+            }
+        }
+
+        return cableada;
+    }
+
+    private long leerMemoria(String campo) {
+        String contenido = this.leerTexto(new File(this.raizProc, "meminfo"));
+
+        if (contenido == null) {
+            return -1;
+        }
+
+        int inicio = contenido.indexOf(campo);
+
+        if (inicio < 0) {
+            return -1;
+        }
+
+        int fin = contenido.indexOf('\n', inicio);
+        String[] columnas = contenido.substring(inicio + campo.length(), fin < 0 ? contenido.length() : fin).trim().split("\\s+");
+        long kilobytes = analizarEntero(columnas[0]);
+
+        return kilobytes < 0 ? -1 : kilobytes * 1024;
+    }
+
+    /**
+     * @return El contenido del archivo sin espacios al final, o
+     * <code>null</code> si no se puede leer.
+     */
+    private String leerTexto(File archivo) {
+        try (InputStream entrada = new FileInputStream(archivo)) {
+            int leidos = 0;
+
+            while (leidos < this.buffer.length) {
+                int n = entrada.read(this.buffer, leidos, this.buffer.length - leidos);
+
+                if (n < 0) {
+                    break;
+                }
+
+                leidos += n;
+            }
+
+            return new String(this.buffer, 0, leidos, "US-ASCII").trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return El número entero al comienzo del texto (admite un signo y
+     * descarta lo que sigue, como el punto en "-56."), o -1 si no hay uno.
+     */
+    static long analizarEntero(String texto) {
+        if (texto == null) {
+            return -1;
+        }
+
+        int i = 0;
+        boolean negativo = false;
+
+        if (i < texto.length() && texto.charAt(i) == '-') {
+            negativo = true;
+            i++;
+        }
+
+        int inicio = i;
+        long valor = 0;
+
+        while (i < texto.length() && texto.charAt(i) >= '0' && texto.charAt(i) <= '9') {
+            valor = valor * 10 + (texto.charAt(i++) - '0');
+        }
+
+        if (i == inicio) {
+            return -1;
+        }
+
+        return negativo ? -valor : valor;
+    }
+
+}
@@ -0,0 +1,60 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * El acceso a la plataforma en la que se ejecuta la librería: el estado de la
+ * batería y de la red, los sensores, la memoria y el tiempo de CPU del
+ * proceso. Separar este acceso del resto permite ejecutar (y medir) los
+ * cálculos y el almacenamiento de las métricas fuera de Android, con una
+ * implementación para Linux o una falsa.
+ * <p>
+ * Las implementaciones deben poder consultarse desde cualquier hilo y
+ * responder rápido (idealmente con un valor en memoria), ya que se consultan
+ * desde el muestreo periódico y desde la subida de métricas. Los valores
+ * desconocidos se informan como en <code>Metricas</code>: -1 (o
+ * <code>null</code>), salvo la fuerza de la señal, que vale 1.
+ *
+ * @see SondaLinux
+ * @see SondaFalsa
+ */
+public interface SondaPlataforma extends PlanificadorSubida.Condiciones {
+
+    /**
+     * @return El nombre del tipo de conexión ("Wi-Fi", "4G", "Ethernet",
+     * etc.), o <code>null</code> si no hay una red activa.
+     */
+    String getTipoConexion();
+
+    /**
+     * @return La intensidad de la señal de la red activa en dBm, o 1 si no se
+     * conoce.
+     */
+    int getFuerzaSenial();
+
+    /**
+     * @return La luz del entorno en lx, o -1 si no hay un sensor de luz.
+     */
+    float getLuz();
+
+    /**
+     * @return La proximidad en centímetros, o -1 si no hay un sensor de
+     * proximidad.
+     */
+    float getProximidad();
+
+    /**
+     * @return La memoria total del dispositivo en bytes, o -1.
+     */
+    long getMemoriaTotalBytes();
+
+    /**
+     * @return La memoria disponible del dispositivo en bytes, o -1.
+     */
+    long getMemoriaDisponibleBytes();
+
+    /**
+     * @return El tiempo de CPU que consumió el proceso desde que se inició,
+     * en milisegundos, o -1.
+     */
+    long getTiempoCPUMilisegundos();
+
+}
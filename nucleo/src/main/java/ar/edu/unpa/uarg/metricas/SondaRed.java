@@ -0,0 +1,280 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mide el tiempo de ida y vuelta (RTT) hacia un host sin lanzar procesos
+ * externos como <code>/system/bin/ping</code>. Las sondas se envían desde el
+ * propio proceso mediante canales NIO y se cronometran con
+ * <code>System.nanoTime()</code>. Hay dos modos:
+ * <ul>
+ * <li><code>UDP_ECO</code>: se envía un datagrama a un servicio de eco (por
+ * ejemplo, el puerto 7) y se espera la misma respuesta.</li>
+ * <li><code>CONEXION_TCP</code>: se mide el tiempo que tarda en completarse
+ * (o rechazarse) el establecimiento de una conexión TCP. Funciona con
+ * cualquier host que tenga un puerto accesible, como el 80 o el 443.</li>
+ * </ul>
+ * Las sondas se envían de a una; una sonda que no recibe respuesta dentro del
+ * tiempo de espera, o cuyo envío falla (por ejemplo, porque no hay ruta al
+ * host), se considera perdida.
+ *
+ * @see ResultadoSondeo
+ */
+public class SondaRed {
+
+    public enum Modo {
+        UDP_ECO,
+        CONEXION_TCP
+    }
+
+    private static final int LONGITUD_SONDA_UDP = 16;
+
+    private final Modo modo;
+    private final int puerto;
+    private final long esperaNanosegundos;
+
+    /**
+     * @param modo                   La forma en la que se mide el RTT.
+     * @param puerto                 El puerto del host al que se envían las
+     *                               sondas.
+     * @param esperaMilisegundos     El tiempo máximo que se espera la
+     *                               respuesta de cada sonda.
+     */
+    public SondaRed(Modo modo, int puerto, int esperaMilisegundos) {
+        if (modo == null || puerto < 1 || puerto > 65535 || esperaMilisegundos <= 0) {
+            throw new IllegalArgumentException("Configuración inválida para la sonda de red.");
+        }
+
+        this.modo = modo;
+        this.puerto = puerto;
+        this.esperaNanosegundos = TimeUnit.MILLISECONDS.toNanos(esperaMilisegundos);
+    }
+
+    public Modo getModo() {
+        return this.modo;
+    }
+
+    public int getPuerto() {
+        return this.puerto;
+    }
+
+    /**
+     * Envía una serie de sondas al host indicado.
+     *
+     * @param direccion            El nombre o la dirección IP (IPv4 o IPv6)
+     *                             del host.
+     * @param cantidad             La cantidad de sondas a enviar.
+     * @param intervaloMilisegundos El tiempo mínimo entre el envío de dos
+     *                             sondas consecutivas.
+     * @return Los RTT obtenidos.
+     * @throws IOException Si no se puede resolver el host o abrir los canales.
+     */
+    public ResultadoSondeo sondear(String direccion, int cantidad, long intervaloMilisegundos) throws IOException {
+        /* Un plazo de un año equivale a no tener plazo, sin riesgo de desborde
+         * al comparar instantes de System.nanoTime(). */
+        return this.sondear(direccion, cantidad, intervaloMilisegundos, System.nanoTime() + TimeUnit.DAYS.toNanos(365));
+    }
+
+    /**
+     * Envía una serie de sondas al host indicado sin superar un plazo. Si el
+     * plazo vence, no se envían las sondas restantes y el tiempo de espera de
+     * la sonda en curso se recorta, por lo que el método nunca tarda más que
+     * el plazo (más el tiempo de resolver el host).
+     *
+     * @param direccion             El nombre o la dirección IP del host.
+     * @param cantidad              La cantidad máxima de sondas a enviar.
+     * @param intervaloMilisegundos El tiempo mínimo entre el envío de dos
+     *                              sondas consecutivas.
+     * @param limiteNanosegundos    El instante, según
+     *                              <code>System.nanoTime()</code>, en el que
+     *                              vence el plazo.
+     * @return Los RTT de las sondas que se llegaron a enviar.
+     * @throws IOException Si no se puede resolver el host o abrir los canales.
+     */
+    public ResultadoSondeo sondear(String direccion, int cantidad, long intervaloMilisegundos, long limiteNanosegundos) throws IOException {
+        InetSocketAddress destino = new InetSocketAddress(InetAddress.getByName(direccion), this.puerto);
+        long[] rtts = new long[cantidad];
+        int enviadas;
+
+        if (this.modo == Modo.UDP_ECO) {
+            enviadas = this.sondearUDP(destino, rtts, intervaloMilisegundos, limiteNanosegundos);
+        } else {
+            enviadas = this.sondearTCP(destino, rtts, intervaloMilisegundos, limiteNanosegundos);
+        }
+
+        return new ResultadoSondeo(enviadas == rtts.length ? rtts : java.util.Arrays.copyOf(rtts, enviadas));
+    }
+
+    private int sondearUDP(InetSocketAddress destino, long[] rtts, long intervaloMilisegundos, long limitePlazo) throws IOException {
+        try (DatagramChannel canal = DatagramChannel.open(); Selector selector = Selector.open()) {
+            ByteBuffer envio = ByteBuffer.allocate(LONGITUD_SONDA_UDP);
+            ByteBuffer respuesta = ByteBuffer.allocate(LONGITUD_SONDA_UDP);
+            long identificador = System.nanoTime();
+
+            canal.configureBlocking(false);
+
+            try {
+                canal.connect(destino);
+            } catch (IOException e) {
+                /* No hay ruta al host, o la dirección no se puede usar desde
+                 * ninguna interfaz: todas las sondas se pierden. */
+                java.util.Arrays.fill(rtts, ResultadoSondeo.PERDIDA);
+
+                return rtts.length;
+            }
+
+            canal.register(selector, SelectionKey.OP_READ);
+
+            for (int i = 0; i < rtts.length; i++) {
+                long inicio = System.nanoTime();
+                long limite = this.limiteSonda(inicio, limitePlazo);
+
+                if (limite <= inicio) {
+                    return i;
+                }
+
+                envio.clear();
+                envio.putLong(identificador).putLong(i).flip();
+                rtts[i] = ResultadoSondeo.PERDIDA;
+
+                try {
+                    canal.write(envio);
+                } catch (IOException e) {
+                    /* Por ejemplo, el «puerto inalcanzable» de una sonda
+                     * anterior: esta sonda también se pierde. */
+                    esperarIntervalo(inicio, intervaloMilisegundos, i, rtts.length, limitePlazo);
+                    continue;
+                }
+
+                while (rtts[i] == ResultadoSondeo.PERDIDA && esperarEvento(selector, limite)) {
+                    respuesta.clear();
+
+                    try {
+                        if (canal.read(respuesta) != LONGITUD_SONDA_UDP) {
+                            continue;
+                        }
+                    } catch (IOException e) {
+                        break; // Por ejemplo, un ICMP «puerto inalcanzable»: no hay servicio de eco.
+                    }
+
+                    long recepcion = System.nanoTime();
+
+                    /* Se descartan las respuestas atrasadas de sondas anteriores. */
+                    if (respuesta.getLong(0) == identificador && respuesta.getLong(8) == i) {
+                        rtts[i] = recepcion - inicio;
+                    }
+                }
+
+                esperarIntervalo(inicio, intervaloMilisegundos, i, rtts.length, limitePlazo);
+            }
+        }
+
+        return rtts.length;
+    }
+
+    private int sondearTCP(InetSocketAddress destino, long[] rtts, long intervaloMilisegundos, long limitePlazo) throws IOException {
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < rtts.length; i++) {
+                long inicio = System.nanoTime();
+                long limite = this.limiteSonda(inicio, limitePlazo);
+
+                if (limite <= inicio) {
+                    return i;
+                }
+
+                rtts[i] = ResultadoSondeo.PERDIDA;
+
+                try (SocketChannel canal = SocketChannel.open()) {
+                    canal.configureBlocking(false);
+
+                    SelectionKey clave = canal.register(selector, SelectionKey.OP_CONNECT);
+                    boolean respondio;
+
+                    try {
+                        respondio = canal.connect(destino)
+                                || (esperarEvento(selector, limite) && canal.finishConnect());
+                    } catch (ConnectException e) {
+                        /* Una conexión rechazada (RST) también implica que el
+                         * host respondió, por lo que el RTT es válido. */
+                        respondio = true;
+                    } catch (IOException e) {
+                        /* Otros errores de la sonda, como «no hay ruta al
+                         * host» (NoRouteToHostException) o una dirección que
+                         * no se puede usar desde ninguna interfaz, cuentan
+                         * como pérdida y no interrumpen la serie. */
+                        respondio = false;
+                    }
+
+                    long fin = System.nanoTime();
+
+                    if (respondio) {
+                        rtts[i] = fin - inicio;
+                    }
+
+                    clave.cancel();
+                    selector.selectNow(); // Libera la clave cancelada antes de cerrar el canal.
+                }
+
+                esperarIntervalo(inicio, intervaloMilisegundos, i, rtts.length, limitePlazo);
+            }
+        }
+
+        return rtts.length;
+    }
+
+    /**
+     * @return El instante en el que vence la espera de una sonda enviada en
+     * <code>inicio</code>: el tiempo de espera configurado, recortado por el
+     * plazo total.
+     */
+    private long limiteSonda(long inicio, long limitePlazo) {
+        return limitePlazo - inicio < this.esperaNanosegundos ? limitePlazo : inicio + this.esperaNanosegundos;
+    }
+
+    private static boolean esperarEvento(Selector selector, long limiteNanosegundos) throws IOException {
+        while (true) {
+            long restante = limiteNanosegundos - System.nanoTime();
+
+            if (restante <= 0) {
+                return false;
+            }
+
+            int listas = selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(restante)));
+
+            selector.selectedKeys().clear();
+
+            if (listas > 0) {
+                return true;
+            }
+        }
+    }
+
+    private static void esperarIntervalo(long inicioNanosegundos, long intervaloMilisegundos, int indice, int cantidad, long limitePlazo) throws IOException {
+        if (indice == cantidad - 1) {
+            return;
+        }
+
+        long ahora = System.nanoTime();
+        long restante = Math.min(TimeUnit.MILLISECONDS.toNanos(intervaloMilisegundos) - (ahora - inicioNanosegundos), limitePlazo - ahora);
+
+        if (restante > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(restante);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new java.io.InterruptedIOException("Se interrumpió el envío de sondas.");
+            }
+        }
+    }
+
+}
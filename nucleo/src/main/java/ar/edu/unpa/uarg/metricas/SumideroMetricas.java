@@ -0,0 +1,188 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Archivo de métricas de sólo-agregado que permanece abierto durante toda la
+ * vida de la aplicación. Los registros se acumulan en un buffer en memoria y
+ * se vuelcan al archivo en lotes, de acuerdo a la <code>PoliticaVaciado</code>
+ * indicada, de modo que escribir N registros cuesta una sola escritura al
+ * disco en lugar de N aperturas y cierres del archivo.
+ * <p>
+ * Los métodos de esta clase son seguros para ser invocados desde varios hilos.
+ *
+ * @see PoliticaVaciado
+ * @see RegistroSegmentado
+ */
+public class SumideroMetricas implements AlmacenMetricas {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int CAPACIDAD_MINIMA = 8 * 1024;
+
+    private final File archivo;
+    private final FileOutputStream flujoSalida;
+    private final PoliticaVaciado politica;
+    private final byte[] buffer;
+
+    private int bytesPendientes;
+    private int registrosPendientes;
+    private long instanteUltimoVaciado;
+    private boolean cerrado;
+
+    /**
+     * Abre (o crea, si no existe) el archivo especificado en modo de
+     * agregado.
+     *
+     * @param archivo  El archivo en el que se van a agregar los registros.
+     * @param politica La política que determina cuándo se vuelca el buffer.
+     * @throws IOException Si no se puede abrir el archivo.
+     */
+    public SumideroMetricas(File archivo, PoliticaVaciado politica) throws IOException {
+        this.archivo = archivo;
+        this.flujoSalida = new FileOutputStream(archivo, true);
+        this.politica = politica;
+        this.buffer = new byte[Math.max(CAPACIDAD_MINIMA, politica.getMaximoBytes())];
+        this.instanteUltimoVaciado = System.nanoTime();
+    }
+
+    @Override
+    public File getArchivo() {
+        return this.archivo;
+    }
+
+    @Override
+    public PoliticaVaciado getPolitica() {
+        return this.politica;
+    }
+
+    /**
+     * Agrega un registro codificado en UTF-8.
+     *
+     * @param registro El registro a agregar, incluyendo su terminador de línea
+     *                 si corresponde.
+     * @throws IOException Si el sumidero está cerrado o falla el volcado.
+     */
+    public void agregar(String registro) throws IOException {
+        byte[] datos = registro.getBytes(UTF_8);
+
+        this.agregar(datos, 0, datos.length);
+    }
+
+    /**
+     * Agrega un registro ya codificado. El arreglo recibido puede reutilizarse
+     * apenas retorna el método, ya que su contenido se copia.
+     *
+     * @param datos    Arreglo que contiene el registro.
+     * @param desde    Posición del primer byte del registro.
+     * @param longitud Cantidad de bytes del registro.
+     * @throws IOException Si el sumidero está cerrado o falla el volcado.
+     */
+    @Override
+    public synchronized void agregar(byte[] datos, int desde, int longitud) throws IOException {
+        this.verificarAbierto();
+
+        if (longitud > this.buffer.length - this.bytesPendientes) {
+            this.volcar();
+        }
+
+        if (longitud > this.buffer.length) {
+            /* El registro no entra en el buffer, así que se escribe directamente. */
+            this.flujoSalida.write(datos, desde, longitud);
+        } else {
+            System.arraycopy(datos, desde, this.buffer, this.bytesPendientes, longitud);
+            this.bytesPendientes += longitud;
+        }
+
+        this.registrosPendientes++;
+        this.vaciarSiCorresponde();
+    }
+
+    /**
+     * El archivo nunca se divide, así que este método siempre retorna
+     * <code>false</code>.
+     */
+    @Override
+    public boolean requiereArchivoNuevo(int longitud, int reserva) {
+        return false;
+    }
+
+    /**
+     * El archivo nunca se divide.
+     *
+     * @throws UnsupportedOperationException Siempre.
+     */
+    @Override
+    public void comenzarArchivoNuevo() {
+        throw new UnsupportedOperationException("El sumidero escribe un único archivo.");
+    }
+
+    /**
+     * Vuelca el buffer únicamente si la política lo requiere. Es útil para
+     * respetar el umbral de tiempo cuando no llegan nuevos registros.
+     *
+     * @throws IOException Si falla el volcado.
+     */
+    @Override
+    public synchronized void vaciarSiCorresponde() throws IOException {
+        if (this.cerrado) {
+            return;
+        }
+
+        long milisegundos = (System.nanoTime() - this.instanteUltimoVaciado) / 1000000L;
+
+        if (this.politica.debeVaciar(this.registrosPendientes, this.bytesPendientes, milisegundos)) {
+            this.volcar();
+        }
+    }
+
+    /**
+     * Vuelca inmediatamente todos los registros pendientes al archivo.
+     *
+     * @throws IOException Si el sumidero está cerrado o falla el volcado.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        this.verificarAbierto();
+        this.volcar();
+    }
+
+    /**
+     * Vuelca los registros pendientes y cierra el archivo. Las llamadas
+     * posteriores a este método no tienen efecto.
+     *
+     * @throws IOException Si falla el volcado o el cierre del archivo.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.cerrado) {
+            return;
+        }
+
+        try {
+            this.volcar();
+        } finally {
+            this.cerrado = true;
+            this.flujoSalida.close();
+        }
+    }
+
+    private void volcar() throws IOException {
+        if (this.bytesPendientes > 0) {
+            this.flujoSalida.write(this.buffer, 0, this.bytesPendientes);
+        }
+
+        this.bytesPendientes = 0;
+        this.registrosPendientes = 0;
+        this.instanteUltimoVaciado = System.nanoTime();
+    }
+
+    private void verificarAbierto() throws IOException {
+        if (this.cerrado) {
+            throw new IOException("El sumidero de métricas «" + this.archivo.getName() + "» está cerrado.");
+        }
+    }
+
+}
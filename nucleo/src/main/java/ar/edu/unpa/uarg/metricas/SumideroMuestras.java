@@ -0,0 +1,21 @@
+package ar.edu.unpa.uarg.metricas;
+
+/**
+ * Recibe las muestras que toma el <code>PlanificadorMuestreo</code>. Se
+ * invoca desde el hilo del planificador, por lo que las implementaciones no
+ * deberían bloquearse por mucho tiempo.
+ *
+ * @see PlanificadorMuestreo
+ */
+public interface SumideroMuestras {
+
+    /**
+     * @param metrica           El nombre de la métrica. Por ejemplo,
+     *                          "BatteryCharge".
+     * @param fechaMilisegundos El instante en el que se tomó la muestra
+     *                          (<code>System.currentTimeMillis()</code>).
+     * @param valor             El valor medido.
+     */
+    void recibir(String metrica, long fechaMilisegundos, double valor);
+
+}
@@ -0,0 +1,216 @@
+package ar.edu.unpa.uarg.metricas;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Mide la duración de operaciones («tramos») con nombre, que pueden
+ * solaparse y anidarse, y pueden iniciarse y finalizarse desde hilos
+ * distintos. Cada tramo se identifica con un manejador de tipo
+ * <code>long</code> que se obtiene al iniciarlo; los tiempos se toman con
+ * <code>System.nanoTime()</code>.
+ * <p>
+ * Los tramos se guardan en un conjunto fijo de ranuras que se reutilizan,
+ * por lo que iniciar y finalizar un tramo no crea objetos. Cada ranura tiene
+ * una generación que se incrementa al reutilizarla, y el manejador la
+ * incluye: finalizar dos veces el mismo tramo, o un tramo cuya ranura ya se
+ * reutilizó, no tiene efecto.
+ * <p>
+ * Al finalizar, la duración del tramo (en microsegundos) se envía a un
+ * <code>SumideroMuestras</code> con el nombre del tramo como métrica.
+ */
+public class Trazador {
+
+    /** El manejador que se obtiene cuando no quedan ranuras libres. */
+    public static final long TRAMO_INVALIDO = 0;
+
+    private static final int LIBRE = 0;
+    private static final int RESERVADO = 1;
+    private static final int ABIERTO = 2;
+    private static final int CERRANDO = 3;
+
+    private final SumideroMuestras sumidero;
+
+    /**
+     * El estado de cada ranura en los 2 bits bajos y su generación en el
+     * resto, para poder cambiar ambos con una sola operación atómica.
+     */
+    private final AtomicLongArray estados;
+    private final long[] inicios;
+    private final String[] nombres;
+    private final int[] profundidades;
+    private final int mascara;
+    private final AtomicInteger siguiente = new AtomicInteger();
+
+    /**
+     * Crea un trazador con 256 ranuras.
+     *
+     * @param sumidero El destino de las duraciones de los tramos.
+     */
+    public Trazador(SumideroMuestras sumidero) {
+        this(sumidero, 256);
+    }
+
+    /**
+     * @param sumidero  El destino de las duraciones de los tramos.
+     * @param capacidad La cantidad máxima de tramos abiertos a la vez. Se
+     *                  redondea a la siguiente potencia de dos.
+     */
+    public Trazador(SumideroMuestras sumidero, int capacidad) {
+        if (sumidero == null || capacidad < 1 || capacidad > (1 << 30)) {
+            throw new IllegalArgumentException("Configuración inválida para el trazador.");
+        }
+
+        int ranuras = Integer.highestOneBit(capacidad);
+
+        if (ranuras < capacidad) {
+            ranuras <<= 1;
+        }
+
+        this.sumidero = sumidero;
+        this.estados = new AtomicLongArray(ranuras);
+        this.inicios = new long[ranuras];
+        this.nombres = new String[ranuras];
+        this.profundidades = new int[ranuras];
+        this.mascara = ranuras - 1;
+    }
+
+    /**
+     * Inicia un tramo de primer nivel.
+     *
+     * @param nombre El nombre del tramo, que se usa como nombre de métrica.
+     * @return El manejador del tramo, o <code>TRAMO_INVALIDO</code> si no
+     * quedan ranuras libres.
+     */
+    public long iniciar(String nombre) {
+        return this.iniciar(nombre, TRAMO_INVALIDO);
+    }
+
+    /**
+     * Inicia un tramo anidado dentro de otro.
+     *
+     * @param nombre El nombre del tramo, que se usa como nombre de métrica.
+     * @param padre  El manejador del tramo que lo contiene, o
+     *               <code>TRAMO_INVALIDO</code> si es de primer nivel.
+     * @return El manejador del tramo, o <code>TRAMO_INVALIDO</code> si no
+     * quedan ranuras libres.
+     */
+    public long iniciar(String nombre, long padre) {
+        if (nombre == null) {
+            throw new IllegalArgumentException("El nombre del tramo no puede ser null.");
+        }
+
+        int profundidad = this.getProfundidad(padre) + 1;
+        int ranuras = this.mascara + 1;
+        int primera = this.siguiente.getAndIncrement();
+
+        for (int intento = 0; intento < ranuras; intento++) {
+            int indice = (primera + intento) & this.mascara;
+            long estado = this.estados.get(indice);
+
+            if ((estado & 3) != LIBRE) {
+                continue;
+            }
+
+            long generacion = ((estado >>> 2) + 1) & 0x3FFFFFFFL;
+
+            if (generacion == 0) {
+                generacion = 1; // El manejador nunca vale TRAMO_INVALIDO.
+            }
+
+            if (this.estados.compareAndSet(indice, estado, (generacion << 2) | RESERVADO)) {
+                this.nombres[indice] = nombre;
+                this.profundidades[indice] = profundidad;
+                this.inicios[indice] = System.nanoTime();
+                this.estados.set(indice, (generacion << 2) | ABIERTO); // Publica los campos anteriores.
+
+                return (generacion << 32) | indice;
+            }
+        }
+
+        return TRAMO_INVALIDO;
+    }
+
+    /**
+     * Finaliza un tramo y envía su duración al sumidero.
+     *
+     * @param tramo El manejador que retornó <code>iniciar</code>.
+     * @return La duración del tramo en microsegundos, o -1 si el manejador
+     * no corresponde a un tramo abierto (por ejemplo, porque ya se
+     * finalizó).
+     */
+    public long finalizar(long tramo) {
+        long fin = System.nanoTime();
+        int indice = (int) tramo;
+        long generacion = tramo >>> 32;
+
+        if (tramo == TRAMO_INVALIDO || indice < 0 || indice > this.mascara) {
+            return -1;
+        }
+
+        long abierto = (generacion << 2) | ABIERTO;
+
+        if (!this.estados.compareAndSet(indice, abierto, (generacion << 2) | CERRANDO)) {
+            return -1;
+        }
+
+        String nombre = this.nombres[indice];
+        long microsegundos = (fin - this.inicios[indice]) / 1000;
+
+        this.nombres[indice] = null;
+        this.estados.set(indice, (generacion << 2) | LIBRE);
+        this.sumidero.recibir(nombre, System.currentTimeMillis(), microsegundos);
+
+        return microsegundos;
+    }
+
+    /**
+     * Descarta un tramo sin registrar su duración.
+     *
+     * @param tramo El manejador que retornó <code>iniciar</code>.
+     * @return <code>true</code> si el tramo estaba abierto.
+     */
+    public boolean descartar(long tramo) {
+        int indice = (int) tramo;
+        long generacion = tramo >>> 32;
+
+        if (tramo == TRAMO_INVALIDO || indice < 0 || indice > this.mascara
+                || !this.estados.compareAndSet(indice, (generacion << 2) | ABIERTO, (generacion << 2) | CERRANDO)) {
+            return false;
+        }
+
+        this.nombres[indice] = null;
+        this.estados.set(indice, (generacion << 2) | LIBRE);
+
+        return true;
+    }
+
+    /**
+     * @param tramo El manejador de un tramo.
+     * @return <code>true</code> si el tramo todavía está abierto.
+     */
+    public boolean estaAbierto(long tramo) {
+        int indice = (int) tramo;
+
+        return tramo != TRAMO_INVALIDO && indice >= 0 && indice <= this.mascara
+                && this.estados.get(indice) == (((tramo >>> 32) << 2) | ABIERTO);
+    }
+
+    /**
+     * @param tramo El manejador de un tramo.
+     * @return La cantidad de tramos que lo contienen (0 para uno de primer
+     * nivel), o -1 si el tramo no está abierto.
+     */
+    public int getProfundidad(long tramo) {
+        if (!this.estaAbierto(tramo)) {
+            return -1;
+        }
+
+        int profundidad = this.profundidades[(int) tramo];
+
+        /* Si la ranura se reutilizó mientras se leía, el valor no es
+         * confiable. */
+        return this.estaAbierto(tramo) ? profundidad : -1;
+    }
+
+}
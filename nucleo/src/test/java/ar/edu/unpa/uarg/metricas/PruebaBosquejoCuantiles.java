@@ -0,0 +1,98 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PruebaBosquejoCuantiles {
+
+    @Test
+    public void reconstruyeElBosquejoSerializado() {
+        BosquejoCuantiles bosquejo = new BosquejoCuantiles();
+
+        for (int i = 1; i <= 1000; i++) {
+            bosquejo.agregar(i);
+        }
+
+        bosquejo.agregar(0);
+
+        BosquejoCuantiles copia = BosquejoCuantiles.desdeBase64(bosquejo.aBase64());
+
+        assertEquals(1001, copia.getCantidad());
+        assertEquals(0.0, copia.getMinimo(), 0);
+        assertEquals(1000.0, copia.getMaximo(), 0);
+        assertEquals(bosquejo.getCuantil(0.99), copia.getCuantil(0.99), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rechazaDemasiadosContenedoresAlCrearlo() {
+        new BosquejoCuantiles(1e-6, 1e-3, 1e9);
+    }
+
+    /**
+     * Los bosquejos llegan de otros dispositivos: unos parámetros o unos
+     * índices manipulados no pueden reservar memoria sin límite ni romper
+     * el bosquejo.
+     */
+    @Test
+    public void rechazaDatosInvalidosSinReservarMemoria() {
+        double nan = Double.NaN;
+
+        rechazar(datos(1e-300, 1e-3, 1e9, nan, nan, 0, 0, 0));
+        rechazar(datos(0.01, Double.MIN_VALUE, Double.MAX_VALUE, nan, nan, 0, 0, 0));
+        rechazar(datos(0.01, 1e-3, Double.POSITIVE_INFINITY, nan, nan, 0, 0, 0));
+        rechazar(datos(nan, 1e-3, 1e9, nan, nan, 0, 0, 0));
+        rechazar(datos(0.01, 1e-3, 1e9, 1, 1, 0, 1L << 40, 1, 1));
+        rechazar(datos(0.01, 1e-3, 1e9, 1, 1, 0, Long.MAX_VALUE, 2, 1, 1));
+        rechazar(datos(0.01, 1e-3, 1e9, 1, 1, 0, 0, 5000));
+        rechazar(datos(0.01, 1e-3, 1e9, 1, 1, -1, 0, 0));
+        rechazar(datos(0.01, 1e-3, 1e9, 1, 1, 0, 0, 2, Long.MAX_VALUE, 1));
+        rechazar(datos(0.01, 1e-3, 1e9, nan, nan, 0, 0, 1, 1));
+    }
+
+    @Test
+    public void rechazaLosDatosTruncados() {
+        BosquejoCuantiles bosquejo = new BosquejoCuantiles();
+
+        bosquejo.agregar(42);
+
+        byte[] serializado = bosquejo.serializar();
+
+        for (int longitud = 0; longitud < serializado.length; longitud++) {
+            rechazar(Arrays.copyOf(serializado, longitud));
+        }
+    }
+
+    private static void rechazar(byte[] datos) {
+        try {
+            BosquejoCuantiles.deserializar(datos);
+            fail("Se aceptó un bosquejo inválido.");
+        } catch (IllegalArgumentException e) {
+            // Se esperaba.
+        }
+    }
+
+    private static byte[] datos(double precision, double minimoIndexable, double maximoIndexable, double minimo, double maximo, long... enteros) {
+        ByteBuffer salida = ByteBuffer.allocate(5 + 5 * 8 + enteros.length * 10);
+
+        salida.put(new byte[]{'Q', '2', 'M', 'Q', 1});
+        salida.putDouble(precision).putDouble(minimoIndexable).putDouble(maximoIndexable);
+        salida.putDouble(minimo).putDouble(maximo);
+
+        for (long entero : enteros) {
+            while ((entero & ~0x7FL) != 0) {
+                salida.put((byte) ((entero & 0x7F) | 0x80));
+                entero >>>= 7;
+            }
+
+            salida.put((byte) entero);
+        }
+
+        return Arrays.copyOf(salida.array(), salida.position());
+    }
+
+}
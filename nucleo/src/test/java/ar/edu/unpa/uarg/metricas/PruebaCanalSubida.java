@@ -0,0 +1,307 @@
+package ar.edu.unpa.uarg.metricas;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Sube el archivo de métricas a un servidor HTTP local que descomprime cada
+ * lote y lo ubica según el desplazamiento que indica el canal.
+ */
+public class PruebaCanalSubida {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BYTES_POR_LOTE = 100;
+    private static final int BYTES_POR_LOTE_DOCUMENTO = 1024;
+
+    private HttpServer servidor;
+    private File registro;
+    private URL destino;
+
+    /** Los lotes que recibió el servidor, con su desplazamiento. */
+    private final List<long[]> desplazamientos = Collections.synchronizedList(new ArrayList<long[]>());
+    private final ByteArrayOutputStream recibido = new ByteArrayOutputStream();
+
+    /** Los códigos con los que responde el servidor; luego, 200. */
+    private final List<Integer> respuestas = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void iniciarServidor() throws IOException {
+        this.registro = File.createTempFile("metricas", ".xml");
+        this.servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.servidor.createContext("/metricas", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange intercambio) throws IOException {
+                atender(intercambio);
+            }
+        });
+        this.servidor.start();
+        this.destino = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), this.servidor.getAddress().getPort(), "/metricas");
+    }
+
+    @After
+    public void detenerServidor() {
+        this.servidor.stop(0);
+        this.registro.delete();
+        new File(this.registro.getPath() + ".cursor").delete();
+        new File(this.registro.getPath() + ".anterior").delete();
+    }
+
+    @Test
+    public void subeElArchivoEnLotesDeLineasCompletas() throws IOException {
+        byte[] contenido = this.escribirLineas(0, 40);
+
+        this.agregar("<sesion sin terminar".getBytes(UTF_8));
+
+        CanalSubida canal = new CanalSubida(this.registro, this.destino, true, BYTES_POR_LOTE, 1);
+        int lotes = canal.subir();
+
+        assertTrue("Se esperaban varios lotes", lotes > 1);
+        assertEquals(lotes, this.desplazamientos.size());
+        assertArrayEquals(contenido, this.recibidoHasta(contenido.length));
+        assertEquals(contenido.length, canal.getCursor());
+
+        for (long[] lote : this.desplazamientos) {
+            assertTrue("Cada lote tiene que terminar en una línea completa", lote[1] <= BYTES_POR_LOTE);
+        }
+    }
+
+    /**
+     * Tras un error, otra instancia del canal (por ejemplo, después de
+     * reiniciar la aplicación) continúa desde el último lote confirmado, sin
+     * reenviar los anteriores.
+     */
+    @Test
+    public void continuaDesdeElUltimoLoteConfirmado() throws IOException {
+        this.escribirLineas(0, 40);
+        this.respuestas.add(200);
+        this.respuestas.add(503);
+
+        CanalSubida canal = new CanalSubida(this.registro, this.destino, true, BYTES_POR_LOTE, 1);
+
+        try {
+            canal.subir();
+            fail("El segundo lote no se confirmó.");
+        } catch (IOException e) {
+            // Se esperaba.
+        }
+
+        long confirmado = canal.getCursor();
+
+        assertEquals(this.desplazamientos.get(0)[1], confirmado);
+
+        byte[] contenido = this.escribirLineas(40, 60);
+
+        this.desplazamientos.clear();
+        new CanalSubida(this.registro, this.destino, true, BYTES_POR_LOTE, 1).subir();
+
+        assertEquals(confirmado, this.desplazamientos.get(0)[0]);
+        assertArrayEquals(contenido, this.recibidoHasta(contenido.length));
+        assertEquals(0, new CanalSubida(this.registro, this.destino, true).getBytesPendientes());
+    }
+
+    @Test
+    public void noReintentaUnLoteRechazado() throws IOException {
+        this.escribirLineas(0, 5);
+        this.respuestas.add(400);
+
+        CanalSubida canal = new CanalSubida(this.registro, this.destino, true, BYTES_POR_LOTE, 5);
+
+        try {
+            canal.subir();
+            fail("El servidor rechazó el lote.");
+        } catch (IOException e) {
+            // Se esperaba.
+        }
+
+        assertEquals(1, this.desplazamientos.size());
+        assertEquals(0, canal.getCursor());
+    }
+
+    /**
+     * Al reabrir el documento XML se quita la etiqueta de cierre, que ya se
+     * había subido: el servidor tiene que recibir de nuevo el documento
+     * desde ahí, y no a partir de la mitad de la cabecera de la nueva sesión.
+     */
+    @Test
+    public void retrocedeSiSeQuitaElCierreYaSubido() throws IOException {
+        CodificadorDocumentoXML codificador = new CodificadorDocumentoXML();
+        CanalSubida canal = new CanalSubida(this.registro, this.destino, true, BYTES_POR_LOTE_DOCUMENTO, 1);
+
+        this.escribirSesion(codificador, 0, 20);
+        canal.subir();
+        this.escribirSesion(codificador, 20, 20);
+        canal.subir();
+
+        byte[] contenido = this.leerRegistro();
+
+        assertArrayEquals(contenido, this.recibidoHasta(contenido.length));
+        assertEquals(40, contarRegistros(contenido));
+
+        /* Otra instancia (con el cursor guardado) llega a lo mismo. */
+        this.escribirSesion(codificador, 40, 20);
+        new CanalSubida(this.registro, this.destino, true, BYTES_POR_LOTE_DOCUMENTO, 1).subir();
+        contenido = this.leerRegistro();
+
+        assertArrayEquals(contenido, this.recibidoHasta(contenido.length));
+        assertEquals(60, contarRegistros(contenido));
+    }
+
+    /**
+     * Un archivo con el formato por líneas se renombra a «.anterior» al
+     * abrirlo con el documento XML: el nuevo se sube desde el inicio,
+     * aunque sea más largo que lo que ya se había subido.
+     */
+    @Test
+    public void subeDesdeElInicioUnArchivoReemplazado() throws IOException {
+        CanalSubida canal = new CanalSubida(this.registro, this.destino, true, BYTES_POR_LOTE_DOCUMENTO, 1);
+
+        this.escribirSesion(new CodificadorXML(), 0, 5);
+        canal.subir();
+        this.escribirSesion(new CodificadorDocumentoXML(), 0, 40);
+
+        assertTrue(new File(this.registro.getPath() + ".anterior").isFile());
+
+        canal.subir();
+
+        byte[] contenido = this.leerRegistro();
+
+        assertArrayEquals(contenido, this.recibidoHasta(contenido.length));
+        assertEquals(40, contarRegistros(contenido));
+    }
+
+    private void atender(HttpExchange intercambio) throws IOException {
+        long desde = Long.parseLong(intercambio.getRequestHeaders().getFirst("X-Q2M-Desplazamiento"));
+        byte[] lote;
+
+        try (InputStream entrada = new GZIPInputStream(intercambio.getRequestBody())) {
+            lote = leerTodo(entrada);
+        }
+
+        int codigo = this.respuestas.isEmpty() ? 200 : this.respuestas.remove(0);
+
+        this.desplazamientos.add(new long[]{desde, lote.length});
+
+        if (codigo == 200) {
+            synchronized (this.recibido) {
+                /* Un lote reenviado reemplaza lo que ya se había recibido
+                 * desde su desplazamiento. */
+                byte[] anterior = this.recibido.toByteArray();
+
+                this.recibido.reset();
+                this.recibido.write(anterior, 0, (int) Math.min(anterior.length, desde));
+                this.recibido.write(lote);
+            }
+        }
+
+        intercambio.sendResponseHeaders(codigo, -1);
+        intercambio.close();
+    }
+
+    private byte[] recibidoHasta(int longitud) {
+        synchronized (this.recibido) {
+            byte[] datos = this.recibido.toByteArray();
+
+            assertEquals(longitud, datos.length);
+
+            return datos;
+        }
+    }
+
+    /**
+     * Escribe una sesión en el archivo, como lo hace
+     * <code>ConstructorXML</code> al abrirlo.
+     */
+    private void escribirSesion(CodificadorRegistros codificador, int primero, int cantidad) throws IOException {
+        codificador.reanudar(this.registro);
+
+        SumideroMetricas almacen = new SumideroMetricas(this.registro, PoliticaVaciado.INMEDIATA);
+
+        try (EscritorAsincrono escritor = new EscritorAsincrono(almacen, codificador, 64, PoliticaContrapresion.BLOQUEAR)) {
+            for (int i = primero; i < primero + cantidad; i++) {
+                escritor.encolar(new RegistroMetrica("Buena", "Latency", i, i));
+            }
+        }
+    }
+
+    private byte[] leerRegistro() throws IOException {
+        try (InputStream entrada = new FileInputStream(this.registro)) {
+            return leerTodo(entrada);
+        }
+    }
+
+    /**
+     * @return La cantidad de registros del documento, que tienen que estar
+     * en orden.
+     */
+    private static int contarRegistros(byte[] documento) throws IOException {
+        int registros = 0;
+
+        try (LectorDocumentoXML lector = new LectorDocumentoXML(new ByteArrayInputStream(documento))) {
+            RegistroMetrica registro;
+
+            while ((registro = lector.leer()) != null) {
+                assertEquals(registros, registro.getFechaMilisegundos());
+                registros++;
+            }
+        }
+
+        return registros;
+    }
+
+    /**
+     * Agrega líneas al archivo.
+     *
+     * @return Todo el contenido del archivo.
+     */
+    private byte[] escribirLineas(int desde, int hasta) throws IOException {
+        for (int i = desde; i < hasta; i++) {
+            this.agregar(("<metric name=\"linea\" value=\"" + i + "\"/>\n").getBytes(UTF_8));
+        }
+
+        return this.leerRegistro();
+    }
+
+    private void agregar(byte[] datos) throws IOException {
+        try (FileOutputStream salida = new FileOutputStream(this.registro, true)) {
+            salida.write(datos);
+        }
+    }
+
+    private static byte[] leerTodo(InputStream entrada) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        byte[] bloque = new byte[4096];
+
+        for (int n; (n = entrada.read(bloque)) >= 0; ) {
+            salida.write(bloque, 0, n);
+        }
+
+        return salida.toByteArray();
+    }
+
+}
@@ -0,0 +1,245 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PruebaEscritorAsincrono {
+
+    private static final int PRODUCTORES = 4;
+    private static final int RONDAS = 40;
+
+    private File archivo;
+
+    @Before
+    public void crearArchivo() throws IOException {
+        this.archivo = File.createTempFile("escritor", ".bin");
+    }
+
+    @After
+    public void eliminarArchivo() {
+        this.archivo.delete();
+    }
+
+    /**
+     * Los productores encolan mientras otro hilo cierra el escritor: cada
+     * registro aceptado tiene que llegar al archivo.
+     */
+    @Test
+    public void cerrarConProductoresNoPierdeRegistrosAceptados() throws Exception {
+        for (PoliticaContrapresion politica : PoliticaContrapresion.values()) {
+            for (int i = 0; i < RONDAS; i++) {
+                this.cerrarDuranteEscritura(politica);
+            }
+        }
+    }
+
+    @Test
+    public void encolarEnUnEscritorCerradoNoCuentaDescartes() throws IOException {
+        EscritorAsincrono escritor = new EscritorAsincrono(new SumideroMetricas(this.archivo, PoliticaVaciado.POR_DEFECTO),
+                new CodificadorBinario(), 8, PoliticaContrapresion.DESCARTAR_MAS_NUEVO);
+
+        escritor.close();
+
+        assertTrue(escritor.estaCerrado());
+        assertFalse(escritor.encolar(new RegistroMetrica(null, "Latency", 1L, 0)));
+        assertEquals(0, escritor.getRegistrosDescartados());
+    }
+
+    /**
+     * Si el almacén no puede agregar un registro que define un nombre, los
+     * registros siguientes no pueden referirse a esa definición perdida.
+     */
+    @Test
+    public void unaEscrituraFallidaNoDejaReferenciasADefinicionesPerdidas() throws IOException {
+        AlmacenFallido almacen = new AlmacenFallido(2); // Tras la cabecera y «A», falla el primer «B», con su definición.
+        EscritorAsincrono escritor = new EscritorAsincrono(almacen, new CodificadorBinario(), 8, PoliticaContrapresion.BLOQUEAR);
+
+        escritor.encolar(new RegistroMetrica(null, "A", 1L, 0));
+        escritor.encolar(new RegistroMetrica(null, "B", 2L, 0));
+        escritor.encolar(new RegistroMetrica(null, "B", 3L, 0));
+        escritor.encolar(new RegistroMetrica(null, "A", 4L, 0));
+
+        try {
+            escritor.close();
+        } catch (IOException e) {
+            // La escritura que falló se informa al cerrar.
+        }
+
+        DecodificadorBinario decodificador = new DecodificadorBinario(new ByteArrayInputStream(almacen.datos.toByteArray()));
+
+        assertEquals("1", decodificador.leer().getValor());
+
+        RegistroMetrica registro = decodificador.leer();
+
+        assertNotNull(registro);
+        assertEquals("B", registro.getMetrica());
+        assertEquals("3", registro.getValor());
+        assertEquals("4", decodificador.leer().getValor());
+        assertNull(decodificador.leer());
+    }
+
+    /**
+     * El almacén lo abre el hilo escritor, no el que crea el escritor; si la
+     * apertura falla, se vuelve a intentar con el registro siguiente.
+     */
+    @Test
+    public void elAlmacenSeAbreEnElHiloEscritor() throws IOException {
+        final AlmacenFallido almacen = new AlmacenFallido(-1);
+        final AtomicReference<Thread> hiloApertura = new AtomicReference<>();
+        final AtomicInteger aperturas = new AtomicInteger();
+        EscritorAsincrono escritor = new EscritorAsincrono(null, PoliticaVaciado.POR_DEFECTO, new EscritorAsincrono.Apertura() {
+            public AlmacenMetricas abrir() throws IOException {
+                hiloApertura.set(Thread.currentThread());
+
+                if (aperturas.getAndIncrement() == 0) {
+                    throw new IOException("Apertura fallida.");
+                }
+
+                return almacen;
+            }
+        }, new CodificadorBinario(), 8, PoliticaContrapresion.BLOQUEAR);
+
+        escritor.encolar(new RegistroMetrica(null, "A", 1L, 0));
+
+        try {
+            escritor.close();
+        } catch (IOException e) {
+            assertEquals("Apertura fallida.", e.getMessage());
+        }
+
+        assertEquals(2, aperturas.get());
+        assertNotNull(hiloApertura.get());
+        assertFalse(hiloApertura.get() == Thread.currentThread());
+
+        DecodificadorBinario decodificador = new DecodificadorBinario(new ByteArrayInputStream(almacen.datos.toByteArray()));
+
+        assertEquals("1", decodificador.leer().getValor());
+        assertNull(decodificador.leer());
+    }
+
+    private void cerrarDuranteEscritura(PoliticaContrapresion politica) throws Exception {
+        this.archivo.delete();
+
+        final EscritorAsincrono escritor = new EscritorAsincrono(new SumideroMetricas(this.archivo, PoliticaVaciado.POR_DEFECTO),
+                new CodificadorBinario(), 16, politica);
+        final AtomicLong aceptados = new AtomicLong();
+        final CountDownLatch comenzaron = new CountDownLatch(PRODUCTORES);
+        Thread[] productores = new Thread[PRODUCTORES];
+
+        for (int p = 0; p < PRODUCTORES; p++) {
+            productores[p] = new Thread(new Runnable() {
+                public void run() {
+                    comenzaron.countDown();
+
+                    for (long i = 0; ; i++) {
+                        if (escritor.encolar(new RegistroMetrica(null, "Latency", i, i))) {
+                            aceptados.incrementAndGet();
+                        } else if (escritor.estaCerrado()) {
+                            return;
+                        }
+                    }
+                }
+            });
+            productores[p].start();
+        }
+
+        comenzaron.await();
+        Thread.sleep(1);
+        escritor.close();
+
+        for (Thread productor : productores) {
+            productor.join();
+        }
+
+        assertEquals("Registros escritos con " + politica, aceptados.get() - descartadosDeLaCola(escritor, politica), contarRegistros());
+    }
+
+    /**
+     * Con <code>DESCARTAR_MAS_ANTIGUO</code>, un registro aceptado puede
+     * descartarse después, para hacer lugar a uno nuevo.
+     */
+    private static long descartadosDeLaCola(EscritorAsincrono escritor, PoliticaContrapresion politica) {
+        return politica == PoliticaContrapresion.DESCARTAR_MAS_ANTIGUO ? escritor.getRegistrosDescartados() : 0;
+    }
+
+    /**
+     * Un almacén en memoria en el que falla uno de los agregados.
+     */
+    private static final class AlmacenFallido implements AlmacenMetricas {
+
+        final ByteArrayOutputStream datos = new ByteArrayOutputStream();
+        private final int agregadoFallido;
+        private int agregados;
+
+        AlmacenFallido(int agregadoFallido) {
+            this.agregadoFallido = agregadoFallido;
+        }
+
+        public void agregar(byte[] datos, int desde, int longitud) throws IOException {
+            if (this.agregados++ == this.agregadoFallido) {
+                throw new IOException("Falla simulada.");
+            }
+
+            this.datos.write(datos, desde, longitud);
+        }
+
+        public boolean requiereArchivoNuevo(int longitud, int reserva) {
+            return false;
+        }
+
+        public void comenzarArchivoNuevo() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void vaciarSiCorresponde() {
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+
+        public PoliticaVaciado getPolitica() {
+            return PoliticaVaciado.POR_DEFECTO;
+        }
+
+        public File getArchivo() {
+            return null;
+        }
+
+    }
+
+    private long contarRegistros() throws IOException {
+        long cantidad = 0;
+
+        try (InputStream entrada = new FileInputStream(this.archivo)) {
+            DecodificadorBinario decodificador = new DecodificadorBinario(entrada);
+
+            while (decodificador.leer() != null) {
+                cantidad++;
+            }
+        }
+
+        return cantidad;
+    }
+
+}
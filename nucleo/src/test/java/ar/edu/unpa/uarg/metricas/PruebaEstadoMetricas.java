@@ -0,0 +1,130 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PruebaEstadoMetricas {
+
+    private static final int ESCRITORES = 4;
+    private static final int LECTORES = 4;
+    private static final long DURACION_NANOSEGUNDOS = 1500L * 1000 * 1000;
+
+    @Test
+    public void empiezaSinValores() {
+        EstadoMetricas estado = new EstadoMetricas(2, 1);
+        double[] numeros = new double[2];
+        String[] textos = new String[1];
+
+        estado.leer(numeros, textos);
+
+        assertEquals(-1.0, numeros[0], 0);
+        assertEquals(-1.0, numeros[1], 0);
+        assertNull(textos[0]);
+    }
+
+    /**
+     * Varios escritores actualizan juntas tres métricas mientras varios
+     * lectores leen el estado completo: ningún lector puede ver una mezcla
+     * de dos escrituras.
+     */
+    @Test
+    public void losLectoresNuncaVenEscriturasAMedias() throws InterruptedException {
+        final EstadoMetricas estado = new EstadoMetricas(3, 1);
+        final AtomicReference<String> error = new AtomicReference<>();
+        final AtomicLong lecturas = new AtomicLong();
+        final long fin = System.nanoTime() + DURACION_NANOSEGUNDOS;
+        ArrayList<Thread> hilos = new ArrayList<>();
+
+        for (int e = 0; e < ESCRITORES; e++) {
+            final int escritor = e;
+
+            hilos.add(new Thread(new Runnable() {
+                public void run() {
+                    for (long i = 0; System.nanoTime() < fin; i++) {
+                        double valor = escritor * 1e9 + i;
+
+                        /* Se alterna el orden de las métricas para que una
+                         * lectura a medias sea más probable. */
+                        if (i % 2 == 0) {
+                            estado.setNumeros(0, valor, 1, valor, 2, valor);
+                        } else {
+                            estado.setNumeros(2, valor, 0, valor, 1, valor);
+                        }
+                    }
+                }
+            }));
+        }
+
+        for (int l = 0; l < LECTORES; l++) {
+            hilos.add(new Thread(new Runnable() {
+                public void run() {
+                    double[] numeros = new double[3];
+                    String[] textos = new String[1];
+
+                    while (System.nanoTime() < fin && error.get() == null) {
+                        estado.leer(numeros, textos);
+                        lecturas.incrementAndGet();
+
+                        if (numeros[0] != numeros[1] || numeros[1] != numeros[2]) {
+                            error.compareAndSet(null, "Lectura a medias: " + numeros[0] + ", " + numeros[1] + ", " + numeros[2]);
+                        }
+                    }
+                }
+            }));
+        }
+
+        for (Thread hilo : hilos) {
+            hilo.start();
+        }
+
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        assertNull(error.get(), error.get());
+        assertTrue("Los lectores tienen que avanzar aunque los escritores no paren", lecturas.get() > LECTORES);
+    }
+
+    /**
+     * Las escrituras individuales de distintos hilos no se pierden.
+     */
+    @Test
+    public void conservaCadaEscrituraIndividual() throws InterruptedException {
+        final EstadoMetricas estado = new EstadoMetricas(ESCRITORES, ESCRITORES);
+        ArrayList<Thread> hilos = new ArrayList<>();
+
+        for (int e = 0; e < ESCRITORES; e++) {
+            final int escritor = e;
+
+            hilos.add(new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i <= 10000; i++) {
+                        estado.setNumero(escritor, i);
+                        estado.setTexto(escritor, String.valueOf(i));
+                    }
+                }
+            }));
+        }
+
+        for (Thread hilo : hilos) {
+            hilo.start();
+        }
+
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        for (int e = 0; e < ESCRITORES; e++) {
+            assertEquals(10000.0, estado.getNumero(e), 0);
+            assertEquals("10000", estado.getTexto(e));
+        }
+    }
+
+}
@@ -0,0 +1,301 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.TimeZone;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Los eventos de calificación en los formatos XML y binario: se leen tal
+ * como se escribieron y ocupan bastante menos que un registro por métrica.
+ */
+public class PruebaEventoCalificacion {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long FECHA = 1564660800000L;
+    private static final long MINUTO = 60000;
+
+    /**
+     * Los nombres repetidos o con caracteres especiales (incluso los que
+     * separan la lista de valores) no pueden dejar el documento mal formado.
+     */
+    @Test
+    public void elDocumentoConservaNombresRepetidosYEspeciales() throws Exception {
+        RegistroMetrica[] mediciones = {
+                new RegistroMetrica(null, "Latency.count", 12L, FECHA),
+                new RegistroMetrica(null, "Latency.count", 3L, FECHA),
+                new RegistroMetrica(null, "id", "x<\"&'", FECHA),
+                new RegistroMetrica(null, "con espacio|y barra\\", "a|b\\|c\\", FECHA),
+                new RegistroMetrica(null, "ñandú", "", FECHA),
+                new RegistroMetrica(null, "Jitter", 3.4375, FECHA)
+        };
+        RegistroMetrica evento = new RegistroMetrica(new EventoCalificacion(7, "Muy \"buena\"", FECHA, mediciones));
+        RegistroMetrica vacio = new RegistroMetrica(new EventoCalificacion(8, "Buena", FECHA, new RegistroMetrica[0]));
+        CodificadorDocumentoXML codificador = new CodificadorDocumentoXML();
+        ByteArrayOutputStream documento = new ByteArrayOutputStream();
+
+        codificador.iniciar(documento);
+        codificador.codificar(evento, documento);
+        codificador.codificar(new RegistroMetrica("Buena", "Latency", 48.21, FECHA), documento);
+        codificador.codificar(evento, documento);
+        codificador.codificar(vacio, documento);
+        codificador.finalizar(documento);
+
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(documento.toByteArray()));
+
+        try (LectorDocumentoXML lector = new LectorDocumentoXML(new ByteArrayInputStream(documento.toByteArray()))) {
+            assertIgual(evento, lector.leer());
+            assertEquals("48.21", lector.leer().getValor());
+            assertIgual(evento, lector.leer());
+            assertIgual(vacio, lector.leer());
+            assertNull(lector.leer());
+        }
+    }
+
+    @Test
+    public void leeLosEventosDeLaVersion1() throws IOException {
+        String documento = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<metrics version=\"1\">\n"
+                + "<rating id=\"4\" date=\"2019-08-01T12:00:00.000Z\" score=\"Buena\" fields=\"87\" Latency=\"48.21\">"
+                + "<metric name=\"con espacio\" value=\"1\"/></rating>\n"
+                + "</metrics>\n";
+
+        try (LectorDocumentoXML lector = new LectorDocumentoXML(new ByteArrayInputStream(documento.getBytes(UTF_8)), TimeZone.getTimeZone("UTC"))) {
+            EventoCalificacion evento = lector.leer().getEvento();
+
+            assertEquals(4, evento.getId());
+            assertEquals(FECHA, evento.getFechaMilisegundos());
+            assertEquals(3, evento.getCantidadMediciones());
+            assertEquals("fields", evento.getMedicion(0).getMetrica());
+            assertEquals("87", evento.getMedicion(0).getValor());
+            assertEquals("48.21", evento.getMedicion(1).getValor());
+            assertEquals("con espacio", evento.getMedicion(2).getMetrica());
+        }
+    }
+
+    /**
+     * Una calificación ocupa al menos 5 veces menos como evento que como un
+     * registro por métrica, una vez declarados sus nombres.
+     */
+    @Test
+    public void elEventoXMLOcupaAlMenosCincoVecesMenos() throws IOException {
+        assertReduccion(new CodificadorDocumentoXML(), 5);
+        assertReduccion(new CodificadorXML(), 5);
+    }
+
+    /**
+     * Los valores que no cambian respecto del evento anterior no se
+     * escriben, pero se leen igual.
+     */
+    @Test
+    public void elEventoBinarioSoloEscribeLosValoresQueCambian() throws IOException {
+        assertReduccion(new CodificadorBinario(), 5);
+
+        RegistroMetrica primero = new RegistroMetrica(new EventoCalificacion(1, "Buena", FECHA, metricas(FECHA, 0)));
+        RegistroMetrica igual = new RegistroMetrica(new EventoCalificacion(2, "Buena", FECHA + MINUTO, metricas(FECHA + MINUTO, 0)));
+        RegistroMetrica distinto = new RegistroMetrica(new EventoCalificacion(3, "Mala", FECHA + 2 * MINUTO, metricas(FECHA + 2 * MINUTO, 1)));
+        RegistroMetrica otro = new RegistroMetrica(new EventoCalificacion(4, "Buena", FECHA, new RegistroMetrica[]{
+                new RegistroMetrica(null, "Jitter", 3.4375, FECHA),
+                new RegistroMetrica(null, "Jitter", -0.0, FECHA)
+        }));
+        RegistroMetrica[] registros = {primero, igual, distinto, otro, igual, new RegistroMetrica("Buena", "Latency", 0.1, FECHA)};
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        CodificadorBinario codificador = new CodificadorBinario();
+
+        codificador.iniciar(salida);
+
+        for (RegistroMetrica registro : registros) {
+            codificador.codificar(registro, salida);
+        }
+
+        DecodificadorBinario decodificador = new DecodificadorBinario(new ByteArrayInputStream(salida.toByteArray()));
+
+        for (RegistroMetrica registro : registros) {
+            assertIgual(registro, decodificador.leer());
+        }
+
+        assertNull(decodificador.leer());
+    }
+
+    /**
+     * Los reales con pocos decimales se escriben como decimales, y el resto,
+     * con sus 8 bytes: todos se leen con el mismo texto.
+     */
+    @Test
+    public void losRealesSeLeenConElMismoTexto() throws IOException {
+        Object[] valores = {0.1, -0.0, 48.21, 51.07142857142857, 1e-7, 1.0E10, 123456.789, Math.PI, Double.NaN,
+                Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE, 0.1f, 298.5f, "3.4375", "1.0E-5", "0.10"};
+        RegistroMetrica[] mediciones = new RegistroMetrica[valores.length];
+
+        for (int i = 0; i < valores.length; i++) {
+            Object valor = valores[i];
+
+            if (valor instanceof Double) {
+                mediciones[i] = new RegistroMetrica(null, "m" + i, (double) (Double) valor, FECHA);
+            } else if (valor instanceof Float) {
+                mediciones[i] = new RegistroMetrica(null, "m" + i, (float) (Float) valor, FECHA);
+            } else {
+                mediciones[i] = new RegistroMetrica(null, "m" + i, (String) valor, FECHA);
+            }
+        }
+
+        RegistroMetrica evento = new RegistroMetrica(new EventoCalificacion(1, "Buena", FECHA, mediciones));
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        CodificadorBinario codificador = new CodificadorBinario();
+
+        codificador.iniciar(salida);
+        codificador.codificar(evento, salida);
+
+        for (RegistroMetrica medicion : mediciones) {
+            codificador.codificar(medicion, salida);
+        }
+
+        DecodificadorBinario decodificador = new DecodificadorBinario(new ByteArrayInputStream(salida.toByteArray()));
+
+        assertIgual(evento, decodificador.leer());
+
+        for (RegistroMetrica medicion : mediciones) {
+            assertEquals(medicion.getValor(), decodificador.leer().getValor());
+        }
+    }
+
+    /**
+     * Una plantilla con nombres repetidos tiene más mediciones que nombres
+     * en el diccionario, y se lee igual.
+     */
+    @Test
+    public void elEventoBinarioConservaLosNombresRepetidos() throws IOException {
+        RegistroMetrica[] mediciones = {
+                new RegistroMetrica(null, "Latency.count", 12L, FECHA),
+                new RegistroMetrica(null, "Latency.count", 3L, FECHA),
+                new RegistroMetrica(null, "Latency.count", 3L, FECHA)
+        };
+        RegistroMetrica evento = new RegistroMetrica(new EventoCalificacion(1, "Buena", FECHA, mediciones));
+        RegistroMetrica siguiente = new RegistroMetrica(new EventoCalificacion(2, "Buena", FECHA + MINUTO, mediciones));
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        CodificadorBinario codificador = new CodificadorBinario();
+
+        codificador.iniciar(salida);
+        codificador.codificar(evento, salida);
+        codificador.codificar(siguiente, salida);
+
+        DecodificadorBinario decodificador = new DecodificadorBinario(new ByteArrayInputStream(salida.toByteArray()));
+
+        assertIgual(evento, decodificador.leer());
+        assertIgual(siguiente, decodificador.leer());
+        assertNull(decodificador.leer());
+    }
+
+    @Test
+    public void leeLosEventosDeLaVersion2() throws IOException {
+        byte[] archivo = {
+                'Q', '2', 'M', 'B', 2,
+                CodificadorBinario.ETIQUETA_DEFINIR_NOMBRE, 0, 1, 'A',
+                CodificadorBinario.ETIQUETA_DEFINIR_CALIFICACION, 0, 5, 'B', 'u', 'e', 'n', 'a',
+                CodificadorBinario.ETIQUETA_EVENTO, 10, (byte) 0xD0, 0x0F, 0, 1, CodificadorBinario.ETIQUETA_VALOR_ENTERO, 0, 14
+        };
+        EventoCalificacion evento = new DecodificadorBinario(new ByteArrayInputStream(archivo)).leer().getEvento();
+
+        assertEquals(5, evento.getId());
+        assertEquals(1000, evento.getFechaMilisegundos());
+        assertEquals("Buena", evento.getCalificacionUsuario());
+        assertEquals("A", evento.getMedicion(0).getMetrica());
+        assertEquals("7", evento.getMedicion(0).getValor());
+    }
+
+    /**
+     * Compara los bytes de la segunda calificación de un archivo escrita
+     * como un registro por métrica y como un evento.
+     */
+    private static void assertReduccion(CodificadorRegistros codificador, int reduccion) throws IOException {
+        RegistroMetrica[] filas = metricas(FECHA + MINUTO, 0);
+
+        for (int i = 0; i < filas.length; i++) {
+            filas[i] = new RegistroMetrica("Buena", filas[i].getMetrica(), filas[i].getValor(), filas[i].getFechaMilisegundos());
+        }
+
+        int bytesFilas = bytesSegunda(codificador, metricas(FECHA, 0), filas);
+        int bytesEvento = bytesSegunda(codificador,
+                new RegistroMetrica[]{new RegistroMetrica(new EventoCalificacion(1, "Buena", FECHA, metricas(FECHA, 0)))},
+                new RegistroMetrica[]{new RegistroMetrica(new EventoCalificacion(2, "Buena", FECHA + MINUTO, metricas(FECHA + MINUTO, 0)))});
+
+        assertTrue(bytesFilas + " bytes por filas y " + bytesEvento + " como evento", bytesEvento * reduccion <= bytesFilas);
+    }
+
+    private static int bytesSegunda(CodificadorRegistros codificador, RegistroMetrica[] primera, RegistroMetrica[] segunda) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+
+        codificador.iniciar(salida);
+
+        for (RegistroMetrica registro : primera) {
+            codificador.codificar(registro, salida);
+        }
+
+        int antes = salida.size();
+
+        for (RegistroMetrica registro : segunda) {
+            codificador.codificar(registro, salida);
+        }
+
+        return salida.size() - antes;
+    }
+
+    /**
+     * @return Las métricas de una calificación, como las agrega
+     * <code>saveScore</code>; con <code>cambio</code> distinto de 0, cambian
+     * algunos valores.
+     */
+    private static RegistroMetrica[] metricas(long fecha, int cambio) {
+        return new RegistroMetrica[]{
+                new RegistroMetrica(null, "BatteryCharge", 87 - cambio, fecha),
+                new RegistroMetrica(null, "ConnectionType", cambio == 0 ? "Wi-Fi" : "4G", fecha),
+                new RegistroMetrica(null, "CPUConsumption", 12.5 + cambio, fecha),
+                new RegistroMetrica(null, "EnvironmentLight", 312.0f, fecha),
+                new RegistroMetrica(null, "Jitter", 3.4375, fecha),
+                new RegistroMetrica(null, "Latency", 48.21 * (1 + cambio), fecha),
+                new RegistroMetrica(null, "MemoryConsumption", 41.83, fecha),
+                new RegistroMetrica(null, "MemoryConsumptionMB", 1713.0, fecha),
+                new RegistroMetrica(null, "PacketLoss", 0.0, fecha),
+                new RegistroMetrica(null, "PhoneCharging", "false", fecha),
+                new RegistroMetrica(null, "PhoneConnectedToANetwork", "true", fecha),
+                new RegistroMetrica(null, "Proximity", 5.0f, fecha),
+                new RegistroMetrica(null, "ScreenBrightness", 60, fecha),
+                new RegistroMetrica(null, "SignalStrength", -55, fecha),
+                new RegistroMetrica(null, "UserPerceivedLatency", 230L + cambio, fecha),
+                new RegistroMetrica(null, "Latency.mean", 51.07142857142857, fecha)
+        };
+    }
+
+    private static void assertIgual(RegistroMetrica esperado, RegistroMetrica leido) {
+        if (esperado.getTipoValor() != RegistroMetrica.TipoValor.EVENTO) {
+            assertEquals(esperado.getMetrica(), leido.getMetrica());
+            assertEquals(esperado.getValor(), leido.getValor());
+            assertEquals(esperado.getCalificacionUsuario(), leido.getCalificacionUsuario());
+
+            return;
+        }
+
+        EventoCalificacion a = esperado.getEvento();
+        EventoCalificacion b = leido.getEvento();
+
+        assertEquals(a.getId(), b.getId());
+        assertEquals(a.getCalificacionUsuario(), b.getCalificacionUsuario());
+        assertEquals(a.getFechaMilisegundos(), b.getFechaMilisegundos());
+        assertEquals(a.getCantidadMediciones(), b.getCantidadMediciones());
+
+        for (int i = 0; i < a.getCantidadMediciones(); i++) {
+            assertEquals(a.getMedicion(i).getMetrica(), b.getMedicion(i).getMetrica());
+            assertEquals(a.getMedicion(i).getValor(), b.getMedicion(i).getValor());
+        }
+    }
+
+}
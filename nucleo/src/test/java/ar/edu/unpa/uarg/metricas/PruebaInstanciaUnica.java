@@ -0,0 +1,120 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PruebaInstanciaUnica {
+
+    private static final int HILOS = 8;
+    private static final int RONDAS = 200;
+
+    /**
+     * Una instancia con campos que no son <code>final</code>, que un hilo
+     * podría ver sin inicializar si se publicara sin sincronización.
+     */
+    private static final class Objeto {
+
+        private int valor;
+        private int[] datos;
+
+        Objeto() {
+            this.valor = 42;
+            this.datos = new int[]{1, 2, 3};
+        }
+
+    }
+
+    /**
+     * Muchos hilos piden la instancia a la vez: se crea una sola, y todos la
+     * ven construida por completo.
+     */
+    @Test
+    public void creaUnaSolaInstanciaYLaPublicaCompleta() throws InterruptedException {
+        for (int ronda = 0; ronda < RONDAS; ronda++) {
+            final InstanciaUnica<Objeto> instancia = new InstanciaUnica<>();
+            final AtomicInteger creadas = new AtomicInteger();
+            final AtomicReference<String> error = new AtomicReference<>();
+            final Objeto[] obtenidas = new Objeto[HILOS];
+            final CountDownLatch largada = new CountDownLatch(1);
+            final InstanciaUnica.Fabrica<Objeto> fabrica = new InstanciaUnica.Fabrica<Objeto>() {
+                public Objeto crear() {
+                    creadas.incrementAndGet();
+
+                    return new Objeto();
+                }
+            };
+            Thread[] hilos = new Thread[HILOS];
+
+            for (int h = 0; h < HILOS; h++) {
+                final int hilo = h;
+
+                hilos[h] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            largada.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+
+                        /* Unos hilos la crean y otros sólo la leen. */
+                        Objeto objeto = hilo % 2 == 0 ? instancia.obtener(fabrica) : instancia.get();
+
+                        while (objeto == null) {
+                            objeto = instancia.get();
+                        }
+
+                        if (objeto.valor != 42 || objeto.datos == null || objeto.datos[2] != 3) {
+                            error.compareAndSet(null, "Se vio la instancia sin inicializar.");
+                        }
+
+                        obtenidas[hilo] = objeto;
+                    }
+                });
+                hilos[h].start();
+            }
+
+            largada.countDown();
+
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+
+            assertNull(error.get(), error.get());
+            assertEquals(1, creadas.get());
+
+            for (Objeto objeto : obtenidas) {
+                assertSame(obtenidas[0], objeto);
+            }
+        }
+    }
+
+    @Test
+    public void quitarPermiteCrearOtra() {
+        InstanciaUnica<Objeto> instancia = new InstanciaUnica<>();
+        InstanciaUnica.Fabrica<Objeto> fabrica = new InstanciaUnica.Fabrica<Objeto>() {
+            public Objeto crear() {
+                return new Objeto();
+            }
+        };
+        Objeto primera = instancia.obtener(fabrica);
+
+        assertSame(primera, instancia.obtener(fabrica));
+        assertSame(primera, instancia.quitar());
+        assertNull(instancia.get());
+        assertNull(instancia.quitar());
+
+        Objeto segunda = instancia.obtener(fabrica);
+
+        assertFalse(primera == segunda);
+        assertSame(segunda, instancia.get());
+    }
+
+}
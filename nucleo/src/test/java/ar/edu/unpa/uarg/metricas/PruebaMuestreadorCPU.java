@@ -0,0 +1,140 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Análisis de copias de los archivos de <code>/proc</code>.
+ */
+public class PruebaMuestreadorCPU {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private File raiz;
+
+    @Before
+    public void crearRaiz() throws IOException {
+        this.raiz = File.createTempFile("proc", "");
+        this.raiz.delete();
+    }
+
+    @After
+    public void eliminarRaiz() {
+        eliminar(this.raiz);
+    }
+
+    @Test
+    public void analizaUtimeMasStime() throws IOException {
+        assertEquals(325, analizarTarea("1234 (ar.edu.unpa) S 1 1234 1234 0 -1 4194560 100 0 0 0 250 75 0 0 20 0 12 0 5000 0\n", null));
+    }
+
+    /**
+     * El nombre de la tarea puede tener espacios y paréntesis.
+     */
+    @Test
+    public void analizaNombresConParentesis() throws IOException {
+        StringBuilder nombre = new StringBuilder();
+
+        assertEquals(7, analizarTarea("77 (Hilo (1) x) R 1 1 1 0 -1 0 0 0 0 0 3 4 0 0\n", nombre));
+        assertEquals("Hilo (1) x", nombre.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void rechazaStatSinTiempos() throws IOException {
+        analizarTarea("1234 (x) S 1 1234\n", null);
+    }
+
+    @Test
+    public void sumaLasColumnasDeLaLineaCpu() throws IOException {
+        assertEquals(576, analizarTotal("cpu  100 20 30 400 5 6 7 8 9 10\ncpu0 1 2 3 4 5 6 7 8 0 0\n"));
+    }
+
+    @Test
+    public void aceptaNucleosConMenosColumnas() throws IOException {
+        assertEquals(10, analizarTotal("cpu 1 2 3 4\nintr 5\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rechazaOtroArchivo() throws IOException {
+        analizarTotal("intr 1 2 3\n");
+    }
+
+    @Test
+    public void calculaElUsoEntreDosInstantaneas() throws IOException {
+        MuestreadorCPU muestreador = new MuestreadorCPU(this.raiz, 100, 4);
+
+        this.escribirProc(250, 75, 1000, 60);
+        MuestreadorCPU.InstantaneaCPU anterior = muestreador.tomarInstantanea(true);
+
+        this.escribirProc(280, 95, 1200, 80);
+        MuestreadorCPU.InstantaneaCPU actual = muestreador.tomarInstantanea(true);
+
+        assertEquals(1200, actual.getJiffiesSistema());
+        assertEquals(25.0, muestreador.calcularUso(anterior, actual), 1e-9); // 50 de 200 jiffies.
+
+        Map<String, Double> hilos = muestreador.calcularUsoPorHilo(anterior, actual);
+
+        assertEquals(1, hilos.size());
+        assertEquals(10.0, hilos.get("Q2M Escritor#4321"), 1e-9); // 20 de 200 jiffies.
+    }
+
+    /**
+     * Desde Android 8, <code>/proc/stat</code> no se puede leer.
+     */
+    @Test
+    public void sinStatDelSistemaLoInforma() throws IOException {
+        this.escribirProc(250, 75, 1000, 60);
+        new File(this.raiz, "stat").delete();
+
+        assertEquals(-1, new MuestreadorCPU(this.raiz, 100, 4).tomarInstantanea(false).getJiffiesSistema());
+    }
+
+    private void escribirProc(long utime, long stime, long totalSistema, long jiffiesHilo) throws IOException {
+        escribir(new File(this.raiz, "self/stat"), "4321 (ar.edu.unpa) S 1 4321 4321 0 -1 0 0 0 0 0 " + utime + " " + stime + " 0 0 20 0 2 0\n");
+        escribir(new File(this.raiz, "self/task/4321/stat"), "4321 (Q2M Escritor) S 1 4321 4321 0 -1 0 0 0 0 0 " + jiffiesHilo + " 0 0 0\n");
+        escribir(new File(this.raiz, "stat"), "cpu  " + (totalSistema - 100) + " 0 100 0 0 0 0 0 0 0\n");
+    }
+
+    private static long analizarTarea(String contenido, StringBuilder nombre) throws IOException {
+        byte[] datos = contenido.getBytes(ASCII);
+
+        return MuestreadorCPU.analizarJiffiesTarea(datos, datos.length, nombre);
+    }
+
+    private static long analizarTotal(String contenido) throws IOException {
+        byte[] datos = contenido.getBytes(ASCII);
+
+        return MuestreadorCPU.analizarTotalSistema(datos, datos.length);
+    }
+
+    private static void escribir(File archivo, String contenido) throws IOException {
+        archivo.getParentFile().mkdirs();
+
+        try (OutputStream salida = new FileOutputStream(archivo)) {
+            salida.write(contenido.getBytes(ASCII));
+        }
+    }
+
+    private static void eliminar(File archivo) {
+        File[] hijos = archivo.listFiles();
+
+        if (hijos != null) {
+            for (File hijo : hijos) {
+                eliminar(hijo);
+            }
+        }
+
+        archivo.delete();
+    }
+
+}
@@ -0,0 +1,99 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PruebaPlanificadorSubida {
+
+    private static final PlanificadorSubida.Condiciones CONECTADO = new PlanificadorSubida.Condiciones() {
+        public boolean estaConectado() {
+            return true;
+        }
+
+        public boolean estaEnWifi() {
+            return true;
+        }
+
+        public boolean estaCargando() {
+            return true;
+        }
+
+        public int getPorcentajeBateria() {
+            return 100;
+        }
+    };
+
+    private File registro;
+
+    @Before
+    public void crearRegistro() throws IOException {
+        this.registro = File.createTempFile("metricas", ".xml");
+    }
+
+    @After
+    public void eliminarRegistro() {
+        this.registro.delete();
+        new File(this.registro.getPath() + ".cursor").delete();
+    }
+
+    /**
+     * Si el planificador se cierra durante una subida, las solicitudes que
+     * esa subida atendió no pueden dejar la cuenta en negativo.
+     */
+    @Test
+    public void cerrarDuranteUnaSubidaNoDejaPendientesNegativas() throws Exception {
+        final CountDownLatch comenzo = new CountDownLatch(1);
+        CanalSubida canal = new CanalSubida(this.registro, new URL("http://127.0.0.1:9/"), true) {
+            @Override
+            public synchronized int subir() {
+                comenzo.countDown();
+
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    // close() interrumpe la subida, que termina normalmente.
+                }
+
+                return 1;
+            }
+        };
+        PlanificadorSubida planificador = new PlanificadorSubida(canal, CONECTADO, PoliticaSubida.SIEMPRE, null);
+
+        planificador.setTiempos(0, 60000);
+        planificador.solicitar();
+        planificador.solicitar();
+
+        assertTrue(comenzo.await(5, TimeUnit.SECONDS));
+
+        planificador.close();
+        planificador.solicitar();
+
+        assertEquals(0, planificador.getSolicitudesPendientes());
+        assertEquals(0, planificador.getAntiguedadMilisegundos());
+    }
+
+    @Test
+    public void estimaLosLotesPendientes() throws IOException {
+        CanalSubida canal = new CanalSubida(this.registro, new URL("http://127.0.0.1:9/"), true, 100, 1);
+
+        assertEquals(0, canal.getLotesPendientes());
+
+        try (FileOutputStream salida = new FileOutputStream(this.registro)) {
+            salida.write(new byte[250]);
+        }
+
+        assertEquals(3, canal.getLotesPendientes());
+    }
+
+}
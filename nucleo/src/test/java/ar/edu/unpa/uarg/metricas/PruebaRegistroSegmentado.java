@@ -0,0 +1,127 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PruebaRegistroSegmentado {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BYTES_SEGMENTO = 4096;
+    private static final int REGISTROS_SESION = 300;
+
+    private File directorio;
+
+    @Before
+    public void crearDirectorio() throws IOException {
+        this.directorio = File.createTempFile("segmentos", "");
+        this.directorio.delete();
+    }
+
+    @After
+    public void eliminarDirectorio() {
+        File[] archivos = this.directorio.listFiles();
+
+        if (archivos != null) {
+            for (File archivo : archivos) {
+                archivo.delete();
+            }
+        }
+
+        this.directorio.delete();
+    }
+
+    /**
+     * Con el documento XML, cada segmento tiene que ser un documento bien
+     * formado, tanto al rotar como al volver a abrir el almacén.
+     */
+    @Test
+    public void cadaSegmentoEsUnDocumentoCompleto() throws IOException {
+        CodificadorDocumentoXML codificador = new CodificadorDocumentoXML();
+
+        this.escribirSesion(codificador, 0);
+        this.escribirSesion(codificador, REGISTROS_SESION);
+
+        ArrayList<byte[]> documentos = this.leerDocumentos();
+        int registros = 0;
+
+        assertTrue("Se esperaban varios segmentos", documentos.size() > 2);
+        assertEquals(this.contarSegmentos(), documentos.size());
+
+        for (byte[] documento : documentos) {
+            String texto = new String(documento, UTF_8);
+
+            assertTrue(texto, texto.endsWith("</" + CodificadorDocumentoXML.ELEMENTO_RAIZ + ">\n"));
+
+            try (LectorDocumentoXML lector = new LectorDocumentoXML(new ByteArrayInputStream(documento))) {
+                RegistroMetrica registro;
+
+                while ((registro = lector.leer()) != null) {
+                    assertEquals(registros, registro.getFechaMilisegundos());
+                    registros++;
+                }
+            }
+        }
+
+        assertEquals(2 * REGISTROS_SESION, registros);
+    }
+
+    @Test
+    public void abrirConElUltimoSegmentoVacioLoReutiliza() throws IOException {
+        new RegistroSegmentado(this.directorio, BYTES_SEGMENTO, 4, 0, PoliticaVaciado.INMEDIATA).close();
+
+        RegistroSegmentado registro = new RegistroSegmentado(this.directorio, BYTES_SEGMENTO, 4, 0, PoliticaVaciado.INMEDIATA);
+
+        registro.close();
+        assertEquals(1, registro.getCantidadSegmentos());
+    }
+
+    private void escribirSesion(CodificadorRegistros codificador, int primero) throws IOException {
+        RegistroSegmentado almacen = new RegistroSegmentado(this.directorio, BYTES_SEGMENTO, 100, 0, PoliticaVaciado.POR_DEFECTO);
+
+        try (EscritorAsincrono escritor = new EscritorAsincrono(almacen, codificador, 64, PoliticaContrapresion.BLOQUEAR)) {
+            for (int i = primero; i < primero + REGISTROS_SESION; i++) {
+                escritor.encolar(new RegistroMetrica("Buena", "Latency", i, i));
+            }
+        }
+    }
+
+    /**
+     * @return El contenido de cada segmento. Cada documento comienza con la
+     * declaración XML, en un registro propio.
+     */
+    private ArrayList<byte[]> leerDocumentos() throws IOException {
+        final ArrayList<byte[]> documentos = new ArrayList<>();
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+
+        RegistroSegmentado.recorrer(this.directorio, new RegistroSegmentado.ProcesadorRegistros() {
+            public void procesar(byte[] datos, int longitud) {
+                if (new String(datos, 0, Math.min(longitud, 5), UTF_8).equals("<?xml") && actual.size() > 0) {
+                    documentos.add(actual.toByteArray());
+                    actual.reset();
+                }
+
+                actual.write(datos, 0, longitud);
+            }
+        });
+
+        documentos.add(actual.toByteArray());
+
+        return documentos;
+    }
+
+    private int contarSegmentos() {
+        return this.directorio.list().length;
+    }
+
+}
@@ -0,0 +1,141 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PruebaSerieTemporal {
+
+    @Test
+    public void calculaLaVentanaEnOrden() {
+        SerieTemporal serie = new SerieTemporal(8);
+
+        for (int i = 1; i <= 10; i++) {
+            serie.agregar(i * 1000L, i);
+        }
+
+        SerieTemporal.Resumen resumen = serie.resumir(6000);
+
+        assertEquals(8, serie.getCantidad());
+        assertEquals(5, resumen.getCantidad());
+        assertEquals(8.0, resumen.getMedia(), 1e-9);
+        assertEquals(2.0, resumen.getVarianza(), 1e-9);
+        assertEquals(6.0, resumen.getMinimo(), 0);
+        assertEquals(10.0, resumen.getMaximo(), 0);
+    }
+
+    /**
+     * Los eventos de sensores llegan en lotes y otras fuentes usan otro
+     * reloj: las ventanas tienen que ser las mismas que si las muestras
+     * hubieran llegado en orden.
+     */
+    @Test
+    public void ubicaLasMuestrasAtrasadas() {
+        Random aleatorio = new Random(42);
+
+        for (int capacidad : new int[]{1, 7, 64}) {
+            SerieTemporal serie = new SerieTemporal(capacidad);
+            ArrayList<double[]> agregadas = new ArrayList<>();
+            long reloj = 0;
+
+            for (int i = 0; i < 500; i++) {
+                reloj += aleatorio.nextInt(20);
+
+                long fecha = reloj - (aleatorio.nextInt(4) == 0 ? aleatorio.nextInt(200) : 0);
+                double valor = 1000 + aleatorio.nextGaussian() * 50;
+
+                serie.agregar(fecha, valor);
+                agregadas.add(new double[]{fecha, valor});
+
+                List<double[]> esperadas = ultimasPorFecha(agregadas, capacidad, i);
+                long desde = reloj - aleatorio.nextInt(150);
+
+                comparar("capacidad " + capacidad + ", muestra " + i, serie, esperadas, desde);
+            }
+        }
+    }
+
+    @Test
+    public void descartaUnaAtrasadaMasAntiguaQueTodas() {
+        SerieTemporal serie = new SerieTemporal(3);
+
+        serie.agregar(10, 1);
+        serie.agregar(20, 2);
+        serie.agregar(30, 3);
+        serie.agregar(5, 100);
+
+        assertEquals(3, serie.getCantidad());
+        assertEquals(2.0, serie.getMedia(0), 1e-9);
+    }
+
+    /**
+     * @return Las muestras que debería conservar la serie: las de fecha más
+     * reciente, desempatando por orden de llegada (y sin contar las que se
+     * descartaron antes por ser las más antiguas).
+     */
+    private static List<double[]> ultimasPorFecha(List<double[]> agregadas, int capacidad, int ultima) {
+        ArrayList<double[]> conservadas = new ArrayList<>();
+
+        for (int i = 0; i <= ultima; i++) {
+            conservadas.add(agregadas.get(i));
+
+            /* Orden estable por fecha, igual que el de la serie. */
+            Collections.sort(conservadas, new Comparator<double[]>() {
+                public int compare(double[] a, double[] b) {
+                    return Double.compare(a[0], b[0]);
+                }
+            });
+
+            if (conservadas.size() > capacidad) {
+                conservadas.remove(0);
+            }
+        }
+
+        return conservadas;
+    }
+
+    private static void comparar(String caso, SerieTemporal serie, List<double[]> esperadas, long desde) {
+        double[] ventana = new double[esperadas.size()];
+        int n = 0;
+        double suma = 0;
+
+        for (double[] muestra : esperadas) {
+            if (muestra[0] >= desde) {
+                ventana[n++] = muestra[1];
+                suma += muestra[1];
+            }
+        }
+
+        SerieTemporal.Resumen resumen = serie.resumir(desde);
+
+        assertEquals(caso, n, serie.contar(desde));
+        assertEquals(caso, n, resumen.getCantidad());
+
+        if (n == 0) {
+            return;
+        }
+
+        double media = suma / n;
+        double varianza = 0;
+
+        for (int i = 0; i < n; i++) {
+            varianza += (ventana[i] - media) * (ventana[i] - media);
+        }
+
+        Arrays.sort(ventana, 0, n);
+
+        assertEquals(caso, media, resumen.getMedia(), 1e-6);
+        assertEquals(caso, varianza / n, resumen.getVarianza(), 1e-4);
+        assertEquals(caso, ventana[0], resumen.getMinimo(), 0);
+        assertEquals(caso, ventana[n - 1], resumen.getMaximo(), 0);
+        assertEquals(caso, media, serie.getMedia(desde), 1e-6);
+    }
+
+}
@@ -0,0 +1,121 @@
+package ar.edu.unpa.uarg.metricas;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sondas contra servicios propios en la interfaz de loopback.
+ */
+public class PruebaSondaRed {
+
+    private static final String LOOPBACK = "127.0.0.1";
+    private static final int SONDAS = 3;
+
+    private ServerSocket servidorTCP;
+    private DatagramSocket servidorUDP;
+
+    @After
+    public void cerrarServidores() throws IOException {
+        if (this.servidorTCP != null) {
+            this.servidorTCP.close();
+        }
+
+        if (this.servidorUDP != null) {
+            this.servidorUDP.close();
+        }
+    }
+
+    @Test
+    public void tcpConPuertoAbiertoRecibeTodas() throws IOException {
+        this.servidorTCP = new ServerSocket(0, 50, InetAddress.getByName(LOOPBACK));
+
+        ResultadoSondeo resultado = new SondaRed(SondaRed.Modo.CONEXION_TCP, this.servidorTCP.getLocalPort(), 1000).sondear(LOOPBACK, SONDAS, 0);
+
+        assertEquals(SONDAS, resultado.getEnviadas());
+        assertEquals(SONDAS, resultado.getRecibidas());
+        assertTrue(resultado.getRttNanosegundos(0) > 0);
+    }
+
+    /**
+     * Una conexión rechazada también es una respuesta del host.
+     */
+    @Test
+    public void tcpConPuertoCerradoCuentaElRechazo() throws IOException {
+        ResultadoSondeo resultado = new SondaRed(SondaRed.Modo.CONEXION_TCP, puertoTCPLibre(), 1000).sondear(LOOPBACK, SONDAS, 0);
+
+        assertEquals(SONDAS, resultado.getRecibidas());
+        assertEquals(0, resultado.getPorcentajePerdida());
+    }
+
+    @Test
+    public void udpConServicioDeEcoRecibeTodas() throws IOException {
+        this.servidorUDP = new DatagramSocket(0, InetAddress.getByName(LOOPBACK));
+
+        final DatagramSocket servidor = this.servidorUDP;
+        Thread eco = new Thread(new Runnable() {
+            public void run() {
+                DatagramPacket paquete = new DatagramPacket(new byte[64], 64);
+
+                try {
+                    while (true) {
+                        paquete.setLength(64);
+                        servidor.receive(paquete);
+                        servidor.send(paquete);
+                    }
+                } catch (IOException e) {
+                    // Se cerró el servidor.
+                }
+            }
+        });
+        eco.setDaemon(true);
+        eco.start();
+
+        ResultadoSondeo resultado = new SondaRed(SondaRed.Modo.UDP_ECO, servidor.getLocalPort(), 1000).sondear(LOOPBACK, SONDAS, 0);
+
+        assertEquals(SONDAS, resultado.getRecibidas());
+    }
+
+    @Test
+    public void udpSinServicioPierdeTodasSinFallar() throws IOException {
+        ResultadoSondeo resultado = new SondaRed(SondaRed.Modo.UDP_ECO, puertoUDPLibre(), 200).sondear(LOOPBACK, SONDAS, 0);
+
+        assertEquals(SONDAS, resultado.getEnviadas());
+        assertEquals(0, resultado.getRecibidas());
+    }
+
+    /**
+     * Una dirección a la que no se puede conectar (la de broadcast, sin
+     * permiso para usarla) cuenta como pérdida y no interrumpe la serie.
+     */
+    @Test
+    public void direccionInutilizableCuentaComoPerdida() throws IOException {
+        for (SondaRed.Modo modo : SondaRed.Modo.values()) {
+            ResultadoSondeo resultado = new SondaRed(modo, 9, 200).sondear("255.255.255.255", SONDAS, 0);
+
+            assertEquals(modo.toString(), SONDAS, resultado.getEnviadas());
+            assertEquals(modo.toString(), 100, resultado.getPorcentajePerdida());
+        }
+    }
+
+    private static int puertoTCPLibre() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName(LOOPBACK))) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static int puertoUDPLibre() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getByName(LOOPBACK))) {
+            return socket.getLocalPort();
+        }
+    }
+
+}